@@ -5,7 +5,6 @@ import htsjdk.samtools.util.CloseableIterator;
 import htsjdk.samtools.util.CloserUtil;
 
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.Iterator;
 
 /**
@@ -22,12 +21,14 @@ public class AssemblyAssociator implements CloseableIterator<DirectedEvidence> {
 	private final Iterator<DirectedEvidence> it;
 	private final Iterator<SAMRecord> assit;
 	private final int windowSize;
-	private final HashMap<String, String> evidenceToAssemblyName = new HashMap<>();
+	private final EvidenceIdentifierGenerator eidgen;
+	private final EvidenceIdentifierMap<String> evidenceToAssemblyName = new EvidenceIdentifierMap<>();
 	private SAMRecord lastAssembly = null;
-	public AssemblyAssociator(Iterator<DirectedEvidence> it, Iterator<SAMRecord> rawAssemblies, int windowSize) {
+	public AssemblyAssociator(Iterator<DirectedEvidence> it, Iterator<SAMRecord> rawAssemblies, int windowSize, EvidenceIdentifierGenerator eidgen) {
 		this.it = it;
 		this.assit = rawAssemblies;
 		this.windowSize = windowSize;
+		this.eidgen = eidgen;
 	}
 	@Override
 	public boolean hasNext() {
@@ -45,7 +46,7 @@ public class AssemblyAssociator implements CloseableIterator<DirectedEvidence> {
 			return e;
 		}
 		ensureAssembliesLoadedUntil(e.getBreakendSummary());
-		setAssociatedAssembly(e, evidenceToAssemblyName.remove(e.getEvidenceID()));
+		setAssociatedAssembly(e, evidenceToAssemblyName.remove(e.getEvidenceIdentifier()));
 		flushBefore(e.getBreakendSummary());
 		return e;
 	}
@@ -63,7 +64,7 @@ public class AssemblyAssociator implements CloseableIterator<DirectedEvidence> {
 		assert(ass != null);
 		Collection<String> eids = new AssemblyAttributes(ass).getEvidenceIDs(null, null, null, null);
 		for (String eid : eids) {
-			evidenceToAssemblyName.put(eid, ass.getReadName());
+			evidenceToAssemblyName.put(eidgen.getEvidenceIdentifier(eid), ass.getReadName());
 		}
 	}
 	private boolean isAfter(BreakendSummary breakendSummary, SAMRecord position) {
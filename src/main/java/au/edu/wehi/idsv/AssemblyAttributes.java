@@ -207,15 +207,14 @@ public class AssemblyAttributes {
 
 	private static boolean ensureUniqueEvidenceID(String assemblyName, Collection<DirectedEvidence> support) {
 		boolean isUnique = true;
-		Set<String> map = new HashSet<String>();
+		Set<EvidenceIdentifier> map = new HashSet<EvidenceIdentifier>();
 		for (DirectedEvidence id : support) {
-			if (map.contains(id.getEvidenceID())) {
+			if (!map.add(id.getEvidenceIdentifier())) {
 				if (!MessageThrottler.Current.shouldSupress(log, "duplicated evidenceIDs")) {
 					log.error("Found evidenceID " + id.getEvidenceID() + " multiple times in assembly " + assemblyName);
 				}
 				isUnique = false;
 			}
-			map.add(id.getEvidenceID());
 		}
 		return isUnique;
 	}
@@ -0,0 +1,137 @@
+package au.edu.wehi.idsv;
+
+import au.edu.wehi.idsv.util.FileHelper;
+import htsjdk.samtools.QueryInterval;
+import htsjdk.samtools.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Durable record of assembly progress within a chunk.
+ *
+ * Chunks are assembled as a sequence of segments with each completed segment
+ * written to its own file. The checkpoint is updated after each segment completes
+ * so an interrupted chunk can resume from the first incomplete segment.
+ * The checkpoint records the segment intervals and is ignored if the chunk
+ * is no longer segmented identically.
+ *
+ * @author Daniel Cameron
+ *
+ */
+public class AssemblyCheckpoint {
+	private static final Log log = Log.getInstance(AssemblyCheckpoint.class);
+	private static final String SEGMENTS = "segments";
+	private static final String COMPLETED_SEGMENTS = "completedSegments";
+	private static final String LAST_ASSEMBLY_ID = "lastAssemblyId.";
+	private static final String RESUME_POSITION = "resumePosition";
+	private final File file;
+	private final int segmentCount;
+	private final String segments;
+	private int completedSegments = 0;
+	private final Map<BreakendDirection, Integer> lastAssemblyId = new EnumMap<>(BreakendDirection.class);
+	private String resumePosition = null;
+	private AssemblyCheckpoint(File file, List<QueryInterval[]> segments) {
+		this.file = file;
+		this.segmentCount = segments.size();
+		this.segments = toString(segments);
+	}
+	/**
+	 * Loads the assembly checkpoint from the given file.
+	 * @param file checkpoint file
+	 * @param segments segments the chunk is assembled in
+	 * @return checkpoint. If no valid checkpoint exists, a checkpoint with no completed segments is returned.
+	 */
+	public static AssemblyCheckpoint load(File file, List<QueryInterval[]> segments) throws IOException {
+		AssemblyCheckpoint checkpoint = new AssemblyCheckpoint(file, segments);
+		if (file.exists()) {
+			Properties p = new Properties();
+			try (InputStream is = new FileInputStream(file)) {
+				p.load(is);
+			}
+			try {
+				if (!checkpoint.segments.equals(p.getProperty(SEGMENTS))) {
+					log.warn(String.format("Ignoring %s: checkpoint segments do not match the segments of the chunk. Has the assembly configuration changed?", file));
+				} else {
+					int completed = Integer.parseInt(p.getProperty(COMPLETED_SEGMENTS));
+					if (completed < 0 || completed > checkpoint.segmentCount) {
+						throw new NumberFormatException();
+					}
+					checkpoint.completedSegments = completed;
+					for (BreakendDirection direction : BreakendDirection.values()) {
+						checkpoint.lastAssemblyId.put(direction, Integer.parseInt(p.getProperty(LAST_ASSEMBLY_ID + direction.toChar())));
+					}
+					checkpoint.resumePosition = p.getProperty(RESUME_POSITION);
+				}
+			} catch (NumberFormatException e) {
+				log.warn(String.format("Ignoring malformed assembly checkpoint %s", file));
+			}
+		}
+		return checkpoint;
+	}
+	/**
+	 * Durably records the completion of the given number of segments
+	 * @param completedSegments number of segments completed
+	 * @param lastAssemblyId sequence number of the last assembly contig generated for each breakend direction
+	 * @param resumePosition description of the genomic position at which assembly resumes
+	 */
+	public void save(int completedSegments, Map<BreakendDirection, Integer> lastAssemblyId, String resumePosition) throws IOException {
+		this.completedSegments = completedSegments;
+		this.lastAssemblyId.clear();
+		this.lastAssemblyId.putAll(lastAssemblyId);
+		this.resumePosition = resumePosition;
+		Properties p = new Properties();
+		p.setProperty(SEGMENTS, segments);
+		p.setProperty(COMPLETED_SEGMENTS, Integer.toString(completedSegments));
+		for (BreakendDirection direction : BreakendDirection.values()) {
+			p.setProperty(LAST_ASSEMBLY_ID + direction.toChar(), Integer.toString(getLastAssemblyId(direction)));
+		}
+		if (resumePosition != null) {
+			p.setProperty(RESUME_POSITION, resumePosition);
+		}
+		File tmp = FileSystemContext.getWorkingFileFor(file);
+		try (FileOutputStream os = new FileOutputStream(tmp)) {
+			p.store(os, null);
+			os.getFD().sync();
+		}
+		FileHelper.move(tmp, file, false);
+		FileHelper.syncDirectory(file.getAbsoluteFile().getParentFile());
+	}
+	/**
+	 * Segment intervals in the form referenceIndex:start-end with intervals
+	 * separated by commas and segments separated by semicolons.
+	 */
+	private static String toString(List<QueryInterval[]> segments) {
+		return segments.stream()
+				.map(segment -> Stream.of(segment)
+						.map(qi -> String.format("%d:%d-%d", qi.referenceIndex, qi.start, qi.end))
+						.collect(Collectors.joining(",")))
+				.collect(Collectors.joining(";"));
+	}
+	public void delete() throws IOException {
+		if (file.exists()) {
+			FileHelper.delete(file, false);
+		}
+	}
+	public int getSegmentCount() {
+		return segmentCount;
+	}
+	public int getCompletedSegments() {
+		return completedSegments;
+	}
+	public int getLastAssemblyId(BreakendDirection direction) {
+		return lastAssemblyId.getOrDefault(direction, 0);
+	}
+	public String getResumePosition() {
+		return resumePosition;
+	}
+}
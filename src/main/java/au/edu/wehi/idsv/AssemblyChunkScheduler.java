@@ -0,0 +1,155 @@
+package au.edu.wehi.idsv;
+
+import htsjdk.samtools.QueryInterval;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.ToLongFunction;
+import java.util.stream.IntStream;
+
+/**
+ * Splits assembly chunks with an excessive estimated workload into smaller
+ * sub-chunks and determines the order in which chunks should be processed.
+ *
+ * Chunks are processed most expensive first so that a single long-running chunk
+ * does not start last and leave all other workers idle. Sub-chunks do not require
+ * explicit overlap since assembly already loads evidence from a padded window
+ * around each chunk and only emits contigs starting within the chunk.
+ *
+ * The resultant chunking depends only on the chunk definition and the cost estimates
+ * so is deterministic for a given set of inputs.
+ */
+public class AssemblyChunkScheduler {
+	private final ToLongFunction<QueryInterval[]> costEstimator;
+	private final double splitCostMultiple;
+	private final int minSubchunkSize;
+	private final List<QueryInterval[]> chunks = new ArrayList<>();
+	private final List<Long> cost = new ArrayList<>();
+	/**
+	 * @param chunks chunks to schedule
+	 * @param costEstimator estimated cost of processing the given intervals. A negative cost indicates the cost is unknown.
+	 * @param splitCostMultiple chunks with an estimated cost exceeding this multiple of the median chunk cost are split.
+	 * Zero disables chunk splitting.
+	 * @param minSubchunkSize minimum size in bases of each sub-chunk
+	 */
+	public AssemblyChunkScheduler(List<QueryInterval[]> chunks, ToLongFunction<QueryInterval[]> costEstimator, double splitCostMultiple, int minSubchunkSize) {
+		if (minSubchunkSize < 1) throw new IllegalArgumentException("minSubchunkSize must be positive");
+		this.costEstimator = costEstimator;
+		this.splitCostMultiple = splitCostMultiple;
+		this.minSubchunkSize = minSubchunkSize;
+		long[] initialCost = chunks.stream().mapToLong(costEstimator).toArray();
+		long targetCost = targetCost(initialCost);
+		for (int i = 0; i < chunks.size(); i++) {
+			if (splitCostMultiple > 0 && targetCost > 0 && initialCost[i] > splitCostMultiple * targetCost) {
+				split(chunks.get(i), targetCost);
+			} else {
+				this.chunks.add(chunks.get(i));
+				this.cost.add(initialCost[i]);
+			}
+		}
+	}
+	/**
+	 * Typical chunk cost. Unknown if any chunk has an unknown cost.
+	 */
+	private static long targetCost(long[] cost) {
+		if (cost.length == 0 || Arrays.stream(cost).anyMatch(c -> c < 0)) return -1;
+		long[] sorted = cost.clone();
+		Arrays.sort(sorted);
+		long median = sorted[sorted.length / 2];
+		if (median == 0) {
+			// sparse data: fall back to the mean
+			median = (long)Arrays.stream(cost).average().orElse(0);
+		}
+		return median;
+	}
+	private void split(QueryInterval[] chunk, long targetCost) {
+		List<QueryInterval> current = new ArrayList<>();
+		long currentCost = 0;
+		for (QueryInterval window : windows(chunk, minSubchunkSize)) {
+			long windowCost = Math.max(0, costEstimator.applyAsLong(new QueryInterval[] { window }));
+			if (!current.isEmpty() && currentCost + windowCost > targetCost) {
+				chunks.add(merge(current));
+				cost.add(currentCost);
+				current.clear();
+				currentCost = 0;
+			}
+			current.add(window);
+			currentCost += windowCost;
+		}
+		if (!current.isEmpty()) {
+			chunks.add(merge(current));
+			cost.add(currentCost);
+		}
+	}
+	/**
+	 * Breaks the given intervals into windows of at most the given size.
+	 */
+	static List<QueryInterval> windows(QueryInterval[] intervals, int windowSize) {
+		List<QueryInterval> result = new ArrayList<>();
+		for (QueryInterval qi : intervals) {
+			for (int start = qi.start; start <= qi.end; start += windowSize) {
+				result.add(new QueryInterval(qi.referenceIndex, start, Math.min(qi.end, start + windowSize - 1)));
+			}
+		}
+		return result;
+	}
+	/**
+	 * Breaks the given chunk into sequential segments of approximately the given size.
+	 * @param segmentSize segment size in bases. The chunk is not split if this is not positive.
+	 * @return segments in genomic order
+	 */
+	public static List<QueryInterval[]> segments(QueryInterval[] chunk, int segmentSize) {
+		List<QueryInterval[]> result = new ArrayList<>();
+		if (segmentSize <= 0) {
+			result.add(chunk);
+			return result;
+		}
+		List<QueryInterval> current = new ArrayList<>();
+		long currentSize = 0;
+		for (QueryInterval window : windows(chunk, segmentSize)) {
+			current.add(window);
+			currentSize += window.end - window.start + 1;
+			if (currentSize >= segmentSize) {
+				result.add(merge(current));
+				current.clear();
+				currentSize = 0;
+			}
+		}
+		if (!current.isEmpty()) {
+			result.add(merge(current));
+		}
+		if (result.size() == 1) {
+			// no need to split
+			result.set(0, chunk);
+		}
+		return result;
+	}
+	private static QueryInterval[] merge(List<QueryInterval> windows) {
+		return QueryInterval.optimizeIntervals(windows.toArray(new QueryInterval[0]));
+	}
+	/**
+	 * Chunks to process, in genomic order.
+	 */
+	public List<QueryInterval[]> getChunks() {
+		return chunks;
+	}
+	/**
+	 * Estimated cost of the given chunk
+	 */
+	public long getCost(int chunkNumber) {
+		return cost.get(chunkNumber);
+	}
+	/**
+	 * Chunk processing order: most expensive chunks first.
+	 * Chunks of unknown or equal cost are processed in genomic order.
+	 */
+	public int[] getExecutionOrder() {
+		return IntStream.range(0, chunks.size())
+				.boxed()
+				.sorted(Comparator.<Integer>comparingLong(i -> -cost.get(i)).thenComparingInt(i -> i))
+				.mapToInt(i -> i)
+				.toArray();
+	}
+}
@@ -2,6 +2,8 @@ package au.edu.wehi.idsv;
 
 import au.edu.wehi.idsv.bed.IntervalBed;
 import au.edu.wehi.idsv.configuration.AssemblyConfiguration;
+import au.edu.wehi.idsv.configuration.PositionalAssemblyConfiguration;
+import au.edu.wehi.idsv.debruijn.positional.AssemblyMemoryGovernor;
 import au.edu.wehi.idsv.debruijn.positional.PositionalAssembler;
 import au.edu.wehi.idsv.sam.CigarUtil;
 import au.edu.wehi.idsv.sam.SAMFileUtil;
@@ -24,8 +26,10 @@ import htsjdk.samtools.util.RuntimeIOException;
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
@@ -49,6 +53,7 @@ public class AssemblyEvidenceSource extends SAMEvidenceSource {
 	private int cachedMaxReadLength = -1;
 	private int cachedMaxReadMappedLength = -1;
 	private AssemblyTelemetry telemetry;
+	private volatile AssemblyMemoryGovernor memoryGovernor;
 	private SAMFileHeader header;
 	protected List<String> assembledCategories;
 	private int[] assemblyOrdinalToProcessingCategoryLookup;
@@ -88,18 +93,29 @@ public class AssemblyEvidenceSource extends SAMEvidenceSource {
 		if (getContext().getConfig().getVisualisation().assemblyTelemetry) {
 			telemetry = new AssemblyTelemetry(getContext().getFileSystemContext().getAssemblyTelemetry(getFile(), jobNodeIndex), getContext().getDictionary());
 		}
-		List<QueryInterval[]> chunks = getContext().getReference().getIntervals(getContext().getConfig().chunkSize, getContext().getConfig().chunkSequenceChangePenalty);
+		AssemblyChunkScheduler scheduler = new AssemblyChunkScheduler(
+				getContext().getReference().getIntervals(getContext().getConfig().chunkSize, getContext().getConfig().chunkSequenceChangePenalty),
+				this::estimateAssemblyCost,
+				getContext().getAssemblyParameters().chunkSplitCostMultiple,
+				getContext().getAssemblyParameters().minSubchunkSize);
+		List<QueryInterval[]> chunks = scheduler.getChunks();
 		List<File> assembledChunk = new ArrayList<>();
-		List<Future<Void>> tasks = new ArrayList<>();
 		for (int i = 0; i < chunks.size(); i++) {
+			if (i % jobNodes == jobNodeIndex) {
+				assembledChunk.add(getContext().getFileSystemContext().getAssemblyChunkBam(getFile(), i));
+			}
+		}
+		ExecutorService executor = threadpool;
+		List<Future<Void>> tasks = new ArrayList<>();
+		// schedule the most expensive chunks first so they are not left running after all other chunks have completed
+		for (int i : scheduler.getExecutionOrder()) {
 			if (i % jobNodes == jobNodeIndex) {
 				QueryInterval[] chunk = chunks.get(i);
 				File f = getContext().getFileSystemContext().getAssemblyChunkBam(getFile(), i);
 				int chunkNumber = i;
-				assembledChunk.add(f);
 				if (!f.exists()) {
 					tasks.add(threadpool.submit(() -> {
-						assembleChunk(f, chunkNumber, chunk, excludedRegions, safetyRegions, downsampledRegions);
+						assembleChunk(f, executor, chunkNumber, chunk, excludedRegions, safetyRegions, downsampledRegions);
 						return null;
 					}));
 				}
@@ -178,25 +194,44 @@ public class AssemblyEvidenceSource extends SAMEvidenceSource {
 		}
 		log.info("Breakend assembly complete.");
 	}
-	private void assembleChunk(File output, int chunkNumber, QueryInterval[] qi, IntervalBed excludedRegions, IntervalBed safetyRegions, IntervalBed downsampledRegions) throws IOException {
-		AssemblyIdGenerator assemblyNameGenerator = new SequentialIdGenerator(String.format(getContext().getConfig().getAssembly().contigNamePrefix, chunkNumber));
+	private void assembleChunk(File output, ExecutorService threadpool, int chunkNumber, QueryInterval[] qi, IntervalBed excludedRegions, IntervalBed safetyRegions, IntervalBed downsampledRegions) throws IOException {
 		String chuckName = String.format("chunk %d (%s:%d-%s:%d)", chunkNumber,
 			getContext().getDictionary().getSequence(qi[0].referenceIndex).getSequenceName(), qi[0].start,
 			getContext().getDictionary().getSequence(qi[qi.length-1].referenceIndex).getSequenceName(), qi[qi.length-1].end);
-		log.info(String.format("Starting assembly on %s", chuckName));
+		List<QueryInterval[]> segments = AssemblyChunkScheduler.segments(qi, getContext().getAssemblyParameters().checkpointSize);
+		AssemblyCheckpoint checkpoint = AssemblyCheckpoint.load(FileSystemContext.getWorkingFileFor(output, "checkpoint."), segments);
+		// each direction has its own contig names so names do not depend on the order in which the directions complete
+		Map<BreakendDirection, SequentialIdGenerator> assemblyNameGenerator = new EnumMap<>(BreakendDirection.class);
+		for (BreakendDirection direction : BreakendDirection.values()) {
+			String prefix = String.format(getContext().getConfig().getAssembly().contigNamePrefix, chunkNumber) + direction.toChar();
+			assemblyNameGenerator.put(direction, new SequentialIdGenerator(prefix, "", checkpoint.getLastAssemblyId(direction)));
+		}
+		if (checkpoint.getCompletedSegments() > 0) {
+			log.info(String.format("Resuming assembly on %s from checkpoint at %s (segment %d of %d)", chuckName, checkpoint.getResumePosition(), checkpoint.getCompletedSegments() + 1, segments.size()));
+		} else {
+			log.info(String.format("Starting assembly on %s", chuckName));
+		}
 		Stopwatch timer = Stopwatch.createStarted();
-		File filteredout = FileSystemContext.getWorkingFileFor(output, "filtered.");
-		File tmpout = FileSystemContext.getWorkingFileFor(output, "gridss.tmp.");
-		try (SAMFileWriter writer = new SAMFileWriterFactory().makeSAMOrBAMWriter(getHeader(), false, tmpout)) {
-			if (getContext().getAssemblyParameters().writeFiltered) {
-				try (SAMFileWriter filteredWriter = new SAMFileWriterFactory().makeSAMOrBAMWriter(getHeader(), false, filteredout)) {
-					for (BreakendDirection direction : BreakendDirection.values()) {
-						assembleChunk(writer, filteredWriter, chunkNumber, qi, direction, assemblyNameGenerator, excludedRegions, safetyRegions, downsampledRegions);
+		List<File> segmentOutput = new ArrayList<>();
+		for (int i = 0; i < segments.size(); i++) {
+			segmentOutput.add(segments.size() == 1 ? output : FileSystemContext.getWorkingFileFor(output, String.format("segment%d.", i)));
+		}
+		try {
+			for (int i = checkpoint.getCompletedSegments(); i < segments.size(); i++) {
+				assembleSegment(segmentOutput.get(i), threadpool, chunkNumber, segments.get(i), assemblyNameGenerator, excludedRegions, safetyRegions, downsampledRegions);
+				if (segments.size() > 1) {
+					String resumePosition = "end";
+					if (i + 1 < segments.size()) {
+						QueryInterval next = segments.get(i + 1)[0];
+						resumePosition = String.format("%s:%d", getContext().getDictionary().getSequence(next.referenceIndex).getSequenceName(), next.start);
 					}
-				}
-			} else {
-				for (BreakendDirection direction : BreakendDirection.values()) {
-					assembleChunk(writer, null, chunkNumber, qi, direction, assemblyNameGenerator, excludedRegions, safetyRegions, downsampledRegions);
+					Map<BreakendDirection, Integer> lastAssemblyId = new EnumMap<>(BreakendDirection.class);
+					assemblyNameGenerator.forEach((direction, generator) -> lastAssemblyId.put(direction, generator.getLastId()));
+					// the completed segment must be durable before the checkpoint can refer to it.
+					// Segments are in the same directory as the checkpoint so saving the checkpoint
+					// also makes the segment file name durable.
+					FileHelper.sync(segmentOutput.get(i), true);
+					checkpoint.save(i + 1, lastAssemblyId, resumePosition);
 				}
 			}
 		} catch (Exception e) {
@@ -209,10 +244,14 @@ public class AssemblyEvidenceSource extends SAMEvidenceSource {
 			timer.stop();
 			log.info(String.format("Completed assembly on %s in %ds (%s)", chuckName, timer.elapsed(TimeUnit.SECONDS), timer.toString()));
 		}
-		SAMFileUtil.sort(getContext().getFileSystemContext(), tmpout, output, SortOrder.coordinate);
-		if (gridss.Defaults.DELETE_TEMPORARY_FILES) {
-			tmpout.delete();
-			filteredout.delete();
+		if (segments.size() > 1) {
+			concatenateSegments(segmentOutput, output);
+			checkpoint.delete();
+			if (gridss.Defaults.DELETE_TEMPORARY_FILES) {
+				for (File f : segmentOutput) {
+					FileHelper.delete(f, true);
+				}
+			}
 		}
 		if (gridss.Defaults.DEFENSIVE_GC) {
 			log.info("Requesting defensive GC to ensure OS file handles are closed");
@@ -220,7 +259,69 @@ public class AssemblyEvidenceSource extends SAMEvidenceSource {
 			System.runFinalization();
 		}
 	}
+	/**
+	 * Assembles the given chunk segment, writing the coordinate sorted output to the given file
+	 */
+	private void assembleSegment(File output, ExecutorService threadpool, int chunkNumber, QueryInterval[] qi, Map<BreakendDirection, ? extends AssemblyIdGenerator> assemblyNameGenerator, IntervalBed excludedRegions, IntervalBed safetyRegions, IntervalBed downsampledRegions) throws IOException {
+		File filteredout = FileSystemContext.getWorkingFileFor(output, "filtered.");
+		File tmpout = FileSystemContext.getWorkingFileFor(output, "gridss.tmp.");
+		if (output.exists()) {
+			// partial output from an interrupted run
+			FileHelper.delete(output, true);
+		}
+		try (SAMFileWriter writer = new SAMFileWriterFactory().makeSAMOrBAMWriter(getHeader(), false, tmpout)) {
+			if (getContext().getAssemblyParameters().writeFiltered) {
+				try (SAMFileWriter filteredWriter = new SAMFileWriterFactory().makeSAMOrBAMWriter(getHeader(), false, filteredout)) {
+					assembleChunk(writer, filteredWriter, threadpool, chunkNumber, qi, assemblyNameGenerator, excludedRegions, safetyRegions, downsampledRegions);
+				}
+			} else {
+				assembleChunk(writer, null, threadpool, chunkNumber, qi, assemblyNameGenerator, excludedRegions, safetyRegions, downsampledRegions);
+			}
+		}
+		SAMFileUtil.sort(getContext().getFileSystemContext(), tmpout, output, SortOrder.coordinate);
+		if (gridss.Defaults.DELETE_TEMPORARY_FILES) {
+			tmpout.delete();
+			filteredout.delete();
+		}
+	}
+	/**
+	 * Concatenates the coordinate sorted chunk segments.
+	 * Contigs are only output by the segment containing the contig start position
+	 * so the concatenated segments are also coordinate sorted.
+	 */
+	private void concatenateSegments(List<File> segments, File output) throws IOException {
+		File tmpout = FileSystemContext.getWorkingFileFor(output, "gridss.tmp.");
+		SAMFileHeader header;
+		try (SamReader reader = SamReaderFactory.makeDefault().open(segments.get(0))) {
+			header = reader.getFileHeader();
+		}
+		try (SAMFileWriter writer = new SAMFileWriterFactory().makeSAMOrBAMWriter(header, true, tmpout)) {
+			for (File f : segments) {
+				try (SamReader reader = SamReaderFactory.makeDefault().open(f)) {
+					try (SAMRecordIterator it = reader.iterator()) {
+						while (it.hasNext()) {
+							writer.addAlignment(it.next());
+						}
+					}
+				}
+			}
+		}
+		FileHelper.move(tmpout, output, true);
+	}
 
+	/**
+	 * Estimates the assembly workload of the given intervals from the size of the indexed input evidence
+	 * @return estimated workload, or -1 if no estimate is available
+	 */
+	private long estimateAssemblyCost(QueryInterval[] intervals) {
+		long cost = 0;
+		for (SAMEvidenceSource ses : source) {
+			long size = ses.estimateIndexedSize(intervals);
+			if (size < 0) return -1;
+			cost += size;
+		}
+		return cost;
+	}
 	private QueryInterval[] getExpanded(QueryInterval[] intervals) {
 		QueryInterval[] expanded = QueryIntervalUtil.padIntervals(
 				getContext().getDictionary(),
@@ -229,31 +330,83 @@ public class AssemblyEvidenceSource extends SAMEvidenceSource {
 				(int)(2 * getMaxConcordantFragmentSize() * getContext().getConfig().getAssembly().maxExpectedBreakendLengthMultiple) + 1);
 		return expanded;
 	}
+	/**
+	 * Assembles both breakend directions of the given chunk.
+	 *
+	 * Each direction makes its own pass over the chunk evidence since evidence records
+	 * are not thread-safe and cannot be shared between assemblers. All but the first direction
+	 * are handed to the assembly thread pool. Any direction not yet started by the thread pool
+	 * by the time the current thread is ready for it is assembled by the current thread
+	 * so a chunk never waits on tasks queued behind other chunks.
+	 * Both directions write to the same (sorting) output writers.
+	 */
+	private void assembleChunk(SAMFileWriter writer, SAMFileWriter filteredWriter, ExecutorService threadpool, int chunkNumber, QueryInterval[] intervals, Map<BreakendDirection, ? extends AssemblyIdGenerator> assemblyNameGenerator,
+							   IntervalBed excludedRegions, IntervalBed safetyRegions, IntervalBed downsampledRegions) throws IOException {
+		List<FutureTask<Void>> tasks = new ArrayList<>();
+		for (BreakendDirection direction : BreakendDirection.values()) {
+			tasks.add(new FutureTask<>(() -> {
+				assembleChunk(writer, filteredWriter, chunkNumber, intervals, direction, assemblyNameGenerator.get(direction), excludedRegions, safetyRegions, downsampledRegions);
+				return null;
+			}));
+		}
+		for (int i = 1; i < tasks.size(); i++) {
+			threadpool.execute(tasks.get(i));
+		}
+		Throwable firstException = null;
+		for (FutureTask<Void> task : tasks) {
+			// no-op if the task has already been started by the thread pool
+			task.run();
+			try {
+				task.get();
+			} catch (ExecutionException e) {
+				if (firstException == null) {
+					firstException = e.getCause();
+				}
+			} catch (InterruptedException e) {
+				if (firstException == null) {
+					firstException = e;
+				}
+			}
+		}
+		if (firstException instanceof IOException) {
+			throw (IOException)firstException;
+		} else if (firstException instanceof RuntimeException) {
+			throw (RuntimeException)firstException;
+		} else if (firstException != null) {
+			throw new RuntimeException(firstException);
+		}
+	}
 	private void assembleChunk(SAMFileWriter writer, SAMFileWriter filteredWriter, int chunkNumber, QueryInterval[] intervals, BreakendDirection direction, AssemblyIdGenerator assemblyNameGenerator,
 							   IntervalBed excludedRegions, IntervalBed safetyRegions, IntervalBed downsampledRegions) {
 		QueryInterval[] expanded = getExpanded(intervals);
 		try (CloseableIterator<DirectedEvidence> input = mergedIterator(source, expanded, EvidenceSortOrder.SAMRecordStartPosition)) {
 			Iterator<DirectedEvidence> throttledIt = throttled(input, downsampledRegions);
-			Iterator<DirectedEvidence> errorCorrectedIt = errorCorrected(throttledIt);
-			PositionalAssembler positionalAssembler = new PositionalAssembler(getContext(), AssemblyEvidenceSource.this, assemblyNameGenerator, errorCorrectedIt, direction, excludedRegions, safetyRegions);
-			if (telemetry != null) {
-				positionalAssembler.setTelemetry(telemetry.getTelemetry(chunkNumber, direction));
-			}
-			Iterator<SAMRecord> assembler = positionalAssembler;
-			if (Defaults.SANITY_CHECK_DUMP_ITERATORS) {
-				assembler = Iterators.peekingIterator(new DebugSpammingIterator<>(assembler, "AssemblyEvidenceSource.assembler"));
-			}
-			while (assembler.hasNext()) {
-				SAMRecord asm = assembler.next();
-				asm = transformAssembly(asm); // transform before chunk bounds checking as the position may have moved
-				if (QueryIntervalUtil.overlaps(intervals, asm.getReferenceIndex(), asm.getAlignmentStart())) {
-					// only output assemblies that start within our chunk
-					if (shouldFilterAssembly(asm)) {
-						if (filteredWriter != null) {
-							filteredWriter.addAlignment(asm);
+			DirectedEvidenceErrorCorrectingIterator errorCorrectedIt = errorCorrected(throttledIt);
+			try (PositionalAssembler positionalAssembler = new PositionalAssembler(getContext(), AssemblyEvidenceSource.this, assemblyNameGenerator, errorCorrectedIt, direction, excludedRegions, safetyRegions)) {
+				positionalAssembler.setErrorCorrector(errorCorrectedIt);
+				if (telemetry != null) {
+					positionalAssembler.setTelemetry(telemetry.getTelemetry(chunkNumber, direction));
+				}
+				Iterator<SAMRecord> assembler = positionalAssembler;
+				if (Defaults.SANITY_CHECK_DUMP_ITERATORS) {
+					assembler = Iterators.peekingIterator(new DebugSpammingIterator<>(assembler, "AssemblyEvidenceSource.assembler"));
+				}
+				while (assembler.hasNext()) {
+					SAMRecord asm = assembler.next();
+					asm = transformAssembly(asm); // transform before chunk bounds checking as the position may have moved
+					if (QueryIntervalUtil.overlaps(intervals, asm.getReferenceIndex(), asm.getAlignmentStart())) {
+						// only output assemblies that start within our chunk
+						if (shouldFilterAssembly(asm)) {
+							if (filteredWriter != null) {
+								synchronized (filteredWriter) {
+									filteredWriter.addAlignment(asm);
+								}
+							}
+						} else {
+							synchronized (writer) {
+								writer.addAlignment(asm);
+							}
 						}
-					} else {
-						writer.addAlignment(asm);
 					}
 				}
 			}
@@ -351,7 +504,7 @@ public class AssemblyEvidenceSource extends SAMEvidenceSource {
 		}
 		return assembly;
 	}
-	private Iterator<DirectedEvidence> errorCorrected(Iterator<DirectedEvidence> in) {
+	private DirectedEvidenceErrorCorrectingIterator errorCorrected(Iterator<DirectedEvidence> in) {
 		AssemblyConfiguration ap = getContext().getAssemblyParameters();
 		DirectedEvidenceErrorCorrectingIterator out = new DirectedEvidenceErrorCorrectingIterator(
 				getContext().getLinear(),
@@ -583,6 +736,25 @@ public class AssemblyEvidenceSource extends SAMEvidenceSource {
 		return assemblyOrdinalToProcessingCategoryLookup;
 	}
 
+	/**
+	 * Memory budget shared by all assemblers of this evidence source
+	 * @return memory governor, or null if assembly memory usage is not limited
+	 */
+	public AssemblyMemoryGovernor getMemoryGovernor() {
+		PositionalAssemblyConfiguration pac = getContext().getAssemblyParameters().positional;
+		if (pac.memoryBudgetHeapPortion <= 0) {
+			return null;
+		}
+		if (this.memoryGovernor == null) {
+			synchronized (this) {
+				if (this.memoryGovernor == null) {
+					this.memoryGovernor = AssemblyMemoryGovernor.forHeapPortion(pac.memoryBudgetHeapPortion, pac.memoryBudgetFlushPortion);
+				}
+			}
+		}
+		return memoryGovernor;
+	}
+
 	public SAMFileHeader getHeader() {
 		if (this.header == null) {
 			synchronized (this) {
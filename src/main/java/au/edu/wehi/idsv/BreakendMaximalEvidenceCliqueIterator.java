@@ -1,5 +1,6 @@
 package au.edu.wehi.idsv;
 
+import au.edu.wehi.idsv.graph.RectangleGraphNodePool;
 import au.edu.wehi.idsv.graph.ScalingHelper;
 import au.edu.wehi.idsv.vcf.VcfInfoAttributes;
 import au.edu.wehi.idsv.vcf.VcfSvConstants;
@@ -7,11 +8,11 @@ import au.edu.wehi.idsv.visualisation.TrackedState;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterators;
 import com.google.common.collect.PeekingIterator;
+import it.unimi.dsi.fastutil.ints.IntHeapPriorityQueue;
 
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
-import java.util.PriorityQueue;
 
 public class BreakendMaximalEvidenceCliqueIterator implements Iterator<VariantContextDirectedEvidence>, TrackedState {
 	public static final String BREAKEND_ID_SUFFIX = "b";
@@ -20,7 +21,11 @@ public class BreakendMaximalEvidenceCliqueIterator implements Iterator<VariantCo
 	private final VariantIdGenerator idGenerator;
 	private PeekingIterator<DirectedEvidence> it;
 	private long activeScore = 0;
-	private PriorityQueue<DirectedEvidence> activeByEnd = new PriorityQueue<>(DirectedEvidence.ByEndStart);
+	/**
+	 * Active breakend intervals stored as the X dimension of the node pool
+	 */
+	private final RectangleGraphNodePool active = new RectangleGraphNodePool();
+	private final IntHeapPriorityQueue activeByEnd = new IntHeapPriorityQueue((a, b) -> Long.compare(active.endX(a), active.endX(b)));
 	public BreakendMaximalEvidenceCliqueIterator(
 			ProcessingContext processContext,
 			Iterator<DirectedEvidence> it,
@@ -45,14 +50,15 @@ public class BreakendMaximalEvidenceCliqueIterator implements Iterator<VariantCo
 		LinearGenomicCoordinate lgc = context.getLinear();
 		long activeStart = lgc.getStartLinearCoordinate(it.peek().getBreakendSummary());
 		// remove evidence whose interval finishes before we start
-		while (!activeByEnd.isEmpty() && lgc.getEndLinearCoordinate(activeByEnd.peek().getBreakendSummary()) < activeStart) {
-			DirectedEvidence out = activeByEnd.poll();
-			activeScore -= ScalingHelper.toScaledWeight(out.getBreakendQual());
+		while (!activeByEnd.isEmpty() && active.endX(activeByEnd.firstInt()) < activeStart) {
+			int out = activeByEnd.dequeueInt();
+			activeScore -= active.weight(out);
+			active.release(out);
 		}
 		while (it.hasNext() &&
 				(activeByEnd.isEmpty() || 
 				lgc.getStartLinearCoordinate(it.peek().getBreakendSummary()) <=
-				lgc.getEndLinearCoordinate(activeByEnd.peek().getBreakendSummary()))) {
+				active.endX(activeByEnd.firstInt()))) {
 			// this record can be added to our active clique without any removal
 			DirectedEvidence de = it.next();
 			BreakendSummary bs = de.getBreakendSummary();
@@ -62,9 +68,9 @@ public class BreakendMaximalEvidenceCliqueIterator implements Iterator<VariantCo
 			assert(scaledWeight > 0);
 			activeStart = lgc.getStartLinearCoordinate(bs);
 			activeScore += scaledWeight;
-			activeByEnd.add(de);
+			activeByEnd.enqueue(active.add(activeStart, lgc.getEndLinearCoordinate(bs), 0, 0, scaledWeight, 0));
 		}
-		long activeEnd = lgc.getEndLinearCoordinate(activeByEnd.peek().getBreakendSummary());
+		long activeEnd = active.endX(activeByEnd.firstInt());
 		int referenceIndex = lgc.getReferenceIndex(activeStart);
 		assert(lgc.getReferenceIndex(activeEnd) == referenceIndex);
 		int start = lgc.getReferencePosition(activeStart);
@@ -93,7 +99,7 @@ public class BreakendMaximalEvidenceCliqueIterator implements Iterator<VariantCo
 	@Override
 	public Object[] trackedState() {
 		return new Object[] {
-				activeByEnd == null ? 0 : activeByEnd.size(),
+				activeByEnd.size(),
 		};
 	}
 
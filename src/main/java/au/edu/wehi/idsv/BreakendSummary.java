@@ -11,11 +11,9 @@ import htsjdk.samtools.CigarOperator;
 import htsjdk.samtools.SAMSequenceDictionary;
 import htsjdk.samtools.SAMSequenceRecord;
 import htsjdk.samtools.util.SequenceUtil;
-import org.apache.commons.lang3.StringUtils;
 
 import java.math.RoundingMode;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -71,38 +69,50 @@ public class BreakendSummary {
 	 * @return anchoring sequence when approaching towards the breakend.
 	 */
 	public String getAnchorSequence(final ReferenceLookup lookup, final int length) {
+		return new String(getAnchorBases(lookup, length));
+	}
+
+	/**
+	 * Gets the anchoring sequence bases
+	 * @param lookup reference genome
+	 * @param length anchoring sequence length
+	 * @return anchoring bases when approaching towards the breakend.
+	 */
+	public byte[] getAnchorBases(final ReferenceLookup lookup, final int length) {
 		if (start != end) {
 			throw new IllegalArgumentException("Breakend position cannot be an interval");
 		}
 		final SAMSequenceRecord refseq = lookup.getSequenceDictionary().getSequence(referenceIndex);
-		int anchorStart;
-		int anchorEnd;
-		if (direction == BreakendDirection.Forward) {
-			anchorEnd = this.start;
-			anchorStart = anchorEnd - length + 1;
-		} else {
-			anchorStart = this.start;
-			anchorEnd = anchorStart + length - 1;
-		}
-		int startPadding = Math.max(0, 1 - anchorStart);
-		int endPadding = Math.max(0, anchorEnd - refseq.getSequenceLength());
-		anchorStart = Math.max(1, anchorStart);
-		anchorEnd = Math.min(refseq.getSequenceLength(), anchorEnd);
+		int anchorStart = getAnchorStart(length);
+		int anchorEnd = getAnchorEnd(refseq, length);
 		if (anchorStart > anchorEnd) {
 			// anchor is outside of contig bounds
-			return StringUtils.repeat('N', anchorEnd - anchorStart + 1);
+			return new byte[0];
 		}
 		byte[] bseq = lookup.getSubsequenceAt(refseq.getSequenceName(), anchorStart, anchorEnd).getBases();
-		if (startPadding > 0 || endPadding > 0) {
-			byte[] arr = new byte[startPadding + bseq.length + endPadding];
-			Arrays.fill(arr, (byte)'N');
-			System.arraycopy(bseq, 0, arr, startPadding, bseq.length);
-		}
 		if (direction == BreakendDirection.Backward) {
 			SequenceUtil.reverseComplement(bseq);
 		}
-		String seq = new String(bseq);
-		return seq;
+		return bseq;
+	}
+
+	/**
+	 * Gets the length of the anchoring sequence
+	 * @param lookup reference genome
+	 * @param length anchoring sequence length
+	 * @return number of bases returned by getAnchorBases()
+	 */
+	public int getAnchorLength(final ReferenceLookup lookup, final int length) {
+		final SAMSequenceRecord refseq = lookup.getSequenceDictionary().getSequence(referenceIndex);
+		return Math.max(0, getAnchorEnd(refseq, length) - getAnchorStart(length) + 1);
+	}
+
+	private int getAnchorStart(int length) {
+		return Math.max(1, direction == BreakendDirection.Forward ? start - length + 1 : start);
+	}
+
+	private int getAnchorEnd(SAMSequenceRecord refseq, int length) {
+		return Math.min(refseq.getSequenceLength(), direction == BreakendDirection.Forward ? start : start + length - 1);
 	}
 
 	/**
@@ -18,6 +18,17 @@ public class Defaults {
 	public static final boolean ATTEMPT_ASSEMBLY_RECOVERY;
 	public static final boolean USE_OPTIMISED_ASSEMBLY_DATA_STRUCTURES;
     public static final boolean EXPORT_INPROCESS_ALIGNMENTS;
+	public static final int BWA_CONCURRENT_BATCHES;
+	public static final String MINIMAP2_PRESET;
+	public static final int REALIGNMENT_CACHE_SIZE;
+	/**
+	 * Number of records written to an external aligner before its input is flushed.
+	 */
+	public static final int EXTERNAL_ALIGNER_FLUSH_RECORDS;
+	/**
+	 * Time in milliseconds to wait for additional records before flushing the input of an external aligner.
+	 */
+	public static final int EXTERNAL_ALIGNER_FLUSH_INTERVAL_MS;
 
     static {
 		SANITY_CHECK_ASSEMBLY_GRAPH = Boolean.valueOf(System.getProperty("sanitycheck.assembly", "false"));
@@ -35,5 +46,10 @@ public class Defaults {
 		ATTEMPT_ASSEMBLY_RECOVERY = Boolean.valueOf(System.getProperty("assembly.recover", "true"));
 		USE_OPTIMISED_ASSEMBLY_DATA_STRUCTURES = Boolean.valueOf(System.getProperty("assembly.optimised_data_structures", "true"));
 		EXPORT_INPROCESS_ALIGNMENTS = Boolean.valueOf(System.getProperty("bwa.export", "false"));
+		BWA_CONCURRENT_BATCHES = Integer.parseInt(System.getProperty("bwa.concurrent_batches", "2"));
+		MINIMAP2_PRESET = System.getProperty("minimap2.preset", "ASM5");
+		REALIGNMENT_CACHE_SIZE = Integer.parseInt(System.getProperty("realignment.cache_size", "65536"));
+		EXTERNAL_ALIGNER_FLUSH_RECORDS = Integer.parseInt(System.getProperty("external_aligner.flush_records", "1024"));
+		EXTERNAL_ALIGNER_FLUSH_INTERVAL_MS = Integer.parseInt(System.getProperty("external_aligner.flush_interval_ms", "10"));
 	}
 }
\ No newline at end of file
@@ -41,6 +41,15 @@ public interface DirectedEvidence {
 	 * @return Unique breakpoint identifier string
 	 */
 	String getEvidenceID();
+	/**
+	 * Compact identifier equivalent to the evidenceID.
+	 * Read evidence identifiers are generated directly by the {@link EvidenceIdentifierGenerator}
+	 * without constructing the evidenceID.
+	 * @return 128 bit identifier
+	 */
+	default EvidenceIdentifier getEvidenceIdentifier() {
+		return EvidenceIdentifier.fromEvidenceID(getEvidenceID());
+	}
 	/**
 	 * Unique identifier for the source DNA fragments.
 	 * @return distinct read names of supporting reads
@@ -1,21 +1,23 @@
 package au.edu.wehi.idsv;
 
 import au.edu.wehi.idsv.debruijn.ReadErrorCorrector;
-import com.google.common.collect.Iterables;
 import htsjdk.samtools.SAMRecord;
 
 import java.util.ArrayDeque;
+import java.util.Collection;
 import java.util.Deque;
 import java.util.Iterator;
 
 public class DirectedEvidenceErrorCorrectingIterator implements Iterator<DirectedEvidence> {
     private final LinearGenomicCoordinate linear;
-    private final int k;
-    private final float kmerErrorCorrectionMultiple;
     private final int bucketSize;
     private final Iterator<DirectedEvidence> in;
-    private final boolean deduplicateReadKmers;
-    private final int maxCorrectionsInKmer;
+    /**
+     * Kmer counts of the reads in both buckets.
+     * Reads are counted as they enter the current bucket and removed as they are returned
+     * so each read is only counted once per bucket it is in.
+     */
+    private final ReadErrorCorrector ec;
     private Deque<DirectedEvidence> lastBucket = new ArrayDeque<>();
     private Deque<DirectedEvidence> currentBucket = new ArrayDeque<>();
     private long currentBucketStart;
@@ -36,10 +38,7 @@ public class DirectedEvidenceErrorCorrectingIterator implements Iterator<Directe
         int maxErrorCorrectSamRecordStartDelta = maxConcordantFragmentSize - minConcordantFragmentSize + 2 * maxReadLength - k;
         this.bucketSize = Math.max(maxErrorCorrectSamRecordStartDelta, 2 * maxMappedReadLength); 
         this.linear = linear;
-        this.k = k;
-        this.maxCorrectionsInKmer = maxCorrectionsInKmer;
-        this.kmerErrorCorrectionMultiple = kmerErrorCorrectionMultiple;
-        this.deduplicateReadKmers = deduplicateReadKmers;
+        this.ec = new ReadErrorCorrector(k, kmerErrorCorrectionMultiple, maxCorrectionsInKmer, deduplicateReadKmers);
         this.in = in;
         fillCurrentBucket();
     }
@@ -57,7 +56,7 @@ public class DirectedEvidenceErrorCorrectingIterator implements Iterator<Directe
         fillCurrentBucket();
         // Error correct both buckets as since RPs could be spread across
         // multiple buckets due to differences in actual fragment size
-        ReadErrorCorrector.errorCorrect(k, kmerErrorCorrectionMultiple, maxCorrectionsInKmer, deduplicateReadKmers, Iterables.concat(lastBucket, currentBucket));
+        ec.errorCorrect();
     }
 
     private void fillCurrentBucket() {
@@ -76,11 +75,25 @@ public class DirectedEvidenceErrorCorrectingIterator implements Iterator<Directe
             currentBucketStart = linear.getStartLinearCoordinate(underlying);
         }
         currentBucket.add(de);
+        ec.add(de);
         return linear.getStartLinearCoordinate(underlying) - bucketSize > currentBucketStart;
     }
 
     @Override
     public DirectedEvidence next() {
-        return lastBucket.removeFirst();
+        DirectedEvidence de = lastBucket.removeFirst();
+        ec.remove(de);
+        return de;
+    }
+
+    /**
+     * Error corrects the given evidence against the kmer counts of the reads
+     * still buffered by this iterator together with the kmers of the given evidence.
+     * @param evidence evidence already returned by this iterator
+     * @param kmerErrorCorrectionMultiple kmer abundance relative to maximum kmer before collapsing
+     * @return number of reads changed
+     */
+    public int errorCorrect(Collection<? extends DirectedEvidence> evidence, float kmerErrorCorrectionMultiple) {
+        return ec.errorCorrect(evidence, kmerErrorCorrectionMultiple);
     }
 }
@@ -0,0 +1,72 @@
+package au.edu.wehi.idsv;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.google.common.primitives.Longs;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Compact 128 bit evidence identifier.
+ *
+ * Identifiers are generated by the {@link EvidenceIdentifierGenerator} either
+ * directly from the evidence or from the evidenceID written to output files.
+ * Both routes produce the same identifier so identifiers can be used as a
+ * drop-in replacement for evidenceID string lookups.
+ *
+ * @author Daniel Cameron
+ *
+ */
+public final class EvidenceIdentifier implements Comparable<EvidenceIdentifier> {
+	private static final HashFunction hf = Hashing.murmur3_128();
+	private final long high;
+	private final long low;
+	public EvidenceIdentifier(long high, long low) {
+		this.high = high;
+		this.low = low;
+	}
+	/**
+	 * Creates an identifier by hashing the given evidenceID
+	 */
+	public static EvidenceIdentifier fromEvidenceID(String evidenceID) {
+		HashCode hc = hf.hashString(evidenceID, StandardCharsets.US_ASCII);
+		byte[] b = hc.asBytes();
+		return new EvidenceIdentifier(
+				Longs.fromBytes(b[0], b[1], b[2], b[3], b[4], b[5], b[6], b[7]),
+				Longs.fromBytes(b[8], b[9], b[10], b[11], b[12], b[13], b[14], b[15]));
+	}
+	public long high() {
+		return high;
+	}
+	public long low() {
+		return low;
+	}
+	@Override
+	public int hashCode() {
+		return hashCode(high, low);
+	}
+	static int hashCode(long high, long low) {
+		// identifiers are already hashes so any bits will do
+		return (int)(low ^ (high >>> 32));
+	}
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) return true;
+		if (!(obj instanceof EvidenceIdentifier)) return false;
+		EvidenceIdentifier other = (EvidenceIdentifier)obj;
+		return high == other.high && low == other.low;
+	}
+	@Override
+	public int compareTo(EvidenceIdentifier o) {
+		int cmp = Long.compare(high, o.high);
+		if (cmp == 0) {
+			cmp = Long.compare(low, o.low);
+		}
+		return cmp;
+	}
+	@Override
+	public String toString() {
+		return String.format("%016x%016x", high, low);
+	}
+}
@@ -41,4 +41,14 @@ public interface EvidenceIdentifierGenerator {
 	String getEvidenceID(SoftClipEvidence e);
 	String getEvidenceID(SplitReadEvidence e);
 	String getEvidenceID(IndelEvidence e);
+	/**
+	 * Gets the compact identifier of the evidence with the given evidenceID
+	 * @param evidenceId evidenceID generated by this generator
+	 * @return identifier matching that generated directly from the evidence
+	 */
+	EvidenceIdentifier getEvidenceIdentifier(String evidenceId);
+	EvidenceIdentifier getEvidenceIdentifier(NonReferenceReadPair e);
+	EvidenceIdentifier getEvidenceIdentifier(SoftClipEvidence e);
+	EvidenceIdentifier getEvidenceIdentifier(SplitReadEvidence e);
+	EvidenceIdentifier getEvidenceIdentifier(IndelEvidence e);
 }
@@ -0,0 +1,139 @@
+package au.edu.wehi.idsv;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Open addressing hash map keyed by 128 bit evidence identifier.
+ *
+ * Keys are stored in a primitive array so no per-entry key object is retained.
+ * Null values are not supported.
+ *
+ * @param <V> value type
+ */
+public class EvidenceIdentifierMap<V> {
+	private static final float LOAD_FACTOR = 0.75f;
+	/**
+	 * high and low key bits interleaved
+	 */
+	private long[] keys;
+	private V[] values;
+	private int mask;
+	private int size = 0;
+	public EvidenceIdentifierMap() {
+		this(16);
+	}
+	public EvidenceIdentifierMap(int expectedSize) {
+		allocate(Math.max(4, Integer.highestOneBit(Math.max(1, (int)(expectedSize / LOAD_FACTOR)) - 1) << 1));
+	}
+	@SuppressWarnings("unchecked")
+	private void allocate(int capacity) {
+		keys = new long[2 * capacity];
+		values = (V[])new Object[capacity];
+		mask = capacity - 1;
+	}
+	private int slot(long high, long low) {
+		int h = EvidenceIdentifier.hashCode(high, low);
+		return (h ^ (h >>> 16)) & mask;
+	}
+	/**
+	 * @return slot containing the given key, or the empty slot the key would be placed in
+	 */
+	private int find(long high, long low) {
+		int i = slot(high, low);
+		while (values[i] != null && (keys[2 * i] != high || keys[2 * i + 1] != low)) {
+			i = (i + 1) & mask;
+		}
+		return i;
+	}
+	public V get(EvidenceIdentifier key) {
+		return get(key.high(), key.low());
+	}
+	public V get(long high, long low) {
+		return values[find(high, low)];
+	}
+	public boolean containsKey(EvidenceIdentifier key) {
+		return get(key) != null;
+	}
+	/**
+	 * Associates the given value with the given key
+	 * @return previous value associated with the key
+	 */
+	public V put(EvidenceIdentifier key, V value) {
+		if (value == null) throw new IllegalArgumentException("Null values not supported");
+		int i = find(key.high(), key.low());
+		V existing = values[i];
+		keys[2 * i] = key.high();
+		keys[2 * i + 1] = key.low();
+		values[i] = value;
+		if (existing == null) {
+			size++;
+			if (size > LOAD_FACTOR * values.length) {
+				rehash(2 * values.length);
+			}
+		}
+		return existing;
+	}
+	/**
+	 * Removes the given key
+	 * @return value previously associated with the key
+	 */
+	public V remove(EvidenceIdentifier key) {
+		int i = find(key.high(), key.low());
+		V existing = values[i];
+		if (existing == null) return null;
+		size--;
+		// backward shift deletion: move later entries in the probe sequence into the vacated slot
+		int hole = i;
+		int j = (i + 1) & mask;
+		while (values[j] != null) {
+			int home = slot(keys[2 * j], keys[2 * j + 1]);
+			// entry at j can fill the hole if its home slot is not cyclically within (hole, j]
+			if (((j - home) & mask) >= ((j - hole) & mask)) {
+				keys[2 * hole] = keys[2 * j];
+				keys[2 * hole + 1] = keys[2 * j + 1];
+				values[hole] = values[j];
+				hole = j;
+			}
+			j = (j + 1) & mask;
+		}
+		values[hole] = null;
+		return existing;
+	}
+	private void rehash(int capacity) {
+		long[] oldKeys = keys;
+		V[] oldValues = values;
+		allocate(capacity);
+		for (int i = 0; i < oldValues.length; i++) {
+			if (oldValues[i] != null) {
+				int j = find(oldKeys[2 * i], oldKeys[2 * i + 1]);
+				keys[2 * j] = oldKeys[2 * i];
+				keys[2 * j + 1] = oldKeys[2 * i + 1];
+				values[j] = oldValues[i];
+			}
+		}
+	}
+	public int size() {
+		return size;
+	}
+	public boolean isEmpty() {
+		return size == 0;
+	}
+	public void clear() {
+		Arrays.fill(values, null);
+		size = 0;
+	}
+	/**
+	 * @return snapshot of the values in this map
+	 */
+	public List<V> values() {
+		List<V> list = new ArrayList<>(size);
+		for (V v : values) {
+			if (v != null) {
+				list.add(v);
+			}
+		}
+		return list;
+	}
+}
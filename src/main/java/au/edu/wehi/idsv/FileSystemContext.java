@@ -1,5 +1,6 @@
 package au.edu.wehi.idsv;
 
+import au.edu.wehi.idsv.sam.ReadNameIndex;
 import gridss.analysis.*;
 
 import java.io.File;
@@ -67,6 +68,7 @@ public class FileSystemContext {
 	private static final String FORMAT_ASSEMBLY_EXCLUDED_REGIONS = "%1$s/%2$s.excluded_%3$d.bed";
 	private static final String FORMAT_ASSEMBLY_SAFETY_REGIONS = "%1$s/%2$s.subsetCalled_%3$d.bed";
 	private static final String FORMAT_ASSEMBLY_DOWNSAMPLED_REGIONS = "%1$s/%2$s.downsampled_%3$d.bed";
+	private static final String FORMAT_READ_NAME_INDEX = "%1$s/%2$s" + ReadNameIndex.FILE_EXTENSION;
 	private static final String FORMAT_VARIANT_CALL_CHUNK_VCF = "%1$s/%2$s.breakpoint.chunk%3$d" + VCF_SUFFIX;
 	/**
 	 * Gets the idsv intermediate working directory for the given input
@@ -143,6 +145,9 @@ public class FileSystemContext {
 	public File getRealignmentFastq(File input, int iteration) {
 		return getFile(String.format(FORMAT_REALIGN_FASTQ, getIntermediateDirectory(input), getSource(input).getName(), iteration));
 	}
+	public File getReadNameIndex(File input) {
+		return getFile(String.format(FORMAT_READ_NAME_INDEX, getIntermediateDirectory(input), getSource(input).getName()));
+	}
 	public File getCoverageBlacklistBed(File input) {
 		return getFile(String.format(FORMAT_COVERAGE_BLACKLIST_BED, getIntermediateDirectory(input), getSource(input).getName()));
 	}
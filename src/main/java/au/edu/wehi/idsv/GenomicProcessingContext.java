@@ -96,11 +96,14 @@ public class GenomicProcessingContext implements Closeable {
 	protected ReferenceLookup LoadSynchronizedReference(File referenceFile) {
 		try {
 			ReferenceSequenceFile underlying = new IndexedFastaSequenceFile(referenceFile);
-			if (referenceFile.length() > Runtime.getRuntime().maxMemory()) {
-				log.error("Caching reference fasta in memory would require more than 50% of the memory allocated to the JVM. Allocate more heap memory to the JVM..");
+			File cacheFile = getGridssCacheFileForReference(referenceFile);
+			// The memory-mapped reference cache is stored off-heap.
+			// Without a cache, the 2bit encoded reference is held on the heap
+			boolean canCache = cacheFile.exists() || cacheFile.getAbsoluteFile().getParentFile().canWrite();
+			if (!canCache && referenceFile.length() > Runtime.getRuntime().maxMemory()) {
+				log.error("Unable to create reference genome cache " + cacheFile + " and caching reference fasta in memory would require more memory than allocated to the JVM. Allocate more heap memory to the JVM.");
 				throw new RuntimeException("Not enough memory to cache reference fasta.");
 			}
-			File cacheFile = getGridssCacheFileForReference(referenceFile);
 			return new TwoBitBufferedReferenceSequenceFile(underlying, cacheFile);
 		} catch (FileNotFoundException e) {
 			throw new RuntimeException("Unabled load fasta " + referenceFile, e);
@@ -6,6 +6,7 @@ import com.google.common.hash.Hashing;
 import htsjdk.samtools.SAMRecord;
 
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.Base64;
 
 /**
@@ -16,11 +17,22 @@ import java.util.Base64;
  * The second block is the alignment unique hash for that segment (typically 6 bytes = 36 bits)
  * The final block is the overall evidenceid hash for that alignment (typically 6 bytes = 36 bits)
  * 
+ * The compact {@link EvidenceIdentifier} is built directly from the hash bits that make up
+ * the evidenceID without encoding them. Decoding an evidenceID yields the same identifier.
  * 
  * @author Daniel Cameron
  *
  */
 public class HashedEvidenceIdentifierGenerator implements EvidenceIdentifierGenerator {
+	private static final int BITS_PER_CHAR = 6;
+	private static final byte[] DECODE = new byte[128];
+	static {
+		Arrays.fill(DECODE, (byte)-1);
+		String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_";
+		for (int i = 0; i < alphabet.length(); i++) {
+			DECODE[alphabet.charAt(i)] = (byte)i;
+		}
+	}
 	private final StringEvidenceIdentifierGenerator gen = new StringEvidenceIdentifierGenerator();
 	private final Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
 	//private final Base64.Decoder decoder = Base64.getUrlDecoder();
@@ -45,11 +57,14 @@ public class HashedEvidenceIdentifierGenerator implements EvidenceIdentifierGene
 	// !"#$%&'()+,-./0123456789:;<>?@ABCDEFGHIJKLMNOPQRSTUVWXYZ[\]^_`abcdefghijklmnopqrstuvwxyz{|}~
 	// * = disallowed
 	private String hash(String s, int bytes) {
-		HashCode hc = hf.hashString(s, StandardCharsets.US_ASCII);
-		String encoded = encoder.encodeToString(hc.asBytes());
+		String encoded = encoder.encodeToString(hashBytes(s));
 		String truncated = encoded.substring(0, bytes);
 		return truncated;
 	}
+	private byte[] hashBytes(String s) {
+		HashCode hc = hf.hashString(s, StandardCharsets.US_ASCII);
+		return hc.asBytes();
+	}
 	@Override
 	public String extractAlignmentUniqueName(String evidenceId) {
 		return evidenceId.substring(0, segmentUniqueBytes + alignmentUniqueBytes);
@@ -88,4 +103,87 @@ public class HashedEvidenceIdentifierGenerator implements EvidenceIdentifierGene
 		String id = gen.getEvidenceID(e);
 		return getAlignmentUniqueName(e.getSAMRecord()) + hash(id, evidenceidUniqueBytes);
 	}
+	@Override
+	public EvidenceIdentifier getEvidenceIdentifier(String evidenceId) {
+		IdentifierBuilder builder = new IdentifierBuilder(evidenceId.length() * BITS_PER_CHAR);
+		for (int i = 0; i < evidenceId.length(); i++) {
+			char c = evidenceId.charAt(i);
+			int value = c < DECODE.length ? DECODE[c] : -1;
+			if (value < 0) {
+				throw new IllegalArgumentException(evidenceId + " is not a valid evidenceID");
+			}
+			builder.append(value, BITS_PER_CHAR);
+		}
+		return builder.build();
+	}
+	@Override
+	public EvidenceIdentifier getEvidenceIdentifier(NonReferenceReadPair e) {
+		return getEvidenceIdentifier(e.getLocalledMappedRead(), gen.getEvidenceID(e));
+	}
+	@Override
+	public EvidenceIdentifier getEvidenceIdentifier(SoftClipEvidence e) {
+		return getEvidenceIdentifier(e.getSAMRecord(), gen.getEvidenceID(e));
+	}
+	@Override
+	public EvidenceIdentifier getEvidenceIdentifier(SplitReadEvidence e) {
+		return getEvidenceIdentifier(e.getSAMRecord(), gen.getEvidenceID(e));
+	}
+	@Override
+	public EvidenceIdentifier getEvidenceIdentifier(IndelEvidence e) {
+		return getEvidenceIdentifier(e.getSAMRecord(), gen.getEvidenceID(e));
+	}
+	/**
+	 * Packs the same hash bits as the evidenceID encoding.
+	 */
+	private EvidenceIdentifier getEvidenceIdentifier(SAMRecord record, String id) {
+		IdentifierBuilder builder = new IdentifierBuilder((segmentUniqueBytes + alignmentUniqueBytes + evidenceidUniqueBytes) * BITS_PER_CHAR);
+		builder.appendHash(hashBytes(gen.getSegmentUniqueName(record)), segmentUniqueBytes * BITS_PER_CHAR);
+		builder.appendHash(hashBytes(gen.getAlignmentUniqueName(record)), alignmentUniqueBytes * BITS_PER_CHAR);
+		builder.appendHash(hashBytes(id), evidenceidUniqueBytes * BITS_PER_CHAR);
+		return builder.build();
+	}
+	/**
+	 * Packs bits in evidenceID encoding order and folds them into a 128 bit identifier.
+	 */
+	private static class IdentifierBuilder {
+		private final long[] words;
+		private int offset = 0;
+		public IdentifierBuilder(int bits) {
+			this.words = new long[Math.max(2, (bits + 63) / 64)];
+		}
+		private void appendBit(int bit) {
+			words[offset >> 6] |= (long)bit << (63 - (offset & 63));
+			offset++;
+		}
+		/**
+		 * Appends the given number of least significant bits of value, most significant bit first
+		 */
+		public void append(int value, int bits) {
+			for (int i = bits - 1; i >= 0; i--) {
+				appendBit((value >> i) & 1);
+			}
+		}
+		/**
+		 * Appends the given number of leading bits of the hash.
+		 * Bits past the end of the hash are zero, matching the Base64 encoding of the hash.
+		 */
+		public void appendHash(byte[] hash, int bits) {
+			for (int i = 0; i < bits; i++) {
+				int bit = (i >> 3) < hash.length ? (hash[i >> 3] >> (7 - (i & 7))) & 1 : 0;
+				appendBit(bit);
+			}
+		}
+		public EvidenceIdentifier build() {
+			long high = 0;
+			long low = 0;
+			for (int i = 0; i < words.length; i++) {
+				if (i % 2 == 0) {
+					high ^= words[i];
+				} else {
+					low ^= words[i];
+				}
+			}
+			return new EvidenceIdentifier(high, low);
+		}
+	}
 }
@@ -25,7 +25,7 @@ public abstract class NonReferenceReadPair implements DirectedEvidence {
 	private final SAMRecord remote;
 	private final BreakendSummary location;
 	private final SAMEvidenceSource source;
-	private String evidenceID = null;
+	private EvidenceIdentifier evidenceIdentifier = null;
 	private String associatedAssemblyName;
 	protected NonReferenceReadPair(SAMRecord local, SAMRecord remote, SAMEvidenceSource source) {
 		if (local == null) throw new IllegalArgumentException("local is null");
@@ -262,10 +262,14 @@ public abstract class NonReferenceReadPair implements DirectedEvidence {
 	}
 	@Override
 	public String getEvidenceID() {
-		if (evidenceID == null) {
-			evidenceID = source.getContext().getEvidenceIDGenerator().getEvidenceID(this);
+		return source.getContext().getEvidenceIDGenerator().getEvidenceID(this);
+	}
+	@Override
+	public EvidenceIdentifier getEvidenceIdentifier() {
+		if (evidenceIdentifier == null) {
+			evidenceIdentifier = source.getContext().getEvidenceIDGenerator().getEvidenceIdentifier(this);
 		}
-		return evidenceID;
+		return evidenceIdentifier;
 	}
 	@Override
 	public BreakendSummary getBreakendSummary() {
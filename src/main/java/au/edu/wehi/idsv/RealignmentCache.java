@@ -0,0 +1,127 @@
+package au.edu.wehi.idsv;
+
+import au.edu.wehi.idsv.debruijn.PackedSequence;
+import htsjdk.samtools.CigarOperator;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMUtils;
+import htsjdk.samtools.fastq.FastqRecord;
+import htsjdk.samtools.util.SequenceUtil;
+import org.apache.commons.lang3.ArrayUtils;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded least recently used cache of realignment results keyed by the realigned sequence.
+ *
+ * Sequences are keyed by their 2-bit packed encoding. Sequences containing ambiguous bases are not cached.
+ *
+ * @author Daniel Cameron
+ *
+ */
+public class RealignmentCache {
+	private final Map<Key, SAMRecord> cache;
+	private long hits = 0;
+	private long misses = 0;
+	/**
+	 * @param maxSize maximum number of alignments to cache
+	 */
+	public RealignmentCache(final int maxSize) {
+		this.cache = new LinkedHashMap<Key, SAMRecord>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, SAMRecord> eldest) {
+				return size() > maxSize;
+			}
+		};
+	}
+	/**
+	 * Returns the cached alignment of the given sequence.
+	 * @param fq sequence to align
+	 * @return alignment of the given sequence with the read name and base qualities of fq, null if no alignment is cached.
+	 */
+	public SAMRecord get(FastqRecord fq) {
+		Key key = Key.create(fq.getReadBases());
+		SAMRecord cached = key == null ? null : cache.get(key);
+		if (cached == null) {
+			misses++;
+			return null;
+		}
+		hits++;
+		SAMRecord r = cached.deepCopy();
+		r.setReadName(fq.getReadName());
+		byte[] qual = SAMUtils.fastqToPhred(fq.getBaseQualityString());
+		if (r.getReadNegativeStrandFlag()) {
+			ArrayUtils.reverse(qual);
+		}
+		r.setBaseQualities(qual);
+		return r;
+	}
+	/**
+	 * Caches the given alignment of the realigned sequence.
+	 * Only primary alignments containing the entire realigned sequence are cached.
+	 */
+	public void put(SAMRecord alignment) {
+		if (alignment.isSecondaryOrSupplementary()) return;
+		if (alignment.getCigar().containsOperator(CigarOperator.HARD_CLIP)) return;
+		byte[] seq = alignment.getReadBases();
+		if (alignment.getReadNegativeStrandFlag()) {
+			seq = seq.clone();
+			SequenceUtil.reverseComplement(seq);
+		}
+		Key key = Key.create(seq);
+		if (key != null) {
+			SAMRecord r = alignment.deepCopy();
+			// base qualities are replaced on lookup
+			r.setBaseQualities(SAMRecord.NULL_QUALS);
+			cache.put(key, r);
+		}
+	}
+	public long getHitCount() {
+		return hits;
+	}
+	public long getMissCount() {
+		return misses;
+	}
+	public int size() {
+		return cache.size();
+	}
+	private static class Key {
+		private final long[] packed;
+		private final int length;
+		private final int hash;
+		private Key(long[] packed, int length) {
+			this.packed = packed;
+			this.length = length;
+			this.hash = 31 * Arrays.hashCode(packed) + length;
+		}
+		/**
+		 * @return key for the given sequence, null if the sequence cannot be 2-bit encoded
+		 */
+		public static Key create(byte[] seq) {
+			if (seq == null || seq.length == 0) return null;
+			for (byte b : seq) {
+				switch (b) {
+					case 'A':
+					case 'C':
+					case 'G':
+					case 'T':
+						break;
+					default:
+						return null;
+				}
+			}
+			return new Key(new PackedSequence(seq, false, false).asLongArray(), seq.length);
+		}
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) return false;
+			Key k = (Key)obj;
+			return length == k.length && hash == k.hash && Arrays.equals(packed, k.packed);
+		}
+	}
+}
@@ -6,13 +6,16 @@ import au.edu.wehi.idsv.configuration.SoftClipConfiguration;
 import au.edu.wehi.idsv.metrics.IdsvSamFileMetrics;
 import au.edu.wehi.idsv.sam.ChimericAlignment;
 import au.edu.wehi.idsv.sam.CigarUtil;
+import au.edu.wehi.idsv.sam.ReadNameIndex;
 import au.edu.wehi.idsv.sam.SAMFileUtil;
 import au.edu.wehi.idsv.sam.SAMRecordUtil;
+import au.edu.wehi.idsv.sam.SortingSAMFileWriter;
 import au.edu.wehi.idsv.util.*;
 import au.edu.wehi.idsv.validation.OrderAssertingIterator;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterators;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import gridss.ComputeSamTags;
 import gridss.ExtractSVReads;
 import gridss.SoftClipsToSplitReads;
@@ -23,11 +26,16 @@ import htsjdk.samtools.*;
 import htsjdk.samtools.SAMFileHeader.SortOrder;
 import htsjdk.samtools.util.CloseableIterator;
 import htsjdk.samtools.util.Log;
+import htsjdk.samtools.util.SortingCollection;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.stream.Collectors;
 
 /**
@@ -135,6 +143,13 @@ public class SAMEvidenceSource extends EvidenceSource {
 		}
 	}
 	public synchronized void ensureExtracted() throws IOException {
+		ensureExtracted(gridss.Defaults.FUSED_PREPROCESSING);
+	}
+	/**
+	 * @param fusedPreprocessing perform all preprocessing steps in a single pass.
+	 * Only applies if no intermediate files from an earlier run exist.
+	 */
+	synchronized void ensureExtracted(boolean fusedPreprocessing) throws IOException {
 		File svFile = getContext().getFileSystemContext().getSVBam(getFile());
 		File extractedFile = FileSystemContext.getWorkingFileFor(svFile, "gridss.tmp.extracted.");
 		File querysortedFile = FileSystemContext.getWorkingFileFor(svFile, "gridss.tmp.querysorted.");
@@ -145,6 +160,10 @@ public class SAMEvidenceSource extends EvidenceSource {
 		// extract -> query sort -> tag -> split read -> back to coordinate sorted
 		// We want to tag before generating split reads so all splits are guaranteed to
 		// have the same tags
+		if (!svFile.exists() && fusedPreprocessing
+				&& !extractedFile.exists() && !querysortedFile.exists() && !taggedFile.exists() && !withsplitreadsFile.exists()) {
+			extractFused(svFile);
+		}
 		if (!svFile.exists()) {
 			if (!withsplitreadsFile.exists()) {
 				if (!taggedFile.exists()) {
@@ -159,6 +178,7 @@ public class SAMEvidenceSource extends EvidenceSource {
 							cmd.addArg("INPUT", in.getPath());
 							cmd.addArg("OUTPUT", extractedFile.getPath());
 							cmd.addArg("UNMAPPED_READS", "false"); // saves intermediate file space
+							cmd.addArg("WORKER_THREADS", getProcessContext().getWorkerThreadCount());
 							cmd.addArg("MIN_CLIP_LENGTH", getContext().getConfig().getSoftClip().minLength);
 							cmd.addArg("INSERT_SIZE_METRICS", getContext().getFileSystemContext().getInsertSizeMetrics(getFile()));
 							// Picard tools does not mark duplicates correctly. We need to keep them so we can
@@ -167,6 +187,7 @@ public class SAMEvidenceSource extends EvidenceSource {
 							if (rpcMinFragmentSize != null) cmd.addArg("READ_PAIR_CONCORDANCE_MIN_FRAGMENT_SIZE", rpcMinFragmentSize);
 							if (rpcMaxFragmentSize != null) cmd.addArg("READ_PAIR_CONCORDANCE_MAX_FRAGMENT_SIZE", rpcMaxFragmentSize);
 							if (rpcConcordantPercentage != null) cmd.addArg("READ_PAIR_CONCORDANT_PERCENT", rpcConcordantPercentage);
+							if (shouldCreateReadNameIndex(in)) cmd.addArg("READ_NAME_INDEX", getContext().getFileSystemContext().getReadNameIndex(in));
 							execute(cmd);
 						}
 						SAMFileUtil.sort(getContext().getFileSystemContext(), extractedFile, querysortedFile, SortOrder.queryname);
@@ -212,6 +233,117 @@ public class SAMEvidenceSource extends EvidenceSource {
 			FileHelper.delete(withsplitreadsFile, true);
 		}
 	}
+	private boolean shouldCreateReadNameIndex(File in) throws IOException {
+		if (!gridss.Defaults.READ_NAME_INDEX) return false;
+		if (!ReadNameIndex.canIndex(in)) {
+			log.info("Not creating read name index for " + in + " as read name indexes can only be created for BAM files.");
+			return false;
+		}
+		return true;
+	}
+	/**
+	 * Performs the extract -> query sort -> tag -> split read -> coordinate sort
+	 * preprocessing in a single pass with records streamed between stages in memory.
+	 * Only the final coordinate sorted output file is written.
+	 */
+	private void extractFused(File svFile) throws IOException {
+		log.info("Extracting, tagging and identifying split reads for " + getFile().getAbsolutePath());
+		File in = getFile(SortOrder.queryname);
+		if (in == null || !in.exists()) {
+			in = getFile();
+		}
+		ExtractSVReads extract = new ExtractSVReads();
+		extract.UNMAPPED_READS = false;
+		extract.MIN_CLIP_LENGTH = getContext().getConfig().getSoftClip().minLength;
+		extract.INSERT_SIZE_METRICS = getContext().getFileSystemContext().getInsertSizeMetrics(getFile());
+		extract.INCLUDE_DUPLICATES = true;
+		extract.READ_PAIR_CONCORDANCE_MIN_FRAGMENT_SIZE = rpcMinFragmentSize;
+		extract.READ_PAIR_CONCORDANCE_MAX_FRAGMENT_SIZE = rpcMaxFragmentSize;
+		extract.READ_PAIR_CONCORDANT_PERCENT = rpcConcordantPercentage;
+		ComputeSamTags tags = new ComputeSamTags();
+		tags.setReference(getContext().getReference());
+		SoftClipsToSplitReads splitReads = new SoftClipsToSplitReads();
+		splitReads.setReference(getContext().getReferenceFile(), getProcessContext().getReference());
+		splitReads.WORKER_THREADS = getProcessContext().getWorkerThreadCount();
+		splitReads.REALIGN_EXISTING_SPLIT_READS = getContext().getConfig().getSoftClip().realignSplitReads;
+		splitReads.setFileSystemContext(getProcessContext().getFileSystemContext());
+		FileSystemContext fsc = getContext().getFileSystemContext();
+		// always write to a temporary file so an interrupted run does not leave a truncated output file
+		File tmpFile = FileSystemContext.getWorkingFileFor(svFile, "gridss.tmp.fused.");
+		List<Closeable> toClose = new ArrayList<>();
+		SamReaderFactory readerFactory = getContext().getSamReaderFactory();
+		ReadNameIndex.Writer indexWriter = null;
+		if (shouldCreateReadNameIndex(in)) {
+			File readNameIndex = fsc.getReadNameIndex(in);
+			ReadNameIndex existing = ReadNameIndex.open(readNameIndex, in);
+			if (existing == null) {
+				// build the read name index as a side product of the traversal of the input
+				readerFactory.enable(SamReaderFactory.Option.INCLUDE_SOURCE_IN_RECORDS);
+				indexWriter = new ReadNameIndex.Writer(readNameIndex, in, fsc.getTemporaryDirectory().toPath(), fsc.getMaxBufferedRecordsPerFile());
+				toClose.add(indexWriter);
+			} else {
+				existing.close();
+			}
+		}
+		ExecutorService threadpool = Executors.newFixedThreadPool(getProcessContext().getWorkerThreadCount(), new ThreadFactoryBuilder().setDaemon(true).setNameFormat("ensureExtracted-%d").build());
+		SortingCollection<SAMRecord> querysorted = null;
+		SortingSAMFileWriter sortingWriter = null;
+		try (SamReader reader = readerFactory.open(in)) {
+			SAMFileHeader header = reader.getFileHeader().clone();
+			try (AsyncBufferedIterator<SAMRecord> rawit = new AsyncBufferedIterator<>(reader.iterator(), in.getName())) {
+				Iterator<SAMRecord> it = rawit;
+				if (indexWriter != null) {
+					final ReadNameIndex.Writer w = indexWriter;
+					it = Iterators.transform(it, r -> {
+						w.add(r);
+						return r;
+					});
+				}
+				it = extract.extract(it);
+				if (header.getSortOrder() != SortOrder.queryname) {
+					header.setSortOrder(SortOrder.queryname);
+					querysorted = SortingCollection.newInstance(
+							SAMRecord.class,
+							new BAMRecordCodec(header),
+							SortOrder.queryname.getComparatorInstance(),
+							fsc.getMaxBufferedRecordsPerFile(),
+							fsc.getTemporaryDirectory().toPath());
+					while (it.hasNext()) {
+						querysorted.add(it.next());
+					}
+					querysorted.doneAdding();
+					it = querysorted.iterator();
+				}
+				it = tags.transform(threadpool, gridss.Defaults.ASYNC_BUFFER_SIZE, it, null);
+				SAMFileHeader outputHeader = header.clone();
+				outputHeader.setSortOrder(SortOrder.coordinate);
+				StreamingSplitReadRealigner realigner = splitReads.createStreamingRealigner(getProcessContext(), toClose);
+				sortingWriter = new SortingSAMFileWriter(fsc, outputHeader, tmpFile, null, null);
+				realigner.process(it, sortingWriter, sortingWriter);
+				sortingWriter.close();
+				sortingWriter = null;
+			}
+			if (indexWriter != null) {
+				indexWriter.finish();
+			}
+			log.info(String.format("Extracted %d reads from %s", extract.getExtractedCount(), in));
+			FileHelper.move(tmpFile, svFile, true);
+		} finally {
+			if (sortingWriter != null) {
+				sortingWriter.cleanup();
+			}
+			if (tmpFile.exists()) {
+				FileHelper.delete(tmpFile, true);
+			}
+			threadpool.shutdownNow();
+			if (querysorted != null) {
+				querysorted.cleanup();
+			}
+			for (Closeable c : toClose) {
+				c.close();
+			}
+		}
+	}
 	public CloseableIterator<DirectedEvidence> iterator(final QueryInterval[] intervals, EvidenceSortOrder eso) {
 		SamReader reader = getReader();
 		// expand query bounds as the alignment for a discordant read pair could fall before or after the breakend interval we are extracting
@@ -264,6 +396,31 @@ public class SAMEvidenceSource extends EvidenceSource {
 		}
 		return new AutoClosingIterator<>(eit, reader, it);
 	}
+	/**
+	 * Estimates the amount of evidence overlapping the given intervals from the BAM index
+	 * @return approximate compressed size in bytes of the records overlapping the intervals,
+	 * or -1 if no BAM index is available
+	 */
+	public long estimateIndexedSize(QueryInterval[] intervals) {
+		try (SamReader reader = getReader()) {
+			if (!reader.hasIndex() || !reader.indexing().hasBrowseableIndex()) {
+				return -1;
+			}
+			BrowseableBAMIndex index = reader.indexing().getBrowseableIndex();
+			long size = 0;
+			for (QueryInterval qi : intervals) {
+				BAMFileSpan span = index.getSpanOverlapping(qi.referenceIndex, qi.start, qi.end);
+				for (Chunk chunk : span.getChunks()) {
+					// upper 48 bits of the virtual file offset are the compressed block offset
+					size += (chunk.getChunkEnd() >>> 16) - (chunk.getChunkStart() >>> 16);
+				}
+			}
+			return size;
+		} catch (IOException | RuntimeException e) {
+			log.debug(e, "Unable to estimate size from index");
+			return -1;
+		}
+	}
 	protected SamReader getReader() {
 		File svFile = getSVFile();
 		SamReader reader = getProcessContext().getSamReader(svFile.exists() ? svFile : getFile());
@@ -10,12 +10,25 @@ public class SequentialIdGenerator implements VariantIdGenerator, AssemblyIdGene
 		this(prefix, "");
 	}
 	public SequentialIdGenerator(String prefix, String suffix) {
+		this(prefix, suffix, 0);
+	}
+	/**
+	 * @param lastId identifiers are generated sequentially after this value
+	 */
+	public SequentialIdGenerator(String prefix, String suffix, int lastId) {
 		this.prefix = prefix;
 		this.suffix = suffix;
+		this.id.set(lastId);
 	}
 	public String generate() {
 		return String.format("%s%d%s", prefix, id.incrementAndGet(), suffix);
 	}
+	/**
+	 * @return sequence number of the most recently generated identifier
+	 */
+	public int getLastId() {
+		return id.get();
+	}
 	@Override
 	public String generate(BreakendSummary breakpoint, byte[] baseCalls, int startAnchoredBaseCount, int endAnchoredBaseCount) {
 		return generate();
@@ -33,7 +33,7 @@ public abstract class SingleReadEvidence implements DirectedEvidence {
 	 */
 	private final int nominalOffset;
 	private final boolean isInAssemblyAnchor;
-	private String evidenceid;
+	private EvidenceIdentifier evidenceIdentifier;
 	private boolean unableToCalculateHomology = false;
 	private String associatedAssemblyName;
 	private int assemblyOffset = Integer.MIN_VALUE;
@@ -332,13 +332,24 @@ public abstract class SingleReadEvidence implements DirectedEvidence {
 	}
 	
 	protected abstract String getUncachedEvidenceID();
-	
+
+	protected abstract EvidenceIdentifier getUncachedEvidenceIdentifier();
+
+	/**
+	 * The evidenceID is not cached as it is only required for output.
+	 * In-memory lookups use the cached {@link #getEvidenceIdentifier()}.
+	 */
 	@Override
 	public String getEvidenceID() {
-		if (evidenceid == null) {
-			evidenceid = getUncachedEvidenceID();
+		return getUncachedEvidenceID();
+	}
+
+	@Override
+	public EvidenceIdentifier getEvidenceIdentifier() {
+		if (evidenceIdentifier == null) {
+			evidenceIdentifier = getUncachedEvidenceIdentifier();
 		}
-		return evidenceid;
+		return evidenceIdentifier;
 	}
 	
 	public String getHomologySequence() {
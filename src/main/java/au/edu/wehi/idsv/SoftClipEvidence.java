@@ -80,6 +80,10 @@ public class SoftClipEvidence extends SingleReadEvidence {
 		return source.getContext().getEvidenceIDGenerator().getEvidenceID(this);
 	}
 	@Override
+	protected EvidenceIdentifier getUncachedEvidenceIdentifier() {
+		return source.getContext().getEvidenceIDGenerator().getEvidenceIdentifier(this);
+	}
+	@Override
 	public boolean isReference() {
 		return false;
 	}
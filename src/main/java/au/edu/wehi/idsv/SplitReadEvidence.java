@@ -186,6 +186,10 @@ public class SplitReadEvidence extends SingleReadEvidence implements DirectedBre
 		return source.getContext().getEvidenceIDGenerator().getEvidenceID(this);
 	}
 	@Override
+	protected EvidenceIdentifier getUncachedEvidenceIdentifier() {
+		return source.getContext().getEvidenceIDGenerator().getEvidenceIdentifier(this);
+	}
+	@Override
 	public String getRemoteEvidenceID() {
 		SAMRecord remote = this.getSAMRecord().deepCopy();
 		remote.setReferenceName(remoteAlignment.rname);
@@ -18,6 +18,12 @@ public class StreamingSplitReadRealigner extends SplitReadRealigner {
     private final StreamingAligner aligner;
     private final GenomicProcessingContext pc;
     private final int maxBufferedRecords;
+    private int realignmentCacheSize = Defaults.REALIGNMENT_CACHE_SIZE;
+    private RealignmentCache cache;
+    /**
+     * Realignments resolved from the cache that have not yet been processed
+     */
+    private final Queue<SAMRecord> cachedRealignments = new ArrayDeque<>();
 
     public StreamingSplitReadRealigner(GenomicProcessingContext pc, StreamingAligner aligner, int maxBufferedRecords) {
         super(pc.getReference());
@@ -26,13 +32,28 @@ public class StreamingSplitReadRealigner extends SplitReadRealigner {
         this.maxBufferedRecords = maxBufferedRecords;
     }
 
+    public int getRealignmentCacheSize() {
+        return realignmentCacheSize;
+    }
+
+    /**
+     * Sets the number of realignment results to cache.
+     * Realignment of a sequence identical to a cached sequence reuses the cached alignment instead of invoking the aligner.
+     * @param realignmentCacheSize maximum number of cached alignments. Caching is disabled if zero.
+     */
+    public void setRealignmentCacheSize(int realignmentCacheSize) {
+        this.realignmentCacheSize = realignmentCacheSize;
+    }
+
     public void process(Iterator<SAMRecord> it, SAMFileWriter coordinateSortedWriter, SAMFileWriter unorderedWriter) throws IOException {
         Map<String, SplitReadRealignmentInfo> lookup = new HashMap<>();
+        cache = realignmentCacheSize > 0 ? new RealignmentCache(realignmentCacheSize) : null;
+        cachedRealignments.clear();
         ProgressLogger progress = new ProgressLogger(log);
         int recordNumber = 0;
         while (it.hasNext()) {
             if (++recordNumber % 1000 == 0) {
-                String msg = String.format("Processed %d records. %d in aligner input buffer. %d in aligner output buffer. %s records in lookup", recordNumber, aligner.outstandingAlignmentRecord(), aligner.processedAlignmentRecords(), lookup.size());
+                String msg = String.format("Processed %d records. %d in aligner input buffer. %d in aligner output buffer. %s records in lookup. %s", recordNumber, aligner.outstandingAlignmentRecord(), aligner.processedAlignmentRecords(), lookup.size(), cacheStatistics());
                 log.debug(msg);
                 if (recordNumber % 1000000 == 0) {
                     log.info(msg);
@@ -45,10 +66,30 @@ public class StreamingSplitReadRealigner extends SplitReadRealigner {
         }
         // perform nested realignment to ensure all records are fully recursively realigned
         aligner.flush();
-        while (aligner.processedAlignmentRecords() > 0) {
+        while (aligner.processedAlignmentRecords() > 0 || !cachedRealignments.isEmpty()) {
             processCompletedAsyncRealignments(lookup, coordinateSortedWriter, unorderedWriter);
             aligner.flush();
         }
+        log.info(cacheStatistics());
+    }
+
+    private String cacheStatistics() {
+        if (cache == null) {
+            return "Realignment cache disabled";
+        }
+        return String.format("Realignment cache: %d hits, %d misses, %d cached", cache.getHitCount(), cache.getMissCount(), cache.size());
+    }
+
+    /**
+     * Realigns the given sequence using the cached alignment if available
+     */
+    private void realign(FastqRecord fq) throws IOException {
+        SAMRecord cached = cache == null ? null : cache.get(fq);
+        if (cached != null) {
+            cachedRealignments.add(cached);
+        } else {
+            aligner.asyncAlign(fq);
+        }
     }
 
     private boolean flushIfRequired() throws IOException {
@@ -65,8 +106,16 @@ public class StreamingSplitReadRealigner extends SplitReadRealigner {
             SAMFileWriter coordinateSortedWriter,
             SAMFileWriter unorderedWriter) throws IOException {
         flushIfRequired();
-        while (aligner.processedAlignmentRecords() > 0) {
-            SAMRecord realignment = aligner.getAlignment();
+        while (aligner.processedAlignmentRecords() > 0 || !cachedRealignments.isEmpty()) {
+            SAMRecord realignment;
+            if (!cachedRealignments.isEmpty()) {
+                realignment = cachedRealignments.poll();
+            } else {
+                realignment = aligner.getAlignment();
+                if (cache != null) {
+                    cache.put(realignment);
+                }
+            }
             processAlignmentRecord(realignment, lookup, coordinateSortedWriter, unorderedWriter);
             flushIfRequired();
         }
@@ -85,7 +134,7 @@ public class StreamingSplitReadRealigner extends SplitReadRealigner {
             SplitReadRealignmentInfo info = new SplitReadRealignmentInfo(record);
             realignments.put(info.alignmentUniqueName, info);
             for (FastqRecord fq : softclipRealignments) {
-                aligner.asyncAlign(fq);
+                realign(fq);
                 info.outstandingRealignments++;
             }
         }
@@ -105,7 +154,7 @@ public class StreamingSplitReadRealigner extends SplitReadRealigner {
                 info.realignments.add(supp);
                 List<FastqRecord> nestedRealignments = extract(supp, true);
                 for (FastqRecord fq : nestedRealignments) {
-                    aligner.asyncAlign(fq);
+                    realign(fq);
                     info.outstandingRealignments++;
                     //log.trace(String.format("%s: performing nested realignment. %d realignments now outstanding", info.originatingRecord.getReadName(), info.outstandingRealignments));
                 }
@@ -110,4 +110,24 @@ public class StringEvidenceIdentifierGenerator implements EvidenceIdentifierGene
 		sb.append(e.getBreakendSummary().direction.toChar());
 		return sb.toString();
 	}
+	@Override
+	public EvidenceIdentifier getEvidenceIdentifier(String evidenceId) {
+		return EvidenceIdentifier.fromEvidenceID(evidenceId);
+	}
+	@Override
+	public EvidenceIdentifier getEvidenceIdentifier(NonReferenceReadPair e) {
+		return getEvidenceIdentifier(getEvidenceID(e));
+	}
+	@Override
+	public EvidenceIdentifier getEvidenceIdentifier(SoftClipEvidence e) {
+		return getEvidenceIdentifier(getEvidenceID(e));
+	}
+	@Override
+	public EvidenceIdentifier getEvidenceIdentifier(SplitReadEvidence e) {
+		return getEvidenceIdentifier(getEvidenceID(e));
+	}
+	@Override
+	public EvidenceIdentifier getEvidenceIdentifier(IndelEvidence e) {
+		return getEvidenceIdentifier(getEvidenceID(e));
+	}
 }
@@ -14,6 +14,14 @@ import java.util.UUID;
 public class AlignerFactory {
 	private static final Log log = Log.getInstance(AlignerFactory.class);
 	private static final String SSW_JNI_JAR_LOCATION = "/libsswjni.so";
+	/**
+	 * Scoring parameters of the default aligner (bwa mem defaults)
+	 */
+	public static final int DEFAULT_MATCH = 1;
+	public static final int DEFAULT_MISMATCH = -4;
+	public static final int DEFAULT_AMBIGUOUS = -4;
+	public static final int DEFAULT_GAP_OPEN = 6;
+	public static final int DEFAULT_GAP_EXTEND = 1;
 	private static final Aligner defaultAligner;
 	private static boolean sswjniLoaded;
 	private static final IntelSmithWaterman isw;
@@ -83,11 +91,11 @@ public class AlignerFactory {
 				}
 			}
 			if (!sswjniLoaded) {
-				log.error("Unable to use GKL or sswjni libraries - realignment and inexact homology steps will be very slow. Please ensure Intel GKL and/or libsswjni for your OS and architecture can be found on java.library.path");
+				log.warn("Unable to use GKL or sswjni libraries - falling back to pure Java Smith-Waterman alignment. Please ensure Intel GKL and/or libsswjni for your OS and architecture can be found on java.library.path");
 			}
 		}
 		// defaultAligner = create(2, -6, -1, 5, 3); // bowtie2 defaults
-		defaultAligner = create(1, -4, -4, 6, 1); // bwa mem defaults
+		defaultAligner = create(DEFAULT_MATCH, DEFAULT_MISMATCH, DEFAULT_AMBIGUOUS, DEFAULT_GAP_OPEN, DEFAULT_GAP_EXTEND);
     }
     private static void unpacksswjni(File destination) throws IOException {
     	if (destination.exists() && destination.length() == AlignerFactory.class.getResource(SSW_JNI_JAR_LOCATION).getFile().length()) {
@@ -112,7 +120,7 @@ public class AlignerFactory {
 		} else if (sswjniLoaded) {
 			return new SswJniAligner(match, mismatch, ambiguous, gapOpen, gapExtend);
 		} else {
-			return new JAlignerAligner(match, mismatch, ambiguous, gapOpen, gapExtend);
+			return new StripedSmithWatermanAligner(match, mismatch, ambiguous, gapOpen, gapExtend);
 		}
 	}
 	public static Aligner create() {
@@ -0,0 +1,21 @@
+package au.edu.wehi.idsv.alignment;
+
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.fastq.FastqRecord;
+
+import java.io.Closeable;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * In-process aligner that aligns a batch of records in a single call.
+ */
+public interface BatchAligner extends Closeable {
+    /**
+     * Aligns the given records.
+     * @param input records to align
+     * @return alignments grouped by input record, in input order.
+     * Unaligned records are returned as unmapped records.
+     */
+    List<SAMRecord> align(Collection<FastqRecord> input);
+}
@@ -0,0 +1,266 @@
+package au.edu.wehi.idsv.alignment;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.fastq.FastqRecord;
+import htsjdk.samtools.util.Log;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Streams records to in-process aligners in batches.
+ *
+ * Multiple batches are aligned concurrently, each by its own aligner.
+ * Alignments are returned in the same order as the input records.
+ * If the alignment of any batch fails, the failure is rethrown to the caller
+ * by all subsequent calls.
+ */
+public class BatchedStreamingAligner implements StreamingAligner {
+    private static final Log log = Log.getInstance(BatchedStreamingAligner.class);
+    private final ThreadPoolExecutor driver;
+    private final AdaptiveBatchSize batchSize;
+    private Queue<FastqRecord> inputBuffer;
+    private final Queue<SAMRecord> outputBuffer = new LinkedBlockingDeque<>();
+    /**
+     * Batches submitted for alignment in submission order
+     */
+    private final ArrayDeque<Batch> inflight = new ArrayDeque<>();
+    private final List<Future<?>> pending = new ArrayList<>();
+    private final List<BatchAligner> aligners;
+    private final BlockingQueue<BatchAligner> availableAligners;
+    private AtomicInteger outstandingRecords = new AtomicInteger(0);
+    private AtomicInteger outstandingBases = new AtomicInteger(0);
+    private AtomicInteger queuedBases = new AtomicInteger(0);
+    /**
+     * First batch alignment failure
+     */
+    private volatile Throwable failure = null;
+
+    /**
+     * Hacky queue that will force the calling thread to block until the task can be queued
+     */
+    private static class AlwaysBlockingQueue<E> extends ArrayBlockingQueue<E> {
+        public AlwaysBlockingQueue(int maxSize) {
+            super(maxSize);
+        }
+
+        @Override
+        public boolean offer(E e)  {
+            try {
+                put(e);
+                return true;
+            } catch(InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+            return false;
+        }
+    }
+
+    private static class Batch {
+        private List<SAMRecord> results;
+    }
+
+    /**
+     * Adjusts the batch size based on the observed alignment throughput.
+     * The batch size is moved in the same direction as long as throughput improves
+     * and the direction is reversed when throughput decreases.
+     */
+    static class AdaptiveBatchSize {
+        private static final double STEP = 1.25;
+        private final int minSize;
+        private final int maxSize;
+        private int size;
+        private double multiplier = STEP;
+        private double lastThroughput = 0;
+        public AdaptiveBatchSize(int minSize, int maxSize) {
+            this.minSize = Math.max(1, Math.min(minSize, maxSize));
+            this.maxSize = Math.max(1, maxSize);
+            this.size = this.maxSize;
+        }
+        public synchronized int get() {
+            return size;
+        }
+        /**
+         * Records the time taken to align a batch
+         * @param bases number of bases in the batch
+         * @param nanos alignment time
+         */
+        public synchronized void record(int bases, long nanos) {
+            if (bases < size / 2) {
+                // undersized batches sent by flush() are not representative
+                return;
+            }
+            double throughput = bases / (double)Math.max(1, nanos);
+            if (throughput < lastThroughput) {
+                multiplier = 1 / multiplier;
+            }
+            lastThroughput = throughput;
+            size = (int)Math.max(minSize, Math.min(maxSize, size * multiplier));
+        }
+    }
+
+    /**
+     * @param aligners aligners to use. One batch is aligned concurrently per aligner.
+     * @param maxBatchSizeInBases maximum number of bases to send to an aligner in a single batch.
+     * @param threadName name of the threads driving the aligners
+     */
+    public BatchedStreamingAligner(List<? extends BatchAligner> aligners, int maxBatchSizeInBases, String threadName) {
+        if (aligners.isEmpty()) {
+            throw new IllegalArgumentException("At least one aligner required");
+        }
+        this.inputBuffer = new LinkedBlockingDeque<>();
+        this.aligners = new ArrayList<>(aligners);
+        this.availableAligners = new ArrayBlockingQueue<>(aligners.size(), false, aligners);
+        this.driver = new ThreadPoolExecutor(aligners.size(), aligners.size(),
+                0L, TimeUnit.MILLISECONDS,
+                new AlwaysBlockingQueue<Runnable>(1),
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat(threadName + "-%d").build());
+        this.batchSize = new AdaptiveBatchSize(maxBatchSizeInBases / 16, maxBatchSizeInBases);
+    }
+
+    protected List<BatchAligner> getAligners() {
+        return aligners;
+    }
+
+    /**
+     * Align the given records.
+     *
+     * @param fq
+     */
+    @Override
+    public void asyncAlign(FastqRecord fq) {
+        checkFailure();
+        inputBuffer.add(fq);
+        outstandingRecords.incrementAndGet();
+        outstandingBases.addAndGet(fq.getReadBases().length);
+        int queuedBytes = queuedBases.addAndGet(fq.getReadBases().length);
+        if (queuedBytes >= batchSize.get()) {
+            processInput();
+        }
+    }
+
+    // synchronized to ensure record ordering is stable
+    private synchronized void processInput() {
+        final ArrayList<FastqRecord> inFlightBuffer = new ArrayList<>(inputBuffer.size() + 16);
+        int basesSent = 0;
+        while (!inputBuffer.isEmpty()) {
+            FastqRecord fq = inputBuffer.poll();
+            queuedBases.addAndGet(-fq.getReadBases().length);
+            inFlightBuffer.add(fq);
+            basesSent += fq.getReadBases().length;
+        }
+        if (inFlightBuffer.size() > 0) {
+            final int actualBasesSent = basesSent;
+            final Batch batch = new Batch();
+            synchronized (inflight) {
+                inflight.add(batch);
+            }
+            pending.removeIf(Future::isDone);
+            pending.add(driver.submit(() -> {
+                BatchAligner aligner = availableAligners.take();
+                try {
+                    if (failure != null) {
+                        // alignments after a failed batch can never be published
+                        return null;
+                    }
+                    long startTime = System.nanoTime();
+                    List<SAMRecord> results = aligner.align(inFlightBuffer);
+                    batchSize.record(actualBasesSent, System.nanoTime() - startTime);
+                    publish(batch, results);
+                } catch (Throwable t) {
+                    synchronized (inflight) {
+                        if (failure == null) {
+                            failure = t;
+                        }
+                    }
+                    log.error(t, "Alignment of batch of ", inFlightBuffer.size(), " records failed.");
+                    throw t;
+                } finally {
+                    availableAligners.put(aligner);
+                    outstandingBases.addAndGet(-actualBasesSent);
+                    outstandingRecords.addAndGet(-inFlightBuffer.size());
+                }
+                return null;
+            }));
+        }
+    }
+
+    private void checkFailure() {
+        Throwable t = failure;
+        if (t != null) {
+            throw new RuntimeException("Alignment failed", t);
+        }
+    }
+
+    /**
+     * Moves the alignments of completed batches to the output buffer in batch submission order.
+     * A batch completing before an earlier batch is held back until the earlier batch completes.
+     */
+    private void publish(Batch batch, List<SAMRecord> results) {
+        synchronized (inflight) {
+            batch.results = results;
+            while (!inflight.isEmpty() && inflight.peek().results != null) {
+                outputBuffer.addAll(inflight.poll().results);
+            }
+        }
+    }
+
+    @Override
+    public void flush() {
+        List<Future<?>> outstanding;
+        synchronized (this) {
+            processInput();
+            outstanding = new ArrayList<>(pending);
+            pending.clear();
+        }
+        for (Future<?> future : outstanding) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                log.error(e, "Exception flushing alignment results.");
+                throw new RuntimeException(e);
+            } catch (ExecutionException e) {
+                // reported by checkFailure()
+            }
+        }
+        checkFailure();
+    }
+
+    @Override
+    public int processedAlignmentRecords() {
+        checkFailure();
+        return outputBuffer.size();
+    }
+
+    @Override
+    public int outstandingAlignmentRecord() {
+        return outstandingRecords.get();
+    }
+
+    @Override
+    public SAMRecord getAlignment() {
+        SAMRecord result = outputBuffer.poll();
+        if (result == null) {
+            throw new IllegalStateException("Call flush() or check processedAlignmentRecords() to ensure records are available.");
+        }
+        return result;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            this.driver.shutdown();
+            for (BatchAligner aligner : aligners) {
+                aligner.close();
+            }
+        }
+    }
+}
@@ -2,15 +2,9 @@ package au.edu.wehi.idsv.alignment;
 
 import au.edu.wehi.idsv.*;
 import au.edu.wehi.idsv.picard.ReferenceLookup;
-import au.edu.wehi.idsv.sam.SAMRecordUtil;
 import au.edu.wehi.idsv.vcf.VcfInfoAttributes;
-import htsjdk.samtools.CigarElement;
-import htsjdk.samtools.TextCigarCodec;
 import htsjdk.samtools.util.SequenceUtil;
 
-import java.nio.charset.StandardCharsets;
-import java.util.List;
-
 /**
  * Determines the length of any inexact breakpoint homology
  * @author Daniel Cameron
@@ -36,17 +30,18 @@ public class BreakpointHomology {
 	 * @return breakpoint homology length
 	 */
 	public static BreakpointHomology calculate(ReferenceLookup lookup, BreakpointSummary bs, String insertedSequence, int maxBreakendLength, int margin) {
+		return calculate(lookup, bs, insertedSequence, maxBreakendLength, margin, true);
+	}
+	/**
+	 * @param prune skip alignments that cannot report any homology
+	 */
+	static BreakpointHomology calculate(ReferenceLookup lookup, BreakpointSummary bs, String insertedSequence, int maxBreakendLength, int margin, boolean prune) {
 		if (bs.start - bs.end != 0 || bs.start2 - bs.end2 != 0) {
 			throw new IllegalArgumentException("Breakpoint position must be exact");
 		}
-		if (insertedSequence == null) {
-			insertedSequence = "";
-		}
-		if (bs.direction == BreakendDirection.Backward) {
-			insertedSequence = SequenceUtil.reverseComplement(insertedSequence);
-		}
+		int insLength = insertedSequence == null ? 0 : insertedSequence.length();
 		int seqLength = maxBreakendLength;
-		int refLength = maxBreakendLength + insertedSequence.length() + margin;
+		int refLength = maxBreakendLength + insLength + margin;
 		if (bs.getEventSize() != null) {
 			seqLength = Math.min(seqLength, bs.getEventSize());
 			refLength = Math.min(refLength, bs.getEventSize());
@@ -58,50 +53,190 @@ public class BreakpointHomology {
 		// localSeq           remoteSeq
 		//      >>>>       >>>>
 		//      localRef   remoteRef
-		String localSeq = bs.getAnchorSequence(lookup, refLength);
-		String localBsSeq = bs.getAnchorSequence(lookup, seqLength);
-		String localRef = bs.advance(refLength).getAnchorSequence(lookup, refLength);
-		String remoteSeq = SequenceUtil.reverseComplement(bs.remoteBreakend().getAnchorSequence(lookup, refLength));
-		String remoteBsSeq = SequenceUtil.reverseComplement(bs.remoteBreakend().getAnchorSequence(lookup, seqLength));
-		String remoteRef = SequenceUtil.reverseComplement(bs.remoteBreakend().advance(refLength).getAnchorSequence(lookup, refLength));
-		String strBreakend = localBsSeq + insertedSequence + remoteBsSeq;
-		String strLocal = localSeq + localRef;
-		String strRemote = remoteRef + remoteSeq;
-		byte[] breakend = strBreakend.getBytes(StandardCharsets.US_ASCII);
-		byte[] local = strLocal.getBytes(StandardCharsets.US_ASCII);
-		byte[] remote = strRemote.getBytes(StandardCharsets.US_ASCII);
+		// The breakend anchors are the breakpoint-adjacent subsequences of localSeq and remoteSeq
+		// so they are copied from those instead of being looked up separately.
+		BreakendSummary remoteBreakend = bs.remoteBreakend();
+		byte[] localSeq = bs.getAnchorBases(lookup, refLength);
+		byte[] localRef = bs.advance(refLength).getAnchorBases(lookup, refLength);
+		byte[] remoteSeq = remoteBreakend.getAnchorBases(lookup, refLength);
+		byte[] remoteRef = remoteBreakend.advance(refLength).getAnchorBases(lookup, refLength);
+		SequenceUtil.reverseComplement(remoteSeq);
+		SequenceUtil.reverseComplement(remoteRef);
+		int localBsLength = Math.min(localSeq.length, bs.getAnchorLength(lookup, seqLength));
+		int remoteBsLength = Math.min(remoteSeq.length, remoteBreakend.getAnchorLength(lookup, seqLength));
+		byte[] breakend = new byte[localBsLength + insLength + remoteBsLength];
+		System.arraycopy(localSeq, localSeq.length - localBsLength, breakend, 0, localBsLength);
+		for (int i = 0; i < insLength; i++) {
+			if (bs.direction == BreakendDirection.Forward) {
+				breakend[localBsLength + i] = (byte)insertedSequence.charAt(i);
+			} else {
+				breakend[localBsLength + i] = (byte)SequenceUtil.complement((byte)insertedSequence.charAt(insLength - 1 - i));
+			}
+		}
+		System.arraycopy(remoteSeq, 0, breakend, localBsLength + insLength, remoteBsLength);
+		byte[] local = concat(localSeq, localRef);
+		byte[] remote = concat(remoteRef, remoteSeq);
 		Aligner aligner = AlignerFactory.create();
 		int localHomologyBaseCount = 0;
 		int remoteHomologyBaseCount = 0;
-		if (breakend != null && breakend.length > 0) {
-			if (local != null && local.length > 0) {
+		if (breakend.length > 0) {
+			if (local.length > 0 && remoteBsLength > 0
+					&& (!prune || localBsLength == 0 || canExtend(breakend, localBsLength, insLength, local))) {
 				Alignment localAlignment = aligner.align_smith_waterman(breakend, local);
-				List<CigarElement> cigar = TextCigarCodec.decode(localAlignment.getCigar()).getCigarElements();
 				// We are defining a homology as the number of bases mapped on the other side
 				// inserted sequence means the number of bases consumed can be negative
-				remoteHomologyBaseCount = Math.max(0, remoteBsSeq.length() - SAMRecordUtil.getEndSoftClipLength(cigar));
-				if (SAMRecordUtil.getStartSoftClipLength(cigar) > 0) {
+				remoteHomologyBaseCount = Math.max(0, remoteBsLength - getEndSoftClipLength(localAlignment.getCigar()));
+				if (getStartSoftClipLength(localAlignment.getCigar()) > 0) {
 					// anchor is not aligned - something went wrong
 					remoteHomologyBaseCount = 0;
 				}
 			}
-			if (remote != null && remote.length > 0) {
+			if (remote.length > 0 && localBsLength > 0) {
 				// #344 rev-comp remote so we always have the anchor on the same side
 				// This ensures that we'll choose the same alignment on both sides if there
 				// are multiple equally good alignments
 				SequenceUtil.reverseComplement(breakend);
 				SequenceUtil.reverseComplement(remote);
-				Alignment remoteAlignment = aligner.align_smith_waterman(breakend, remote);
-				List<CigarElement> cigar = TextCigarCodec.decode(remoteAlignment.getCigar()).getCigarElements();
-				localHomologyBaseCount = Math.max(0, localBsSeq.length() - SAMRecordUtil.getEndSoftClipLength(cigar));
-				if (SAMRecordUtil.getStartSoftClipLength(cigar) > 0) {
-					// anchor is not aligned - something went wrong
-					localHomologyBaseCount = 0;
+				if (!prune || remoteBsLength == 0 || canExtend(breakend, remoteBsLength, insLength, remote)) {
+					Alignment remoteAlignment = aligner.align_smith_waterman(breakend, remote);
+					localHomologyBaseCount = Math.max(0, localBsLength - getEndSoftClipLength(remoteAlignment.getCigar()));
+					if (getStartSoftClipLength(remoteAlignment.getCigar()) > 0) {
+						// anchor is not aligned - something went wrong
+						localHomologyBaseCount = 0;
+					}
 				}
 			}
 		}
 		return new BreakpointHomology(localHomologyBaseCount, remoteHomologyBaseCount);
 	}
+	private static byte[] concat(byte[] a, byte[] b) {
+		byte[] result = new byte[a.length + b.length];
+		System.arraycopy(a, 0, result, 0, a.length);
+		System.arraycopy(b, 0, result, a.length, b.length);
+		return result;
+	}
+	private static int getStartSoftClipLength(String cigar) {
+		int length = 0;
+		for (int i = 0; i < cigar.length(); i++) {
+			char c = cigar.charAt(i);
+			if (c >= '0' && c <= '9') {
+				length = length * 10 + c - '0';
+			} else {
+				return c == 'S' ? length : 0;
+			}
+		}
+		return 0;
+	}
+	private static int getEndSoftClipLength(String cigar) {
+		if (cigar.length() == 0 || cigar.charAt(cigar.length() - 1) != 'S') return 0;
+		int length = 0;
+		int scale = 1;
+		for (int i = cigar.length() - 2; i >= 0 && cigar.charAt(i) >= '0' && cigar.charAt(i) <= '9'; i--) {
+			length += (cigar.charAt(i) - '0') * scale;
+			scale *= 10;
+		}
+		return length;
+	}
+	private static final int NEG_INF = Integer.MIN_VALUE / 2;
+	private static final ThreadLocal<int[][]> extensionScratch = ThreadLocal.withInitial(() -> new int[2][0]);
+	/**
+	 * Determines whether the aligner could report an alignment of the breakend sequence
+	 * that starts with the anchor and extends past the inserted sequence.
+	 *
+	 * The anchor aligns exactly to the reference immediately before the breakpoint so the
+	 * best local alignment scores at least as well as the anchor alone. Homology is only
+	 * reported when the best alignment starts at the first base of the breakend sequence
+	 * and ends after the inserted sequence. This is an affine gap alignment of the breakend
+	 * sequence anchored at its first base, scored with upper bounds of the default aligner
+	 * scores, in which cells that cannot reach the anchor score are dropped. Since no cell
+	 * is ever scored lower than the aligner would, a false result guarantees the aligner
+	 * cannot report homology.
+	 *
+	 * @param breakend breakend sequence
+	 * @param anchorLength length of the anchor at the start of the breakend sequence
+	 * @param insLength number of inserted bases following the anchor
+	 * @param ref reference sequence
+	 * @return false if no alignment extending past the inserted sequence scores at least as well as the anchor alone
+	 */
+	private static boolean canExtend(byte[] breakend, int anchorLength, int insLength, byte[] ref) {
+		final int match = AlignerFactory.DEFAULT_MATCH;
+		final int mismatch = Math.max(AlignerFactory.DEFAULT_MISMATCH, AlignerFactory.DEFAULT_AMBIGUOUS);
+		final int go = AlignerFactory.DEFAULT_GAP_OPEN;
+		final int ge = AlignerFactory.DEFAULT_GAP_EXTEND;
+		final int qLen = breakend.length;
+		final int tLen = ref.length;
+		// lower bound on the score of the exact anchor alignment
+		int threshold = 0;
+		for (int k = 0; k < anchorLength; k++) {
+			threshold += SequenceUtil.isValidBase(breakend[k]) ? match : Math.min(AlignerFactory.DEFAULT_MISMATCH, AlignerFactory.DEFAULT_AMBIGUOUS);
+		}
+		int[][] scratch = extensionScratch.get();
+		if (scratch[0].length < tLen + 1) {
+			scratch[0] = new int[tLen + 1];
+			scratch[1] = new int[tLen + 1];
+		}
+		// h[j]: best score of an alignment starting at the first breakend base and ending at reference position j of the current row
+		// f[j]: best score ending at reference position j with an insertion
+		int[] h = scratch[0];
+		int[] f = scratch[1];
+		// [0, hi] bounds the live cells of the first row as the alignment can start at any reference position
+		int hi = -1;
+		for (int j = 0; j <= tLen && Math.min(qLen, tLen - j) * match >= threshold; j++) {
+			h[j] = 0;
+			f[j] = NEG_INF;
+			hi = j;
+		}
+		if (hi < 0) {
+			return false;
+		}
+		int lo = 0;
+		for (int i = 1; i <= qLen; i++) {
+			byte qb = breakend[i - 1];
+			int newLo = -1;
+			int newHi = -1;
+			int rowBest = NEG_INF;
+			// cells outside [lo, hi] of the previous row are dead and not necessarily initialised
+			int diag = NEG_INF;
+			int e = NEG_INF;
+			int left = NEG_INF;
+			for (int j = lo; j <= tLen; j++) {
+				int up = j <= hi ? h[j] : NEG_INF;
+				int fv = j <= hi ? Math.max(up - go, f[j] - ge) : NEG_INF;
+				int hv = fv;
+				if (j > 0) {
+					e = Math.max(left - go, e - ge);
+					hv = Math.max(diag + (SequenceUtil.basesEqual(qb, ref[j - 1]) ? match : mismatch), Math.max(e, fv));
+				}
+				diag = up;
+				int remaining = Math.min(qLen - i, tLen - j) * match;
+				if (hv + remaining < threshold) {
+					// cannot recover to the anchor score
+					if (j > hi && e + remaining < threshold) {
+						// nothing further along this row can be live
+						break;
+					}
+					hv = NEG_INF;
+					fv = NEG_INF;
+				} else {
+					if (newLo < 0) newLo = j;
+					newHi = j;
+					rowBest = Math.max(rowBest, hv);
+				}
+				h[j] = hv;
+				f[j] = fv;
+				left = hv;
+			}
+			if (newLo < 0) {
+				return false;
+			}
+			if (i > anchorLength + insLength && rowBest >= threshold) {
+				return true;
+			}
+			lo = newLo;
+			hi = newHi;
+		}
+		return false;
+	}
 	public int getLocalHomologyLength() {
 		return localHomologyLength;
 	}
@@ -11,7 +11,6 @@ import org.broadinstitute.hellbender.utils.bwa.BwaMemAligner;
 import org.broadinstitute.hellbender.utils.bwa.BwaMemAlignment;
 import org.broadinstitute.hellbender.utils.bwa.BwaMemIndex;
 
-import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
@@ -25,7 +24,7 @@ import java.util.stream.Collectors;
 /**
  * Wrapper for the BwaMemAligner that returns SAMRecords
  */
-public class BwaAligner implements Closeable {
+public class BwaAligner implements BatchAligner {
     private static final Log log = Log.getInstance(BwaAligner.class);
     private final BwaMemIndex index;
     private final BwaMemAligner aligner;
@@ -49,7 +48,15 @@ public class BwaAligner implements Closeable {
         }
     }
     public BwaAligner(File reference, SAMSequenceDictionary dict, int threads) {
-        this.index = getBwaIndexFor(reference);
+        this(getBwaIndexFor(reference), dict, threads);
+    }
+
+    /**
+     * Creates an aligner using the given index.
+     * Multiple aligners can share the same index and align concurrently.
+     */
+    public BwaAligner(BwaMemIndex index, SAMSequenceDictionary dict, int threads) {
+        this.index = index;
         this.dict = dict;
         this.header = getMinimalHeader(dict);
         this.aligner = new BwaMemAligner(this.index);
@@ -124,6 +131,7 @@ public class BwaAligner implements Closeable {
         }
     }
 
+    @Override
     public List<SAMRecord> align(Collection<FastqRecord> input) {
         List<byte[]> inputs = new ArrayList<>(input.size());
         for (FastqRecord fq : input) {
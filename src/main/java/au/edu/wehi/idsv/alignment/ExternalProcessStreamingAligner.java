@@ -1,34 +1,44 @@
 package au.edu.wehi.idsv.alignment;
 
+import au.edu.wehi.idsv.Defaults;
 import au.edu.wehi.idsv.sam.SAMRecordUtil;
 import au.edu.wehi.idsv.util.MessageThrottler;
 import htsjdk.samtools.*;
-import htsjdk.samtools.fastq.BasicFastqWriter;
 import htsjdk.samtools.fastq.FastqRecord;
+import htsjdk.samtools.util.BufferedLineReader;
 import htsjdk.samtools.util.Log;
 import org.apache.commons.lang3.SystemUtils;
 
 import java.io.*;
 import java.lang.ProcessBuilder.Redirect;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 /**
  * Performs alignment of the given records using an external alignment tools.
  * stdin and stdout of the alignment tool are hooked up.
- * 
+ *
+ * Records are written to the aligner in batches by a dedicated writer thread
+ * and the aligner output is parsed by a dedicated reader thread.
+ *
  * Iterator methods block until an input record has been aligned. The StreamingAligner
  * interface allows for more fine-grain control over record processing.
- * 
+ *
  * @author Daniel Cameron
  *
  */
 public class ExternalProcessStreamingAligner implements Closeable, Flushable, StreamingAligner {
 	private static final int POLL_INTERVAL = 1000;
 	private static final int OUTPUT_BUFFER_SIZE = 1024;
+	private static final int PIPE_BUFFER_SIZE = 1 << 16;
+	private static final FastqRecord END_OF_INPUT = new FastqRecord("", "", "", "");
 	private static final Log log = Log.getInstance(ExternalProcessStreamingAligner.class);
 	private final AtomicInteger outstandingReads = new AtomicInteger(0);
 	private final BlockingQueue<SAMRecord> buffer = new ArrayBlockingQueue<>(OUTPUT_BUFFER_SIZE);
@@ -36,8 +46,13 @@ public class ExternalProcessStreamingAligner implements Closeable, Flushable, St
 	private final SamReaderFactory readerFactory;
 	private final SAMSequenceDictionary dict;
 	private Process aligner = null;
-	private BasicFastqWriter toExternalProgram = null;
+	private BlockingQueue<FastqRecord> toExternalProgram = null;
+	private Thread writer = null;
 	private Thread reader = null;
+	private volatile IOException writerException = null;
+	private int flushRecordCount;
+	private int flushIntervalMilliseconds;
+	private int writeQueueSize = 65536;
 	// The following are only needed for pretty error messages
 	private final String commandlinestr;
 	private final File reference;
@@ -49,13 +64,43 @@ public class ExternalProcessStreamingAligner implements Closeable, Flushable, St
 				.map(s -> String.format(s, "-", reference.getPath(), threads))
 				.collect(Collectors.toList());
 		this.commandlinestr = args.stream().collect(Collectors.joining(" "));
+		setFlushPolicy(Defaults.EXTERNAL_ALIGNER_FLUSH_RECORDS, Defaults.EXTERNAL_ALIGNER_FLUSH_INTERVAL_MS);
+	}
+	/**
+	 * Sets the flush policy for records written to the external aligner.
+	 * Records are flushed to the aligner once the given number of records have been written,
+	 * or when no new records have been received for the given interval.
+	 * Defaults to the external_aligner.flush_records and external_aligner.flush_interval_ms system properties.
+	 * @param flushRecordCount maximum number of records to write before flushing. A value of 1 flushes after every record.
+	 * @param flushIntervalMilliseconds maximum time to wait for additional records before flushing
+	 */
+	public void setFlushPolicy(int flushRecordCount, int flushIntervalMilliseconds) {
+		if (flushRecordCount < 1) throw new IllegalArgumentException("flushRecordCount must be positive");
+		if (flushIntervalMilliseconds < 0) throw new IllegalArgumentException("flushIntervalMilliseconds cannot be negative");
+		this.flushRecordCount = flushRecordCount;
+		this.flushIntervalMilliseconds = flushIntervalMilliseconds;
+	}
+	/**
+	 * Sets the number of records that can be queued for writing to the external aligner
+	 * before asyncAlign() blocks. Takes effect when the aligner is next started.
+	 */
+	public void setWriteQueueSize(int writeQueueSize) {
+		if (writeQueueSize < 1) throw new IllegalArgumentException("writeQueueSize must be positive");
+		this.writeQueueSize = writeQueueSize;
 	}
 	@Override
 	public synchronized void asyncAlign(FastqRecord fq) throws IOException {
 		ensureAligner();
+		if (writerException != null) {
+			throw writerException;
+		}
 		outstandingReads.incrementAndGet();
-		toExternalProgram.write(fq);
-		toExternalProgram.flush();
+		try {
+			toExternalProgram.put(fq);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted queuing record for external aligner");
+		}
 	}
 	private void ensureAligner() throws IOException {
 		if (aligner == null) {
@@ -73,8 +118,16 @@ public class ExternalProcessStreamingAligner implements Closeable, Flushable, St
 					.redirectOutput(Redirect.PIPE)
 					.redirectError(Redirect.INHERIT)
 					.start();
-			toExternalProgram = new BasicFastqWriter(new PrintStream(new BufferedOutputStream(aligner.getOutputStream())));
-			reader = new Thread(() -> readAllAlignments(readerFactory));
+			writerException = null;
+			toExternalProgram = new LinkedBlockingQueue<>(writeQueueSize);
+			final BlockingQueue<FastqRecord> queue = toExternalProgram;
+			final OutputStream os = new BufferedOutputStream(aligner.getOutputStream(), PIPE_BUFFER_SIZE);
+			writer = new Thread(() -> writeAllRecords(queue, os));
+			writer.setName("ExternalProcessStreamingAlignerWriter");
+			writer.setDaemon(true);
+			writer.start();
+			final InputStream is = aligner.getInputStream();
+			reader = new Thread(() -> readAllAlignments(is));
 			reader.setName("ExternalProcessStreamingAligner");
 			reader.start();
 		}
@@ -83,11 +136,16 @@ public class ExternalProcessStreamingAligner implements Closeable, Flushable, St
 	public void flush() throws IOException {
 		if (aligner != null) {
 			log.info("Waiting for external aligner to complete all alignments.");
-			toExternalProgram.flush();
-			aligner.getOutputStream().flush();
-			toExternalProgram.close();
-			// and just to be sure we don't hit any more htsjdk bugs where they don't close the underlying stream
-			aligner.getOutputStream().close();
+			try {
+				toExternalProgram.put(END_OF_INPUT);
+				// writer thread closes the aligner input stream once all records are written
+				writer.join();
+			} catch (InterruptedException e) {
+				log.warn(e);
+			}
+			if (writerException != null) {
+				throw writerException;
+			}
 			// wait for the aligner to complete all outstanding alignments
 			// This doesn't deadlock as buffer is unbounded in size so we're guaranteed to be able to
 			// read the entire output stream without blocking
@@ -110,6 +168,7 @@ public class ExternalProcessStreamingAligner implements Closeable, Flushable, St
 		}
 		aligner = null;
 		reader = null;
+		writer = null;
 		toExternalProgram = null;
 	}
 	@Override
@@ -120,6 +179,19 @@ public class ExternalProcessStreamingAligner implements Closeable, Flushable, St
 	public int outstandingAlignmentRecord() {
 		return outstandingReads.get();
 	}
+	/**
+	 * Number of records queued by asyncAlign() that have not yet been written to the external aligner
+	 */
+	public int queuedRecords() {
+		BlockingQueue<FastqRecord> queue = toExternalProgram;
+		return queue == null ? 0 : queue.size();
+	}
+	/**
+	 * Number of records that have been written to the external aligner but for which no alignment has been received
+	 */
+	public int inFlightRecords() {
+		return Math.max(0, outstandingReads.get() - queuedRecords());
+	}
 	/* (non-Javadoc)
 	 * @see au.edu.wehi.idsv.alignment.StreamingAligner#getAlignment()
 	 */
@@ -131,12 +203,73 @@ public class ExternalProcessStreamingAligner implements Closeable, Flushable, St
 		}
 		return r;
 	}
-	private void readAllAlignments(final SamReaderFactory readerFactory) {
+	private void writeAllRecords(BlockingQueue<FastqRecord> queue, OutputStream os) {
+		List<FastqRecord> batch = new ArrayList<>(flushRecordCount);
+		int unflushed = 0;
 		try {
-			SamReader fromExternalProgram = readerFactory.open(SamInputResource.of(aligner.getInputStream()));
-			SAMRecordIterator it = fromExternalProgram.iterator();
-			while (it.hasNext()) {
-				SAMRecord r = it.next();
+			while (true) {
+				FastqRecord fq = queue.poll();
+				if (fq == null) {
+					if (unflushed > 0) {
+						// Wait briefly for additional records before flushing a partial batch
+						fq = queue.poll(flushIntervalMilliseconds, TimeUnit.MILLISECONDS);
+						if (fq == null) {
+							os.flush();
+							unflushed = 0;
+						}
+					}
+					if (fq == null) {
+						fq = queue.take();
+					}
+				}
+				if (fq == END_OF_INPUT) break;
+				batch.add(fq);
+				queue.drainTo(batch, flushRecordCount - unflushed - batch.size());
+				boolean endOfInput = batch.get(batch.size() - 1) == END_OF_INPUT;
+				if (endOfInput) {
+					batch.remove(batch.size() - 1);
+				}
+				for (FastqRecord r : batch) {
+					writeFastq(os, r);
+				}
+				unflushed += batch.size();
+				batch.clear();
+				if (endOfInput) break;
+				if (unflushed >= flushRecordCount) {
+					os.flush();
+					unflushed = 0;
+				}
+			}
+		} catch (IOException e) {
+			log.error(e, "Error writing to external aligner");
+			writerException = e;
+		} catch (InterruptedException e) {
+			log.warn(e, "writer thread interrupted");
+		} finally {
+			try {
+				os.close();
+			} catch (IOException e) {
+				if (writerException == null) {
+					writerException = e;
+				}
+			}
+		}
+	}
+	/**
+	 * Writes the record in FASTQ format. Line endings are always \n regardless of platform.
+	 */
+	private static void writeFastq(OutputStream os, FastqRecord fq) throws IOException {
+		os.write('@');
+		os.write(fq.getReadName().getBytes(StandardCharsets.US_ASCII));
+		os.write('\n');
+		os.write(fq.getReadString().getBytes(StandardCharsets.US_ASCII));
+		os.write("\n+\n".getBytes(StandardCharsets.US_ASCII));
+		os.write(fq.getBaseQualityString().getBytes(StandardCharsets.US_ASCII));
+		os.write('\n');
+	}
+	private void readAllAlignments(final InputStream is) {
+		try (SamLineIterator it = new SamLineIterator(is)) {
+			for (SAMRecord r = it.next(); r != null; r = it.next()) {
 				if (SAMRecordUtil.forceValidContigBounds(r, dict)) {
 					if (!MessageThrottler.Current.shouldSupress(log, "streaming aligner out of bounds")) {
 						log.warn(String.format("Streamed aligner returned out of bounds alignment. %s adjusted to %s:%d %s", dict.getSequence(r.getReferenceIndex()).getSequenceName(), r.getAlignmentStart(), r.getCigarString()));
@@ -148,6 +281,91 @@ public class ExternalProcessStreamingAligner implements Closeable, Flushable, St
 			log.info(String.format("Reader thread complete. %s reads in output buffer", buffer.size()));
 		} catch (InterruptedException ie) {
 			log.warn(ie, "reader thread interrupted");
+		} catch (IOException e) {
+			log.error(e, "Error reading from external aligner");
+		}
+	}
+	/**
+	 * Parses SAM text directly from the aligner output stream.
+	 * Lines are decoded as ASCII without the overhead of the general purpose SAM text reader.
+	 */
+	private class SamLineIterator implements Closeable {
+		private final InputStream is;
+		private final byte[] buf = new byte[PIPE_BUFFER_SIZE];
+		private int bufOffset = 0;
+		private int bufLength = 0;
+		private byte[] line = new byte[1024];
+		private int lineLength;
+		private SAMLineParser parser = null;
+		private int lineNumber = 0;
+		public SamLineIterator(InputStream is) {
+			this.is = is;
+		}
+		/**
+		 * @return true if a line was read, false if the end of the stream has been reached
+		 */
+		private boolean readLine() throws IOException {
+			lineLength = 0;
+			boolean eof = false;
+			while (true) {
+				if (bufOffset == bufLength) {
+					bufLength = is.read(buf);
+					bufOffset = 0;
+					if (bufLength <= 0) {
+						bufLength = 0;
+						eof = true;
+						break;
+					}
+				}
+				int end = bufOffset;
+				while (end < bufLength && buf[end] != '\n') end++;
+				int len = end - bufOffset;
+				if (lineLength + len > line.length) {
+					byte[] newLine = new byte[Math.max(2 * line.length, lineLength + len)];
+					System.arraycopy(line, 0, newLine, 0, lineLength);
+					line = newLine;
+				}
+				System.arraycopy(buf, bufOffset, line, lineLength, len);
+				lineLength += len;
+				if (end < bufLength) {
+					// consume the newline
+					bufOffset = end + 1;
+					break;
+				}
+				bufOffset = bufLength;
+			}
+			if (eof && lineLength == 0) return false;
+			if (lineLength > 0 && line[lineLength - 1] == '\r') lineLength--;
+			lineNumber++;
+			return true;
+		}
+		/**
+		 * @return next alignment, or null if the end of the stream has been reached
+		 */
+		public SAMRecord next() throws IOException {
+			if (parser == null) {
+				StringBuilder header = new StringBuilder();
+				boolean hasRecord;
+				while ((hasRecord = readLine()) && lineLength > 0 && line[0] == '@') {
+					header.append(new String(line, 0, lineLength, StandardCharsets.US_ASCII));
+					header.append('\n');
+				}
+				SAMTextHeaderCodec codec = new SAMTextHeaderCodec();
+				codec.setValidationStringency(readerFactory.validationStringency());
+				SAMFileHeader samHeader = codec.decode(BufferedLineReader.fromString(header.toString()), commandlinestr);
+				parser = new SAMLineParser(new DefaultSAMRecordFactory(), readerFactory.validationStringency(), samHeader, null, null);
+				if (!hasRecord) return null;
+			} else if (!readLine()) {
+				return null;
+			}
+			while (lineLength == 0) {
+				if (!readLine()) return null;
+			}
+			return parser.parseLine(new String(line, 0, lineLength, StandardCharsets.US_ASCII), lineNumber);
+		}
+		@Override
+		public void close() throws IOException {
+			is.close();
 		}
 	}
 
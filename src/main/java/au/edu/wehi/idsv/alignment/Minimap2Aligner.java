@@ -0,0 +1,274 @@
+package au.edu.wehi.idsv.alignment;
+
+import au.edu.wehi.idsv.picard.ReferenceLookup;
+import au.edu.wehi.idsv.sam.SAMRecordUtil;
+import htsjdk.samtools.CigarElement;
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMFlag;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.SAMTag;
+import htsjdk.samtools.fastq.FastqRecord;
+import htsjdk.samtools.util.Log;
+import htsjdk.samtools.util.SequenceUtil;
+import org.broadinstitute.hellbender.utils.minimap2.MiniMap2Aligner;
+import org.broadinstitute.hellbender.utils.minimap2.MiniMap2Alignment;
+import org.broadinstitute.hellbender.utils.minimap2.MiniMap2Index;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Wrapper for the minimap2 JNI aligner that returns SAMRecords.
+ *
+ * The underlying aligner is not thread-safe. Multiple aligners can share the same index.
+ *
+ * The minimap2 JNI only reports the NM tag so the MD, AS and XS tags are calculated
+ * from the reference genome and the scoring parameters of the minimap2 preset.
+ */
+public class Minimap2Aligner implements BatchAligner {
+    private static final Log log = Log.getInstance(Minimap2Aligner.class);
+    public static final String INDEX_FILE_EXTENSION = ".mmi";
+    private final MiniMap2Aligner aligner;
+    private final SAMFileHeader header;
+    private final ReferenceLookup reference;
+    private final Scoring scoring;
+
+    public MiniMap2Aligner getAligner() {
+        return this.aligner;
+    }
+
+    /**
+     * Creates an aligner using the given index.
+     * @param index minimap2 index
+     * @param reference reference genome
+     * @param preset minimap2 preset to use
+     */
+    public Minimap2Aligner(MiniMap2Index index, ReferenceLookup reference, MiniMap2Aligner.Preset preset) {
+        SAMSequenceDictionary dict = reference.getSequenceDictionary();
+        ensureMatchingReferences(index, dict);
+        this.header = new SAMFileHeader(dict);
+        this.reference = reference;
+        this.scoring = Scoring.forPreset(preset);
+        this.aligner = new MiniMap2Aligner(index, preset);
+        // soft clip supplementary alignments so every record contains the full read sequence
+        this.aligner.setFlags(this.aligner.getFlags() | MiniMap2Aligner.MM_F_SOFTCLIP);
+    }
+
+    public static File getMinimap2IndexFileFor(File reference) {
+        return new File(reference.getAbsolutePath() + INDEX_FILE_EXTENSION);
+    }
+
+    /**
+     * Loads the minimap2 index for the given reference genome.
+     * The persistent index ('minimap2 -d reference.fa.mmi reference.fa') is used if it exists.
+     * If not, the index is built from the reference genome.
+     */
+    public static MiniMap2Index getMinimap2IndexFor(File reference) {
+        File image = getMinimap2IndexFileFor(reference);
+        String path;
+        if (image.exists()) {
+            log.info("Loading minimap2 index from " + image);
+            path = image.getAbsolutePath();
+        } else {
+            log.warn(String.format("Unable to find %s. Building minimap2 index from reference genome. "
+                    + "Run 'minimap2 -d %s %s' to create a persistent index.", image, image, reference));
+            path = reference.getAbsolutePath();
+        }
+        if (!new File(path).exists()) {
+            throw new IllegalArgumentException("Missing " + path);
+        }
+        System.err.flush(); // ensure our error message gets to the console as we're possible about to die in C code
+        return new MiniMap2Index(path);
+    }
+
+    public static void ensureMatchingReferences(MiniMap2Index index, SAMSequenceDictionary dict) {
+        String indexNames = index.getRefNames().stream().collect(Collectors.joining("   "));
+        String refNames = dict.getSequences().stream().map(x -> x.getSequenceName()).collect(Collectors.joining("   "));
+        if (!indexNames.equals(refNames)) {
+            throw new IllegalArgumentException("minimap2 index and reference genome sequences do not match");
+        }
+    }
+
+    @Override
+    public List<SAMRecord> align(Collection<FastqRecord> input) {
+        log.debug(String.format("Aligning %d sequences using minimap2 JNI", input.size()));
+        List<List<MiniMap2Alignment>> mm2Result = aligner.alignSeqs(input, FastqRecord::getReadBases);
+        if (mm2Result.size() != input.size()) {
+            throw new IllegalStateException(String.format("minimap2 returned alignments for %d reads, when input with %d reads.", mm2Result.size(), input.size()));
+        }
+        List<SAMRecord> samResult = new ArrayList<>((int)(input.size() * 1.3));
+        int i = 0;
+        for (FastqRecord fq : input) {
+            samResult.addAll(transform(fq, mm2Result.get(i++)));
+        }
+        return samResult;
+    }
+
+    public List<SAMRecord> transform(FastqRecord fq, List<MiniMap2Alignment> alignments) {
+        List<SAMRecord> result = new ArrayList<>(alignments.size() == 0 ? 1 : alignments.size());
+        for (MiniMap2Alignment alignment : alignments) {
+            if (alignment.getRefId() >= 0) {
+                result.add(createAlignment(fq, alignment));
+            }
+        }
+        if (result.isEmpty()) {
+            SAMRecord r = SAMRecordUtil.createSAMRecord(header, fq, false);
+            r.setReadUnmappedFlag(true);
+            result.add(r);
+        } else {
+            setSuboptimalScore(result);
+            result = SAMRecordUtil.reinterpretAsSplitReadAlignment(result, 25);
+        }
+        return result;
+    }
+
+    /**
+     * Sets the XS tag of every alignment to the best score of the secondary alignments of the read
+     */
+    private static void setSuboptimalScore(List<SAMRecord> alignments) {
+        int suboptimal = 0;
+        for (SAMRecord r : alignments) {
+            if (r.isSecondaryAlignment()) {
+                suboptimal = Math.max(suboptimal, r.getIntegerAttribute(SAMTag.AS.name()));
+            }
+        }
+        for (SAMRecord r : alignments) {
+            r.setAttribute("XS", suboptimal);
+        }
+    }
+
+    private SAMRecord createAlignment(FastqRecord fq, MiniMap2Alignment alignment) {
+        SAMRecord r = SAMRecordUtil.createSAMRecord(header, fq, (alignment.getSAMFlag() & SAMFlag.READ_REVERSE_STRAND.intValue()) != 0);
+        r.setFlags(alignment.getSAMFlag());
+        r.setReferenceIndex(alignment.getRefId());
+        r.setAlignmentStart(alignment.getRefStart() + 1);
+        r.setCigarString(alignment.getCigar());
+        if (r.getCigar().getReadLength() != fq.getReadLength()) {
+            throw new IllegalStateException(String.format("Read length is %d, cigar is %s", fq.getReadLength(), r.getCigarString()));
+        }
+        r.setMappingQuality(alignment.getMapQ());
+        r.setAttribute(SAMTag.NM.name(), alignment.getNM());
+        setMdAndScore(r);
+        return r;
+    }
+
+    /**
+     * Calculates the MD and AS tags of the given alignment
+     */
+    private void setMdAndScore(SAMRecord r) {
+        byte[] ref = reference.getSubsequenceAt(r.getReferenceName(), r.getAlignmentStart(), r.getAlignmentEnd()).getBases();
+        byte[] read = r.getReadBases();
+        StringBuilder md = new StringBuilder();
+        int matches = 0;
+        int score = 0;
+        int readOffset = 0;
+        int refOffset = 0;
+        for (CigarElement ce : r.getCigar()) {
+            int len = ce.getLength();
+            switch (ce.getOperator()) {
+                case M:
+                case EQ:
+                case X:
+                    for (int i = 0; i < len; i++) {
+                        byte readBase = read[readOffset + i];
+                        byte refBase = ref[refOffset + i];
+                        boolean equal = SequenceUtil.basesEqual(readBase, refBase);
+                        if (SequenceUtil.isNoCall(readBase) || SequenceUtil.isNoCall(refBase)) {
+                            score -= scoring.ambiguous;
+                        } else if (equal) {
+                            score += scoring.match;
+                        } else {
+                            score -= scoring.mismatch;
+                        }
+                        if (equal) {
+                            matches++;
+                        } else {
+                            md.append(matches);
+                            md.append((char)refBase);
+                            matches = 0;
+                        }
+                    }
+                    readOffset += len;
+                    refOffset += len;
+                    break;
+                case D:
+                    md.append(matches);
+                    md.append('^');
+                    for (int i = 0; i < len; i++) {
+                        md.append((char)ref[refOffset + i]);
+                    }
+                    matches = 0;
+                    score -= scoring.gapPenalty(len);
+                    refOffset += len;
+                    break;
+                case N:
+                    refOffset += len;
+                    break;
+                case I:
+                    score -= scoring.gapPenalty(len);
+                    readOffset += len;
+                    break;
+                case S:
+                    readOffset += len;
+                    break;
+                default:
+                    break;
+            }
+        }
+        md.append(matches);
+        r.setAttribute(SAMTag.MD.name(), md.toString());
+        r.setAttribute(SAMTag.AS.name(), score);
+    }
+
+    /**
+     * minimap2 alignment scoring parameters (see the minimap2 man page).
+     * A gap of length l costs min(q + l * e, q2 + l * e2).
+     */
+    private static class Scoring {
+        private final int match;
+        private final int mismatch;
+        private final int gapOpen;
+        private final int gapExtend;
+        private final int longGapOpen;
+        private final int longGapExtend;
+        private final int ambiguous = 1;
+        private Scoring(int match, int mismatch, int gapOpen, int gapExtend, int longGapOpen, int longGapExtend) {
+            this.match = match;
+            this.mismatch = mismatch;
+            this.gapOpen = gapOpen;
+            this.gapExtend = gapExtend;
+            this.longGapOpen = longGapOpen;
+            this.longGapExtend = longGapExtend;
+        }
+        private int gapPenalty(int length) {
+            return Math.min(gapOpen + length * gapExtend, longGapOpen + length * longGapExtend);
+        }
+        private static Scoring forPreset(MiniMap2Aligner.Preset preset) {
+            switch (preset) {
+                case ASM5:
+                    return new Scoring(1, 19, 39, 3, 81, 1);
+                case ASM10:
+                    return new Scoring(1, 9, 16, 2, 41, 1);
+                case ASM20:
+                    return new Scoring(1, 4, 6, 2, 26, 1);
+                case SR:
+                case SHORT:
+                    return new Scoring(2, 8, 12, 2, 24, 1);
+                case SPLICE:
+                case CDNA:
+                    return new Scoring(1, 2, 2, 1, 32, 0);
+                default:
+                    return new Scoring(2, 4, 4, 2, 24, 1);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        this.aligner.close();
+    }
+}
@@ -0,0 +1,55 @@
+package au.edu.wehi.idsv.alignment;
+
+import au.edu.wehi.idsv.Defaults;
+import au.edu.wehi.idsv.picard.ReferenceLookup;
+import org.broadinstitute.hellbender.utils.minimap2.MiniMap2Aligner;
+import org.broadinstitute.hellbender.utils.minimap2.MiniMap2Index;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs minimap2 through a JNI interface.
+ *
+ * The minimap2 JNI aligns each batch on a single thread so one batch is aligned concurrently per thread.
+ * All aligners share the same index.
+ * Alignments are returned in the same order as the input records.
+ */
+public class Minimap2StreamingAligner extends BatchedStreamingAligner {
+    private final MiniMap2Index index;
+
+    /**
+     * @param referenceFile Reference genome
+     * @param reference reference genome lookup used to calculate the MD and AS tags
+     * @param threads number of minimap2 threads
+     * @param bufferSizeInBases number of base pairs of sequence to buffer.
+     *                          This buffer is evenly split across the input buffer and the batches being aligned.
+     */
+    public Minimap2StreamingAligner(File referenceFile, ReferenceLookup reference, int threads, int bufferSizeInBases) {
+        this(Minimap2Aligner.getMinimap2IndexFor(referenceFile), reference, threads, bufferSizeInBases, MiniMap2Aligner.Preset.valueOf(Defaults.MINIMAP2_PRESET));
+    }
+
+    public Minimap2StreamingAligner(MiniMap2Index index, ReferenceLookup reference, int threads, int bufferSizeInBases, MiniMap2Aligner.Preset preset) {
+        super(createAligners(index, reference, threads, preset), bufferSizeInBases / (2 * Math.max(1, threads)) + 1, "minimap2Driver");
+        this.index = index;
+    }
+
+    private static List<Minimap2Aligner> createAligners(MiniMap2Index index, ReferenceLookup reference, int threads, MiniMap2Aligner.Preset preset) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be at least 1");
+        }
+        List<Minimap2Aligner> aligners = new ArrayList<>(threads);
+        for (int i = 0; i < threads; i++) {
+            aligners.add(new Minimap2Aligner(index, reference, preset));
+        }
+        return aligners;
+    }
+
+    @Override
+    public void close() throws IOException {
+        super.close();
+        index.close();
+    }
+}
@@ -0,0 +1,379 @@
+package au.edu.wehi.idsv.alignment;
+
+import java.util.Arrays;
+
+/**
+ * Pure Java Smith-Waterman aligner using Farrar's striped query profile.
+ *
+ * The alignment end is found using the striped algorithm, the alignment start by
+ * aligning the reversed sequences, and the CIGAR by traceback of the aligned region only.
+ * Non-ACGT bases are treated as N. As with the other aligners, gaps of length n
+ * are penalised gapOpen + (n - 1) * gapExtend.
+ *
+ * Instances are thread-safe. Scratch buffers are reused across alignments on the same thread.
+ *
+ * @author Daniel Cameron
+ *
+ */
+public class StripedSmithWatermanAligner implements Aligner {
+	private static final int LANES = 8;
+	private static final int ALPHABET_SIZE = 5;
+	private static final int NEG_INF = Integer.MIN_VALUE / 4;
+	private static final byte FROM_DIAGONAL = 0;
+	private static final byte FROM_DELETION = 1;
+	private static final byte FROM_INSERTION = 2;
+	private static final byte SOURCE_MASK = 3;
+	private static final byte DELETION_OPENED = 4;
+	private static final byte INSERTION_OPENED = 8;
+	/**
+	 * Largest traceback matrix retained by each thread between alignments.
+	 * Larger alignments allocate a temporary matrix so a single long alignment
+	 * does not permanently pin a large buffer to the thread.
+	 */
+	static final int MAX_CACHED_TRACE_CELLS = 1 << 22;
+	private final int[][] scores = new int[ALPHABET_SIZE][ALPHABET_SIZE];
+	private final int gapOpen;
+	private final int gapExtend;
+	private final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+	public StripedSmithWatermanAligner(int match, int mismatch, int ambiguous, int gapOpen, int gapExtend) {
+		this.gapOpen = gapOpen;
+		this.gapExtend = gapExtend;
+		for (int i = 0; i < ALPHABET_SIZE; i++) {
+			for (int j = 0; j < ALPHABET_SIZE; j++) {
+				if (i == j) {
+					scores[i][j] = match;
+				} else if (i < 4 && j < 4) {
+					scores[i][j] = mismatch;
+				} else {
+					scores[i][j] = ambiguous;
+				}
+			}
+		}
+	}
+	@Override
+	public Alignment align_smith_waterman(byte[] seq, byte[] ref) {
+		if (seq == null || seq.length == 0) {
+			throw new IllegalArgumentException("seq must be non-zero size");
+		}
+		if (ref == null || ref.length == 0) {
+			throw new IllegalArgumentException("ref must be non-zero size");
+		}
+		Scratch s = scratch.get();
+		s.ensureSequenceCapacity(seq.length, ref.length);
+		byte[] query = s.query;
+		byte[] target = s.target;
+		encode(seq, query);
+		encode(ref, target);
+		int best = stripedAlign(s, query, seq.length, target, ref.length, Integer.MAX_VALUE);
+		if (best <= 0) {
+			return new Alignment(0, Integer.toString(seq.length) + "S");
+		}
+		int queryEnd = s.queryEnd;
+		int refEnd = s.refEnd;
+		// The first best scoring cell of the reversed alignment is the start of the forward alignment
+		// since the forward alignment end is the first best scoring cell.
+		byte[] reversedQuery = s.reversedQuery;
+		byte[] reversedTarget = s.reversedTarget;
+		reverse(query, queryEnd + 1, reversedQuery);
+		reverse(target, refEnd + 1, reversedTarget);
+		stripedAlign(s, reversedQuery, queryEnd + 1, reversedTarget, refEnd + 1, best);
+		int queryStart = queryEnd - s.queryEnd;
+		int refStart = refEnd - s.refEnd;
+		String cigar = traceback(s, query, queryStart, queryEnd - queryStart + 1, target, refStart, refEnd - refStart + 1, seq.length);
+		return new Alignment(refStart, cigar);
+	}
+	private static void encode(byte[] seq, byte[] encoded) {
+		for (int i = 0; i < seq.length; i++) {
+			switch (seq[i]) {
+				case 'A':
+				case 'a':
+					encoded[i] = 0;
+					break;
+				case 'C':
+				case 'c':
+					encoded[i] = 1;
+					break;
+				case 'G':
+				case 'g':
+					encoded[i] = 2;
+					break;
+				case 'T':
+				case 't':
+					encoded[i] = 3;
+					break;
+				default:
+					encoded[i] = 4;
+					break;
+			}
+		}
+	}
+	private static void reverse(byte[] seq, int length, byte[] reversed) {
+		for (int i = 0; i < length; i++) {
+			reversed[i] = seq[length - 1 - i];
+		}
+	}
+	/**
+	 * Finds the best local alignment score using Farrar's striped algorithm.
+	 * The end position of the first best scoring alignment (lowest reference then lowest query offset)
+	 * is written to the scratch buffer.
+	 *
+	 * @param stopScore stop once an alignment with this score has been found
+	 * @return best alignment score
+	 */
+	private int stripedAlign(Scratch s, byte[] query, int queryLength, byte[] target, int targetLength, int stopScore) {
+		int segLen = (queryLength + LANES - 1) / LANES;
+		int n = segLen * LANES;
+		s.ensureStripedCapacity(n);
+		int[] profile = s.profile;
+		for (int c = 0; c < ALPHABET_SIZE; c++) {
+			int[] baseScores = scores[c];
+			int offset = c * n;
+			for (int seg = 0; seg < segLen; seg++) {
+				for (int lane = 0; lane < LANES; lane++) {
+					int q = lane * segLen + seg;
+					profile[offset + seg * LANES + lane] = q < queryLength ? baseScores[query[q]] : NEG_INF;
+				}
+			}
+		}
+		int[] hLoad = s.hLoad;
+		int[] hStore = s.hStore;
+		int[] e = s.e;
+		int[] vF = s.vF;
+		int[] vH = s.vH;
+		Arrays.fill(hLoad, 0, n, 0);
+		Arrays.fill(hStore, 0, n, 0);
+		Arrays.fill(e, 0, n, NEG_INF);
+		int lastSegmentOffset = (segLen - 1) * LANES;
+		int best = 0;
+		s.queryEnd = -1;
+		s.refEnd = -1;
+		for (int j = 0; j < targetLength; j++) {
+			int profileOffset = target[j] * n;
+			// H of the previous column, shifted down one query position
+			for (int lane = LANES - 1; lane > 0; lane--) {
+				vH[lane] = hStore[lastSegmentOffset + lane - 1];
+			}
+			vH[0] = 0;
+			Arrays.fill(vF, NEG_INF);
+			int[] tmp = hLoad;
+			hLoad = hStore;
+			hStore = tmp;
+			int columnMax = 0;
+			for (int seg = 0; seg < segLen; seg++) {
+				int offset = seg * LANES;
+				for (int lane = 0; lane < LANES; lane++) {
+					int v = offset + lane;
+					int ev = e[v];
+					int fv = vF[lane];
+					int h = Math.max(Math.max(vH[lane] + profile[profileOffset + v], 0), Math.max(ev, fv));
+					hStore[v] = h;
+					columnMax = Math.max(columnMax, h);
+					int hOpen = h - gapOpen;
+					e[v] = Math.max(ev - gapExtend, hOpen);
+					vF[lane] = Math.max(fv - gapExtend, hOpen);
+					vH[lane] = hLoad[v];
+				}
+			}
+			// Lazy-F loop: propagate insertions across segment boundaries
+			lazyF:
+			for (int k = 0; k < LANES; k++) {
+				for (int lane = LANES - 1; lane > 0; lane--) {
+					vF[lane] = vF[lane - 1];
+				}
+				vF[0] = NEG_INF;
+				for (int seg = 0; seg < segLen; seg++) {
+					int offset = seg * LANES;
+					boolean propagate = false;
+					for (int lane = 0; lane < LANES; lane++) {
+						int v = offset + lane;
+						int h = hStore[v];
+						int fv = vF[lane];
+						if (fv > h) {
+							h = fv;
+							hStore[v] = h;
+							columnMax = Math.max(columnMax, h);
+							e[v] = Math.max(e[v], h - gapOpen);
+						}
+						fv -= gapExtend;
+						vF[lane] = fv;
+						propagate |= fv > h - gapOpen;
+					}
+					if (!propagate) break lazyF;
+				}
+			}
+			if (columnMax > best) {
+				best = columnMax;
+				s.refEnd = j;
+				for (int q = 0; q < queryLength; q++) {
+					if (hStore[(q % segLen) * LANES + q / segLen] == columnMax) {
+						s.queryEnd = q;
+						break;
+					}
+				}
+				if (best >= stopScore) break;
+			}
+		}
+		return best;
+	}
+	/**
+	 * Global alignment of the aligned region with traceback
+	 * @return CIGAR of the full query sequence
+	 */
+	private String traceback(Scratch s, byte[] query, int queryStart, int queryLength, byte[] target, int refStart, int refLength, int fullQueryLength) {
+		int cols = refLength + 1;
+		byte[] trace = s.ensureTracebackCapacity((queryLength + 1) * cols, cols, queryLength + refLength);
+		int[] hPrev = s.hRow;
+		int[] fPrev = s.fRow;
+		hPrev[0] = 0;
+		Arrays.fill(hPrev, 1, cols, NEG_INF);
+		Arrays.fill(fPrev, 0, cols, NEG_INF);
+		for (int i = 1; i <= queryLength; i++) {
+			int[] baseScores = scores[query[queryStart + i - 1]];
+			int diag = hPrev[0];
+			hPrev[0] = NEG_INF;
+			int hLeft = NEG_INF;
+			int eCur = NEG_INF;
+			int rowOffset = i * cols;
+			for (int j = 1; j < cols; j++) {
+				byte t = 0;
+				int eOpen = hLeft - gapOpen;
+				int eExtend = eCur - gapExtend;
+				if (eOpen >= eExtend) {
+					eCur = eOpen;
+					t |= DELETION_OPENED;
+				} else {
+					eCur = eExtend;
+				}
+				int fOpen = hPrev[j] - gapOpen;
+				int fExtend = fPrev[j] - gapExtend;
+				int fCur;
+				if (fOpen >= fExtend) {
+					fCur = fOpen;
+					t |= INSERTION_OPENED;
+				} else {
+					fCur = fExtend;
+				}
+				fPrev[j] = fCur;
+				int h = diag + baseScores[target[refStart + j - 1]];
+				byte source = FROM_DIAGONAL;
+				if (eCur > h) {
+					h = eCur;
+					source = FROM_DELETION;
+				}
+				if (fCur > h) {
+					h = fCur;
+					source = FROM_INSERTION;
+				}
+				diag = hPrev[j];
+				hPrev[j] = h;
+				hLeft = h;
+				trace[rowOffset + j] = (byte)(t | source);
+			}
+		}
+		// operations are written in reverse order
+		char[] ops = s.ops;
+		int opCount = 0;
+		int i = queryLength;
+		int j = refLength;
+		byte state = SOURCE_MASK; // in H matrix
+		while (i > 0 || j > 0) {
+			byte t = trace[i * cols + j];
+			if (state == SOURCE_MASK) {
+				byte source = (byte)(t & SOURCE_MASK);
+				if (source == FROM_DIAGONAL) {
+					ops[opCount++] = 'M';
+					i--;
+					j--;
+				} else {
+					state = source;
+				}
+			} else if (state == FROM_DELETION) {
+				ops[opCount++] = 'D';
+				j--;
+				if ((t & DELETION_OPENED) != 0) state = SOURCE_MASK;
+			} else {
+				ops[opCount++] = 'I';
+				i--;
+				if ((t & INSERTION_OPENED) != 0) state = SOURCE_MASK;
+			}
+		}
+		StringBuilder sb = new StringBuilder();
+		if (queryStart > 0) {
+			sb.append(queryStart);
+			sb.append('S');
+		}
+		int k = opCount - 1;
+		while (k >= 0) {
+			char op = ops[k];
+			int length = 0;
+			while (k >= 0 && ops[k] == op) {
+				length++;
+				k--;
+			}
+			sb.append(length);
+			sb.append(op);
+		}
+		int endClip = fullQueryLength - queryStart - queryLength;
+		if (endClip > 0) {
+			sb.append(endClip);
+			sb.append('S');
+		}
+		return sb.toString();
+	}
+	private static class Scratch {
+		private byte[] query = new byte[0];
+		private byte[] target = new byte[0];
+		private byte[] reversedQuery = new byte[0];
+		private byte[] reversedTarget = new byte[0];
+		private int[] profile = new int[0];
+		private int[] hLoad = new int[0];
+		private int[] hStore = new int[0];
+		private int[] e = new int[0];
+		private final int[] vF = new int[LANES];
+		private final int[] vH = new int[LANES];
+		private byte[] trace = new byte[0];
+		private int[] hRow = new int[0];
+		private int[] fRow = new int[0];
+		private char[] ops = new char[0];
+		private int queryEnd;
+		private int refEnd;
+		private void ensureSequenceCapacity(int queryLength, int targetLength) {
+			if (query.length < queryLength) {
+				query = new byte[queryLength];
+				reversedQuery = new byte[queryLength];
+			}
+			if (target.length < targetLength) {
+				target = new byte[targetLength];
+				reversedTarget = new byte[targetLength];
+			}
+		}
+		private void ensureStripedCapacity(int n) {
+			if (hLoad.length < n) {
+				profile = new int[ALPHABET_SIZE * n];
+				hLoad = new int[n];
+				hStore = new int[n];
+				e = new int[n];
+			}
+		}
+		/**
+		 * @return traceback matrix with at least the given number of cells
+		 */
+		private byte[] ensureTracebackCapacity(int cells, int cols, int maxOps) {
+			byte[] result = trace;
+			if (trace.length < cells) {
+				result = new byte[cells];
+				if (cells <= MAX_CACHED_TRACE_CELLS) {
+					trace = result;
+				}
+			}
+			if (hRow.length < cols) {
+				hRow = new int[cols];
+				fRow = new int[cols];
+			}
+			if (ops.length < maxOps) {
+				ops = new char[maxOps];
+			}
+			return result;
+		}
+	}
+}
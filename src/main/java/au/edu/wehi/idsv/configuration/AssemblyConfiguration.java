@@ -23,6 +23,9 @@ public class AssemblyConfiguration {
 		recoverAfterError = config.getBoolean("recoverAfterError");
 		longReadReadLengthThreshold = config.getInt("longReadReadLengthThreshold");
 		maximumReproductionExportPackages = config.getInt("maximumReproductionExportPackages");
+		chunkSplitCostMultiple = config.getDouble("chunkSplitCostMultiple");
+		minSubchunkSize = config.getInt("minSubchunkSize");
+		checkpointSize = config.getInt("checkpointSize");
 	}
 	public ErrorCorrectionConfiguration errorCorrection;
 	public DownsamplingConfiguration downsampling;
@@ -94,4 +97,21 @@ public class AssemblyConfiguration {
 	 * Only make this many export packages
 	 */
 	public int maximumReproductionExportPackages;
+	/**
+	 * Assembly chunks with an estimated workload exceeding this multiple of the median
+	 * chunk workload are split into smaller sub-chunks. Zero disables chunk splitting.
+	 */
+	public double chunkSplitCostMultiple;
+	/**
+	 * Minimum size (in bases) of the sub-chunks created when splitting an excessively
+	 * expensive assembly chunk.
+	 */
+	public int minSubchunkSize;
+	/**
+	 * Size (in bases) of the assembly chunk segments after which assembly progress is checkpointed.
+	 * An interrupted chunk resumes from the first segment not yet completed.
+	 * Segment boundaries behave as chunk boundaries so assembly results can differ
+	 * from unsegmented assembly. Zero disables intra-chunk checkpointing.
+	 */
+	public int checkpointSize;
 }
@@ -15,6 +15,8 @@ public class PositionalAssemblyConfiguration {
 		forceFullMemoizationRecalculationAt = config.getFloat("forceFullMemoizationRecalculationAt");
 		safetyModePathCountThreshold = config.getInt("safetyModePathCountThreshold");
 		safetyModeContigsToCall = config.getInt("safetyModeContigsToCall");
+		memoryBudgetHeapPortion = config.getFloat("memoryBudgetHeapPortion");
+		memoryBudgetFlushPortion = config.getFloat("memoryBudgetFlushPortion");
 		if (retainWidthMultiple < 1) {
 			throw new IllegalArgumentException("retainWidthMultiple must be at least 1");
 		}
@@ -24,6 +26,9 @@ public class PositionalAssemblyConfiguration {
 		if (maximumNodeDensity <= 0) {
 			throw new IllegalArgumentException("maximumNodeDensity must be positive");
 		}
+		if (memoryBudgetFlushPortion <= 0 || memoryBudgetFlushPortion > 1) {
+			throw new IllegalArgumentException("memoryBudgetFlushPortion must be in the range (0, 1]");
+		}
 	}
 	/**
 	 * Maximum length of a single path node. Leaves longer that this length will not be collapsed.
@@ -76,4 +81,20 @@ public class PositionalAssemblyConfiguration {
 	 * Number of memoized paths to enter safety mode
 	 */
 	public final int safetyModePathCountThreshold;
+	/**
+	 * Portion of the maximum JVM heap size that all concurrently running assemblers can use.
+	 * 
+	 * When the estimated memory usage exceeds this budget, assemblers holding more than
+	 * their share of the budget error correct and downsample the evidence in their graph.
+	 * Assembly memory usage is not limited if this value is zero.
+	 *
+	 * As the budget is shared, enabling it makes assembly results dependent on the
+	 * JVM heap size and the progress of concurrently running assemblers.
+	 */
+	public float memoryBudgetHeapPortion;
+	/**
+	 * Portion of the assembly memory budget at which assemblers start calling contigs as soon as
+	 * they are outside the retain window.
+	 */
+	public float memoryBudgetFlushPortion;
 }
\ No newline at end of file
@@ -255,6 +255,14 @@ public class PackedSequence implements Serializable {
 	public long[] asLongArray() {
 		return packed;
 	}
+	/**
+	 * Overwrites this sequence with the bases of the given sequence
+	 * @param ps sequence of the same length as this sequence
+	 */
+	public void copyFrom(PackedSequence ps) {
+		if (ps.baseCount != baseCount) throw new IllegalArgumentException("sequence lengths must match");
+		System.arraycopy(ps.packed, 0, packed, 0, packed.length);
+	}
 
     public void setKmer(long kmer, int offset, int k) {
 		long existingKmer = getKmer(offset, k);
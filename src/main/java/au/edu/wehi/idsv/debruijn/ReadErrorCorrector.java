@@ -8,24 +8,53 @@ import htsjdk.samtools.SAMRecord;
 import htsjdk.samtools.util.Log;
 import htsjdk.samtools.util.SequenceUtil;
 import it.unimi.dsi.fastutil.Hash;
-import it.unimi.dsi.fastutil.longs.Long2IntMap;
 import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
 import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
-import it.unimi.dsi.fastutil.longs.LongSet;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ReferenceLinkedOpenHashSet;
 
-import java.util.HashSet;
-import java.util.Set;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 
 public class ReadErrorCorrector {
     private static final Log log = Log.getInstance(ReadErrorCorrector.class);
-    private final Long2IntMap kmerCounts = new Long2IntOpenHashMap();
+    private final Long2IntOpenHashMap kmerCounts = new Long2IntOpenHashMap();
     private final int k;
-    private final float kmerErrorCorrectionMultiple;
+    private float kmerErrorCorrectionMultiple;
     private final boolean deduplicateReadKmers;
     private final int maxCorrectionsInKmer;
+    /**
+     * Reads whose kmers are currently counted, keyed by read identity.
+     * Mates can be counted in the opposite orientation to the read itself
+     * so reverse complemented reads are tracked separately.
+     */
+    private final Reference2ObjectOpenHashMap<SAMRecord, CountedRead> forwardReads = new Reference2ObjectOpenHashMap<>();
+    private final Reference2ObjectOpenHashMap<SAMRecord, CountedRead> reverseComplementReads = new Reference2ObjectOpenHashMap<>();
+    /**
+     * Reusable per-read kmer deduplication buffer
+     */
+    private final LongOpenHashSet encountered = new LongOpenHashSet(256, Hash.FAST_LOAD_FACTOR);
     private int maxCount = 0;
+    /**
+     * Kmers have been removed since maxCount was last calculated
+     * so maxCount is an upper bound on the actual maximum count
+     */
+    private boolean maxCountStale = false;
     private int maxCollapseCount = 0;
 
+    private static class CountedRead {
+        private final SAMRecord read;
+        private final boolean reverseComplement;
+        private final PackedSequence sequence;
+        private int references = 0;
+        private CountedRead(SAMRecord read, boolean reverseComplement) {
+            this.read = read;
+            this.reverseComplement = reverseComplement;
+            this.sequence = new PackedSequence(read.getReadBases(), reverseComplement, reverseComplement);
+        }
+    }
+
     public ReadErrorCorrector(ErrorCorrectionConfiguration ecc) {
         this(ecc.k, ecc.kmerErrorCorrectionMultiple, ecc.maxCorrectionsInKmer, ecc.deduplicateReadKmers);
     }
@@ -47,71 +76,217 @@ public class ReadErrorCorrector {
      */
     public static void errorCorrect(int k, float kmerErrorCorrectionMultiple, int maxCorrectionsInKmer, boolean deduplicateReadKmers, Iterable<? extends DirectedEvidence> evidence) {
         ReadErrorCorrector ec = new ReadErrorCorrector(k, kmerErrorCorrectionMultiple, maxCorrectionsInKmer, deduplicateReadKmers);
-        // need to deduplicate the underlying reads so we don't double count
-        // kmers from reads with multiple evidence (e.g. multiple indels or SC on both ends)
-        Set<SAMRecord> reads = new HashSet<>();
-        Set<SAMRecord> rcreads = new HashSet<>();
         for (DirectedEvidence de : evidence) {
-            reads.add(de.getUnderlyingSAMRecord());
-            if (de instanceof NonReferenceReadPair) {
-                SAMRecord mate = ((NonReferenceReadPair) de).getNonReferenceRead();
-                if ((de.getBreakendSummary().direction == BreakendDirection.Forward) ^ mate.getReadNegativeStrandFlag()) {
-                    rcreads.add(mate);
-                } else {
-                    reads.add(mate);
+            ec.add(de);
+        }
+        ec.errorCorrect();
+    }
+
+    /**
+     * Counts the kmers of the reads underlying the given evidence.
+     * Reads with multiple evidence (e.g. multiple indels or SC on both ends)
+     * are only counted once.
+     */
+    public void add(DirectedEvidence de) {
+        addRead(de.getUnderlyingSAMRecord(), false);
+        if (de instanceof NonReferenceReadPair) {
+            SAMRecord mate = ((NonReferenceReadPair) de).getNonReferenceRead();
+            addRead(mate, isMateReverseComplemented(de, mate));
+        }
+    }
+
+    /**
+     * Removes the kmers of the reads underlying the given evidence from the kmer counts.
+     * Reads are removed once all evidence added for that read has been removed.
+     */
+    public void remove(DirectedEvidence de) {
+        removeRead(de.getUnderlyingSAMRecord(), false);
+        if (de instanceof NonReferenceReadPair) {
+            SAMRecord mate = ((NonReferenceReadPair) de).getNonReferenceRead();
+            removeRead(mate, isMateReverseComplemented(de, mate));
+        }
+    }
+
+    private static boolean isMateReverseComplemented(DirectedEvidence de, SAMRecord mate) {
+        return (de.getBreakendSummary().direction == BreakendDirection.Forward) ^ mate.getReadNegativeStrandFlag();
+    }
+
+    private void addRead(SAMRecord r, boolean reverseComplement) {
+        Reference2ObjectOpenHashMap<SAMRecord, CountedRead> lookup = reverseComplement ? reverseComplementReads : forwardReads;
+        CountedRead cr = lookup.get(r);
+        if (cr == null) {
+            cr = new CountedRead(r, reverseComplement);
+            lookup.put(r, cr);
+            countKmers(cr.sequence, 1);
+        }
+        cr.references++;
+    }
+
+    private void removeRead(SAMRecord r, boolean reverseComplement) {
+        Reference2ObjectOpenHashMap<SAMRecord, CountedRead> lookup = reverseComplement ? reverseComplementReads : forwardReads;
+        CountedRead cr = lookup.get(r);
+        if (cr == null) {
+            throw new IllegalArgumentException("Read " + r.getReadName() + " not counted");
+        }
+        cr.references--;
+        if (cr.references == 0) {
+            lookup.remove(r);
+            countKmers(cr.sequence, -1);
+        }
+    }
+
+    /**
+     * Error corrects all reads currently counted.
+     *
+     * Every read is corrected against the same kmer counts. The counts are updated to
+     * reflect the corrected read sequences once all reads have been corrected.
+     * @return number of reads changed
+     */
+    public int errorCorrect() {
+        List<CountedRead> reads = new ArrayList<>(forwardReads.size() + reverseComplementReads.size());
+        reads.addAll(forwardReads.values());
+        reads.addAll(reverseComplementReads.values());
+        return errorCorrectCountedReads(reads);
+    }
+
+    /**
+     * Error corrects only the reads underlying the given evidence.
+     *
+     * Reads are corrected against the kmers currently counted together with
+     * the kmers of the given evidence. Evidence not already counted is only
+     * counted for the duration of the correction.
+     * @param kmerErrorCorrectionMultiple kmer abundance relative to maximum kmer to use instead of the configured multiple
+     * @return number of reads changed
+     */
+    public int errorCorrect(Collection<? extends DirectedEvidence> evidence, float kmerErrorCorrectionMultiple) {
+        float configuredKmerErrorCorrectionMultiple = this.kmerErrorCorrectionMultiple;
+        for (DirectedEvidence de : evidence) {
+            add(de);
+        }
+        try {
+            this.kmerErrorCorrectionMultiple = kmerErrorCorrectionMultiple;
+            refreshMaxCollapseCount();
+            ReferenceLinkedOpenHashSet<CountedRead> reads = new ReferenceLinkedOpenHashSet<>();
+            for (DirectedEvidence de : evidence) {
+                reads.add(forwardReads.get(de.getUnderlyingSAMRecord()));
+                if (de instanceof NonReferenceReadPair) {
+                    SAMRecord mate = ((NonReferenceReadPair) de).getNonReferenceRead();
+                    Reference2ObjectOpenHashMap<SAMRecord, CountedRead> lookup = isMateReverseComplemented(de, mate) ? reverseComplementReads : forwardReads;
+                    reads.add(lookup.get(mate));
                 }
             }
+            return errorCorrectCountedReads(reads);
+        } finally {
+            this.kmerErrorCorrectionMultiple = configuredKmerErrorCorrectionMultiple;
+            refreshMaxCollapseCount();
+            for (DirectedEvidence de : evidence) {
+                remove(de);
+            }
+        }
+    }
+
+    /**
+     * Corrects the given reads against the same kmer counts then moves the
+     * counts of the changed reads to their corrected sequences.
+     *
+     * Only the reads that changed keep a copy of their uncorrected sequence
+     * until the counts have been updated.
+     */
+    private int errorCorrectCountedReads(Collection<CountedRead> reads) {
+        List<CountedRead> changed = new ArrayList<>();
+        List<PackedSequence> uncorrected = new ArrayList<>();
+        PackedSequence scratch = null;
+        for (CountedRead cr : reads) {
+            if (scratch == null || scratch.length() != cr.sequence.length()) {
+                scratch = new PackedSequence(cr.sequence);
+            } else {
+                scratch.copyFrom(cr.sequence);
+            }
+            if (errorCorrect(cr.sequence, scratch) > 0) {
+                writeReadBases(cr.read, cr.sequence, cr.reverseComplement);
+                changed.add(cr);
+                uncorrected.add(scratch);
+                scratch = null;
+            }
+        }
+        for (int i = 0; i < changed.size(); i++) {
+            countKmers(uncorrected.get(i), -1);
+            countKmers(changed.get(i).sequence, 1);
         }
-        // TODO: cache PackedSequence
-        reads.stream().forEach(r -> ec.countKmers(r, false));
-        rcreads.stream().forEach(r -> ec.countKmers(r, true));
-        reads.stream().forEach(r -> ec.errorCorrect(r, false));
-        rcreads.stream().forEach(r -> ec.errorCorrect(r, true));
+        return changed.size();
     }
 
     public void countKmers(SAMRecord r, boolean reverseComplement) {
-        PackedSequence ps = new PackedSequence(r.getReadBases(), reverseComplement, reverseComplement);
-        LongSet encountered = new LongOpenHashSet(Math.max(1, ps.length() - k + 1), Hash.FAST_LOAD_FACTOR);
+        countKmers(new PackedSequence(r.getReadBases(), reverseComplement, reverseComplement), 1);
+    }
+
+    /**
+     * Updates the kmer counts
+     * @param ps sequence to count
+     * @param delta 1 to add the sequence kmers, -1 to remove them
+     */
+    private void countKmers(PackedSequence ps, int delta) {
+        if (this.deduplicateReadKmers) {
+            encountered.clear();
+        }
         for (int i = 0; i < ps.length() - k + 1; i++) {
             long kmer = ps.getKmer(i, k);
-            if (this.deduplicateReadKmers && encountered.contains(kmer)) {
+            if (this.deduplicateReadKmers && !encountered.add(kmer)) {
                 continue;
             }
-            int count = kmerCounts.get(kmer);
-            count++;
-            kmerCounts.put(kmer, count);
+            int count = kmerCounts.addTo(kmer, delta) + delta;
             if (count > maxCount) {
                 maxCount = count;
                 refreshMaxCollapseCount();
+            } else if (count <= 0) {
+                kmerCounts.remove(kmer);
             }
-            if (this.deduplicateReadKmers) {
-                encountered.add(kmer);
+            if (delta < 0 && count - delta >= maxCount) {
+                maxCountStale = true;
             }
         }
     }
+
     public int errorCorrect(SAMRecord r, boolean reverseComplement) {
         if (r.getReadLength() < k) return 0;
         PackedSequence ps = new PackedSequence(r.getReadBases(), reverseComplement, reverseComplement);
         PackedSequence oldps = new PackedSequence(ps);
+        int basesChanged = errorCorrect(ps, oldps);
+        if (basesChanged > 0) {
+            writeReadBases(r, ps, reverseComplement);
+        }
+        //debug_dump_changes(r, ps, oldps);
+        return basesChanged;
+    }
+
+    /**
+     * Error corrects the given sequence in place
+     * @param ps sequence to correct
+     * @param oldps copy of the sequence prior to correction
+     * @return number of bases changed
+     */
+    private int errorCorrect(PackedSequence ps, PackedSequence oldps) {
+        if (ps.length() < k) return 0;
+        refreshMaxCount();
         int basesChanged = 0;
         basesChanged += musket_two_sided(ps);
         basesChanged += musket_one_sided_greedy_without_voting(ps);
-        if (basesChanged > 0) {
-            if (basesChanged > maxCorrectionsInKmer && tooManyDifferencesInWindow(ps, oldps)) {
-                // discard the changes - too much in a window
-                basesChanged = 0;
-            } else {
-                byte[] seq = ps.getBytes(0, r.getReadBases().length);
-                if (reverseComplement) {
-                    SequenceUtil.reverseComplement(seq);
-                }
-                r.setReadBases(seq);
-            }
+        if (basesChanged > maxCorrectionsInKmer && tooManyDifferencesInWindow(ps, oldps)) {
+            // discard the changes - too much in a window
+            ps.copyFrom(oldps);
+            basesChanged = 0;
         }
-        //debug_dump_changes(r, ps, oldps);
         return basesChanged;
     }
 
+    private static void writeReadBases(SAMRecord r, PackedSequence ps, boolean reverseComplement) {
+        byte[] seq = ps.getBytes(0, ps.length());
+        if (reverseComplement) {
+            SequenceUtil.reverseComplement(seq);
+        }
+        r.setReadBases(seq);
+    }
+
     private boolean tooManyDifferencesInWindow(PackedSequence ps1, PackedSequence ps2) {
         for (int i = 0; i < ps1.length() - (k - 1); i++) {
             int diff = KmerEncodingHelper.basesDifference(k, ps1.getKmer(i, k), ps2.getKmer(i, k));
@@ -152,6 +327,19 @@ public class ReadErrorCorrector {
         System.err.printf("\n");
     }
 
+    /**
+     * Recalculates the maximum kmer count if kmers have been removed
+     */
+    private void refreshMaxCount() {
+        if (maxCountStale) {
+            maxCount = 0;
+            for (int count : kmerCounts.values()) {
+                maxCount = Math.max(maxCount, count);
+            }
+            maxCountStale = false;
+            refreshMaxCollapseCount();
+        }
+    }
     /**
      * Max count that we will consider collapsing. All kmers above this threshold are safe from
      * error correction
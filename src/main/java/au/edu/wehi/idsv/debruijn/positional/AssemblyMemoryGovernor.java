@@ -0,0 +1,108 @@
+package au.edu.wehi.idsv.debruijn.positional;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tracks the approximate memory held by concurrently running assemblers
+ * against a shared memory budget.
+ *
+ * Each assembler reports its estimated memory usage through its own account
+ * and is informed of the response required to keep the total within budget.
+ *
+ * @author Daniel Cameron
+ *
+ */
+public class AssemblyMemoryGovernor {
+	public enum Pressure {
+		/**
+		 * Memory usage is within budget
+		 */
+		NONE,
+		/**
+		 * Memory usage is approaching the budget. Contigs should be called as early as possible.
+		 */
+		FLUSH,
+		/**
+		 * Memory budget exceeded and this assembler holds more than its share.
+		 * Evidence should be error corrected and downsampled.
+		 */
+		DOWNSAMPLE,
+	}
+	private final long budget;
+	private final long flushThreshold;
+	private final AtomicLong allocated = new AtomicLong();
+	private final AtomicInteger activeAccounts = new AtomicInteger();
+	/**
+	 * @param budget memory budget in bytes. Memory usage is not limited if the budget is not positive.
+	 * @param flushPortion portion of the budget at which early contig flushing starts
+	 */
+	public AssemblyMemoryGovernor(long budget, float flushPortion) {
+		this.budget = budget;
+		this.flushThreshold = (long)(budget * flushPortion);
+	}
+	/**
+	 * Creates a governor with a budget of the given portion of the maximum JVM heap size
+	 */
+	public static AssemblyMemoryGovernor forHeapPortion(float heapPortion, float flushPortion) {
+		return new AssemblyMemoryGovernor((long)(Runtime.getRuntime().maxMemory() * (double)heapPortion), flushPortion);
+	}
+	public long getBudget() {
+		return budget;
+	}
+	/**
+	 * @return total estimated bytes held by all open accounts
+	 */
+	public long getAllocated() {
+		return allocated.get();
+	}
+	public Account openAccount() {
+		activeAccounts.incrementAndGet();
+		return new Account();
+	}
+	private Pressure pressure(long bytes) {
+		if (budget <= 0) return Pressure.NONE;
+		long total = allocated.get();
+		if (total > budget && bytes > budget / Math.max(1, activeAccounts.get())) {
+			return Pressure.DOWNSAMPLE;
+		}
+		if (total > flushThreshold) {
+			return Pressure.FLUSH;
+		}
+		return Pressure.NONE;
+	}
+	/**
+	 * Memory usage of a single assembler
+	 */
+	public class Account {
+		private long bytes = 0;
+		private boolean closed = false;
+		private Account() {
+		}
+		/**
+		 * Updates the memory held by this account
+		 * @param bytes estimated bytes currently held
+		 * @return response required to remain within the memory budget
+		 */
+		public Pressure update(long bytes) {
+			if (closed) throw new IllegalStateException("Account closed");
+			allocated.addAndGet(bytes - this.bytes);
+			this.bytes = bytes;
+			return pressure(bytes);
+		}
+		public long getBytes() {
+			return bytes;
+		}
+		/**
+		 * Releases all memory held by this account
+		 */
+		public void close() {
+			if (!closed) {
+				allocated.addAndGet(-bytes);
+				activeAccounts.decrementAndGet();
+				bytes = 0;
+				closed = true;
+			}
+		}
+	}
+}
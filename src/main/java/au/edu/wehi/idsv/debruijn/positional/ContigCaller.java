@@ -33,6 +33,10 @@ public abstract class ContigCaller {
 	}
 	public abstract boolean sanityCheck();
 	public abstract int memoizedNodeCount();
+	/**
+	 * @return approximate number of bytes held by the contig caller
+	 */
+	public abstract long estimatedMemoryUsage();
 	public abstract int tracking_frontierSize();
 	public abstract MemoizationStats tracking_lastRemoval();
 }
\ No newline at end of file
@@ -1,14 +1,17 @@
 package au.edu.wehi.idsv.debruijn.positional;
 
 import au.edu.wehi.idsv.Defaults;
+import au.edu.wehi.idsv.EvidenceIdentifier;
+import au.edu.wehi.idsv.EvidenceIdentifierMap;
 import au.edu.wehi.idsv.util.IntervalUtil;
 import htsjdk.samtools.util.Log;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
 import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
 import it.unimi.dsi.fastutil.longs.LongArrayList;
-import it.unimi.dsi.fastutil.longs.LongLinkedOpenHashSet;
-import it.unimi.dsi.fastutil.longs.LongSortedSet;
-import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
 import it.unimi.dsi.fastutil.objects.ObjectOpenHashSet;
+import org.apache.commons.lang3.ArrayUtils;
 
 import java.io.File;
 import java.io.FileNotFoundException;
@@ -28,10 +31,95 @@ import static au.edu.wehi.idsv.Defaults.SANITY_CHECK_EVIDENCE_TRACKER;
 public class EvidenceTracker {
 	private static final Log log = Log.getInstance(EvidenceTracker.class);
 	//public static EvidenceTracker TEMP_HACK_CURRENT_TRACKER = null;
-	private final Long2ObjectOpenHashMap<LinkedList<KmerSupportNode>> lookup = new Long2ObjectOpenHashMap<>();
-	private final Object2ObjectOpenHashMap<String, List<KmerEvidence>> id = new Object2ObjectOpenHashMap<>();
+	private static final int MAX_POOLED_SUPPORT_LISTS = 4096;
+	/*
+	 * Memory estimates assume a 64-bit JVM with compressed oops: 12 byte object headers,
+	 * 16 byte array headers, 4 byte references and 8 byte object alignment.
+	 */
+	/**
+	 * Approximate bytes retained per tracked evidence excluding the per-base costs
+	 * included in {@link #BYTES_PER_SUPPORT}
+	 */
+	private static final int BYTES_PER_EVIDENCE =
+			136 // SAMRecord fields
+			+ 80 // read name String of around 40 characters
+			+ 136 // Cigar, element list and 3 CigarElements
+			+ 256 // linked list of 5 auxiliary tags and their values
+			+ 64 // DirectedEvidence
+			+ 112 // KmerEvidence and the headers of its packed sequence and tracker slot arrays
+			+ 96; // EvidenceIdentifier, identifier lookup entry, evidence group array and handle
+	/**
+	 * Approximate bytes retained per kmer lookup entry and support list
+	 */
+	private static final int BYTES_PER_KMER =
+			16 // lookup slot: 8 byte key and 4 byte reference at 0.75 load factor
+			+ 24 // SupportList
+			+ 2 * 32; // initial 4 element evidence and offset arrays
+	/**
+	 * Approximate bytes retained per kmer support entry
+	 */
+	private static final int BYTES_PER_SUPPORT =
+			2 * (4 + 4) // evidence reference and offset with up to half the support list capacity unused
+			+ 4 // KmerEvidence tracker slot
+			+ 2; // read base and base quality
+	private final Long2ObjectOpenHashMap<SupportList> lookup = new Long2ObjectOpenHashMap<>();
+	/**
+	 * Evidence identifier to tracked KmerEvidence lookup
+	 */
+	private final EvidenceIdentifierMap<KmerEvidence[]> id = new EvidenceIdentifierMap<>();
+	/**
+	 * KmerEvidence associated with each tracking handle. Null entries are available for reuse. 
+	 */
+	private final ObjectArrayList<KmerEvidence[]> handleEvidence = new ObjectArrayList<>();
+	private final IntArrayList freeHandles = new IntArrayList();
+	private final ArrayDeque<SupportList> supportListPool = new ArrayDeque<>();
 	private long evidenceTotal = 0;
+	private long supportCount = 0;
 	private PrintWriter debugFile = null;
+	/**
+	 * Array-backed list of the evidence supporting a given kmer.
+	 * Each entry is stored as the evidence and the kmer offset within that evidence
+	 * with the position of each entry written back to the evidence so entries can be
+	 * removed in constant time.
+	 */
+	private static class SupportList {
+		private KmerEvidence[] evidence = new KmerEvidence[4];
+		private int[] offset = new int[4];
+		private int size = 0;
+		public void add(KmerEvidence ke, int kmerOffset) {
+			if (size == evidence.length) {
+				evidence = Arrays.copyOf(evidence, 2 * size);
+				offset = Arrays.copyOf(offset, 2 * size);
+			}
+			evidence[size] = ke;
+			offset[size] = kmerOffset;
+			ke.trackerSlot[kmerOffset] = size;
+			size++;
+		}
+		/**
+		 * Removes the given entry by replacing it with the last entry
+		 */
+		public void remove(int index) {
+			KmerEvidence ke = evidence[index];
+			ke.trackerSlot[offset[index]] = -1;
+			size--;
+			if (index != size) {
+				evidence[index] = evidence[size];
+				offset[index] = offset[size];
+				evidence[index].trackerSlot[offset[index]] = index;
+			}
+			evidence[size] = null;
+		}
+		public int lastStart(int index) {
+			return evidence[index].startPosition() + offset[index];
+		}
+		public int lastEnd(int index) {
+			return evidence[index].endPosition() + offset[index];
+		}
+		public int weight(int index) {
+			return evidence[index].weight(offset[index]);
+		}
+	}
 	/**
 	 * Tracks evidence emitted from the given iterator
 	 */
@@ -55,29 +143,83 @@ public class EvidenceTracker {
 	 * @param support
 	 */
 	public KmerSupportNode track(KmerSupportNode support) {
+		KmerEvidence ke = support.evidence();
+		int offset = support.offset();
+		int handle = getOrCreateHandle(ke);
+		if (ke.trackerSlot == null) {
+			ke.trackerSlot = new int[ke.length()];
+			Arrays.fill(ke.trackerSlot, -1);
+		}
+		if (ke.trackerSlot[offset] >= 0) {
+			// already tracking this node
+			return support;
+		}
 		long kmer = support.lastKmer();
-		LinkedList<KmerSupportNode> list = lookup.get(kmer);
+		SupportList list = lookup.get(kmer);
 		if (list == null) {
-			list = new LinkedList<KmerSupportNode>();
+			list = supportListPool.isEmpty() ? new SupportList() : supportListPool.pop();
 			lookup.put(kmer, list);
 		}
-		list.add(support);
-		KmerEvidence ke = support.evidence();
-		String evidenceId = ke.evidence().getEvidenceID();
-		List<KmerEvidence> idvalue = id.get(evidenceId);
-		if (idvalue == null) {
+		list.add(ke, offset);
+		supportCount++;
+		return support;
+	}
+	/**
+	 * Gets the tracking handle for the given evidence, allocating a new handle if required.
+	 * The evidence ID lookup is only performed the first time each KmerEvidence is tracked.
+	 */
+	private int getOrCreateHandle(KmerEvidence ke) {
+		int handle = ke.trackerHandle;
+		if (handle >= 0 && handle < handleEvidence.size() && containsInstance(handleEvidence.get(handle), ke)) {
+			return handle;
+		}
+		EvidenceIdentifier evidenceId = ke.evidence().getEvidenceIdentifier();
+		KmerEvidence[] existing = id.get(evidenceId);
+		if (existing == null) {
 			evidenceTotal++;
-			idvalue = new ArrayList<>();
-			id.put(evidenceId, idvalue);
+			if (freeHandles.isEmpty()) {
+				handle = handleEvidence.size();
+				handleEvidence.add(null);
+			} else {
+				handle = freeHandles.popInt();
+			}
+			KmerEvidence[] group = new KmerEvidence[] { ke };
+			handleEvidence.set(handle, group);
+			id.put(evidenceId, group);
 			if (debugFile != null) {
-				debugFile.write("Add," + evidenceId);
+				debugFile.write("Add," + ke.evidence().getEvidenceID());
 				debugFile.write('\n');
 			}
+		} else {
+			// all KmerEvidence for the same evidence share the same handle
+			handle = existing[0].trackerHandle;
+			if (!containsInstance(existing, ke)) {
+				KmerEvidence[] group = ArrayUtils.add(existing, ke);
+				handleEvidence.set(handle, group);
+				id.put(evidenceId, group);
+			}
 		}
-		if (!idvalue.contains(ke)) {
-			idvalue.add(ke);
+		ke.trackerHandle = handle;
+		return handle;
+	}
+	private static boolean containsInstance(KmerEvidence[] array, KmerEvidence ke) {
+		if (array == null) return false;
+		for (KmerEvidence e : array) {
+			if (e == ke) return true;
 		}
-		return support;
+		return false;
+	}
+	/**
+	 * Gets the tracking handle for the given evidence
+	 * @return tracking handle, or a negative number if the evidence is not tracked
+	 */
+	private int getHandle(KmerEvidence ke) {
+		int handle = ke.trackerHandle;
+		if (handle >= 0 && handle < handleEvidence.size() && containsInstance(handleEvidence.get(handle), ke)) {
+			return handle;
+		}
+		KmerEvidence[] group = id.get(ke.evidence().getEvidenceIdentifier());
+		return group == null ? -1 : group[0].trackerHandle;
 	}
 	/**
 	 * Stops tracking all nodes associated with all of the given evidence
@@ -85,56 +227,52 @@ public class EvidenceTracker {
 	 */
 	public Set<KmerEvidence> remove(Set<KmerEvidence> evidenceSet) {
 		Set<KmerEvidence> evidenceToRemove = new ObjectOpenHashSet<>();
-		LongSortedSet kmersInSet = new LongLinkedOpenHashSet();
 		for (KmerEvidence evidence : evidenceSet) {
-			addToRemoveList(evidence, evidenceToRemove, kmersInSet);
-		}
-		for (long kmer : kmersInSet) {
-			remove(kmer, evidenceToRemove);
+			remove(evidence, evidenceToRemove);
 		}
 		if (SANITY_CHECK_EVIDENCE_TRACKER) {
 			sanityCheck();
 		}
 		return evidenceToRemove;
 	}
-	private void addToRemoveList(KmerEvidence evidence, Set<KmerEvidence> removeSet, LongSortedSet kmersInSet) {
-		String evidenceId = evidence.evidence().getEvidenceID();
+	private void remove(KmerEvidence evidence, Set<KmerEvidence> removeSet) {
 		if (this.debugFile != null) {
 			debugFile.write("Remove," + evidence.evidence().getEvidenceID());
 		}
 		// Need to remove all KmerEvidence associated with the evidence
 		// Read pairs can have two: one each of the anchored and unanchored reads
-		Collection<KmerEvidence> trackedKmerEvidenceForEvidence = id.remove(evidenceId);
-		if (trackedKmerEvidenceForEvidence == null) {
+		int handle = getHandle(evidence);
+		if (handle < 0) {
 			// Will happen when we attempt to remove the second KmerEvidence in a read pair
 			return;
 		}
-		removeSet.addAll(trackedKmerEvidenceForEvidence);
+		KmerEvidence[] trackedKmerEvidenceForEvidence = handleEvidence.get(handle);
+		id.remove(trackedKmerEvidenceForEvidence[0].evidence().getEvidenceIdentifier());
+		handleEvidence.set(handle, null);
+		freeHandles.add(handle);
 		for (KmerEvidence e : trackedKmerEvidenceForEvidence) {
-			for (int i = 0; i < e.length(); i++) {
-				KmerSupportNode node = e.node(i);
-				if (node != null) {
-					kmersInSet.add(node.firstKmer());
+			removeSet.add(e);
+			e.trackerHandle = -1;
+			if (e.trackerSlot != null) {
+				for (int i = 0; i < e.trackerSlot.length; i++) {
+					int slot = e.trackerSlot[i];
+					if (slot >= 0) {
+						long kmer = e.kmer(i);
+						SupportList list = lookup.get(kmer);
+						list.remove(slot);
+						supportCount--;
+						releaseIfEmpty(kmer, list);
+					}
 				}
+				e.trackerSlot = null;
 			}
 		}
 	}
-	/**
-	 * Stops tracking all nodes associated with the given evidence 
-	 * @param evidence
-	 */
-	private void remove(long kmer, Collection<KmerEvidence> evidence) {
-		LinkedList<KmerSupportNode> list = lookup.get(kmer);
-		if (list != null) {
-			ListIterator<KmerSupportNode> it = list.listIterator();
-			while (it.hasNext()) {
-				KmerSupportNode n = it.next();
-				if (evidence.contains(n.evidence())) {
-					it.remove();
-				}
-			}
-			if (list.size() == 0) {
-				lookup.remove(kmer);
+	private void releaseIfEmpty(long kmer, SupportList list) {
+		if (list.size == 0) {
+			lookup.remove(kmer);
+			if (supportListPool.size() < MAX_POOLED_SUPPORT_LISTS) {
+				supportListPool.push(list);
 			}
 		}
 	}
@@ -182,19 +320,21 @@ public class EvidenceTracker {
 	 * @param end
 	 */
 	private void toCollection(Collection<KmerEvidence> collection, long kmer, int start, int end, boolean remove) {
-		LinkedList<KmerSupportNode> list = lookup.get(kmer);
+		SupportList list = lookup.get(kmer);
 		if (list != null) {
-			ListIterator<KmerSupportNode> it = list.listIterator();
-			while (it.hasNext()) {
-				KmerSupportNode n = it.next();
-				if (IntervalUtil.overlapsClosed(start, end, n.lastStart(), n.lastEnd())) {
+			// traverse backwards so removal does not move any entries we have yet to visit
+			for (int i = list.size - 1; i >= 0; i--) {
+				if (IntervalUtil.overlapsClosed(start, end, list.lastStart(i), list.lastEnd(i))) {
+					collection.add(list.evidence[i]);
 					if (remove) {
-						it.remove();
+						list.remove(i);
+						supportCount--;
 					}
-					KmerEvidence e = n.evidence();
-					collection.add(e);
 				}
 			}
+			if (remove) {
+				releaseIfEmpty(kmer, list);
+			}
 		}
 	}
 	public boolean matchesExpected(KmerPathSubnode pn) {
@@ -210,18 +350,18 @@ public class EvidenceTracker {
 	public boolean matchesExpected(int expectedWidthWeight, LongArrayList kmers, int start, int end) {
 		int evidenceWeight = 0;
 		for (long kmer : kmers) {
-			LinkedList<KmerSupportNode> list = lookup.get(kmer);
+			SupportList list = lookup.get(kmer);
 			if (list != null) {
-				for (KmerSupportNode n : list) {
-					evidenceWeight += n.weight() * IntervalUtil.overlapsWidthClosed(start, end, n.lastStart(), n.lastEnd());
+				for (int i = 0; i < list.size; i++) {
+					evidenceWeight += list.weight(i) * IntervalUtil.overlapsWidthClosed(start, end, list.lastStart(i), list.lastEnd(i));
 				}
 			}
 		}
 		assert(evidenceWeight == expectedWidthWeight);
 		return evidenceWeight == expectedWidthWeight;
 	}
-	public boolean isTracked(String evidenceId) {
-		return id.keySet().contains(evidenceId);
+	public boolean isTracked(EvidenceIdentifier evidenceId) {
+		return id.containsKey(evidenceId);
 	}
 
 
@@ -264,7 +404,10 @@ public class EvidenceTracker {
 		}
 	}
 	public Set<KmerEvidence> getTrackedEvidence() {
-		return id.values().stream().flatMap(x -> x.stream()).collect(Collectors.toSet());
+		return handleEvidence.stream()
+				.filter(Objects::nonNull)
+				.flatMap(Arrays::stream)
+				.collect(Collectors.toSet());
 	}
 	public long tracking_evidenceTotal() {
 		return evidenceTotal;
@@ -272,51 +415,57 @@ public class EvidenceTracker {
 	public long tracking_evidenceActive() {
 		return id.size();
 	}
+	/**
+	 * @return approximate number of bytes held by the tracked evidence
+	 */
+	public long estimatedMemoryUsage() {
+		return id.size() * (long)BYTES_PER_EVIDENCE + lookup.size() * (long)BYTES_PER_KMER + supportCount * BYTES_PER_SUPPORT;
+	}
 	public int tracking_kmerCount() {
 		return lookup.size();
 	}
 	public int tracking_supportNodeCount() {
-		return lookup.values().stream().mapToInt(x -> x.size()).sum();
+		return lookup.values().stream().mapToInt(x -> x.size).sum();
 	}
 	public int tracking_maxKmerSupportNodesCount() {
-		return lookup.values().stream().mapToInt(x -> x.size()).max().orElse(0);
+		return lookup.values().stream().mapToInt(x -> x.size).max().orElse(0);
 	}
 	public void sanityCheck() {
-		Set<String> lookupEid = lookup.values()
-				.stream()
-				.flatMap(ll -> ll.stream())
-				.map(ksn -> ksn.evidence().evidence().getEvidenceID())
-				.collect(Collectors.toSet());
-		Set<String> idEid = id.keySet().stream().collect(Collectors.toSet());
-		Set<String> missingInLookup = new HashSet<>(idEid);
-		Set<String> missingInIds = new HashSet<>(lookupEid);
-		missingInIds.removeAll(idEid);
-		missingInLookup.removeAll(lookupEid);
-		Set<KmerEvidence> kes = lookup.values()
-				.stream()
-				.flatMap(ll -> ll.stream())
-				.map(ksn -> ksn.evidence())
-				.collect(Collectors.toSet());
-		List<KmerSupportNode> missingKsn = new ArrayList<>();
-		for (KmerEvidence ke : kes) {
-			for (int i = 0; i < ke.length(); i++) {
-				KmerSupportNode ksn = ke.node(i);
-				if (ksn != null) {
-					LinkedList<KmerSupportNode> list = lookup.get(ksn.firstKmer());
-					if (!list.contains(ksn)) {
-						missingKsn.add(ksn);
-					}
+		Set<KmerEvidence> inLookup = Collections.newSetFromMap(new IdentityHashMap<>());
+		for (Long2ObjectMap.Entry<SupportList> entry : lookup.long2ObjectEntrySet()) {
+			SupportList list = entry.getValue();
+			if (list.size == 0) {
+				throw new IllegalStateException("Empty support list");
+			}
+			for (int i = 0; i < list.size; i++) {
+				KmerEvidence ke = list.evidence[i];
+				if (ke.kmer(list.offset[i]) != entry.getLongKey() || ke.trackerSlot == null || ke.trackerSlot[list.offset[i]] != i) {
+					throw new IllegalStateException("Inconsistent kmer support position.");
+				}
+				if (getHandle(ke) < 0) {
+					throw new IllegalStateException("Missing all kmer evidence for evidence in lookup");
 				}
+				inLookup.add(ke);
 			}
 		}
-		if (missingInLookup.size() > 0) {
-			throw new IllegalStateException("Missing evidence in lookup");
+		if (tracking_supportNodeCount() != supportCount) {
+			throw new IllegalStateException("Inconsistent support count.");
 		}
-		if (missingInIds.size() > 0) {
-			throw new IllegalStateException("Missing all kmer evidence for evidence in lookup");
-		}
-		if (missingKsn.size() > 0) {
-			throw new IllegalStateException("Partially missing kmer support.");
+		for (KmerEvidence[] kes : id.values()) {
+			if (handleEvidence.get(kes[0].trackerHandle) != kes || Arrays.stream(kes).noneMatch(inLookup::contains)) {
+				throw new IllegalStateException("Missing evidence in lookup");
+			}
+			for (KmerEvidence ke : kes) {
+				for (int i = 0; ke.trackerSlot != null && i < ke.trackerSlot.length; i++) {
+					int slot = ke.trackerSlot[i];
+					if (slot >= 0) {
+						SupportList list = lookup.get(ke.kmer(i));
+						if (list == null || slot >= list.size || list.evidence[slot] != ke || list.offset[slot] != i) {
+							throw new IllegalStateException("Partially missing kmer support.");
+						}
+					}
+				}
+			}
 		}
 	}
 }
@@ -46,6 +46,15 @@ public class KmerEvidence extends PackedKmerList {
 	private final float score;
 	private final boolean isReadPairAnchorRead;
 	private Integer hashCode = null;
+	/**
+	 * EvidenceTracker handle of this evidence. Negative if not tracked.
+	 */
+	int trackerHandle = -1;
+	/**
+	 * Offset of each kmer in the EvidenceTracker support list for that kmer.
+	 * Negative if the kmer is not tracked.
+	 */
+	int[] trackerSlot = null;
 	public KmerSupportNode node(int offset) {
 		if (ambiguous != null && ambiguous.get(offset)) {
 			return null;
@@ -353,7 +362,7 @@ public class KmerEvidence extends PackedKmerList {
 	@Override
 	public int hashCode() {
 		if (hashCode == null) {
-			hashCode = evidence.getEvidenceID().hashCode() + start + (isReadPairAnchorRead ? 1 : 0);
+			hashCode = evidence.getEvidenceIdentifier().hashCode() + start + (isReadPairAnchorRead ? 1 : 0);
 		}
 		return hashCode;
 	}
@@ -361,7 +370,7 @@ public class KmerEvidence extends PackedKmerList {
 		return hashCode() == other.hashCode() &&
 			isReadPairAnchorRead == other.isReadPairAnchorRead &&
 			start == other.start &&
-			evidence.getEvidenceID().equals(other.evidence.getEvidenceID());
+			evidence.getEvidenceIdentifier().equals(other.evidence.getEvidenceIdentifier());
 	}
 	@Override
 	public boolean equals(Object obj) {
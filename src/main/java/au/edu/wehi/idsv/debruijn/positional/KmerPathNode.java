@@ -22,12 +22,29 @@ import java.util.*;
  *
  */
 public class KmerPathNode implements KmerNode, DeBruijnSequenceGraphNode {
-	private static final LongArrayList EMPTY_KMER_LIST = new LongArrayList();
-	private static final IntArrayList EMPTY_OFFSET_LIST = new IntArrayList();
+	private static final int BITS_PER_BASE = 2;
+	private static final int BASES_PER_WORD = Long.SIZE / BITS_PER_BASE;
+	private static final int ARRAY_SHIFT = Long.SIZE - 1 - Long.numberOfLeadingZeros(BASES_PER_WORD);
+	private static final int ARRAY_OFFSET_MASK = (1 << ARRAY_SHIFT) - 1;
 	private static final List<KmerPathNode> EMPTY_EDGE_LIST = ImmutableList.of();
 	private static final Ordering<KmerNode> NEXT_SORT_ORDER = KmerNodeUtil.ByFirstStart;
 	private static final Ordering<KmerNode> PREV_SORT_ORDER = KmerNodeUtil.ByLastStart;
-	private LongArrayList kmers; // FIXME: replace with 2-bit encoding of kmer sequence
+	/**
+	 * Path sequence in 2-bit encoding.
+	 * As successive kmers overlap by k-1 bases, the path is stored as a single sequence
+	 * from which the kmers are derived.
+	 * First base is packed in MSB of first word as per PackedSequence.
+	 */
+	private long[] packed;
+	/**
+	 * Offset of the first base of the first kmer in the packed sequence
+	 */
+	private int baseOffset;
+	/**
+	 * Number of kmers in the path
+	 */
+	private int length;
+	private final int k;
 	private IntArrayList weight;
 	private int totalWeight;
 	private int start;
@@ -54,22 +71,69 @@ public class KmerPathNode implements KmerNode, DeBruijnSequenceGraphNode {
 	public int lastEnd() { return endPosition(length() - 1); }
 	public int firstStart() { return start; }
 	public int firstEnd() { return end; }
-	public long kmer(int offset) { return kmers.getLong(offset); }
+	public long kmer(int offset) {
+		assert(offset >= 0 && offset < length);
+		return getBases(packed, baseOffset + offset, k);
+	}
 	public int startPosition(int offset) { return start + offset; }
 	public int endPosition(int offset) { return end + offset; }
 	public int weight() { return totalWeight; }
-	public LongArrayList pathKmers() { return kmers; }
+	/**
+	 * Kmers of this path.
+	 * Kmers are not stored directly so a new list is created on each call.
+	 * Use kmer(int) to access kmers without allocating.
+	 */
+	public LongArrayList pathKmers() {
+		LongArrayList kmers = new LongArrayList(length);
+		for (int i = 0; i < length; i++) {
+			kmers.add(kmer(i));
+		}
+		return kmers;
+	}
+	/**
+	 * Base calls of this path
+	 */
+	public byte[] baseCalls() {
+		return baseCalls(Collections.singletonList(this));
+	}
+	/**
+	 * Base calls of the given path
+	 * @param path adjacent path nodes
+	 * @return base calls of a positive strand SAMRecord readout of the path
+	 */
+	public static byte[] baseCalls(List<KmerPathNode> path) {
+		int k = path.get(0).k;
+		int length = k - 1;
+		for (KmerPathNode n : path) {
+			length += n.length;
+		}
+		byte[] bases = Arrays.copyOf(KmerEncodingHelper.encodedToPicardBases(k, path.get(0).firstKmer()), length);
+		int offset = k - 1;
+		for (KmerPathNode n : path) {
+			for (int i = 0; i < n.length; i++) {
+				bases[offset++] = KmerEncodingHelper.lastBaseEncodedToPicardBase(n.kmer(i));
+			}
+		}
+		return bases;
+	}
 	public IntArrayList pathWeights() { return weight; }
 	@Override
 	public int weight(int offset) {
 		return weight.getInt(offset);
 	}
 	public boolean isReference() { return reference; }
-	public int length() { return kmers.size(); }
+	public int length() { return length; }
 	public int width() { return end - start + 1; }
-	public KmerPathNode(long kmer, int start, int end, boolean reference, int weight) {
-		this.kmers = new LongArrayList(1);
-		this.kmers.add(kmer);
+	/**
+	 * @return kmer size
+	 */
+	public int k() { return k; }
+	public KmerPathNode(int k, long kmer, int start, int end, boolean reference, int weight) {
+		assert(k > 0 && k <= KmerEncodingHelper.MAX_K);
+		this.k = k;
+		this.packed = new long[wordsFor(k)];
+		setBases(this.packed, 0, k, kmer);
+		this.length = 1;
 		this.weight = new IntArrayList(1);
 		this.weight.add(weight);
 		this.totalWeight = weight;
@@ -77,19 +141,19 @@ public class KmerPathNode implements KmerNode, DeBruijnSequenceGraphNode {
 		this.end = end;
 		this.reference = reference;
 	}
-	private KmerPathNode(LongArrayList kmer, int start, int end, boolean reference, int totalWeight, IntArrayList weight) {
-		this.kmers = kmer.clone();
-		this.weight = weight.clone();
+	private KmerPathNode(int k, long[] packed, int baseOffset, int length, int start, int end, boolean reference, int totalWeight, IntArrayList weight) {
+		this.k = k;
+		this.packed = packed;
+		this.baseOffset = baseOffset;
+		this.length = length;
+		this.weight = weight;
 		this.totalWeight = totalWeight;
 		this.start = start;
 		this.end = end;
 		this.reference = reference;
 	}
-	private KmerPathNode(LongArrayList kmer, int start, int end, boolean reference, IntArrayList weight) {
-		this(kmer, start, end, reference, sumWeights(weight), weight);
-	}
-	public KmerPathNode(KmerNode node) {
-		this(node.lastKmer(), node.lastStart(), node.lastEnd(), node.isReference(), node.weight());
+	public KmerPathNode(int k, KmerNode node) {
+		this(k, node.lastKmer(), node.lastStart(), node.lastEnd(), node.isReference(), node.weight());
 	}
 	private static int sumWeights(IntArrayList weight) {
 		int sum = 0;
@@ -98,13 +162,92 @@ public class KmerPathNode implements KmerNode, DeBruijnSequenceGraphNode {
 		}
 		return sum;
 	}
+	private int baseCount() {
+		return length + k - 1;
+	}
+	private static int wordsFor(int baseCount) {
+		return (baseCount + BASES_PER_WORD - 1) >> ARRAY_SHIFT;
+	}
+	/**
+	 * Gets the given number of bases from a packed sequence
+	 * @param packed packed sequence
+	 * @param offset offset of first base
+	 * @param count number of bases. Cannot exceed the number of bases in a word
+	 * @return bases encoded as per KmerEncodingHelper
+	 */
+	private static long getBases(long[] packed, int offset, int count) {
+		if (count == 0) return 0;
+		int wordIndex = offset >> ARRAY_SHIFT;
+		int wordOffset = offset & ARRAY_OFFSET_MASK;
+		long bases = packed[wordIndex] << (BITS_PER_BASE * wordOffset);
+		if (wordOffset + count > BASES_PER_WORD) {
+			bases |= packed[wordIndex + 1] >>> (BITS_PER_BASE * (BASES_PER_WORD - wordOffset));
+		}
+		return bases >>> (BITS_PER_BASE * (BASES_PER_WORD - count));
+	}
+	/**
+	 * Sets the given number of bases of a packed sequence
+	 * @param packed packed sequence
+	 * @param offset offset of first base
+	 * @param count number of bases. Cannot exceed the number of bases in a word
+	 * @param bases bases encoded as per KmerEncodingHelper
+	 */
+	private static void setBases(long[] packed, int offset, int count, long bases) {
+		if (count == 0) return;
+		int wordIndex = offset >> ARRAY_SHIFT;
+		int wordOffset = offset & ARRAY_OFFSET_MASK;
+		// MSB aligned
+		long mask = -1L << (BITS_PER_BASE * (BASES_PER_WORD - count));
+		long aligned = bases << (BITS_PER_BASE * (BASES_PER_WORD - count));
+		packed[wordIndex] = (packed[wordIndex] & ~(mask >>> (BITS_PER_BASE * wordOffset))) | (aligned >>> (BITS_PER_BASE * wordOffset));
+		if (wordOffset + count > BASES_PER_WORD) {
+			int shift = BITS_PER_BASE * (BASES_PER_WORD - wordOffset);
+			packed[wordIndex + 1] = (packed[wordIndex + 1] & ~(mask << shift)) | (aligned << shift);
+		}
+	}
+	private static void copyBases(long[] src, int srcOffset, long[] dest, int destOffset, int count) {
+		for (int i = 0; i < count; i += BASES_PER_WORD) {
+			int n = Math.min(BASES_PER_WORD, count - i);
+			setBases(dest, destOffset + i, n, getBases(src, srcOffset + i, n));
+		}
+	}
+	/**
+	 * Copies the bases of the given kmers into a new packed sequence
+	 * @param firstKmerOffset offset of first kmer to copy
+	 * @param kmerCount number of kmers to copy
+	 * @param capacity minimum number of bases to allocate
+	 * @return packed sequence starting at the first base of the given kmer
+	 */
+	private long[] copyOfKmers(int firstKmerOffset, int kmerCount, int capacity) {
+		int bases = kmerCount + k - 1;
+		long[] copy = new long[wordsFor(Math.max(bases, capacity))];
+		copyBases(packed, baseOffset + firstKmerOffset, copy, 0, bases);
+		return copy;
+	}
+	private static boolean basesEqual(KmerPathNode a, KmerPathNode b) {
+		if (a.k != b.k || a.length != b.length) return false;
+		int count = a.baseCount();
+		for (int i = 0; i < count; i += BASES_PER_WORD) {
+			int n = Math.min(BASES_PER_WORD, count - i);
+			if (getBases(a.packed, a.baseOffset + i, n) != getBases(b.packed, b.baseOffset + i, n)) {
+				return false;
+			}
+		}
+		return true;
+	}
 	public void append(KmerNode node) {
 		assert(!(node instanceof KmerPathNode)); // should be using prepend
 		assert(node.lastStart() == lastStart() + 1);
 		assert(node.lastEnd() == lastEnd() + 1);
 		assert(node.isReference() == isReference());
 		assert(nextList == null || nextList.size() == 0);
-		kmers.add(node.lastKmer());
+		assert(KmerEncodingHelper.isNext(k, lastKmer(), node.lastKmer()));
+		int baseEnd = baseOffset + baseCount();
+		if (wordsFor(baseEnd + 1) > packed.length) {
+			packed = Arrays.copyOf(packed, Math.max(wordsFor(baseEnd + 1), packed.length * 2));
+		}
+		setBases(packed, baseEnd, 1, node.lastKmer());
+		length++;
 		weight.add(node.weight());
 		totalWeight += node.weight();
 		reference |= node.isReference();
@@ -126,9 +269,20 @@ public class KmerPathNode implements KmerNode, DeBruijnSequenceGraphNode {
 		assert(prevList != null);
 		assert(prevList.size() == 1);
 		assert(prevList.get(0) == node);
+		assert(k == node.k);
 		int nodeLength = node.length();
-		node.kmers.addAll(kmers);
-		kmers = node.kmers;
+		int combinedBaseCount = nodeLength + baseCount();
+		long[] combined;
+		if (node.baseOffset == 0 && wordsFor(combinedBaseCount) <= node.packed.length) {
+			// we can reuse the node sequence since the kmer bases overlapping our sequence are overwritten
+			combined = node.packed;
+		} else {
+			combined = node.copyOfKmers(0, nodeLength, combinedBaseCount);
+		}
+		copyBases(packed, baseOffset, combined, nodeLength, baseCount());
+		packed = combined;
+		baseOffset = 0;
+		length += nodeLength;
 		node.weight.addAll(weight);
 		weight = node.weight;
 		totalWeight += node.totalWeight;
@@ -155,7 +309,7 @@ public class KmerPathNode implements KmerNode, DeBruijnSequenceGraphNode {
 				&& length() == node.length()
 				&& reference == node.reference
 				&& totalWeight == node.totalWeight 
-				&& kmers.equals(node.kmers)
+				&& basesEqual(this, node)
 				&& weight.equals(node.weight);
 	}
 	/**
@@ -212,14 +366,15 @@ public class KmerPathNode implements KmerNode, DeBruijnSequenceGraphNode {
 	public void invalidate() {
 		assert(nextList == null || nextList.size() == 0);
 		assert(prevList == null || prevList.size() == 0);
-		kmers = null;
+		packed = null;
+		length = 0;
 		weight = null;
 		nextList = null;
 		prevList = null;
 		totalWeight = 0;
 	}
 	public boolean isValid() {
-		return kmers != null;
+		return packed != null;
 	}
 	/**
 	 * Successor nodes, ordered by adjacency position  
@@ -426,16 +581,19 @@ public class KmerPathNode implements KmerNode, DeBruijnSequenceGraphNode {
 		assert(firstNodeLength > 0);
 		assert(firstNodeLength < length());
 		// copy our new kmers and weights
-		LongArrayList kmerSecond = new LongArrayList(kmers.subList(firstNodeLength, length()));
+		long[] packedSecond = copyOfKmers(firstNodeLength, length() - firstNodeLength, 0);
 		IntArrayList weightSecond = new IntArrayList(weight.subList(firstNodeLength, length()));
 		// let split own our current arrays
-		this.kmers.removeElements(firstNodeLength, this.kmers.size());
 		this.weight.removeElements(firstNodeLength, this.weight.size());
 		KmerPathNode split = new KmerPathNode(
-				this.kmers,
+				k,
+				this.packed,
+				this.baseOffset,
+				firstNodeLength,
 				start,
 				end,
 				reference,
+				sumWeights(this.weight),
 				this.weight);
 		// Update incoming edges to split
 		split.prevList = this.prevList;
@@ -447,7 +605,9 @@ public class KmerPathNode implements KmerNode, DeBruijnSequenceGraphNode {
 			}
 		}
 		// outgoing edges remain unchanged since our end kmer is unchanged
-		this.kmers = kmerSecond;
+		this.packed = packedSecond;
+		this.baseOffset = 0;
+		this.length -= firstNodeLength;
 		this.weight = weightSecond;
 		this.totalWeight -= split.weight();
 		this.start += firstNodeLength;
@@ -480,7 +640,7 @@ public class KmerPathNode implements KmerNode, DeBruijnSequenceGraphNode {
 	public KmerPathNode splitAtStartPosition(int newStartPosition) {
 		assert(newStartPosition > start);
 		assert(newStartPosition <= end);
-		KmerPathNode split = new KmerPathNode(kmers, start, newStartPosition - 1, reference, totalWeight, weight);
+		KmerPathNode split = new KmerPathNode(k, copyOfKmers(0, length, 0), 0, length, start, newStartPosition - 1, reference, totalWeight, weight.clone());
 		this.start = newStartPosition;
 		if (nextList != null) {
 			ArrayList<KmerPathNode> newNextThis = new ArrayList<KmerPathNode>(nextList.size());
@@ -560,9 +720,9 @@ public class KmerPathNode implements KmerNode, DeBruijnSequenceGraphNode {
 		result = prime * result + start;
 		result = prime * result + end;
 		result = prime * result + totalWeight;
-		if (kmers != null) {
-			result = prime * result + Long.hashCode(kmers.getLong(0));
-			result = prime * result + Long.hashCode(kmers.getLong(kmers.size() - 1));
+		if (packed != null) {
+			result = prime * result + Long.hashCode(firstKmer());
+			result = prime * result + Long.hashCode(lastKmer());
 		}
 		// incorporating these adds hash cost whilst giving minimal improvement
 		// to hash collision rate
@@ -582,10 +742,10 @@ public class KmerPathNode implements KmerNode, DeBruijnSequenceGraphNode {
 		KmerPathNode other = (KmerPathNode) obj;
 		if (end != other.end)
 			return false;
-		if (kmers == null) {
-			if (other.kmers != null)
+		if (packed == null) {
+			if (other.packed != null)
 				return false;
-		} else if (!kmers.equals(other.kmers))
+		} else if (other.packed == null || !basesEqual(this, other))
 			return false;
 		if (reference != other.reference)
 			return false;
@@ -652,15 +812,16 @@ public class KmerPathNode implements KmerNode, DeBruijnSequenceGraphNode {
 			// (but after we remove ourself)
 			this.start++;
 			this.end++;
+			this.baseOffset++;
 		}
 		totalWeight -= weight.getInt(offset);
 		weight.removeInt(offset);
-		kmers.removeLong(offset);
+		length--;
 		if (length() == 0) {
 			invalidate();
 		}
 		if (Defaults.SANITY_CHECK_ASSEMBLY_GRAPH) {
-			if (kmers != null) {
+			if (packed != null) {
 				assert(sanityCheck());
 			}
 		}
@@ -942,9 +1103,7 @@ public class KmerPathNode implements KmerNode, DeBruijnSequenceGraphNode {
 		//sanityCheck(); // TEMPHACK
 		assert(length() <= maxPathLength);
 		assert(end - start <= maxSupportWidth);
-		for (int i = 1; i < length(); i++) {
-			assert(KmerEncodingHelper.isNext(k, kmers.getLong(i - 1), kmers.getLong(i)));
-		}
+		assert(this.k == k);
 		assert(sumWeights(weight) == totalWeight);
 		if (nextList != null) {
 			for (KmerPathNode next : nextList) {
@@ -962,11 +1121,11 @@ public class KmerPathNode implements KmerNode, DeBruijnSequenceGraphNode {
 		assert(isValid());
 		assert(start <= end);
 		assert(totalWeight > 0);
-		assert(kmers.size() == length());
+		assert(length > 0);
+		assert(wordsFor(baseOffset + baseCount()) <= packed.length);
 		assert(weight.size() == length());
 		assert(sumWeights(weight) == totalWeight);
 		assert(sanityCheckEdges(this, true));
-		assert(EMPTY_KMER_LIST != null && EMPTY_KMER_LIST.size() == 0); // fastutil doesn't have ImmutableList wrappers
 		return true;
 	}
 	private static boolean sanityCheckEdges(KmerPathNode node, boolean checkNeighbours) {
@@ -50,6 +50,16 @@ import java.util.stream.Collectors;
  */
 public class MemoizedContigCaller extends ContigCaller {
 	private static final Log log = Log.getInstance(MemoizedContigCaller.class);
+	/**
+	 * Approximate bytes retained per memoized node including score and frontier lookups.
+	 * As per {@link EvidenceTracker}, a 64-bit JVM with compressed oops is assumed
+	 * and each memoized path node is assumed to have a single memoized traversal.
+	 */
+	private static final int BYTES_PER_MEMOIZED_NODE =
+			16 // memoization IdentityHashMap slot
+			+ 48 // per-node sorted map of traversals
+			+ 32 + 24 + 40 // TraversalNode, KmerPathSubnode and sorted map entry
+			+ 2 * 40; // contig score and frontier set entries
 	/**
 	 * Path scores in order of descending score
 	 */
@@ -376,6 +386,10 @@ public class MemoizedContigCaller extends ContigCaller {
 		return frontier.memoizedNodeCount();
 	}
 	@Override
+	public long estimatedMemoryUsage() {
+		return (long)memoizedNodeCount() * BYTES_PER_MEMOIZED_NODE;
+	}
+	@Override
 	public int tracking_frontierSize() {
 		return frontier.tracking_frontierSize();
 	}
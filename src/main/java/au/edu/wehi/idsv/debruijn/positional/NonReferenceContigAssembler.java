@@ -3,7 +3,7 @@ package au.edu.wehi.idsv.debruijn.positional;
 import au.edu.wehi.idsv.*;
 import au.edu.wehi.idsv.bed.IntervalBed;
 import au.edu.wehi.idsv.debruijn.DeBruijnGraphBase;
-import au.edu.wehi.idsv.debruijn.KmerEncodingHelper;
+import au.edu.wehi.idsv.debruijn.positional.optimiseddatastructures.KmerNodeByFirstStartKmerNavigableSet;
 import au.edu.wehi.idsv.debruijn.positional.optimiseddatastructures.KmerNodeByLastKmerIntervalLookup;
 import au.edu.wehi.idsv.graph.ScalingHelper;
 import au.edu.wehi.idsv.model.Models;
@@ -66,6 +66,16 @@ public class NonReferenceContigAssembler implements Iterator<SAMRecord> {
 	 * the largest expected score.
 	 */
 	static final int ANCHORED_SCORE = Integer.MAX_VALUE >> 2;
+	/**
+	 * Approximate bytes retained per graph node including kmer lookup entries.
+	 * As per {@link EvidenceTracker}, a 64-bit JVM with compressed oops is assumed.
+	 */
+	private static final int BYTES_PER_PATH_NODE =
+			56 // KmerPathNode: 6 ints, 2 booleans and 4 references
+			+ 32 // packed path sequence of up to 64 bases
+			+ 56 // IntArrayList of kmer weights for a short path
+			+ 2 * 48 // next and previous edge lists at their initial capacity of 2
+			+ 24 + 32; // KmerPathNodeKmerNode and its kmer lookup entry
 	/**
 	 * TODO: check to see if this is worth doing
 	 * Simplication reduces the graph size, but may trigger
@@ -74,8 +84,8 @@ public class NonReferenceContigAssembler implements Iterator<SAMRecord> {
 	 */
 	private static final boolean SIMPLIFY_AFTER_REMOVAL = false;
 	private KmerNodeByLastKmerIntervalLookup<KmerPathNodeKmerNode> graphByKmerNode = new KmerNodeByLastKmerIntervalLookup<>();
-	private TreeSet<KmerPathNode> graphByPosition = new TreeSet<KmerPathNode>(KmerNodeUtil.ByFirstStartKmer); // TODO: OPT: replace data structure
-	private SortedSet<KmerPathNode> nonReferenceGraphByPosition = new TreeSet<KmerPathNode>(KmerNodeUtil.ByFirstStartKmer); // TODO: OPT: replace data structure
+	private NavigableSet<KmerPathNode> graphByPosition = Defaults.USE_OPTIMISED_ASSEMBLY_DATA_STRUCTURES ? new KmerNodeByFirstStartKmerNavigableSet<>(16) : new TreeSet<KmerPathNode>(KmerNodeUtil.ByFirstStartKmer);
+	private SortedSet<KmerPathNode> nonReferenceGraphByPosition = Defaults.USE_OPTIMISED_ASSEMBLY_DATA_STRUCTURES ? new KmerNodeByFirstStartKmerNavigableSet<>(16) : new TreeSet<KmerPathNode>(KmerNodeUtil.ByFirstStartKmer);
 	private final EvidenceTracker evidenceTracker;
 	private final AssemblyEvidenceSource aes;
 	private final AssemblyIdGenerator assemblyNameGenerator;
@@ -98,6 +108,8 @@ public class NonReferenceContigAssembler implements Iterator<SAMRecord> {
 	private PositionalDeBruijnGraphTracker exportTracker = null;
 	private AssemblyChunkTelemetry telemetry = null;
 	private Set<KmerEvidence> untrackedEvidenceStillBeingProcessed = null;
+	private final AssemblyMemoryGovernor.Account memoryAccount;
+	private AssemblyMemoryGovernor.Pressure memoryPressure = AssemblyMemoryGovernor.Pressure.NONE;
 	public int getReferenceIndex() { return referenceIndex; }
 
 	private int retainWidth() {
@@ -184,6 +196,8 @@ public class NonReferenceContigAssembler implements Iterator<SAMRecord> {
 		this.preferredContigDirection = preferredContigDirection;
 		this.excludedRegions = excludedRegions;
 		this.safetyRegions = safetyRegions;
+		AssemblyMemoryGovernor governor = source.getMemoryGovernor();
+		this.memoryAccount = governor == null ? null : governor.openAccount();
 		initialiseBestCaller();
 	}
 	private void initialiseBestCaller() {
@@ -218,7 +232,8 @@ public class NonReferenceContigAssembler implements Iterator<SAMRecord> {
 			int frontierStart = bestContigCaller.frontierStart(nextPosition());
 			int flushPosition = frontierStart - retainWidth() - 1;
 			int loadedStart = nonReferenceGraphByPosition.first().firstStart();
-			if (loadedStart + flushWidth() < flushPosition) { // don't start flushing until we're at least flushWidth distance from the retain position
+			// don't start flushing until we're at least flushWidth distance from the retain position unless we're running low on memory
+			if (loadedStart + flushWidth() < flushPosition || (memoryPressure != AssemblyMemoryGovernor.Pressure.NONE && loadedStart < flushPosition)) {
 				ArrayDeque<KmerPathSubnode> forcedContig = null;
 				// keep calling until we have no more contigs left even if we could be calling a suboptimal contig
 				do {
@@ -256,6 +271,7 @@ public class NonReferenceContigAssembler implements Iterator<SAMRecord> {
 	private void ensureCalledContig() {
 		while (called.isEmpty()) {
 			flushExcessivelyDenseIntervals();
+			updateMemoryPressure();
 			// remove misassembled partial contigs
 			if (aes.getContext().getAssemblyParameters().removeMisassembledPartialContigsDuringAssembly) {
 				removeMisassembledPartialContig();
@@ -443,6 +459,11 @@ public class NonReferenceContigAssembler implements Iterator<SAMRecord> {
 			toFlush.add(range);
 			throw new AssemblyThresholdReachedException(range);
 		}
+		if (updateMemoryPressure() == AssemblyMemoryGovernor.Pressure.DOWNSAMPLE && advanceWidth > 0) {
+			Range<Integer> range = Range.closedOpen(Math.min(lastNextPosition, tracking_firstPosition()), nextPosition());
+			log.debug(String.format("Assembly graph at %s:%d-%d holding %d bytes exceeds memory budget: error correcting and downsampling.", contigName, range.lowerEndpoint(), range.upperEndpoint(), memoryAccount.getBytes()));
+			throw new AssemblyThresholdReachedException(range);
+		}
 		if (getTelemetry() != null) {
 			long currentTime = System.nanoTime();
 			getTelemetry().loadGraph(referenceIndex, lastNextPosition, nextPosition(), count, filtered, currentTime - telemetryLastloadGraphs);
@@ -519,7 +540,7 @@ public class NonReferenceContigAssembler implements Iterator<SAMRecord> {
 			endingAnchor.addFirst(endIt.next());
 		}
 		
-		byte[] bases = KmerEncodingHelper.baseCalls(fullContig.stream().flatMap(sn -> sn.node().pathKmers().stream()).collect(Collectors.toList()), k);
+		byte[] bases = KmerPathNode.baseCalls(fullContig.stream().map(sn -> sn.node()).collect(Collectors.toList()));
 		byte[] quals = DeBruijnGraphBase.kmerWeightsToBaseQuals(k, fullContig.stream().flatMapToInt(sn -> sn.node().pathWeights().stream().mapToInt(Integer::intValue)).toArray());
 		assert(quals.length == bases.length);
 		// left aligned anchor position although it shouldn't matter since anchoring should be a single base wide
@@ -1204,6 +1225,36 @@ public class NonReferenceContigAssembler implements Iterator<SAMRecord> {
 		return subset;
 	}
 
+	/**
+	 * @return approximate number of bytes held by this assembler
+	 */
+	public long estimatedMemoryUsage() {
+		return graphByPosition.size() * (long)BYTES_PER_PATH_NODE + evidenceTracker.estimatedMemoryUsage() + bestContigCaller.estimatedMemoryUsage();
+	}
+	/**
+	 * Reports the memory held by this assembler to the memory governor
+	 * @return response required to keep assembly within the memory budget
+	 */
+	private AssemblyMemoryGovernor.Pressure updateMemoryPressure() {
+		if (memoryAccount == null) return AssemblyMemoryGovernor.Pressure.NONE;
+		AssemblyMemoryGovernor.Pressure pressure = memoryAccount.update(estimatedMemoryUsage());
+		if (pressure != memoryPressure) {
+			log.debug(String.format("Assembly memory pressure at %s:%d changed from %s to %s. Assembler holding %d bytes.", contigName, nextPosition(), memoryPressure, pressure, memoryAccount.getBytes()));
+			if (getTelemetry() != null) {
+				getTelemetry().memoryUsage(referenceIndex, nextPosition(), memoryAccount.getBytes(), pressure.name());
+			}
+			memoryPressure = pressure;
+		}
+		return pressure;
+	}
+	/**
+	 * Releases the memory budget held by this assembler
+	 */
+	public void closeMemoryAccount() {
+		if (memoryAccount != null) {
+			memoryAccount.close();
+		}
+	}
 	public int tracking_activeNodes() {
 		return graphByPosition.size();
 	}
@@ -99,7 +99,7 @@ public class PathNodeIterator implements Iterator<KmerPathNode> {
 			}
 		}
 		// couldn't merge into a previous path = new path
-		KmerPathNode pn = new KmerPathNode(right);
+		KmerPathNode pn = new KmerPathNode(k, right);
 		pathNodes.add(pn);
 		edgeLookup.replace(right, pn);
 	}
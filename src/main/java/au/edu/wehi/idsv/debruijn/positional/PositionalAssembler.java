@@ -4,6 +4,7 @@ import au.edu.wehi.idsv.Defaults;
 import au.edu.wehi.idsv.*;
 import au.edu.wehi.idsv.bed.IntervalBed;
 import au.edu.wehi.idsv.configuration.AssemblyConfiguration;
+import au.edu.wehi.idsv.configuration.ErrorCorrectionConfiguration;
 import au.edu.wehi.idsv.configuration.VisualisationConfiguration;
 import au.edu.wehi.idsv.debruijn.ReadErrorCorrector;
 import au.edu.wehi.idsv.picard.ReferenceLookup;
@@ -13,6 +14,7 @@ import au.edu.wehi.idsv.visualisation.AssemblyTelemetry.AssemblyChunkTelemetry;
 import au.edu.wehi.idsv.visualisation.PositionalDeBruijnGraphTracker;
 import com.google.common.collect.*;
 import htsjdk.samtools.*;
+import htsjdk.samtools.util.CloseableIterator;
 import htsjdk.samtools.util.Log;
 import org.apache.commons.io.FileUtils;
 
@@ -28,7 +30,7 @@ import java.util.stream.Collectors;
  * @author Daniel Cameron
  *
  */
-public class PositionalAssembler implements Iterator<SAMRecord> {
+public class PositionalAssembler implements CloseableIterator<SAMRecord> {
 	private static final Log log = Log.getInstance(PositionalAssembler.class);
 	private final ProcessingContext context;
 	private final AssemblyEvidenceSource source;
@@ -42,6 +44,7 @@ public class PositionalAssembler implements Iterator<SAMRecord> {
 	private final IntervalBed safetyRegions;
 	private EvidenceTracker evidenceTracker = null;
 	private boolean contigGeneratedSinceException = false;
+	private DirectedEvidenceErrorCorrectingIterator errorCorrector = null;
 	public PositionalAssembler(ProcessingContext context, AssemblyEvidenceSource source, AssemblyIdGenerator assemblyNameGenerator, Iterator<DirectedEvidence> backingIterator, BreakendDirection direction, IntervalBed excludedRegions, IntervalBed safetyRegions) {
 		this.context = context;
 		this.source = source;
@@ -73,6 +76,13 @@ public class PositionalAssembler implements Iterator<SAMRecord> {
 		contigGeneratedSinceException = true;
 		return r;
 	}
+	/**
+	 * Releases the resources held by the current assembler, including its memory budget account.
+	 */
+	@Override
+	public void close() {
+		closeCurrentAssembler();
+	}
 	private void flushIfRequired() {
 		if (currentAssembler != null && !currentAssembler.hasNext()) {
 			closeCurrentAssembler();
@@ -82,6 +92,9 @@ public class PositionalAssembler implements Iterator<SAMRecord> {
 		if (evidenceTracker != null) {
 			evidenceTracker.closeDebugFileOutput();
 		}
+		if (currentAssembler != null) {
+			currentAssembler.closeMemoryAccount();
+		}
 		if (currentAssembler != null && currentAssembler.getExportTracker() != null) {
 			try {
 				currentAssembler.getExportTracker().close();
@@ -103,12 +116,30 @@ public class PositionalAssembler implements Iterator<SAMRecord> {
 		return reloadRecoverySet;
 	}
 	private void ensureAssembler(boolean attemptRecovery, Set<DirectedEvidence> preload) {
+		boolean success = false;
+		try {
+			ensureAssemblerWithRecovery(attemptRecovery, preload);
+			success = true;
+		} finally {
+			if (!success) {
+				// release the memory account of the failed assembler as the shared
+				// memory governor would otherwise still consider it in use
+				closeCurrentAssembler();
+			}
+		}
+	}
+	private void ensureAssemblerWithRecovery(boolean attemptRecovery, Set<DirectedEvidence> preload) {
 		try {
 			ensureAssembler(preload);
 		} catch (AssemblyThresholdReachedException atre) {
 			Set<DirectedEvidence> reloadRecoverySet = getEvidenceInCurrentAssembler();
 			// really aggressive error correction of every read might simplify our assembly graph
-			ReadErrorCorrector.errorCorrect(context.getAssemblyParameters().errorCorrection.k, context.getAssemblyParameters().errorCorrection.kmerErrorCorrectionMultiple / 2, context.getAssemblyParameters().errorCorrection.maxCorrectionsInKmer, context.getAssemblyParameters().errorCorrection.deduplicateReadKmers, reloadRecoverySet);
+			ErrorCorrectionConfiguration ecc = context.getAssemblyParameters().errorCorrection;
+			if (errorCorrector != null) {
+				errorCorrector.errorCorrect(reloadRecoverySet, ecc.kmerErrorCorrectionMultiple / 2);
+			} else {
+				ReadErrorCorrector.errorCorrect(ecc.k, ecc.kmerErrorCorrectionMultiple / 2, ecc.maxCorrectionsInKmer, ecc.deduplicateReadKmers, reloadRecoverySet);
+			}
 			Set<DirectedEvidence> downsampledRecoverySet = downsampleEvidenceInRegion(reloadRecoverySet, atre.getRange());
 			// restart assembly using the downsampled set of reads
 			closeCurrentAssembler();
@@ -372,6 +403,14 @@ public class PositionalAssembler implements Iterator<SAMRecord> {
 	public void setTelemetry(AssemblyChunkTelemetry assemblyChunkTelemetry) {
 		this.telemetry = assemblyChunkTelemetry;
 	}
+	/**
+	 * Error corrector whose kmer counts are reused when error correcting
+	 * the assembly graph reads after the assembly threshold is reached.
+	 * If not set, the graph reads are error corrected against their own kmers.
+	 */
+	public void setErrorCorrector(DirectedEvidenceErrorCorrectingIterator errorCorrector) {
+		this.errorCorrector = errorCorrector;
+	}
 	private static class ReferenceIndexIterator implements PeekingIterator<DirectedEvidence> {
 		private final PeekingIterator<DirectedEvidence> it;
 		private final int referenceIndex;
@@ -70,7 +70,7 @@ public class SupportNodeIterator implements PeekingIterator<KmerSupportNode> {
 		this.tracker = tracker;
 	}
 	private void process(DirectedEvidence de) {
-		if (tracker != null && tracker.isTracked(de.getEvidenceID())) {
+		if (tracker != null && tracker.isTracked(de.getEvidenceIdentifier())) {
 			if (!MessageThrottler.Current.shouldSupress(log, "assembly duplicated reads")) {
 				log.warn(String.format("Attempting to add %s (from %s) to assembly when already present. "
 						+ "Possible causes are: duplicate read name, alignment with multi-mapping aligner which writes read alignments as distinct pairs. ",
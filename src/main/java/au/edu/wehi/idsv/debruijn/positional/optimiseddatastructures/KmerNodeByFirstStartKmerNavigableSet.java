@@ -0,0 +1,238 @@
+package au.edu.wehi.idsv.debruijn.positional.optimiseddatastructures;
+
+import au.edu.wehi.idsv.debruijn.positional.KmerNode;
+import au.edu.wehi.idsv.debruijn.positional.KmerNodeUtil;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
+
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Set of nodes ordered by first kmer start position then first kmer.
+ *
+ * Equivalent to a TreeSet using KmerNodeUtil.ByFirstStartKmer but optimised
+ * for insertion near the assembly frontier, removal near the trailing edge,
+ * and traversal of a positional window.
+ *
+ * Nodes at each position are stored in an ArrayList sorted by descending first kmer
+ * under the assumption that the number of nodes starting at each position will be small.
+ */
+public class KmerNodeByFirstStartKmerNavigableSet<T extends KmerNode> extends SortedByPosition<T, ArrayList<T>> implements NavigableSet<T> {
+    public KmerNodeByFirstStartKmerNavigableSet(int blockBits) {
+        super(blockBits);
+    }
+
+    @Override
+    protected int getPosition(T obj) {
+        return obj.firstStart();
+    }
+
+    @Override
+    protected T peekAtPosition(ArrayList<T> coll) {
+        return coll.get(coll.size() - 1);
+    }
+
+    @Override
+    protected T popAtPosition(ArrayList<T> coll) {
+        return coll.remove(coll.size() - 1);
+    }
+
+    @Override
+    protected ArrayList<T> createAtPosition() {
+        return new ArrayList<>(4);
+    }
+
+    /**
+     * Finds the given kmer in the descending sorted list
+     * @return index of the kmer if found, otherwise (-(insertion point) - 1)
+     */
+    private static <T extends KmerNode> int indexOf(ArrayList<T> coll, long kmer) {
+        int low = 0;
+        int high = coll.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long midKmer = coll.get(mid).firstKmer();
+            if (midKmer > kmer) {
+                low = mid + 1;
+            } else if (midKmer < kmer) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    @Override
+    protected boolean addAtPosition(ArrayList<T> existing, T toAdd) {
+        int index = indexOf(existing, toAdd.firstKmer());
+        if (index >= 0) return false;
+        existing.add(-index - 1, toAdd);
+        return true;
+    }
+
+    @Override
+    protected boolean removeAtPosition(ArrayList<T> coll, T obj) {
+        int index = indexOf(coll, obj.firstKmer());
+        if (index < 0) return false;
+        coll.remove(index);
+        return true;
+    }
+
+    @Override
+    protected boolean positionIsEmpty(ArrayList<T> coll) {
+        return coll.isEmpty();
+    }
+
+    @Override
+    protected int positionSize(ArrayList<T> coll) {
+        return coll.size();
+    }
+
+    @Override
+    protected boolean containsAtPosition(ArrayList<T> coll, T obj) {
+        return indexOf(coll, obj.firstKmer()) >= 0;
+    }
+
+    @Override
+    protected Stream<T> positionStream(ArrayList<T> coll) {
+        return Lists.reverse(coll).stream();
+    }
+
+    /**
+     * Iterates over the set in ascending order.
+     * The set must not be modified during iteration.
+     */
+    @Override
+    public Iterator<T> iterator() {
+        return new PositionIterator(collectionIterator(), true);
+    }
+
+    /**
+     * Iterates over the set in descending order.
+     * The set must not be modified during iteration.
+     */
+    @Override
+    public Iterator<T> descendingIterator() {
+        return new PositionIterator(descendingCollectionIterator(), false);
+    }
+
+    /**
+     * Iterates over the nodes of each position in turn
+     */
+    private class PositionIterator implements Iterator<T> {
+        private final Iterator<ArrayList<T>> positionIt;
+        private final boolean ascending;
+        private ArrayList<T> current = null;
+        private int offset = -1;
+        private PositionIterator(Iterator<ArrayList<T>> positionIt, boolean ascending) {
+            this.positionIt = positionIt;
+            this.ascending = ascending;
+        }
+        @Override
+        public boolean hasNext() {
+            return (current != null && offset >= 0 && offset < current.size()) || positionIt.hasNext();
+        }
+        @Override
+        public T next() {
+            if (current == null || offset < 0 || offset >= current.size()) {
+                current = positionIt.next();
+                offset = ascending ? current.size() - 1 : 0;
+            }
+            T result = current.get(offset);
+            offset += ascending ? -1 : 1;
+            return result;
+        }
+    }
+
+    @Override
+    public Spliterator<T> spliterator() {
+        return Spliterators.spliterator(iterator(), size(), Spliterator.SIZED | Spliterator.ORDERED);
+    }
+
+    @Override
+    public Object[] toArray() {
+        return Iterators.toArray(iterator(), Object.class);
+    }
+
+    @Override
+    public <T1> T1[] toArray(T1[] a) {
+        return Lists.newArrayList(iterator()).toArray(a);
+    }
+
+    @Override
+    public Comparator<? super T> comparator() {
+        return KmerNodeUtil.ByFirstStartKmer;
+    }
+
+    @Override
+    public T pollFirst() {
+        return poll();
+    }
+
+    @Override
+    public T lower(T t) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public T floor(T t) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public T ceiling(T t) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public T higher(T t) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public T pollLast() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public NavigableSet<T> descendingSet() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public NavigableSet<T> subSet(T t, boolean b, T e1, boolean b1) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public NavigableSet<T> headSet(T t, boolean b) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public NavigableSet<T> tailSet(T t, boolean b) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public SortedSet<T> subSet(T t, T e1) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public SortedSet<T> headSet(T t) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public SortedSet<T> tailSet(T t) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public T last() {
+        throw new UnsupportedOperationException();
+    }
+}
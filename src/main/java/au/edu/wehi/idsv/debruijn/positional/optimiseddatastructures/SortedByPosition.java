@@ -321,6 +321,84 @@ public abstract class SortedByPosition<T, TColl> {
         return list;
     }
 
+    /**
+     * Iterates over the non-empty genomic position collections in position order.
+     * The data structure must not be modified during iteration.
+     */
+    protected Iterator<TColl> collectionIterator() {
+        return new Iterator<TColl>() {
+            private Node<TColl> node = head;
+            private int offset = head == null ? 0 : head.firstOccupiedOffset;
+            private TColl nextColl = advance();
+            private TColl advance() {
+                while (node != null) {
+                    while (offset < node.position.length) {
+                        TColl coll = node.position[offset++];
+                        if (coll != null && !positionIsEmpty(coll)) {
+                            return coll;
+                        }
+                    }
+                    node = node.next;
+                    offset = node == null ? 0 : node.firstOccupiedOffset;
+                }
+                return null;
+            }
+            @Override
+            public boolean hasNext() {
+                return nextColl != null;
+            }
+            @Override
+            public TColl next() {
+                if (nextColl == null) throw new NoSuchElementException();
+                TColl result = nextColl;
+                nextColl = advance();
+                return result;
+            }
+        };
+    }
+
+    /**
+     * Iterates over the non-empty genomic position collections in reverse position order.
+     * The data structure must not be modified during iteration.
+     */
+    protected Iterator<TColl> descendingCollectionIterator() {
+        // blocks are singly linked but there are few enough of them to snapshot
+        List<Node<TColl>> blocks = new ArrayList<>();
+        for (Node<TColl> n = head; n != null; n = n.next) {
+            blocks.add(n);
+        }
+        return new Iterator<TColl>() {
+            private int blockIndex = blocks.size() - 1;
+            private int offset = blockIndex < 0 ? -1 : blocks.get(blockIndex).position.length - 1;
+            private TColl nextColl = advance();
+            private TColl advance() {
+                while (blockIndex >= 0) {
+                    Node<TColl> node = blocks.get(blockIndex);
+                    while (offset >= node.firstOccupiedOffset) {
+                        TColl coll = node.position[offset--];
+                        if (coll != null && !positionIsEmpty(coll)) {
+                            return coll;
+                        }
+                    }
+                    blockIndex--;
+                    offset = blockIndex < 0 ? -1 : blocks.get(blockIndex).position.length - 1;
+                }
+                return null;
+            }
+            @Override
+            public boolean hasNext() {
+                return nextColl != null;
+            }
+            @Override
+            public TColl next() {
+                if (nextColl == null) throw new NoSuchElementException();
+                TColl result = nextColl;
+                nextColl = advance();
+                return result;
+            }
+        };
+    }
+
     public Iterator<T> iterator() {
         if (!"quiet".equals(System.getProperty("SortedByPosition.iterator.spamminess"))) {
             log.warn("SortedByPosition.iterator() call. This is inefficient and should be no be called in production code.");
@@ -4,10 +4,13 @@ import au.edu.wehi.idsv.Defaults;
 import au.edu.wehi.idsv.visualisation.TrackedState;
 import com.google.common.collect.ImmutableList;
 
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntHeapPriorityQueue;
+
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
-import java.util.PriorityQueue;
 
 /**
  * Calculates all maximal cliques of a rectangle graph
@@ -24,122 +27,211 @@ import java.util.PriorityQueue;
  * A note on maximum independent sets in rectangle intersection graphs, Information Processing Letters, Volume 89, Issue 1, 16 January 2004, Pages 19-23
  * GREEDY MAXIMUM-CLIQUE DECOMPOSITIONS http://faculty.tru.ca/smcguinness/greedymaxclique.pdf (we want to decompose by removing vertices, not edges) 
  * 
+ * Active nodes are held in a reusable primitive node pool and scanline intervals
+ * in sorted primitive arrays. Each scanline pass streams the intervals of the
+ * previous scanline into a second array so interval splits are appends.
+ * 
  * @author Daniel Cameron
  */
 public class RectangleGraphMaximalCliqueCalculator implements TrackedState {
 	private RectangleGraphNode lastNode = null;
 	private List<RectangleGraphNode> outBuffer;
-	private final PriorityQueue<RectangleGraphNode> activeEndingX = new PriorityQueue<RectangleGraphNode>(11, RectangleGraphNode.ByEndXStartYEndY); // sorted by endX
-	//private final RangeMap<GraphNode> activeScanlineEvidence;
+	private final RectangleGraphNodePool nodes = new RectangleGraphNodePool();
+	/**
+	 * Active nodes sorted by endX, startY, endY
+	 */
+	private final IntHeapPriorityQueue activeEndingX = new IntHeapPriorityQueue(this::compareEndXStartYEndY);
+	/**
+	 * Contains nodes of which the start Y has been processed but the end Y has not yet been encountered
+	 */
+	private final IntHeapPriorityQueue activeScanlineEndingY = new IntHeapPriorityQueue(this::compareEndY);
+	private final IntArrayList endingCurrentScanline = new IntArrayList();
+	/**
+	 * Intervals of the completed scanline
+	 */
+	private ScanlineIntervals scanline = new ScanlineIntervals();
+	/**
+	 * Intervals of the scanline currently being processed.
+	 * Intervals after the current position have not yet been copied from the completed scanline
+	 */
+	private ScanlineIntervals nextScanline = new ScanlineIntervals();
+	/**
+	 * Index of the current interval in nextScanline
+	 */
+	private int activeScanlineCurrentPosition;
 	/**
-	 * Contains GraphNodes of which the start Y has been processed but the end Y has not yet been encountered
+	 * Index of the next interval in the completed scanline yet to be copied to nextScanline
 	 */
-	private final PriorityQueue<RectangleGraphNode> activeScanlineEndingY = new PriorityQueue<RectangleGraphNode>(11, RectangleGraphNode.ByEndY); // sorted by endX
-	private final ScanlineInterval activeScanlineStart;
-	private ScanlineInterval activeScanlineCurrentPosition;
+	private int scanlineReadPosition;
 	private long activeScanlineActiveWeight = 0;
 	private long activeScanlineActiveExactWeight = 0;
 	private long scanlineX = Long.MIN_VALUE;
 	public RectangleGraphMaximalCliqueCalculator() {
-		this.activeScanlineStart = new ScanlineInterval(Long.MIN_VALUE, Long.MAX_VALUE, 0, 0, 0, 0,
-				new ScanlineInterval(Long.MAX_VALUE - 1, Long.MAX_VALUE, 0, 0, 0, 0, null));
-		this.activeScanlineCurrentPosition = activeScanlineStart;
+		scanline.add(Long.MIN_VALUE, Long.MAX_VALUE, 0, 0, 0, 0);
+		scanline.add(Long.MAX_VALUE - 1, Long.MAX_VALUE, 0, 0, 0, 0);
+		startScanline();
 		assert(sanityCheckScanlineComplete());
 	}
-
+	private int compareEndXStartYEndY(int a, int b) {
+		int cmp = Long.compare(nodes.endX(a), nodes.endX(b));
+		if (cmp == 0) cmp = Long.compare(nodes.startY(a), nodes.startY(b));
+		if (cmp == 0) cmp = Long.compare(nodes.endY(a), nodes.endY(b));
+		return cmp;
+	}
+	private int compareEndY(int a, int b) {
+		return Long.compare(nodes.endY(a), nodes.endY(b));
+	}
 	/**
-	 * Scanline interval of the rectangle graph.
-	 * Scanline coordinates use half-open intervals.
+	 * Scanline intervals of the rectangle graph sorted by start Y.
+	 * Scanline coordinates use half-open intervals with each interval ending at the start of the next.
 	 * This differs from GraphNode representation
 	 * @author Daniel Cameron
 	 *
 	 */
-	private class ScanlineInterval implements Cloneable {
-		private ScanlineInterval(
-				long startY,
-				long startX,
-				long weight,
-				long exactWeight,
-				int startHere,
-				int endHere,
-				ScanlineInterval next) {
-			this.startY = startY;
-			this.startX = startX;
-			this.weight = weight;
-			this.exactWeight = exactWeight;
-			this.startHere = startHere;
-			this.endHere = endHere;
-			this.next = next;
-		}
+	private static class ScanlineIntervals {
+		private long[] startY = new long[16];
 		/**
-		 * Splits the given node containing the given y value
-		 * so a node starts at the given position
-		 * @param y start y to ensure
+		 * Long.MAX_VALUE indicates this interval is not maximal
 		 */
-		public void splitAt(long y) {
-			assert(y >= getStartY());
-			assert(y < getEndY());
-			if (y == getStartY()) return;
-			ScanlineInterval newNode = new ScanlineInterval(
-					y,
-					Long.MAX_VALUE,
-					this.weight,
-					this.exactWeight,
-					0,
-					this.endHere,
-					this.next);
-			this.endHere = 0;
-			this.next = newNode;
-			this.startX = Long.MAX_VALUE;
+		private long[] startX = new long[16];
+		private long[] weight = new long[16];
+		private long[] exactWeight = new long[16];
+		private int[] startHere = new int[16];
+		private int[] endHere = new int[16];
+		private int size = 0;
+		private int add(long startY, long startX, long weight, long exactWeight, int startHere, int endHere) {
+			if (size == this.startY.length) {
+				int capacity = 2 * size;
+				this.startY = Arrays.copyOf(this.startY, capacity);
+				this.startX = Arrays.copyOf(this.startX, capacity);
+				this.weight = Arrays.copyOf(this.weight, capacity);
+				this.exactWeight = Arrays.copyOf(this.exactWeight, capacity);
+				this.startHere = Arrays.copyOf(this.startHere, capacity);
+				this.endHere = Arrays.copyOf(this.endHere, capacity);
+			}
+			this.startY[size] = startY;
+			this.startX[size] = startX;
+			this.weight[size] = weight;
+			this.exactWeight[size] = exactWeight;
+			this.startHere[size] = startHere;
+			this.endHere[size] = endHere;
+			return size++;
+		}
+		private int add(ScanlineIntervals src, int i) {
+			return add(src.startY[i], src.startX[i], src.weight[i], src.exactWeight[i], src.startHere[i], src.endHere[i]);
 		}
-		private final long startY;
 		/**
-		 * Long.MIN_VALUE indicates this interval is not maximal
+		 * Appends the intervals [from, to) of the given scanline
 		 */
-		private long startX;
-		private long weight;
-		private long exactWeight;
-		private int startHere;
-		private int endHere;
-		private ScanlineInterval next;
+		private void addAll(ScanlineIntervals src, int from, int to) {
+			int n = to - from;
+			if (size + n > startY.length) {
+				int capacity = Math.max(2 * startY.length, size + n);
+				startY = Arrays.copyOf(startY, capacity);
+				startX = Arrays.copyOf(startX, capacity);
+				weight = Arrays.copyOf(weight, capacity);
+				exactWeight = Arrays.copyOf(exactWeight, capacity);
+				startHere = Arrays.copyOf(startHere, capacity);
+				endHere = Arrays.copyOf(endHere, capacity);
+			}
+			System.arraycopy(src.startY, from, startY, size, n);
+			System.arraycopy(src.startX, from, startX, size, n);
+			System.arraycopy(src.weight, from, weight, size, n);
+			System.arraycopy(src.exactWeight, from, exactWeight, size, n);
+			System.arraycopy(src.startHere, from, startHere, size, n);
+			System.arraycopy(src.endHere, from, endHere, size, n);
+			size += n;
+		}
 		/**
-		 * Start coordinate of the half-open interval
-		 * @return
+		 * @return index of the first interval at or after from starting after the given position
 		 */
-		public long getStartY() {
-			return startY;
+		private int firstStartingAfter(int from, long y) {
+			int i = Arrays.binarySearch(startY, from, size, y);
+			return i >= 0 ? i + 1 : -i - 1;
 		}
 		/**
 		 * End coordinate of the half-open interval
-		 * @return
 		 */
-		public long getEndY() {
-			if (next == null) return Long.MAX_VALUE;
-			return next.startY;
-		}
-		private boolean isMaximalClique() {
-			return startX != Long.MAX_VALUE;
+		private long getEndY(int i) {
+			if (i + 1 >= size) return Long.MAX_VALUE;
+			return startY[i + 1];
 		}
-		public ScanlineInterval getNext() {
-			return next;
+		private boolean isMaximalClique(int i) {
+			return startX[i] != Long.MAX_VALUE;
 		}
-		public void mergeWithNext() {
-			assert(next != null);
-			assert(next.next != null); // can't merge with the end sentinal
-			assert(weight == next.weight);
-			assert(exactWeight == next.exactWeight);
-			assert(startX == Long.MAX_VALUE);
-			assert(next.startX == Long.MAX_VALUE);
-			endHere = next.endHere;
-			next = next.next;
+		/**
+		 * Merges consecutive intervals no longer separated by any node
+		 */
+		private void mergeIntervals() {
+			int last = 0;
+			// (make sure we don't merge our end sentinel)
+			for (int i = 1; i < size; i++) {
+				if (i < size - 1 && endHere[last] == 0 && startHere[i] == 0) {
+					assert(weight[last] == weight[i]);
+					assert(exactWeight[last] == exactWeight[i]);
+					assert(startX[last] == Long.MAX_VALUE);
+					assert(startX[i] == Long.MAX_VALUE);
+					endHere[last] = endHere[i];
+				} else {
+					last++;
+					startY[last] = startY[i];
+					startX[last] = startX[i];
+					weight[last] = weight[i];
+					exactWeight[last] = exactWeight[i];
+					startHere[last] = startHere[i];
+					endHere[last] = endHere[i];
+				}
+			}
+			size = last + 1;
 		}
 		@Override
 		public String toString() {
-			String s = String.format("[%d,%d)(w=%d,s=%d,e=%d,x=%d)", getStartY(), getEndY(), weight, startHere, endHere, startX);
-			if (next != null) return s + "\n" + next.toString();
-			return s;
+			StringBuilder sb = new StringBuilder();
+			for (int i = 0; i < size; i++) {
+				sb.append(String.format("[%d,%d)(w=%d,s=%d,e=%d,x=%d)\n", startY[i], getEndY(i), weight[i], startHere[i], endHere[i], startX[i]));
+			}
+			return sb.toString();
 		}
 	}
+	/**
+	 * Resets the current position to the start of a new scanline
+	 */
+	private void startScanline() {
+		nextScanline.size = 0;
+		nextScanline.add(scanline, 0);
+		scanlineReadPosition = 1;
+		activeScanlineCurrentPosition = 0;
+	}
+	private long currentStartY() {
+		return nextScanline.startY[activeScanlineCurrentPosition];
+	}
+	private long currentEndY() {
+		if (activeScanlineCurrentPosition + 1 < nextScanline.size) return nextScanline.startY[activeScanlineCurrentPosition + 1];
+		if (scanlineReadPosition < scanline.size) return scanline.startY[scanlineReadPosition];
+		return Long.MAX_VALUE;
+	}
+	private void moveToNextInterval() {
+		if (activeScanlineCurrentPosition + 1 == nextScanline.size) {
+			assert(scanlineReadPosition < scanline.size);
+			nextScanline.add(scanline, scanlineReadPosition++);
+		}
+		activeScanlineCurrentPosition++;
+	}
+	/**
+	 * Splits the current interval so an interval starts at the given position
+	 * @param y start y to ensure
+	 */
+	private void splitCurrentAt(long y) {
+		assert(y >= currentStartY());
+		assert(y < currentEndY());
+		if (y == currentStartY()) return;
+		int i = activeScanlineCurrentPosition;
+		// splits are always followed by advancing past the split
+		assert(i == nextScanline.size - 1);
+		nextScanline.add(y, Long.MAX_VALUE, nextScanline.weight[i], nextScanline.exactWeight[i], 0, nextScanline.endHere[i]);
+		nextScanline.endHere[i] = 0;
+		nextScanline.startX[i] = Long.MAX_VALUE;
+	}
 	private List<RectangleGraphNode> getCalledCliques() {
 		List<RectangleGraphNode> result = outBuffer == null ? ImmutableList.<RectangleGraphNode>of() : outBuffer;
 		outBuffer = null;
@@ -165,77 +257,54 @@ public class RectangleGraphMaximalCliqueCalculator implements TrackedState {
 			processEndXBefore(node.startX);
 			scanlineX = node.startX;
 		}
-		incorporateInCurrentScanline(node, 1);
-		activeEndingX.add(node);
+		int handle = nodes.add(node);
+		incorporateInCurrentScanline(handle, 1);
+		activeEndingX.enqueue(handle);
 		return getCalledCliques();
 	}
-	private void mergeIntervals() {
-		assert(activeScanlineEndingY.isEmpty()); // can't merge in the middle of processing
-		// (make sure we don't merge our end sentinel
-		for (ScanlineInterval si = activeScanlineStart; si != null && si.next != null && si.next.next != null; si = si.next) {
-			// merge consecutive nodes
-			while (si.endHere == 0 && si.next.startHere == 0 && si.next.next != null) {
-				assert(si.weight == si.next.weight && si.exactWeight == si.next.exactWeight);
-				// we can merge these together since the separating node is no longer around
-				si.mergeWithNext();
-			}
-		}
-	}
 	private boolean sanityCheckScanlineActive() {
 		if (!Defaults.SANITY_CHECK_CLIQUE) return true;
 		assert(sanityCheck());
 		assert(!activeScanlineEndingY.isEmpty());
 		assert(activeScanlineActiveWeight > 0);
-		assert(activeScanlineCurrentPosition != null);
-		assert(activeScanlineCurrentPosition.getStartY() < Long.MAX_VALUE - 1);
-		assert(activeScanlineCurrentPosition.getEndY() < Long.MAX_VALUE);
+		assert(currentStartY() < Long.MAX_VALUE - 1);
+		assert(currentEndY() < Long.MAX_VALUE);
 		return true;
 	}
 	private boolean sanityCheckScanlineComplete() {
 		if (!Defaults.SANITY_CHECK_CLIQUE) return true;
 		assert(sanityCheck());
-		assert(activeScanlineCurrentPosition == activeScanlineStart);
+		assert(activeScanlineCurrentPosition == 0);
+		assert(scanlineReadPosition == 1);
 		assert(activeScanlineEndingY.isEmpty());
 		assert(activeScanlineActiveWeight == 0);
-		for (ScanlineInterval si = activeScanlineStart.next; si != null && si.next != null; si = si.next) {
-			if (si.next.next != null) {
-				// something should be splitting this node from the previous one
-				assert(si.endHere > 0 || si.next.startHere > 0);
-			}
+		for (int i = 1; i < scanline.size - 2; i++) {
+			// something should be splitting this node from the previous one
+			assert(scanline.endHere[i] > 0 || scanline.startHere[i + 1] > 0);
 		}
 		return true;
 	}
 	private boolean sanityCheck() {
 		if (!Defaults.SANITY_CHECK_CLIQUE) return true;
-		assert(activeScanlineStart != null);
-		assert(activeScanlineStart.getStartY() == Long.MIN_VALUE);
-		assert(activeScanlineStart.weight == 0);
-		assert(activeScanlineStart.startHere == 0);
-		assert(activeScanlineStart.endHere == 0);
-		// check activeScanline is ordered
-		for (ScanlineInterval lastsi = null, si = activeScanlineStart; si != null; lastsi = si, si = si.next) {
-			assert(si.getStartY() < si.getEndY());
-			if (lastsi != null) {
-				assert(lastsi.getStartY() < si.getStartY());
-				assert(lastsi.getEndY() == si.getStartY());
-			} else {
-				assert(si.getStartY() == Long.MIN_VALUE);
-			}
-			if (si.next == null) {
-				// sentinel
-				assert(si.getStartY() == Long.MAX_VALUE - 1);
-				assert(si.getEndY() == Long.MAX_VALUE);
-				assert(si.weight == 0);
-				assert(si.startHere == 0);
-				assert(si.endHere == 0);
-			}
+		assert(nextScanline.startY[0] == Long.MIN_VALUE);
+		assert(nextScanline.weight[0] == 0);
+		assert(nextScanline.startHere[0] == 0);
+		assert(nextScanline.endHere[0] == 0);
+		assert(activeScanlineCurrentPosition < nextScanline.size);
+		// check scanline is ordered
+		for (int i = 1; i < nextScanline.size; i++) {
+			assert(nextScanline.startY[i - 1] < nextScanline.startY[i]);
 		}
-		long weight = 0;
-		for (RectangleGraphNode n : activeScanlineEndingY) {
-			assert(n.startY <= activeScanlineCurrentPosition.getStartY());
-			weight += n.weight;
+		for (int i = scanlineReadPosition; i < scanline.size; i++) {
+			assert((i == scanlineReadPosition ? nextScanline.startY[nextScanline.size - 1] : scanline.startY[i - 1]) < scanline.startY[i]);
 		}
-		assert(activeScanlineActiveWeight == weight);
+		// sentinel
+		ScanlineIntervals last = scanlineReadPosition < scanline.size ? scanline : nextScanline;
+		assert(last.startY[last.size - 1] == Long.MAX_VALUE - 1);
+		assert(last.weight[last.size - 1] == 0);
+		assert(last.startHere[last.size - 1] == 0);
+		assert(last.endHere[last.size - 1] == 0);
+		assert(activeScanlineEndingY.isEmpty() == (activeScanlineActiveWeight == 0));
 		return true;
 	}
 	/**
@@ -246,22 +315,21 @@ public class RectangleGraphMaximalCliqueCalculator implements TrackedState {
 	 * @Param multiplier 1 indicates we are incorporating the start of the given GraphNode to the current scanline 
 	 * 0 indicates we are incorporating the end of the given GraphNode to the current scanline
 	 */
-	private void incorporateInCurrentScanline(RectangleGraphNode node, int multiplier) {
+	private void incorporateInCurrentScanline(int node, int multiplier) {
 		assert(multiplier == -1 || multiplier == 1);
-		assert(scanlineX == (multiplier == 1 ? node.startX : node.endX));
-		long y = node.startY;
-		assert(activeScanlineCurrentPosition.startY <= y);
+		assert(scanlineX == (multiplier == 1 ? nodes.startX(node) : nodes.endX(node)));
+		long y = nodes.startY(node);
+		assert(currentStartY() <= y);
 		scanlineProcessYEndBefore(y, multiplier);
-		if (activeScanlineCurrentPosition.getStartY() != y) {
-			activeScanlineCurrentPosition.splitAt(y);
+		if (currentStartY() != y) {
+			splitCurrentAt(y);
 			scanlineProcessYEndBefore(y, multiplier);
 		}
-		activeScanlineActiveWeight += node.weight;
-		activeScanlineActiveExactWeight += node.exactWeight;
-		activeScanlineCurrentPosition.startHere += multiplier;
-		activeScanlineEndingY.add(node);
-		assert(activeScanlineCurrentPosition.getStartY() == y);
-		assert(activeScanlineEndingY.contains(node));
+		activeScanlineActiveWeight += nodes.weight(node);
+		activeScanlineActiveExactWeight += nodes.exactWeight(node);
+		nextScanline.startHere[activeScanlineCurrentPosition] += multiplier;
+		activeScanlineEndingY.enqueue(node);
+		assert(currentStartY() == y);
 		assert(sanityCheckScanlineActive());
 	}
 	/**
@@ -272,24 +340,24 @@ public class RectangleGraphMaximalCliqueCalculator implements TrackedState {
 	 */
 	private void scanlineProcessYEndBefore(long endYBefore, int multiplier) {
 		assert(multiplier == -1 || multiplier == 1);
-		while (!activeScanlineEndingY.isEmpty() && activeScanlineEndingY.peek().endY < endYBefore) {
-			RectangleGraphNode node = activeScanlineEndingY.poll();
-			long endYexclusive = node.endY + 1;
+		while (!activeScanlineEndingY.isEmpty() && nodes.endY(activeScanlineEndingY.firstInt()) < endYBefore) {
+			int node = activeScanlineEndingY.dequeueInt();
+			long endYexclusive = nodes.endY(node) + 1;
 			int yendCount = 1;
-			long yendWeight = node.weight;
-			long yendExactWeight = node.exactWeight;
-			while (!activeScanlineEndingY.isEmpty() && activeScanlineEndingY.peek().endY + 1 == endYexclusive) {
-				node = activeScanlineEndingY.poll();
+			long yendWeight = nodes.weight(node);
+			long yendExactWeight = nodes.exactWeight(node);
+			while (!activeScanlineEndingY.isEmpty() && nodes.endY(activeScanlineEndingY.firstInt()) + 1 == endYexclusive) {
+				node = activeScanlineEndingY.dequeueInt();
 				yendCount++;
-				yendWeight += node.weight;
-				yendExactWeight += node.exactWeight;
+				yendWeight += nodes.weight(node);
+				yendExactWeight += nodes.exactWeight(node);
 			}
 			advanceScanlineToIntervalContaining(endYexclusive - 1, multiplier);
-			if (activeScanlineCurrentPosition.getEndY() > endYexclusive) {
-				activeScanlineCurrentPosition.splitAt(endYexclusive);
+			if (currentEndY() > endYexclusive) {
+				splitCurrentAt(endYexclusive);
 			}
 			// no need to advance here since our current position is correct
-			activeScanlineCurrentPosition.endHere += yendCount * multiplier;
+			nextScanline.endHere[activeScanlineCurrentPosition] += yendCount * multiplier;
 			advanceScanlineToIntervalContaining(endYexclusive, multiplier); // move on past our closing position
 			activeScanlineActiveWeight -= yendWeight;
 			activeScanlineActiveExactWeight -= yendExactWeight;
@@ -304,93 +372,111 @@ public class RectangleGraphMaximalCliqueCalculator implements TrackedState {
 	 * @param y included in half-open interval to advance scanline to  
 	 */
 	private void advanceScanlineToIntervalContaining(long y, int multiplier) {
-		assert(activeScanlineCurrentPosition.getStartY() <= y); // can't advance backwards
-		while (activeScanlineCurrentPosition.getEndY() <= y) {
-			activeScanlineCurrentPosition.weight += activeScanlineActiveWeight * multiplier;
-			activeScanlineCurrentPosition.exactWeight += activeScanlineActiveExactWeight * multiplier;
+		assert(currentStartY() <= y); // can't advance backwards
+		while (currentEndY() <= y) {
+			if (activeScanlineActiveWeight == 0 && activeScanlineCurrentPosition + 1 == nextScanline.size) {
+				// intervals are unchanged when no nodes are active so can be copied in bulk
+				int end = scanline.firstStartingAfter(scanlineReadPosition, y);
+				nextScanline.addAll(scanline, scanlineReadPosition, end);
+				scanlineReadPosition = end;
+				activeScanlineCurrentPosition = nextScanline.size - 1;
+				continue;
+			}
+			int i = activeScanlineCurrentPosition;
+			nextScanline.weight[i] += activeScanlineActiveWeight * multiplier;
+			nextScanline.exactWeight[i] += activeScanlineActiveExactWeight * multiplier;
 			if (activeScanlineActiveWeight != 0) {
 				// could be maximal if we're adding new evidence
 				// if we're removing evidence then we're now definitely not maximal
 				// if we're doing neither then there is no change from the previous scanline
-				activeScanlineCurrentPosition.startX = Long.MAX_VALUE;
-				if (multiplier == 1 && activeScanlineCurrentPosition.startHere > 0 && activeScanlineCurrentPosition.endHere > 0) {
-					activeScanlineCurrentPosition.startX = scanlineX;
+				nextScanline.startX[i] = Long.MAX_VALUE;
+				if (multiplier == 1 && nextScanline.startHere[i] > 0 && nextScanline.endHere[i] > 0) {
+					nextScanline.startX[i] = scanlineX;
 				}
 			}
-			activeScanlineCurrentPosition = activeScanlineCurrentPosition.getNext();
+			moveToNextInterval();
 		}
-		assert(activeScanlineCurrentPosition.getStartY() <= y);
-		assert(activeScanlineCurrentPosition.getEndY() > y);
+		assert(currentStartY() <= y);
+		assert(currentEndY() > y);
 	}
 	/**
 	 * Calls maximum cliques
 	 * @param endingCurrentScanline nodes ending here. Maximum cliques will always occur within one of these intervals
 	 */
-	private void callMaximumCliques(List<RectangleGraphNode> endingCurrentScanline) {
-		ScanlineInterval interval = activeScanlineStart;
+	private void callMaximumCliques(IntArrayList endingCurrentScanline) {
+		int interval = 0;
 		int index = 0;
 		while (index < endingCurrentScanline.size()) {
-			long startY = endingCurrentScanline.get(index).startY;
-			long endYexclusive = endingCurrentScanline.get(index).endY + 1;
+			long startY = nodes.startY(endingCurrentScanline.getInt(index));
+			long endYexclusive = nodes.endY(endingCurrentScanline.getInt(index)) + 1;
 			index++;
-			while (index < endingCurrentScanline.size() && endingCurrentScanline.get(index).startY <= endYexclusive) {
+			while (index < endingCurrentScanline.size() && nodes.startY(endingCurrentScanline.getInt(index)) <= endYexclusive) {
 				// expand the current calling interval due to overlap
-				endYexclusive = Math.max(endYexclusive, endingCurrentScanline.get(index).endY + 1);
+				endYexclusive = Math.max(endYexclusive, nodes.endY(endingCurrentScanline.getInt(index)) + 1);
 				index++;
 			}
 			// advance to interval
-			while (interval.getEndY() <= startY) {
-				assert(interval.next != null);
-				interval = interval.next;
+			while (scanline.getEndY(interval) <= startY) {
+				assert(interval + 1 < scanline.size);
+				interval++;
 			}
 			// call cliques in interval
-			assert(interval.getStartY() == startY);
-			while (interval.getStartY() < endYexclusive) {
-				if (interval.isMaximalClique()) {
+			assert(scanline.startY[interval] == startY);
+			while (scanline.startY[interval] < endYexclusive) {
+				if (scanline.isMaximalClique(interval)) {
+					if (outBuffer == null) {
+						outBuffer = new ArrayList<>();
+					}
 					outBuffer.add(new RectangleGraphNode(
-							interval.startX, scanlineX,
-							interval.getStartY(), interval.getEndY() - 1, // convert back from half-open to close interval
-							interval.weight,
-							interval.exactWeight));
+							scanline.startX[interval], scanlineX,
+							scanline.startY[interval], scanline.getEndY(interval) - 1, // convert back from half-open to close interval
+							scanline.weight[interval],
+							scanline.exactWeight[interval]));
 				}
-				interval = interval.next;
+				interval++;
 			}
-			assert(interval.getStartY() == endYexclusive);
+			assert(scanline.startY[interval] == endYexclusive);
 		}
 	}
 	private void scanlineCompleteProcessing(int multiplier) {
 		scanlineProcessYEndBefore(Long.MAX_VALUE - 1, multiplier);
+		assert(scanlineReadPosition == scanline.size);
 		// reset ready for next scanline
-		activeScanlineCurrentPosition = activeScanlineStart;
+		ScanlineIntervals completed = nextScanline;
+		nextScanline = scanline;
+		scanline = completed;
 		if (multiplier == -1) {
 			// removal of nodes can result in adjacent intervals requiring merge
-			mergeIntervals();
+			scanline.mergeIntervals();
 		}
+		startScanline();
 		assert(sanityCheckScanlineComplete());
 	}
 	private void processEndXBefore(long endBeforeX) {
-		outBuffer = new ArrayList<RectangleGraphNode>();
-		while (!activeEndingX.isEmpty() && activeEndingX.peek().endX < endBeforeX) {
-			scanlineX = activeEndingX.peek().endX;
+		while (!activeEndingX.isEmpty() && nodes.endX(activeEndingX.firstInt()) < endBeforeX) {
+			scanlineX = nodes.endX(activeEndingX.firstInt());
 			processEndingXOnCurrentScanline();
 		}
 	}
 	private void processEndingXOnCurrentScanline() {
 		assert(activeScanlineEndingY.isEmpty());
-		List<RectangleGraphNode> endingCurrentScanline = new ArrayList<RectangleGraphNode>();
-		while (!activeEndingX.isEmpty() && activeEndingX.peek().endX == scanlineX) {
-			endingCurrentScanline.add(activeEndingX.poll());
+		endingCurrentScanline.clear();
+		while (!activeEndingX.isEmpty() && nodes.endX(activeEndingX.firstInt()) == scanlineX) {
+			endingCurrentScanline.add(activeEndingX.dequeueInt());
 		}
 		callMaximumCliques(endingCurrentScanline);
-		for (RectangleGraphNode g : endingCurrentScanline) {
-			incorporateInCurrentScanline(g, -1);
+		for (int i = 0; i < endingCurrentScanline.size(); i++) {
+			incorporateInCurrentScanline(endingCurrentScanline.getInt(i), -1);
 		}
 		scanlineCompleteProcessing(-1);
+		for (int i = 0; i < endingCurrentScanline.size(); i++) {
+			nodes.release(endingCurrentScanline.getInt(i));
+		}
 	}
 	public List<RectangleGraphNode> complete() {
 		scanlineCompleteProcessing(1);
 		processEndXBefore(Long.MAX_VALUE);
-		return outBuffer;
+		return getCalledCliques();
 	}
 
 	@Override
@@ -399,6 +485,7 @@ public class RectangleGraphMaximalCliqueCalculator implements TrackedState {
 			"outBufferSize",
 			"activeEndingXSize",
 			"activeScanlineEndingYSize",
+			"scanlineIntervalCount",
 		};
 	}
 
@@ -406,8 +493,9 @@ public class RectangleGraphMaximalCliqueCalculator implements TrackedState {
 	public Object[] trackedState() {
 		return new Object[] {
 				outBuffer == null ? 0 : outBuffer.size(),
-				activeEndingX == null ? 0 : activeEndingX.size(),
-				activeScanlineEndingY == null ? 0 : activeScanlineEndingY.size(),
+				activeEndingX.size(),
+				activeScanlineEndingY.size(),
+				scanline.size,
 		};
 	}
 
@@ -415,4 +503,4 @@ public class RectangleGraphMaximalCliqueCalculator implements TrackedState {
 	public Collection<TrackedState> trackedObjects() {
 		return ImmutableList.of(this);
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,102 @@
+package au.edu.wehi.idsv.graph;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+
+import java.util.Arrays;
+
+/**
+ * Reusable primitive storage for weighted rectangle graph nodes.
+ *
+ * Nodes are referenced by integer handle and the storage of released
+ * nodes is reused by subsequently added nodes. Start and end positions
+ * are both inclusive.
+ *
+ * @author Daniel Cameron
+ */
+public class RectangleGraphNodePool {
+	private long[] startX;
+	private long[] endX;
+	private long[] startY;
+	private long[] endY;
+	private long[] weight;
+	private long[] exactWeight;
+	private final IntArrayList released = new IntArrayList();
+	private int allocated = 0;
+	public RectangleGraphNodePool() {
+		this(16);
+	}
+	public RectangleGraphNodePool(int initialCapacity) {
+		initialCapacity = Math.max(1, initialCapacity);
+		startX = new long[initialCapacity];
+		endX = new long[initialCapacity];
+		startY = new long[initialCapacity];
+		endY = new long[initialCapacity];
+		weight = new long[initialCapacity];
+		exactWeight = new long[initialCapacity];
+	}
+	private void grow() {
+		int capacity = 2 * startX.length;
+		startX = Arrays.copyOf(startX, capacity);
+		endX = Arrays.copyOf(endX, capacity);
+		startY = Arrays.copyOf(startY, capacity);
+		endY = Arrays.copyOf(endY, capacity);
+		weight = Arrays.copyOf(weight, capacity);
+		exactWeight = Arrays.copyOf(exactWeight, capacity);
+	}
+	/**
+	 * Adds a node to the pool
+	 * @return handle of the added node
+	 */
+	public int add(long startX, long endX, long startY, long endY, long weight, long exactWeight) {
+		int handle;
+		if (released.isEmpty()) {
+			if (allocated == this.startX.length) {
+				grow();
+			}
+			handle = allocated++;
+		} else {
+			handle = released.popInt();
+		}
+		this.startX[handle] = startX;
+		this.endX[handle] = endX;
+		this.startY[handle] = startY;
+		this.endY[handle] = endY;
+		this.weight[handle] = weight;
+		this.exactWeight[handle] = exactWeight;
+		return handle;
+	}
+	public int add(RectangleGraphNode node) {
+		return add(node.startX, node.endX, node.startY, node.endY, node.weight, node.exactWeight);
+	}
+	/**
+	 * Releases the given node. The handle must not be used after release.
+	 */
+	public void release(int handle) {
+		assert(handle >= 0 && handle < allocated);
+		released.add(handle);
+	}
+	/**
+	 * @return number of nodes currently in the pool
+	 */
+	public int size() {
+		return allocated - released.size();
+	}
+	public long startX(int handle) {
+		return startX[handle];
+	}
+	public long endX(int handle) {
+		return endX[handle];
+	}
+	public long startY(int handle) {
+		return startY[handle];
+	}
+	public long endY(int handle) {
+		return endY[handle];
+	}
+	public long weight(int handle) {
+		return weight[handle];
+	}
+	public long exactWeight(int handle) {
+		return exactWeight[handle];
+	}
+}
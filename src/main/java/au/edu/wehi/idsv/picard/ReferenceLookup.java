@@ -1,6 +1,7 @@
 package au.edu.wehi.idsv.picard;
 
 import htsjdk.samtools.QueryInterval;
+import htsjdk.samtools.SAMSequenceDictionary;
 import htsjdk.samtools.reference.ReferenceSequenceFile;
 
 import java.util.ArrayList;
@@ -18,6 +19,14 @@ public interface ReferenceLookup extends ReferenceSequenceFile {
 	 * @return enture reference sequence separated into chunks of the given intervalSize
 	 */
 	default List<QueryInterval[]> getIntervals(int intervalSize, int changePenalty) {
+		return getIntervals(getSequenceDictionary(), intervalSize, changePenalty);
+	}
+	/**
+	 * Gets a list of intervals generated by splitting each contig of the given dictionary
+	 * into intervals of the given size
+	 * @see #getIntervals(int, int)
+	 */
+	static List<QueryInterval[]> getIntervals(SAMSequenceDictionary dictionary, int intervalSize, int changePenalty) {
 		if (intervalSize <= 1) throw new IllegalArgumentException("intervalSize must be at least 1");
 		if (changePenalty < 0) throw new IllegalArgumentException("changePenalty cannot be negative");
 		if (changePenalty > intervalSize) {
@@ -26,12 +35,12 @@ public interface ReferenceLookup extends ReferenceSequenceFile {
 		List<QueryInterval[]> result = new ArrayList<>();
 		int currentReferenceIndex = 0;
 		int startPosition = 1;
-		while (currentReferenceIndex < getSequenceDictionary().getSequences().size()) {
+		while (currentReferenceIndex < dictionary.getSequences().size()) {
 			int currentIntervalSize = 0;
 			List<QueryInterval> currentIntervals = new ArrayList<>();
 			// build the current interval set
-			while (currentIntervalSize < intervalSize && currentReferenceIndex < getSequenceDictionary().getSequences().size()) {
-				int currentReferenceSize = getSequenceDictionary().getSequence(currentReferenceIndex).getSequenceLength();
+			while (currentIntervalSize < intervalSize && currentReferenceIndex < dictionary.getSequences().size()) {
+				int currentReferenceSize = dictionary.getSequence(currentReferenceIndex).getSequenceLength();
 				int remainingIntervalSize = intervalSize - currentIntervalSize;
 				int endPosition = Math.min(startPosition + remainingIntervalSize - 1, currentReferenceSize);
 				currentIntervals.add(new QueryInterval(currentReferenceIndex, startPosition, endPosition));
@@ -4,22 +4,48 @@ import au.edu.wehi.idsv.debruijn.KmerEncodingHelper;
 import au.edu.wehi.idsv.debruijn.PackedSequence;
 import com.google.common.collect.ImmutableMap;
 import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.SAMSequenceRecord;
 import htsjdk.samtools.reference.ReferenceSequence;
 import htsjdk.samtools.reference.ReferenceSequenceFile;
 import htsjdk.samtools.util.Log;
 
 import java.io.*;
+import java.nio.LongBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.BitSet;
 
 /**
  * 2bit encodes and buffers the entire reference to enable efficient random lookup of small subsequences
+ *
+ * The reference can be persisted to a cache file. The cache file is memory-mapped so the
+ * reference is stored off-heap and shared between all processes using the same cache.
+ *
+ * Cache file format (all values big-endian):
+ * <pre>
+ * long    magic
+ * int     version
+ * int     contig count
+ * for each contig:
+ *   int     name length
+ *   byte[]  UTF-8 name
+ *   long    base count
+ *   long    file offset of 2bit packed bases. First base is packed in the MSBs of the first word.
+ *   long    file offset of ambiguous base bitmask. Base i is bit (i % 64) of word (i / 64).
+ * padding to 8 byte boundary
+ * packed base and ambiguous base bitmask long arrays
+ * </pre>
  * @author Daniel Cameron
  *
  */
 public class TwoBitBufferedReferenceSequenceFile implements ReferenceSequenceFile, ReferenceLookup {
-	private static final long serialVersionUID = -8769790295923840212L;
 	private static final Log log = Log.getInstance(TwoBitBufferedReferenceSequenceFile.class);
+	private static final long CACHE_MAGIC = 0x4752494453533242L; // GRIDSS2B
+	private static final int CACHE_VERSION = 1;
+	private static final int BASES_PER_WORD = Long.SIZE / 2;
 	private final ReferenceSequenceFile underlying;
 	private final PackedReferenceSequence[] referenceIndexLookup;
 	private File cacheFile;
@@ -43,74 +69,209 @@ public class TwoBitBufferedReferenceSequenceFile implements ReferenceSequenceFil
 		if (seq == null) {
 			seq = addToCache(underlying.getSequenceDictionary().getSequence(referenceIndex).getSequenceName());
 		}
-		if (seq.ambiguous.get(position - 1)) {
+		if (seq.isAmbiguous(position - 1)) {
 			return 'N';
 		}
 		return seq.get(position - 1);
 	}
+	/**
+	 * Memory-maps the given cache file.
+	 * Cache files in an older format, or that do not match the reference sequence dictionary are deleted.
+	 * @return true if the cache file was successfully loaded
+	 */
 	public synchronized boolean load(File file) {
+		PackedReferenceSequence[] loaded = new PackedReferenceSequence[referenceIndexLookup.length];
 		ImmutableMap.Builder<String, PackedReferenceSequence> builder = ImmutableMap.<String, PackedReferenceSequence>builder();
-		try(FileInputStream fis = new FileInputStream(file)) {
-			try (ObjectInputStream ois = new ObjectInputStream(fis)) {
-				for (int i = 0; i < referenceIndexLookup.length; i++) {
-					referenceIndexLookup[i] = (PackedReferenceSequence) ois.readObject();
-					builder.put(referenceIndexLookup[i].name, referenceIndexLookup[i]);
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+			FileChannel channel = raf.getChannel();
+			DataInputStream dis = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+			if (raf.length() < 16 || dis.readLong() != CACHE_MAGIC || dis.readInt() != CACHE_VERSION) {
+				log.info("Deleting out of date cache file " + file);
+				raf.close();
+				file.delete();
+				return false;
+			}
+			SAMSequenceDictionary dict = underlying.getSequenceDictionary();
+			int contigCount = dis.readInt();
+			if (contigCount != dict.size()) {
+				log.info("Deleting cache file " + file + " as it does not match the reference genome.");
+				raf.close();
+				file.delete();
+				return false;
+			}
+			for (int i = 0; i < contigCount; i++) {
+				byte[] nameBytes = new byte[dis.readInt()];
+				dis.readFully(nameBytes);
+				String name = new String(nameBytes, StandardCharsets.UTF_8);
+				long length = dis.readLong();
+				long packedOffset = dis.readLong();
+				long ambiguousOffset = dis.readLong();
+				SAMSequenceRecord ssr = dict.getSequence(i);
+				if (!ssr.getSequenceName().equals(name) || ssr.getSequenceLength() != length) {
+					log.info("Deleting cache file " + file + " as it does not match the reference genome.");
+					raf.close();
+					file.delete();
+					return false;
 				}
+				// Mappings remain valid after the channel is closed
+				LongBuffer packed = channel.map(FileChannel.MapMode.READ_ONLY, packedOffset, 8L * packedWords(length)).asLongBuffer();
+				LongBuffer ambiguous = channel.map(FileChannel.MapMode.READ_ONLY, ambiguousOffset, 8L * ambiguousWords(length)).asLongBuffer();
+				loaded[i] = new PackedReferenceSequence(name, i, (int)length, packed, ambiguous);
+				builder.put(name, loaded[i]);
 			}
-			cache = builder.build();
-			return true;
-		} catch (java.io.InvalidClassException e) {
-			log.info("Deleting out of date cache file " + file);
-			file.delete();
 		} catch (Exception e) {
 			log.error("Error loading reference genome from cache " + file, e);
+			return false;
 		}
-		return false;
+		System.arraycopy(loaded, 0, referenceIndexLookup, 0, loaded.length);
+		cache = builder.build();
+		return true;
+	}
+	private static int packedWords(long length) {
+		return (int)((length + BASES_PER_WORD - 1) / BASES_PER_WORD);
+	}
+	private static int ambiguousWords(long length) {
+		return (int)((length + Long.SIZE - 1) / Long.SIZE);
 	}
+	/**
+	 * Writes the reference genome to the given cache file.
+	 * Contigs are written one at a time so the full reference genome is never held in memory.
+	 */
 	public synchronized void save(File file) {
 		if (file.exists()) {
 			throw new IllegalArgumentException(file + " already exists");
 		}
-		// Ensure the lookup is fully populated
-		underlying.getSequenceDictionary()
-				.getSequences()
-				.stream()
-				.map(s -> s.getSequenceName())
-				.forEach(s -> cacheLoad(s));
-		try(FileOutputStream fos = new FileOutputStream(file)) {
-			try(ObjectOutputStream oos = new ObjectOutputStream(fos)) {
-				for (int i =  0; i < referenceIndexLookup.length; i++) {
-					oos.writeObject(referenceIndexLookup[i]);
+		File tmp = null;
+		try {
+			// Write to a temp file so concurrent processes never see a partially written cache
+			tmp = File.createTempFile(file.getName() + ".", ".tmp", file.getAbsoluteFile().getParentFile());
+			SAMSequenceDictionary dict = underlying.getSequenceDictionary();
+			try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+				long headerSize = 8 + 4 + 4;
+				for (SAMSequenceRecord ssr : dict.getSequences()) {
+					headerSize += 4 + ssr.getSequenceName().getBytes(StandardCharsets.UTF_8).length + 8 + 8 + 8;
+				}
+				long offset = (headerSize + 7) / 8 * 8;
+				dos.writeLong(CACHE_MAGIC);
+				dos.writeInt(CACHE_VERSION);
+				dos.writeInt(dict.size());
+				for (SAMSequenceRecord ssr : dict.getSequences()) {
+					byte[] nameBytes = ssr.getSequenceName().getBytes(StandardCharsets.UTF_8);
+					dos.writeInt(nameBytes.length);
+					dos.write(nameBytes);
+					dos.writeLong(ssr.getSequenceLength());
+					dos.writeLong(offset);
+					offset += 8L * packedWords(ssr.getSequenceLength());
+					dos.writeLong(offset);
+					offset += 8L * ambiguousWords(ssr.getSequenceLength());
+				}
+				for (long i = headerSize; i % 8 != 0; i++) {
+					dos.writeByte(0);
+				}
+				for (SAMSequenceRecord ssr : dict.getSequences()) {
+					PackedReferenceSequence seq = cache.get(ssr.getSequenceName());
+					if (seq == null) {
+						seq = new PackedReferenceSequence(underlying.getSequence(ssr.getSequenceName()));
+					}
+					if (seq.length() != ssr.getSequenceLength()) {
+						throw new IllegalStateException(String.format("Length of %s does not match sequence dictionary", ssr.getSequenceName()));
+					}
+					for (int i = 0; i < seq.packed.limit(); i++) {
+						dos.writeLong(seq.packed.get(i));
+					}
+					for (int i = 0; i < seq.ambiguous.limit(); i++) {
+						dos.writeLong(seq.ambiguous.get(i));
+					}
 				}
 			}
+			Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
 		} catch (Exception e) {
 			log.error("Error saving reference genome to cache file " + file, e);
 			try {
-				if (file.exists()) {
-					Files.delete(file.toPath());
+				if (tmp != null && tmp.exists()) {
+					Files.delete(tmp.toPath());
 				}
 			} catch (IOException e1) {
 				// swallow recovery exception
 			}
 		}
 	}
-	public static class PackedReferenceSequence extends PackedSequence implements Serializable {
+	/**
+	 * 2bit encoded reference sequence with ambiguous bases tracked in a separate bitmask.
+	 * Backing storage is either on the heap, or memory-mapped from a cache file.
+	 */
+	public static class PackedReferenceSequence {
 		private final String name;
 	    private final int contigIndex;
-	    private final long length;
-	    private final BitSet ambiguous;
+	    private final int length;
+	    private final LongBuffer packed;
+	    private final LongBuffer ambiguous;
 		public PackedReferenceSequence(ReferenceSequence seq) {
-			super(seq.getBases(), false, false);
 			this.name = seq.getName();
 			this.contigIndex = seq.getContigIndex();
 			this.length = seq.length();
-			this.ambiguous = new BitSet(seq.length());
 			byte[] seqBases = seq.getBases();
+			this.packed = LongBuffer.wrap(new PackedSequence(seqBases, false, false).asLongArray());
+			BitSet bs = new BitSet(length);
 			for (int i = 0; i < length; i++) {
 				if (KmerEncodingHelper.isAmbiguous(seqBases[i])) {
-					ambiguous.set(i);
+					bs.set(i);
 				}
 			}
+			long[] words = new long[ambiguousWords(length)];
+			long[] setWords = bs.toLongArray();
+			System.arraycopy(setWords, 0, words, 0, setWords.length);
+			this.ambiguous = LongBuffer.wrap(words);
+		}
+		private PackedReferenceSequence(String name, int contigIndex, int length, LongBuffer packed, LongBuffer ambiguous) {
+			this.name = name;
+			this.contigIndex = contigIndex;
+			this.length = length;
+			this.packed = packed;
+			this.ambiguous = ambiguous;
+		}
+		public int length() {
+			return length;
+		}
+		/**
+		 * Gets the base at the given 0-based offset. Ambiguous bases are not converted to Ns
+		 */
+		public byte get(int offset) {
+			if (offset < 0 || offset >= length) throw new IndexOutOfBoundsException("offset must fall within sequence");
+			long word = packed.get(offset / BASES_PER_WORD);
+			return KmerEncodingHelper.encodedToPicardBase(word >>> (2 * (BASES_PER_WORD - 1 - offset % BASES_PER_WORD)));
+		}
+		/**
+		 * Determines whether the base at the given 0-based offset is ambiguous
+		 */
+		public boolean isAmbiguous(int offset) {
+			return ((ambiguous.get(offset / Long.SIZE) >>> (offset % Long.SIZE)) & 1) != 0;
+		}
+		public byte[] getBytes(int offset, int length) {
+			byte[] seq = new byte[length];
+			for (int i = 0; i < length; i++) {
+				seq[i] = get(offset + i);
+			}
+			return seq;
+		}
+		/**
+		 * Gets the 2bit encoded kmer starting at the given 0-based offset
+		 */
+		public long getKmer(final int offset, final int k) {
+			if (offset + k > length) {
+				throw new IndexOutOfBoundsException("kmer out of bounds");
+			}
+			int wordIndex = offset / BASES_PER_WORD;
+			int basesToSkipInWord = offset % BASES_PER_WORD;
+			long word = packed.get(wordIndex) << (2 * basesToSkipInWord);
+			if (basesToSkipInWord + k <= BASES_PER_WORD) {
+				return word >>> (2 * (BASES_PER_WORD - k));
+			}
+			int lengthInNextWord = basesToSkipInWord + k - BASES_PER_WORD;
+			long kmer = word >>> (2 * basesToSkipInWord);
+			kmer <<= 2 * lengthInNextWord;
+			kmer |= packed.get(wordIndex + 1) >>> (2 * (BASES_PER_WORD - lengthInNextWord));
+			return kmer;
 		}
 		public ReferenceSequence getSequence() {
 			return getSubsequenceAt(1, length);
@@ -120,7 +281,7 @@ public class TwoBitBufferedReferenceSequenceFile implements ReferenceSequenceFil
 			ReferenceSequence seq = new ReferenceSequence(name, contigIndex, getBytes((int)(start - 1), length));
 			byte[] seqBases = seq.getBases();
 			for (int i = 0; i < length; i++) {
-				if (ambiguous.get((int)start - 1 + i)) {
+				if (isAmbiguous((int)start - 1 + i)) {
 					seqBases[i] = 'N';
 				}
 			}
@@ -131,7 +292,21 @@ public class TwoBitBufferedReferenceSequenceFile implements ReferenceSequenceFil
 		 * Determines whether any of the bases in the given 1-based inclusive range are ambiguous.
 		 */
 		public boolean anyAmbiguous(long start, long stop) {
-			return !ambiguous.get((int)start - 1, (int)stop).isEmpty();
+			int first = (int)start - 1;
+			int last = (int)stop - 1;
+			for (int wordIndex = first / Long.SIZE; wordIndex <= last / Long.SIZE; wordIndex++) {
+				long word = ambiguous.get(wordIndex);
+				if (wordIndex == first / Long.SIZE) {
+					word &= -1L << (first % Long.SIZE);
+				}
+				if (wordIndex == last / Long.SIZE) {
+					word &= -1L >>> (Long.SIZE - 1 - last % Long.SIZE);
+				}
+				if (word != 0) {
+					return true;
+				}
+			}
+			return false;
 		}
 	}
 	@Override
@@ -164,13 +339,17 @@ public class TwoBitBufferedReferenceSequenceFile implements ReferenceSequenceFil
 				} else {
 					log.info("Failed to load reference genome from cache file.");
 				}
-			} else {
-				if (!cacheFile.getParentFile().canWrite()) {
+			}
+			if (!cacheFile.exists()) {
+				if (!cacheFile.getAbsoluteFile().getParentFile().canWrite()) {
 					log.warn("Cannot write to " + cacheFile + " not persisting 2bit compressed reference genome cache");
 				} else {
 					log.info("Saving reference genome cache to " + cacheFile);
 					save(cacheFile);
 					log.info("Saving reference genome cache complete");
+					if (cacheFile.exists()) {
+						load(cacheFile);
+					}
 				}
 			}
 			// Only attempt load/save once
@@ -216,6 +395,6 @@ public class TwoBitBufferedReferenceSequenceFile implements ReferenceSequenceFil
 	}
 	@Override
 	public void close() throws IOException {
-		underlying.close();	
+		underlying.close();
 	}
 }
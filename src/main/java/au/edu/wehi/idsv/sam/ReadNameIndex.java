@@ -0,0 +1,310 @@
+package au.edu.wehi.idsv.sam;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import htsjdk.samtools.BAMFileSpan;
+import htsjdk.samtools.Chunk;
+import htsjdk.samtools.SAMFileSource;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMRecordIterator;
+import htsjdk.samtools.SamReader;
+import htsjdk.samtools.SamReaderFactory;
+import htsjdk.samtools.util.CloseableIterator;
+import htsjdk.samtools.util.RuntimeIOException;
+import htsjdk.samtools.util.SortingCollection;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.NoSuchElementException;
+
+/**
+ * On-disk index mapping hashed read names to the BGZF virtual file offsets of the
+ * primary alignment records with that name.
+ *
+ * The index consists of a fixed-size header followed by (hash, virtual offset) entries sorted by hash.
+ * Since only the read name hash is stored, records located by the index must be checked against
+ * the actual read name. Lookups are performed against a memory mapping of the index file.
+ *
+ * @author Daniel Cameron
+ *
+ */
+public class ReadNameIndex implements Closeable {
+	public static final String FILE_EXTENSION = ".rni";
+	private static final int MAGIC = 0x494E5247; // GRNI
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 8;
+	private static final int ENTRY_SIZE = 8 + 8;
+	private static final int BUFFER_SIZE = 1 << 16;
+	/**
+	 * Number of entries in each memory mapped segment of the index.
+	 * Individual mappings are limited to 2GB.
+	 */
+	private static final int ENTRIES_PER_SEGMENT = (1 << 30) / ENTRY_SIZE;
+	private static final HashFunction hf = Hashing.murmur3_128();
+	private final ByteBuffer[] segments;
+	private final long entryCount;
+	private ReadNameIndex(FileChannel channel, long entryCount) throws IOException {
+		this.entryCount = entryCount;
+		this.segments = new ByteBuffer[(int)((entryCount + ENTRIES_PER_SEGMENT - 1) / ENTRIES_PER_SEGMENT)];
+		for (int i = 0; i < segments.length; i++) {
+			long first = (long)i * ENTRIES_PER_SEGMENT;
+			long count = Math.min(ENTRIES_PER_SEGMENT, entryCount - first);
+			segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE + first * ENTRY_SIZE, count * ENTRY_SIZE);
+		}
+	}
+	/**
+	 * Default location of the read name index for the given file
+	 */
+	public static File getIndexFile(File input) {
+		return new File(input.getPath() + FILE_EXTENSION);
+	}
+	/**
+	 * Opens the read name index for the given input file.
+	 * @param index read name index
+	 * @param input file that was indexed
+	 * @return read name index, or null if the index does not exist or was not created from the current input file.
+	 */
+	public static ReadNameIndex open(File index, File input) throws IOException {
+		if (index == null || !index.exists()) return null;
+		try (RandomAccessFile raf = new RandomAccessFile(index, "r")) {
+			if (raf.length() < HEADER_SIZE
+					|| raf.readInt() != MAGIC
+					|| raf.readInt() != VERSION
+					|| raf.readLong() != input.length()
+					|| raf.readLong() != input.lastModified()) {
+				return null;
+			}
+			long entryCount = raf.readLong();
+			if (raf.length() != HEADER_SIZE + entryCount * ENTRY_SIZE) {
+				return null;
+			}
+			// mappings remain valid after the channel is closed
+			return new ReadNameIndex(raf.getChannel(), entryCount);
+		}
+	}
+	/**
+	 * Determines whether a read name index can be created for the given file.
+	 * Only BAM files can be indexed as the index stores BGZF virtual file offsets.
+	 */
+	public static boolean canIndex(File input) throws IOException {
+		try (SamReader reader = SamReaderFactory.makeDefault().open(input)) {
+			return reader.type() == SamReader.Type.BAM_TYPE;
+		}
+	}
+	private static long hash(String readName) {
+		return hf.hashString(readName, StandardCharsets.UTF_8).asLong();
+	}
+	private long hashAt(long i) {
+		return segments[(int)(i / ENTRIES_PER_SEGMENT)].getLong((int)(i % ENTRIES_PER_SEGMENT) * ENTRY_SIZE);
+	}
+	private long offsetAt(long i) {
+		return segments[(int)(i / ENTRIES_PER_SEGMENT)].getLong((int)(i % ENTRIES_PER_SEGMENT) * ENTRY_SIZE + 8);
+	}
+	/**
+	 * Looks up the virtual file offsets of records that potentially have the given read names
+	 * @param readNames read names to find
+	 * @return virtual file offsets in ascending order
+	 */
+	public long[] lookup(Collection<String> readNames) {
+		long[] hashes = readNames.stream().mapToLong(ReadNameIndex::hash).sorted().distinct().toArray();
+		long[] offsets = new long[hashes.length];
+		int offsetCount = 0;
+		for (long hash : hashes) {
+			// find first entry with the given hash
+			long lo = 0;
+			long hi = entryCount;
+			while (lo < hi) {
+				long mid = (lo + hi) >>> 1;
+				if (hashAt(mid) < hash) {
+					lo = mid + 1;
+				} else {
+					hi = mid;
+				}
+			}
+			for (long i = lo; i < entryCount; i++) {
+				if (hashAt(i) != hash) break;
+				if (offsetCount == offsets.length) {
+					offsets = Arrays.copyOf(offsets, 2 * offsets.length);
+				}
+				offsets[offsetCount++] = offsetAt(i);
+			}
+		}
+		offsets = Arrays.copyOf(offsets, offsetCount);
+		Arrays.sort(offsets);
+		return offsets;
+	}
+	/**
+	 * Iterates over the records at the given virtual file offsets
+	 * @param reader BAM file reader
+	 * @param offsets virtual file offsets in ascending order
+	 */
+	public static CloseableIterator<SAMRecord> iterator(SamReader reader, long[] offsets) {
+		return new OffsetIterator(reader, offsets);
+	}
+	@Override
+	public void close() {
+		Arrays.fill(segments, null);
+	}
+	private static class OffsetIterator implements CloseableIterator<SAMRecord> {
+		private final SamReader reader;
+		private final long[] offsets;
+		private int i = 0;
+		public OffsetIterator(SamReader reader, long[] offsets) {
+			this.reader = reader;
+			this.offsets = offsets;
+		}
+		@Override
+		public boolean hasNext() {
+			return i < offsets.length;
+		}
+		@Override
+		public SAMRecord next() {
+			if (!hasNext()) throw new NoSuchElementException();
+			long offset = offsets[i++];
+			// A chunk ending immediately after the record start contains only the record at that offset
+			try (SAMRecordIterator it = reader.indexing().iterator(new BAMFileSpan(new Chunk(offset, offset + 1)))) {
+				if (!it.hasNext()) {
+					throw new IllegalStateException(String.format("No record found at virtual file offset %d. Read name index is out of date.", offset));
+				}
+				return it.next();
+			}
+		}
+		@Override
+		public void close() {
+		}
+	}
+	/**
+	 * Writes a read name index.
+	 * Records must be read with SamReaderFactory.Option.INCLUDE_SOURCE_IN_RECORDS enabled
+	 * so their file offsets are known.
+	 *
+	 * The index is only written when finish() is called. Closing the writer without calling
+	 * finish() discards the index.
+	 */
+	public static class Writer implements Closeable {
+		private final File index;
+		private final File input;
+		private final SortingCollection<long[]> entries;
+		private long entryCount = 0;
+		private boolean closed = false;
+		/**
+		 * @param index read name index file to write
+		 * @param input file being indexed
+		 * @param tmpDir temporary directory
+		 * @param maxRecordsInRam maximum number of index entries to hold in memory
+		 * @throws IllegalArgumentException if the input file is not a BAM file
+		 */
+		public Writer(File index, File input, Path tmpDir, int maxRecordsInRam) throws IOException {
+			if (!canIndex(input)) {
+				throw new IllegalArgumentException("Unable to create read name index for " + input + ". Read name indexes can only be created for BAM files.");
+			}
+			this.index = index;
+			this.input = input;
+			this.entries = SortingCollection.newInstance(long[].class, new EntryCodec(),
+					Comparator.<long[]>comparingLong(e -> e[0]).thenComparingLong(e -> e[1]),
+					maxRecordsInRam, tmpDir);
+		}
+		/**
+		 * Adds the record to the index. Secondary and supplementary alignments are not indexed.
+		 */
+		public void add(SAMRecord r) {
+			if (r.isSecondaryOrSupplementary()) return;
+			SAMFileSource source = r.getFileSource();
+			if (source == null || !(source.getFilePointer() instanceof BAMFileSpan)) {
+				throw new IllegalArgumentException("Read name index requires BAM records with file source information.");
+			}
+			long offset = ((BAMFileSpan)source.getFilePointer()).getFirstOffset();
+			entries.add(new long[] { hash(r.getReadName()), offset });
+			entryCount++;
+		}
+		/**
+		 * Writes the index. Must only be called after every record of the input file has been added.
+		 */
+		public void finish() throws IOException {
+			if (closed) throw new IllegalStateException("Read name index writer already closed");
+			entries.doneAdding();
+			File tmp = new File(index.getPath() + ".tmp");
+			try {
+				try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), BUFFER_SIZE))) {
+					dos.writeInt(MAGIC);
+					dos.writeInt(VERSION);
+					dos.writeLong(input.length());
+					dos.writeLong(input.lastModified());
+					dos.writeLong(entryCount);
+					for (long[] e : entries) {
+						dos.writeLong(e[0]);
+						dos.writeLong(e[1]);
+					}
+				}
+				if (!tmp.renameTo(index)) {
+					throw new IOException("Unable to rename " + tmp + " to " + index);
+				}
+			} finally {
+				Files.deleteIfExists(tmp.toPath());
+				close();
+			}
+		}
+		/**
+		 * Releases temporary files. The index is not written if finish() has not been called.
+		 */
+		@Override
+		public void close() {
+			if (closed) return;
+			closed = true;
+			entries.cleanup();
+		}
+	}
+	private static class EntryCodec implements SortingCollection.Codec<long[]> {
+		private DataOutputStream os;
+		private DataInputStream is;
+		@Override
+		public void setOutputStream(OutputStream os) {
+			this.os = new DataOutputStream(os);
+		}
+		@Override
+		public void setInputStream(InputStream is) {
+			this.is = new DataInputStream(is);
+		}
+		@Override
+		public void encode(long[] val) {
+			try {
+				os.writeLong(val[0]);
+				os.writeLong(val[1]);
+			} catch (IOException e) {
+				throw new RuntimeIOException(e);
+			}
+		}
+		@Override
+		public long[] decode() {
+			try {
+				long hash = is.readLong();
+				return new long[] { hash, is.readLong() };
+			} catch (EOFException e) {
+				return null;
+			} catch (IOException e) {
+				throw new RuntimeIOException(e);
+			}
+		}
+		@Override
+		public SortingCollection.Codec<long[]> clone() {
+			return new EntryCodec();
+		}
+	}
+}
@@ -0,0 +1,147 @@
+package au.edu.wehi.idsv.sam;
+
+import au.edu.wehi.idsv.util.AsyncBufferedIterator;
+import au.edu.wehi.idsv.util.AutoClosingIterator;
+import com.google.common.collect.Iterators;
+import htsjdk.samtools.QueryInterval;
+import htsjdk.samtools.SAMFileHeader.SortOrder;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMRecordIterator;
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.samtools.SamReader;
+import htsjdk.samtools.SamReaderFactory;
+import htsjdk.samtools.util.CloseableIterator;
+import htsjdk.samtools.util.CloserUtil;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterates over an indexed coordinate sorted SAM/BAM file by splitting the genome into shards and
+ * reading and decoding each shard with its own reader on a background thread.
+ *
+ * Records are returned in the same order as a full scan of the file: each shard returns only the
+ * records starting within the shard, shards are consumed in genomic order, and reads without
+ * a reference are returned last.
+ *
+ * @author Daniel Cameron
+ *
+ */
+public class RegionShardedSamRecordIterator implements CloseableIterator<SAMRecord> {
+	private final SamReaderFactory factory;
+	private final File input;
+	private final ArrayDeque<QueryInterval> pending;
+	private final ArrayDeque<CloseableIterator<SAMRecord>> open = new ArrayDeque<>();
+	private final int concurrentShards;
+	private final int bufferCount;
+	private final int batchSize;
+	private boolean pendingUnmapped;
+	/**
+	 * @param factory reader factory used to open a reader for each shard
+	 * @param input indexed coordinate sorted input file
+	 * @param dictionary sequence dictionary of the input file
+	 * @param shardCount approximate number of genomic shards to split the input into
+	 * @param concurrentShards number of shards to read ahead concurrently
+	 * @param includeUnmapped include reads without a reference
+	 */
+	public RegionShardedSamRecordIterator(SamReaderFactory factory, File input, SAMSequenceDictionary dictionary, int shardCount, int concurrentShards, boolean includeUnmapped) {
+		this(factory, input, getShards(dictionary, shardCount), includeUnmapped, concurrentShards, gridss.Defaults.ASYNC_BUFFERS, gridss.Defaults.ASYNC_BUFFER_SIZE);
+	}
+	/**
+	 * @param shards shards in genomic order. Each record is returned by the shard containing its alignment start.
+	 * @param includeUnmapped include reads without a reference after all shards
+	 */
+	public RegionShardedSamRecordIterator(SamReaderFactory factory, File input, List<QueryInterval> shards, boolean includeUnmapped, int concurrentShards, int bufferCount, int batchSize) {
+		if (concurrentShards < 1) throw new IllegalArgumentException("concurrentShards must be positive");
+		this.factory = factory;
+		this.input = input;
+		this.pending = new ArrayDeque<>(shards);
+		this.concurrentShards = concurrentShards;
+		this.bufferCount = bufferCount;
+		this.batchSize = batchSize;
+		this.pendingUnmapped = includeUnmapped;
+		openShards();
+	}
+	/**
+	 * Determines whether the given file can be read by shard.
+	 */
+	public static boolean canShard(SamReader reader) {
+		return reader.hasIndex() && reader.getFileHeader().getSortOrder() == SortOrder.coordinate;
+	}
+	/**
+	 * Splits the genome into shards of approximately equal size.
+	 * @param dictionary sequence dictionary
+	 * @param shardCount approximate number of shards
+	 * @return shards in genomic order
+	 */
+	public static List<QueryInterval> getShards(SAMSequenceDictionary dictionary, int shardCount) {
+		long genomeSize = Math.max(1, dictionary.getReferenceLength());
+		int shardSize = (int)Math.min(Integer.MAX_VALUE, Math.max(1, (genomeSize + shardCount - 1) / Math.max(1, shardCount)));
+		List<QueryInterval> shards = new ArrayList<>();
+		for (SAMSequenceRecord seq : dictionary.getSequences()) {
+			for (int start = 1; start <= seq.getSequenceLength(); start += shardSize) {
+				// the final shard of each contig extends past the contig end so reads
+				// aligned off the end of the contig are still included
+				int end = start + shardSize > seq.getSequenceLength() ? 0 : start + shardSize - 1;
+				shards.add(new QueryInterval(seq.getSequenceIndex(), start, end));
+				if (end == 0) break;
+			}
+		}
+		return shards;
+	}
+	private void openShards() {
+		while (open.size() < concurrentShards && !pending.isEmpty()) {
+			open.add(openShard(pending.poll()));
+		}
+		if (open.size() < concurrentShards && pending.isEmpty() && pendingUnmapped) {
+			pendingUnmapped = false;
+			open.add(openShard(null));
+		}
+	}
+	private CloseableIterator<SAMRecord> openShard(QueryInterval shard) {
+		SamReader reader = factory.open(input);
+		SAMRecordIterator it;
+		String description;
+		if (shard == null) {
+			it = reader.queryUnmapped();
+			description = "unmapped";
+		} else {
+			// Padding the query by a base ensures alignments with no reference bases
+			// (e.g. 10S10I) starting at the shard start are not omitted by the overlap query
+			it = reader.query(new QueryInterval[] { new QueryInterval(shard.referenceIndex, Math.max(1, shard.start - 1), shard.end) }, false);
+			description = String.format("%s:%d-%d", reader.getFileHeader().getSequence(shard.referenceIndex).getSequenceName(), shard.start, shard.end);
+		}
+		// Reads overlapping the shard start are processed by the preceding shard
+		final int start = shard == null ? 0 : shard.start;
+		AutoClosingIterator<SAMRecord> shardIt = new AutoClosingIterator<>(Iterators.filter(it, r -> r.getAlignmentStart() >= start), it, reader);
+		return new AsyncBufferedIterator<>(shardIt, input.getName() + " " + description, bufferCount, batchSize);
+	}
+	@Override
+	public boolean hasNext() {
+		while (!open.isEmpty()) {
+			if (open.peek().hasNext()) {
+				return true;
+			}
+			CloserUtil.close(open.poll());
+			openShards();
+		}
+		return false;
+	}
+	@Override
+	public SAMRecord next() {
+		if (!hasNext()) throw new NoSuchElementException();
+		return open.peek().next();
+	}
+	@Override
+	public void close() {
+		pending.clear();
+		pendingUnmapped = false;
+		while (!open.isEmpty()) {
+			CloserUtil.close(open.poll());
+		}
+	}
+}
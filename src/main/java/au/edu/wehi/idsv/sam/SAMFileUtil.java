@@ -1,11 +1,9 @@
 package au.edu.wehi.idsv.sam;
 
-import au.edu.wehi.idsv.Defaults;
 import au.edu.wehi.idsv.FileSystemContext;
 import au.edu.wehi.idsv.IntermediateFileUtil;
 import au.edu.wehi.idsv.util.AsyncBufferedIterator;
 import au.edu.wehi.idsv.util.FileHelper;
-import au.edu.wehi.idsv.validation.OrderAssertingIterator;
 import com.google.common.collect.PeekingIterator;
 import htsjdk.samtools.*;
 import htsjdk.samtools.SAMFileHeader.SortOrder;
@@ -114,51 +112,31 @@ public class SAMFileUtil {
 					break;
 			}
 			log.info("Sorting " + unsorted);
-			SortingCollection<SAMRecord> collection = null;
 			if (tmpFile != output && tmpFile.exists()) {
 				FileHelper.delete(tmpFile, true);
 			}
+			SortingSAMFileWriter sortingWriter = null;
 			try {
-				SAMFileHeader header = null;
 				try (SamReader reader = readerFactory.open(unsorted)) {
-					header = reader.getFileHeader().clone();
+					SAMFileHeader header = reader.getFileHeader().clone();
 					header.setSortOrder(sortOrder);
 					if (headerCallback != null) {
 						header = headerCallback.apply(header);
 					}
+					sortingWriter = new SortingSAMFileWriter(fsc, header, tmpFile, sortComparator, writerFactory);
 					try (CloseableIterator<SAMRecord> rit = reader.iterator()) {
-						collection = SortingCollection.newInstance(
-								SAMRecord.class,
-								new BAMRecordCodec(header),
-								sortComparator,
-								fsc.getMaxBufferedRecordsPerFile(),
-								fsc.getTemporaryDirectory().toPath());
 						while (rit.hasNext()) {
-							collection.add(rit.next());
+							sortingWriter.addAlignment(rit.next());
 						}
 					}
 				}
-				collection.doneAdding();
-				try (SAMFileWriter writer = writerFactory.makeSAMOrBAMWriter(header, true, tmpFile)) {
-					writer.setProgressLogger(new ProgressLogger(log, 10000000));
-					try (CloseableIterator<SAMRecord> wit = collection.iterator()) {
-						@SuppressWarnings("resource") // bad eclipse warning 
-						Iterator<SAMRecord> it = wit;
-				    	if (Defaults.SANITY_CHECK_ITERATORS) {
-							it = new OrderAssertingIterator<SAMRecord>(wit, sortComparator);
-						}
-						while (it.hasNext()) {
-							writer.addAlignment(it.next());
-						}
-					}
-				}
-				collection.cleanup();
-				collection = null;
+				sortingWriter.close();
+				sortingWriter = null;
 				if (tmpFile != output) {
 					FileHelper.move(tmpFile, output, true);
 				}
 			} finally {
-				if (collection != null) collection.cleanup();
+				if (sortingWriter != null) sortingWriter.cleanup();
 				if (tmpFile != output & tmpFile.exists()) {
 					FileHelper.delete(tmpFile, true);
 				}
@@ -0,0 +1,129 @@
+package au.edu.wehi.idsv.sam;
+
+import au.edu.wehi.idsv.Defaults;
+import au.edu.wehi.idsv.FileSystemContext;
+import au.edu.wehi.idsv.util.ParallelSortingCollection;
+import au.edu.wehi.idsv.validation.OrderAssertingIterator;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import htsjdk.samtools.*;
+import htsjdk.samtools.util.CloseableIterator;
+import htsjdk.samtools.util.Log;
+import htsjdk.samtools.util.ProgressLogger;
+import htsjdk.samtools.util.ProgressLoggerInterface;
+import htsjdk.samtools.util.SortingCollection;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * SAM/BAM writer that accepts records in any order and writes them in sorted order on close.
+ *
+ * Records are sorted with a ParallelSortingCollection when gridss.sort.threads is greater
+ * than 1, and with the htsjdk SortingCollection otherwise.
+ */
+public class SortingSAMFileWriter implements SAMFileWriter {
+	private static final Log log = Log.getInstance(SortingSAMFileWriter.class);
+	private final SAMFileHeader header;
+	private final File output;
+	private final SAMRecordComparator sortComparator;
+	private final SAMFileWriterFactory writerFactory;
+	private ExecutorService threadpool = null;
+	private SortingCollection<SAMRecord> collection = null;
+	private ParallelSortingCollection<SAMRecord> parallelCollection = null;
+	private ProgressLoggerInterface progress = null;
+	private boolean closed = false;
+	/**
+	 * @param header header of the output file. The sort order of the header is used if sortComparator is null
+	 * @param sortComparator record sort order
+	 */
+	public SortingSAMFileWriter(FileSystemContext fsc, SAMFileHeader header, File output, SAMRecordComparator sortComparator, SAMFileWriterFactory writerFactory) {
+		this.header = header;
+		this.output = output;
+		this.sortComparator = sortComparator != null ? sortComparator : header.getSortOrder().getComparatorInstance();
+		this.writerFactory = writerFactory == null ? new SAMFileWriterFactory() : writerFactory;
+		int threads = Math.max(1, gridss.Defaults.SORT_THREADS);
+		if (threads > 1 && fsc.getMaxBufferedRecordsPerFile() > threads) {
+			threadpool = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder().setDaemon(true).setNameFormat("sort-" + output.getName() + "-%d").build());
+			parallelCollection = new ParallelSortingCollection<>(
+					new BAMRecordCodec(header),
+					this.sortComparator,
+					fsc.getMaxBufferedRecordsPerFile(),
+					fsc.getTemporaryDirectory().toPath(),
+					threadpool,
+					threads);
+		} else {
+			collection = SortingCollection.newInstance(
+					SAMRecord.class,
+					new BAMRecordCodec(header),
+					this.sortComparator,
+					fsc.getMaxBufferedRecordsPerFile(),
+					fsc.getTemporaryDirectory().toPath());
+		}
+	}
+	@Override
+	public void addAlignment(SAMRecord alignment) {
+		if (closed) throw new IllegalStateException("Writer closed");
+		if (parallelCollection != null) {
+			parallelCollection.add(alignment);
+		} else {
+			collection.add(alignment);
+		}
+	}
+	@Override
+	public SAMFileHeader getFileHeader() {
+		return header;
+	}
+	@Override
+	public void setProgressLogger(ProgressLoggerInterface progress) {
+		this.progress = progress;
+	}
+	/**
+	 * Writes the sorted records to the output file
+	 */
+	@Override
+	public void close() {
+		if (closed) return;
+		closed = true;
+		try {
+			if (parallelCollection != null) {
+				parallelCollection.doneAdding();
+			} else {
+				collection.doneAdding();
+			}
+			try (SAMFileWriter writer = writerFactory.makeSAMOrBAMWriter(header, true, output)) {
+				writer.setProgressLogger(progress != null ? progress : new ProgressLogger(log, 10000000));
+				try (CloseableIterator<SAMRecord> wit = parallelCollection != null ? parallelCollection.iterator() : collection.iterator()) {
+					Iterator<SAMRecord> it = wit;
+					if (Defaults.SANITY_CHECK_ITERATORS) {
+						it = new OrderAssertingIterator<SAMRecord>(wit, sortComparator);
+					}
+					while (it.hasNext()) {
+						writer.addAlignment(it.next());
+					}
+				}
+			}
+		} finally {
+			cleanup();
+		}
+	}
+	/**
+	 * Discards all records without writing any output
+	 */
+	public void cleanup() {
+		closed = true;
+		if (collection != null) {
+			collection.cleanup();
+			collection = null;
+		}
+		if (parallelCollection != null) {
+			parallelCollection.cleanup();
+			parallelCollection = null;
+		}
+		if (threadpool != null) {
+			threadpool.shutdownNow();
+			threadpool = null;
+		}
+	}
+}
@@ -4,6 +4,8 @@ import com.google.common.io.Files;
 
 import java.io.*;
 import java.net.URI;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Deque;
@@ -101,6 +103,38 @@ public abstract class FileHelper {
 			Files.copy(from, to);
 		}
 	}
+	/**
+	 * Forces the contents of the given file and any associated indexes to disk.
+	 * @param file file to sync
+	 * @param syncIndexes sync associated index files
+	 * @throws IOException
+	 */
+	public static void sync(File file, boolean syncIndexes) throws IOException {
+		syncsingle(file, StandardOpenOption.WRITE);
+		if (syncIndexes) {
+			for (File f : getIndexFilesFor(file)) {
+				syncsingle(f, StandardOpenOption.WRITE);
+			}
+		}
+	}
+	/**
+	 * Forces the directory entries of the given directory to disk so files
+	 * created, moved or deleted in the directory are durable.
+	 * Does nothing on platforms that do not support syncing directories.
+	 * @param directory directory to sync
+	 */
+	public static void syncDirectory(File directory) {
+		try {
+			syncsingle(directory, StandardOpenOption.READ);
+		} catch (IOException e) {
+			// directories cannot be opened for syncing on all platforms
+		}
+	}
+	private static void syncsingle(File file, StandardOpenOption option) throws IOException {
+		try (FileChannel fc = FileChannel.open(file.toPath(), option)) {
+			fc.force(true);
+		}
+	}
 	public static List<File> getIndexFilesFor(File file) {
 		List<File> index = new ArrayList<>();
 		for (String indexSuffix : GENOMIC_INDEX_FILES) {
@@ -0,0 +1,376 @@
+package au.edu.wehi.idsv.util;
+
+import com.google.common.collect.Iterators;
+import com.google.common.collect.PeekingIterator;
+import htsjdk.samtools.util.BlockCompressedInputStream;
+import htsjdk.samtools.util.BlockCompressedOutputStream;
+import htsjdk.samtools.util.CloseableIterator;
+import htsjdk.samtools.util.CloserUtil;
+import htsjdk.samtools.util.Log;
+import htsjdk.samtools.util.RuntimeIOException;
+import htsjdk.samtools.util.SortingCollection;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * External merge sort that uses worker threads to sort runs and merge spilled runs.
+ *
+ * As with htsjdk SortingCollection, each run holds up to maxRecordsInRam records so
+ * the same number of temporary files is written. Full runs are sorted as independent
+ * slices on the supplied thread pool and spilled to a BGZF compressed temporary file.
+ *
+ * Spilled runs are merged in stages so no more than MAX_MERGE_FAN_IN temporary files
+ * are open at any time. Each intermediate stage merges independent groups of runs
+ * concurrently. The final merge splits the remaining runs into one group per thread,
+ * merges each group on its own background thread, then merges the group outputs.
+ *
+ * Records that compare equal are returned in the order in which they were added.
+ *
+ * @param <T> record type
+ */
+public class ParallelSortingCollection<T> implements Iterable<T> {
+	private static final Log log = Log.getInstance(ParallelSortingCollection.class);
+	private static final int SPILL_COMPRESSION_LEVEL = 1;
+	private static final int SPILL_IO_BUFFER_SIZE = 1 << 16;
+	/**
+	 * Maximum number of temporary files to have open at any one time
+	 */
+	static final int MAX_MERGE_FAN_IN = 64;
+	/**
+	 * Runs smaller than this are sorted on the calling thread
+	 */
+	private static final int MIN_PARALLEL_SORT_SLICE_SIZE = 4096;
+	private static final int INITIAL_BUFFER_SIZE = 1024;
+	private final SortingCollection.Codec<T> codec;
+	private final Comparator<T> comparator;
+	private final Path tmpDir;
+	private final ExecutorService threadpool;
+	private final int threads;
+	private final int runSize;
+	private final int maxMergeFanIn;
+	private final List<Path> spillFiles = new ArrayList<>();
+	private int spillCount = 0;
+	private Object[] buffer;
+	private int bufferSize = 0;
+	/**
+	 * Start offset of each independently sorted slice of the in-memory run
+	 */
+	private int[] sliceOffsets;
+	private boolean doneAdding = false;
+	private boolean cleanedUp = false;
+	/**
+	 * @param codec record codec. The codec is cloned for each spill file.
+	 * @param comparator sort order
+	 * @param maxRecordsInRam maximum number of records to hold in memory
+	 * @param tmpDir directory to write spill files to
+	 * @param threadpool thread pool used to sort and merge runs
+	 * @param threads number of threads of the thread pool to use
+	 */
+	public ParallelSortingCollection(SortingCollection.Codec<T> codec, Comparator<T> comparator, int maxRecordsInRam, Path tmpDir, ExecutorService threadpool, int threads) {
+		this(codec, comparator, maxRecordsInRam, tmpDir, threadpool, threads, MAX_MERGE_FAN_IN);
+	}
+	ParallelSortingCollection(SortingCollection.Codec<T> codec, Comparator<T> comparator, int maxRecordsInRam, Path tmpDir, ExecutorService threadpool, int threads, int maxMergeFanIn) {
+		if (threads < 1) throw new IllegalArgumentException("threads must be positive");
+		if (maxRecordsInRam < 1) throw new IllegalArgumentException("maxRecordsInRam must be positive");
+		if (maxMergeFanIn < 2) throw new IllegalArgumentException("maxMergeFanIn must be at least 2");
+		this.codec = codec;
+		this.comparator = comparator;
+		this.tmpDir = tmpDir;
+		this.threadpool = threadpool;
+		this.threads = threads;
+		this.runSize = maxRecordsInRam;
+		this.maxMergeFanIn = maxMergeFanIn;
+		this.buffer = new Object[Math.min(runSize, INITIAL_BUFFER_SIZE)];
+	}
+	public void add(T record) {
+		if (doneAdding) throw new IllegalStateException("Cannot add after calling doneAdding()");
+		if (bufferSize == runSize) {
+			spill();
+		}
+		if (bufferSize == buffer.length) {
+			buffer = Arrays.copyOf(buffer, (int)Math.min(runSize, 2L * buffer.length));
+		}
+		buffer[bufferSize++] = record;
+	}
+	/**
+	 * Sorts the in-memory run as independent slices on the thread pool
+	 */
+	@SuppressWarnings("unchecked")
+	private void sortBuffer() {
+		int slices = Math.max(1, Math.min(threads, bufferSize / MIN_PARALLEL_SORT_SLICE_SIZE));
+		sliceOffsets = new int[slices + 1];
+		for (int i = 0; i <= slices; i++) {
+			sliceOffsets[i] = (int)((long)bufferSize * i / slices);
+		}
+		if (slices == 1) {
+			Arrays.sort((T[])buffer, 0, bufferSize, comparator);
+			return;
+		}
+		List<Future<?>> tasks = new ArrayList<>(slices);
+		for (int i = 0; i < slices; i++) {
+			final int from = sliceOffsets[i];
+			final int to = sliceOffsets[i + 1];
+			tasks.add(threadpool.submit(() -> Arrays.sort((T[])buffer, from, to, comparator)));
+		}
+		waitFor(tasks);
+	}
+	private static <R> List<R> waitFor(List<? extends Future<? extends R>> tasks) {
+		List<R> result = new ArrayList<>(tasks.size());
+		try {
+			for (Future<? extends R> f : tasks) {
+				result.add(f.get());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw new RuntimeIOException(e.getCause());
+			}
+			throw new RuntimeException(e.getCause());
+		} finally {
+			for (Future<? extends R> f : tasks) {
+				f.cancel(true);
+			}
+		}
+		return result;
+	}
+	private void spill() {
+		sortBuffer();
+		try {
+			spillFiles.add(writeRun(new InMemoryIterator()));
+		} catch (IOException e) {
+			throw new RuntimeIOException(e);
+		}
+		spillCount++;
+		// release the records
+		Arrays.fill(buffer, 0, bufferSize, null);
+		bufferSize = 0;
+	}
+	private Path writeRun(Iterator<T> it) throws IOException {
+		Path file = Files.createTempFile(tmpDir, "gridss.sortingcollection.", ".tmp");
+		file.toFile().deleteOnExit();
+		SortingCollection.Codec<T> spillCodec = codec.clone();
+		try (OutputStream os = new BlockCompressedOutputStream(new BufferedOutputStream(Files.newOutputStream(file), SPILL_IO_BUFFER_SIZE), (Path)null, SPILL_COMPRESSION_LEVEL)) {
+			spillCodec.setOutputStream(os);
+			while (it.hasNext()) {
+				spillCodec.encode(it.next());
+			}
+		}
+		return file;
+	}
+	/**
+	 * Indicates that no more records will be added.
+	 * The final run is sorted in memory and spilled runs are merged
+	 * until no more than MAX_MERGE_FAN_IN remain.
+	 */
+	public void doneAdding() {
+		if (doneAdding) return;
+		doneAdding = true;
+		sortBuffer();
+		while (spillFiles.size() > maxMergeFanIn) {
+			mergeStage();
+		}
+	}
+	/**
+	 * Merges groups of spilled runs into larger runs.
+	 * Groups are merged concurrently with the total number of open files limited by the maximum fan in.
+	 */
+	private void mergeStage() {
+		int fanIn = Math.max(2, maxMergeFanIn / threads);
+		log.debug(String.format("Merging %d spilled runs in groups of %d", spillFiles.size(), fanIn));
+		List<Future<Path>> merges = new ArrayList<>();
+		for (int i = 0; i < spillFiles.size(); i += fanIn) {
+			final List<Path> group = new ArrayList<>(spillFiles.subList(i, Math.min(spillFiles.size(), i + fanIn)));
+			merges.add(threadpool.submit(() -> {
+				if (group.size() == 1) return group.get(0);
+				try (CloseableIterator<T> it = mergeSpillFiles(group)) {
+					Path merged = writeRun(it);
+					for (Path file : group) {
+						Files.deleteIfExists(file);
+					}
+					return merged;
+				}
+			}));
+		}
+		List<Path> merged = waitFor(merges);
+		spillFiles.clear();
+		spillFiles.addAll(merged);
+	}
+	private CloseableIterator<T> mergeSpillFiles(List<Path> files) {
+		List<CloseableIterator<T>> runs = new ArrayList<>(files.size());
+		for (Path file : files) {
+			runs.add(new SpillFileIterator(file));
+		}
+		if (runs.size() == 1) {
+			return runs.get(0);
+		}
+		return new MergingIterator(runs);
+	}
+	public int getSpillCount() {
+		return spillCount;
+	}
+	/**
+	 * Iterates over the records in sorted order.
+	 * Ties are broken by run order so records that compare equal are returned in a deterministic order.
+	 */
+	@Override
+	public CloseableIterator<T> iterator() {
+		if (!doneAdding) throw new IllegalStateException("Call doneAdding() before iterating");
+		if (cleanedUp) throw new IllegalStateException("Cannot iterate after cleanup()");
+		List<CloseableIterator<T>> runs = new ArrayList<>();
+		int groups = Math.min(threads, spillFiles.size());
+		for (int i = 0; i < groups; i++) {
+			// contiguous groups of runs so ties are still broken by run order
+			List<Path> group = spillFiles.subList(spillFiles.size() * i / groups, spillFiles.size() * (i + 1) / groups);
+			CloseableIterator<T> it = mergeSpillFiles(group);
+			if (threads > 1) {
+				it = new AsyncBufferedIterator<>(it, "ParallelSortingCollection.merge-" + i);
+			}
+			runs.add(it);
+		}
+		runs.add(new InMemoryIterator());
+		if (runs.size() == 1) {
+			return runs.get(0);
+		}
+		return new MergingIterator(runs);
+	}
+	/**
+	 * Deletes all temporary files
+	 */
+	public void cleanup() {
+		cleanedUp = true;
+		buffer = null;
+		for (Path file : spillFiles) {
+			try {
+				Files.deleteIfExists(file);
+			} catch (IOException e) {
+				log.warn(e, "Unable to delete " + file);
+			}
+		}
+		spillFiles.clear();
+	}
+	/**
+	 * Iterates over the in-memory run by merging its sorted slices
+	 */
+	private class InMemoryIterator implements CloseableIterator<T> {
+		private final Object[] records = buffer;
+		private final int[] offsets = sliceOffsets;
+		private final int[] position = Arrays.copyOf(sliceOffsets, sliceOffsets.length - 1);
+		private final PriorityQueue<Integer> queue;
+		@SuppressWarnings("unchecked")
+		public InMemoryIterator() {
+			this.queue = new PriorityQueue<>(Math.max(1, position.length), Comparator.<Integer, T>comparing(i -> (T)records[position[i]], comparator).thenComparing(i -> i));
+			for (int i = 0; i < position.length; i++) {
+				if (position[i] < offsets[i + 1]) {
+					queue.add(i);
+				}
+			}
+		}
+		@Override
+		public boolean hasNext() {
+			return !queue.isEmpty();
+		}
+		@SuppressWarnings("unchecked")
+		@Override
+		public T next() {
+			if (queue.isEmpty()) throw new NoSuchElementException();
+			int slice = queue.poll();
+			T result = (T)records[position[slice]++];
+			if (position[slice] < offsets[slice + 1]) {
+				queue.add(slice);
+			}
+			return result;
+		}
+		@Override
+		public void close() {
+		}
+	}
+	private class SpillFileIterator implements CloseableIterator<T> {
+		private final InputStream is;
+		private final SortingCollection.Codec<T> spillCodec = codec.clone();
+		private T next;
+		public SpillFileIterator(Path file) {
+			try {
+				this.is = new BlockCompressedInputStream(new BufferedInputStream(Files.newInputStream(file), SPILL_IO_BUFFER_SIZE));
+			} catch (IOException e) {
+				throw new RuntimeIOException(e);
+			}
+			spillCodec.setInputStream(is);
+			next = spillCodec.decode();
+		}
+		@Override
+		public boolean hasNext() {
+			return next != null;
+		}
+		@Override
+		public T next() {
+			if (next == null) throw new NoSuchElementException();
+			T current = next;
+			next = spillCodec.decode();
+			if (next == null) {
+				close();
+			}
+			return current;
+		}
+		@Override
+		public void close() {
+			CloserUtil.close(is);
+		}
+	}
+	private class MergingIterator implements CloseableIterator<T> {
+		private final List<CloseableIterator<T>> runs;
+		private final PriorityQueue<Integer> queue;
+		private final List<PeekingIterator<T>> peekable;
+		public MergingIterator(List<CloseableIterator<T>> runs) {
+			this.runs = runs;
+			this.peekable = new ArrayList<>(runs.size());
+			for (Iterator<T> it : runs) {
+				peekable.add(Iterators.peekingIterator(it));
+			}
+			this.queue = new PriorityQueue<>(runs.size(), Comparator.<Integer, T>comparing(i -> peekable.get(i).peek(), comparator).thenComparing(i -> i));
+			for (int i = 0; i < peekable.size(); i++) {
+				if (peekable.get(i).hasNext()) {
+					queue.add(i);
+				}
+			}
+		}
+		@Override
+		public boolean hasNext() {
+			return !queue.isEmpty();
+		}
+		@Override
+		public T next() {
+			if (queue.isEmpty()) throw new NoSuchElementException();
+			int i = queue.poll();
+			PeekingIterator<T> it = peekable.get(i);
+			T result = it.next();
+			if (it.hasNext()) {
+				queue.add(i);
+			}
+			return result;
+		}
+		@Override
+		public void close() {
+			for (CloseableIterator<T> it : runs) {
+				CloserUtil.close(it);
+			}
+		}
+	}
+}
@@ -49,6 +49,10 @@ public class AssemblyTelemetry implements Closeable {
 			String str = String.format("%d,%s,flushReferenceNodes,%s,%d,%d,%d,,%d\n", chunk, direction.toChar(), dict.getSequence(referenceIndex).getSequenceName(), flushStart, flushEnd, readsFlushed, nsSinceLast / 1000);
 			put(str);
 		}
+		public void memoryUsage(int referenceIndex, int position, long bytes, String pressure) {
+			String str = String.format("%d,%s,memory,%s,%d,%d,%d,%s,\n", chunk, direction.toChar(), dict.getSequence(referenceIndex).getSequenceName(), position, position, bytes, pressure);
+			put(str);
+		}
 		public void callContig(int referenceIndex, int start, int end, int nodes, int reads, boolean repeatsSimplified) {
 		}
 	}
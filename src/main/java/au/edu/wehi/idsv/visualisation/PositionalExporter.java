@@ -50,7 +50,7 @@ public class PositionalExporter {
 				writer.append(",reference=");
 				writer.append(n.isReference() ? '1' : '0');
 				writer.append(";\n");
-				writer.append(new String(KmerEncodingHelper.baseCalls(n.pathKmers(), k)));
+				writer.append(new String(n.baseCalls()));
 				writer.append('\n');
 			}
 			writer.append("#FASTG:end;\n");
@@ -96,7 +96,7 @@ public class PositionalExporter {
 				writer.append(id(n, k));
 				writer.append(String.format(" [s=%d,e=%d,wid=%d,w=%d,l=%d,r=%s,seq=\"%s\",contig=%s];\n",
 						n.firstStart(), n.firstEnd(), n.width(), n.weight(), n.length(), n.isReference() ? "true" : "false",
-								new String(KmerEncodingHelper.baseCalls(n.pathKmers(), k)),
+								new String(n.baseCalls()),
 								lookup.contains(n) ? "true" : "false"));
 			}
 			// edges
@@ -123,7 +123,7 @@ public class PositionalExporter {
 				writer.append('>');
 				writer.append(id(n, k));
 				writer.append('\n');
-				writer.append(new String(KmerEncodingHelper.baseCalls(n.pathKmers(), k)));
+				writer.append(new String(n.baseCalls()));
 				writer.append('\n');
 			}
 		} finally {
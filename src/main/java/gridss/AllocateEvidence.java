@@ -108,7 +108,7 @@ public class AllocateEvidence extends VcfTransformCommandLineProgram {
 			assToClose.add(reader);
 		}
 		AutoClosingMergedIterator mergedAssemblies = new AutoClosingMergedIterator(rawAssemblies, new SAMRecordCoordinateOnlyComparator());
-		return new AutoClosingIterator<>(new AssemblyAssociator(it, mergedAssemblies, windowSize), assToClose.toArray(new Closeable[0]));
+		return new AutoClosingIterator<>(new AssemblyAssociator(it, mergedAssemblies, windowSize, getContext().getEvidenceIDGenerator()), assToClose.toArray(new Closeable[0]));
 	}
 	private VariantContextDirectedEvidence annotate(VariantEvidenceSupport ves) {
 		VariantCallingConfiguration vc = getContext().getConfig().getVariantCalling();
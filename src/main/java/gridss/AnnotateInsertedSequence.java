@@ -4,6 +4,7 @@ import au.edu.wehi.idsv.FileSystemContext;
 import au.edu.wehi.idsv.VariantContextRepeatMaskerAnnotator;
 import au.edu.wehi.idsv.alignment.BwaStreamingAligner;
 import au.edu.wehi.idsv.alignment.ExternalProcessStreamingAligner;
+import au.edu.wehi.idsv.alignment.Minimap2StreamingAligner;
 import au.edu.wehi.idsv.alignment.StreamingAligner;
 import au.edu.wehi.idsv.util.FileHelper;
 import au.edu.wehi.idsv.vcf.InsertedSequenceAnnotator;
@@ -46,12 +47,14 @@ public class AnnotateInsertedSequence extends ReferenceCommandLineProgram {
     @Argument(doc="Minimum inserted sequence length for realignment. Generally, short read aligners are not able to uniquely align sequences shorter than 18-20 bases.", optional=true)
     public int MIN_SEQUENCE_LENGTH = 20;
     @Argument(doc = "Command line arguments to run external aligner. "
-            + "In-process bwa alignment is used if this value is null. "
+            + "In-process alignment using IN_PROCESS_ALIGNER is used if this value is null. "
             + "Aligner output must be written to stdout and the records MUST match the input fastq order."
             + " The aligner must support using \"-\" as the input filename when reading from stdin."
             + "Java argument formatting is used with %1$s being the fastq file to align, "
             + "%2$s the reference genome, and %3$d the number of threads to use.", optional = true)
     public List<String> ALIGNER_COMMAND_LINE = Lists.newArrayList(BWA_COMMAND_LINE);
+    @Argument(doc = "Which in-process aligner to use if ALIGNER_COMMAND_LINE is null.", optional = true)
+    public SoftClipsToSplitReads.Aligner IN_PROCESS_ALIGNER = SoftClipsToSplitReads.Aligner.BWAMEM;
     @Argument(doc = "Number of records to buffer when performing in-process or streaming alignment. Not applicable when performing external alignment.", optional = true)
     public int ALIGNER_BATCH_SIZE = MAX_RECORDS_IN_RAM;
     @Argument(doc = "Whether to align inserted sequences to REFERENCE_GENOME. Valid values are:" +
@@ -105,7 +108,10 @@ public class AnnotateInsertedSequence extends ReferenceCommandLineProgram {
             Iterator<VariantContext> it;
             if (ALIGNMENT != AlignmentStatus.SKIP) {
                 StreamingAligner sa;
-                if (ALIGNER_COMMAND_LINE == null || ALIGNER_COMMAND_LINE.size() == 0) {
+                if ((ALIGNER_COMMAND_LINE == null || ALIGNER_COMMAND_LINE.size() == 0) && IN_PROCESS_ALIGNER == SoftClipsToSplitReads.Aligner.MINIMAP2) {
+                    log.info("Using in-process minimap2 alignment");
+                    sa = new Minimap2StreamingAligner(REFERENCE_SEQUENCE, getReference(), WORKER_THREADS, ALIGNER_BATCH_SIZE * 150);
+                } else if (ALIGNER_COMMAND_LINE == null || ALIGNER_COMMAND_LINE.size() == 0) {
                     log.info("Using in-process bwa alignment");
                     sa = new BwaStreamingAligner(REFERENCE_SEQUENCE, dict, WORKER_THREADS, ALIGNER_BATCH_SIZE * 150);
                 } else {
@@ -52,6 +52,9 @@ public class CollectGridssMetricsAndExtractSVReads extends CollectGridssMetrics
 	public boolean INCLUDE_DUPLICATES = false;
     @Argument(shortName = "SVO", doc = "File to write the output to.")
     public File SV_OUTPUT;
+    @Argument(doc = "Number of worker threads used to identify SV reads. Output records are written in input order regardless of the number of worker threads.",
+    		shortName = "THREADS", optional = true)
+    public int WORKER_THREADS = 1;
     public static void main(final String[] args) {
         new CollectGridssMetricsAndExtractSVReads().instanceMainWithExit(args);
     }
@@ -75,6 +78,7 @@ public class CollectGridssMetricsAndExtractSVReads extends CollectGridssMetrics
     	extract.OUTPUT = SV_OUTPUT;
     	extract.INPUT = INPUT;
     	extract.ASSUME_SORTED = true;
+    	extract.WORKER_THREADS = WORKER_THREADS;
     	return extract;
     }
     public ProgramInterface createExtractSVReads() {
@@ -18,6 +18,28 @@ public class Defaults {
 	 * See http://stackoverflow.com/questions/2972986/how-to-unmap-a-file-from-memory-mapped-using-filechannel-in-java
 	 */
 	public static final boolean DEFENSIVE_GC;
+	/**
+	 * Stream records between the preprocessing stages in memory instead of
+	 * writing an intermediate BAM for each stage. Only the final coordinate-sorted
+	 * output is written. Restarting a killed process will redo the entire preprocessing.
+	 */
+	public static final boolean FUSED_PREPROCESSING;
+	/**
+	 * Create a read name index of each input BAM file when extracting SV reads.
+	 * The index is written to the working directory and allows ExtractFragmentsToFastq
+	 * to find fragments by random access instead of traversing the entire input file.
+	 */
+	public static final boolean READ_NAME_INDEX;
+	/**
+	 * Number of threads to use to sort and spill runs when sorting SAM/BAM files.
+	 * A value of 1 uses the single-threaded htsjdk SortingCollection.
+	 */
+	public static final int SORT_THREADS;
+	/**
+	 * Number of genomic shards of an indexed coordinate-sorted input file to read and decode
+	 * concurrently when collecting metrics. A value of 1 reads the input with a single reader.
+	 */
+	public static final int METRICS_READER_THREADS;
 	static {
 		IGNORE_FILE_TIMESTAMPS = Boolean.valueOf(System.getProperty("gridss.ignoreTimestamps", "true"));
 		ASYNC_BUFFERS = Integer.parseInt(System.getProperty("gridss.async.buffers", "2"));
@@ -27,5 +49,9 @@ public class Defaults {
 		WRITE_ZERO_OR_EMTPY_VCF_FIELDS = Boolean.valueOf(System.getProperty("gridss.writeZeroOrEmptyVcfFields", "true"));
 		DEFENSIVE_GC = Boolean.valueOf(System.getProperty("gridss.defensiveGC", "false"));
 		OUTPUT_TO_TEMP_FILE = Boolean.valueOf(System.getProperty("gridss.output_to_temp_file", "false"));
+		FUSED_PREPROCESSING = Boolean.valueOf(System.getProperty("gridss.preprocess.fused", "false"));
+		READ_NAME_INDEX = Boolean.valueOf(System.getProperty("gridss.readNameIndex", "false"));
+		SORT_THREADS = Integer.parseInt(System.getProperty("gridss.sort.threads", Integer.toString(Math.min(8, Runtime.getRuntime().availableProcessors()))));
+		METRICS_READER_THREADS = Integer.parseInt(System.getProperty("gridss.metrics.reader_threads", Integer.toString(Math.min(8, Runtime.getRuntime().availableProcessors()))));
 	}
 }
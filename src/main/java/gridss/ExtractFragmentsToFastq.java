@@ -1,9 +1,11 @@
 package gridss;
 
+import au.edu.wehi.idsv.sam.ReadNameIndex;
 import htsjdk.samtools.*;
 import htsjdk.samtools.fastq.FastqRecord;
 import htsjdk.samtools.fastq.FastqWriter;
 import htsjdk.samtools.fastq.FastqWriterFactory;
+import htsjdk.samtools.util.CloseableIterator;
 import htsjdk.samtools.util.Log;
 import htsjdk.samtools.util.SequenceUtil;
 import org.broadinstitute.barclay.argparser.Argument;
@@ -36,6 +38,10 @@ public class ExtractFragmentsToFastq extends CommandLineProgram {
 	public File OUTPUT_FQ1;
 	@Argument(doc="File to extract second read in pair to.")
 	public File OUTPUT_FQ2;
+	@Argument(doc="Read name index of the input BAM file. "
+			+ "If the index exists, matching reads are found by random access instead of a traversal of the entire input file. "
+			+ "If the index does not exist, it is created during the traversal of the input file.", optional=true)
+	public File READ_NAME_INDEX;
 
 	public static void main(String[] argv) {
 		System.exit(new ExtractFragmentsToFastq().instanceMain(argv));
@@ -64,14 +70,34 @@ public class ExtractFragmentsToFastq extends CommandLineProgram {
 			try (FastqWriter fq1 = factory.newWriter(OUTPUT_FQ1)) {
 				try (FastqWriter fq2 = factory.newWriter(OUTPUT_FQ2)) {
 					try (FastqWriter fq = factory.newWriter(OUTPUT_FQ)) {
-						try (SamReader reader = SamReaderFactory.makeDefault().open(INPUT)) {
-							try (SAMRecordIterator it = reader.iterator()) {
+						ReadNameIndex index = ReadNameIndex.open(READ_NAME_INDEX, INPUT);
+						ReadNameIndex.Writer indexWriter = null;
+						SamReaderFactory readerFactory = SamReaderFactory.makeDefault();
+						if (READ_NAME_INDEX != null && index == null) {
+							log.info("Creating read name index " + READ_NAME_INDEX);
+							readerFactory.enable(SamReaderFactory.Option.INCLUDE_SOURCE_IN_RECORDS);
+							indexWriter = new ReadNameIndex.Writer(READ_NAME_INDEX, INPUT, TMP_DIR.get(0).toPath(), MAX_RECORDS_IN_RAM);
+						}
+						try (SamReader reader = readerFactory.open(INPUT); ReadNameIndex.Writer writer = indexWriter) {
+							CloseableIterator<SAMRecord> it;
+							if (index != null) {
+								long[] offsets = index.lookup(readNames);
+								index.close();
+								log.debug(String.format("Found %d candidate records in read name index", offsets.length));
+								it = ReadNameIndex.iterator(reader, offsets);
+							} else {
+								it = reader.iterator();
+							}
+							try {
 								while (it.hasNext()) {
-									if (readNames.isEmpty()) {
+									if (readNames.isEmpty() && indexWriter == null) {
 										log.debug("Found all reads. Stopping input file traversal.");
 										break;
 									}
 									SAMRecord r = it.next();
+									if (indexWriter != null) {
+										indexWriter.add(r);
+									}
 									String name = r.getReadName();
 									if (!r.getSupplementaryAlignmentFlag() && !r.isSecondaryAlignment() && readNames.contains(name)) {
 										if (!r.getReadPairedFlag()) {
@@ -96,6 +122,11 @@ public class ExtractFragmentsToFastq extends CommandLineProgram {
 										}
 									}
 								}
+							} finally {
+								it.close();
+							}
+							if (writer != null) {
+								writer.finish();
 							}
 						}
 						if (!lookup.isEmpty()) {
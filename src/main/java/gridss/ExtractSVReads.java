@@ -6,6 +6,8 @@ import au.edu.wehi.idsv.picard.ReferenceLookup;
 import au.edu.wehi.idsv.sam.ChimericAlignment;
 import au.edu.wehi.idsv.sam.SAMRecordUtil;
 import au.edu.wehi.idsv.util.FileHelper;
+import au.edu.wehi.idsv.util.UngroupingIterator;
+import com.google.common.collect.Iterators;
 import gridss.cmdline.ProcessStructuralVariantReadsCommandLineProgram;
 import gridss.filter.*;
 import htsjdk.samtools.*;
@@ -18,6 +20,7 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
 
 @CommandLineProgramProperties(
@@ -40,8 +43,14 @@ public class ExtractSVReads extends ProcessStructuralVariantReadsCommandLineProg
     	SAMFileWriterFactory writerFactory = new SAMFileWriterFactory();
     	tmpoutput = gridss.Defaults.OUTPUT_TO_TEMP_FILE ? FileSystemContext.getWorkingFileFor(OUTPUT, "gridss.tmp.ExtractSVReads.") : OUTPUT;
     	writer = writerFactory.makeSAMOrBAMWriter(header, true, tmpoutput);
-    	
-    	IndelReadFilter indelFilter = new IndelReadFilter(INDELS ? MIN_INDEL_SIZE : Integer.MAX_VALUE);
+    	setupFilters();
+    }
+	/**
+	 * Initialises the read and read pair filters from the program arguments.
+	 * Must be called before shouldExtract() if the program is not run through setup().
+	 */
+	public void setupFilters() {
+		IndelReadFilter indelFilter = new IndelReadFilter(INDELS ? MIN_INDEL_SIZE : Integer.MAX_VALUE);
 		ClippedReadFilter softClipFilter = new ClippedReadFilter(CLIPPED ? MIN_CLIP_LENGTH : Integer.MAX_VALUE, SPLIT);
 		SplitReadFilter splitReadFilter = new SplitReadFilter();
 		AlignedFilter unmappedFilter = new AlignedFilter(false);
@@ -62,7 +71,7 @@ public class ExtractSVReads extends ProcessStructuralVariantReadsCommandLineProg
 			pairfilter = new FixedFilter(true);
 		}
 		count = 0;
-    }
+	}
 	public static boolean[] hasReadAlignmentConsistentWithReference(List<SAMRecord> records) {
 		boolean[] consistent = new boolean[2];
 		for (SAMRecord r : records) {
@@ -165,9 +174,39 @@ public class ExtractSVReads extends ProcessStructuralVariantReadsCommandLineProg
 		}
 		return extract;
 	}
+	/**
+	 * Streams the extracted reads without writing an intermediate file.
+	 * @param it input records with all records of each fragment grouped together
+	 * @return records that would have been written by this program
+	 */
+	public Iterator<SAMRecord> extract(Iterator<SAMRecord> it) {
+		if (readfilter == null) {
+			setupFilters();
+		}
+		Iterator<List<SAMRecord>> fragments = Iterators.transform(SAMRecordUtil.groupedByReadName(it), records -> {
+			boolean[] extract = shouldExtract(records, null);
+			List<SAMRecord> out = new ArrayList<>(records.size());
+			for (int i = 0; i < records.size(); i++) {
+				if (extract[i]) {
+					out.add(records.get(i));
+				}
+			}
+			count += out.size();
+			return out;
+		});
+		return new UngroupingIterator<>(fragments);
+	}
 	@Override
 	protected void acceptFragment(List<SAMRecord> records, ReferenceLookup lookup) {
-		boolean[] extract = shouldExtract(records, lookup);
+		acceptFragment(records, processFragment(records, lookup), lookup);
+	}
+	@Override
+	protected Object processFragment(List<SAMRecord> records, ReferenceLookup lookup) {
+		return shouldExtract(records, lookup);
+	}
+	@Override
+	protected void acceptFragment(List<SAMRecord> records, Object processed, ReferenceLookup lookup) {
+		boolean[] extract = (boolean[])processed;
 		for (int i = 0; i < records.size(); i++) {
 			SAMRecord r = records.get(i);
 			if (extract[i]) {
@@ -178,6 +217,9 @@ public class ExtractSVReads extends ProcessStructuralVariantReadsCommandLineProg
 			}
 		}
 	}
+	public int getExtractedCount() {
+		return count;
+	}
 	@Override
 	protected void finish() {
 		writer.close();
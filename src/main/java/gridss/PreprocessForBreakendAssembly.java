@@ -5,6 +5,7 @@ import au.edu.wehi.idsv.GenomicProcessingContext;
 import au.edu.wehi.idsv.SAMRecordChangeTracker;
 import au.edu.wehi.idsv.StreamingSplitReadRealigner;
 import au.edu.wehi.idsv.alignment.BwaStreamingAligner;
+import au.edu.wehi.idsv.alignment.Minimap2StreamingAligner;
 import au.edu.wehi.idsv.alignment.StreamingAligner;
 import au.edu.wehi.idsv.sam.SamTags;
 import au.edu.wehi.idsv.util.AsyncBufferedIterator;
@@ -95,6 +96,9 @@ public class PreprocessForBreakendAssembly extends ReferenceCommandLineProgram {
 				int bwaBufferSizeInBases = ALIGNER_BATCH_SIZE * 25;
 				sa = new BwaStreamingAligner(REFERENCE_SEQUENCE, getReference().getSequenceDictionary(), WORKER_THREADS, bwaBufferSizeInBases);
 				break;
+			case MINIMAP2:
+				sa = new Minimap2StreamingAligner(REFERENCE_SEQUENCE, getReference(), WORKER_THREADS, ALIGNER_BATCH_SIZE * 25);
+				break;
 			case EXTERNAL:
 			default:
 				throw new IllegalArgumentException("Aligner not supported by PreprocessForBreakendAssembly");
@@ -1,9 +1,12 @@
 package gridss;
 
 import au.edu.wehi.idsv.*;
+import au.edu.wehi.idsv.picard.ReferenceLookup;
 import au.edu.wehi.idsv.util.AsyncBufferedIterator;
+import au.edu.wehi.idsv.util.FileHelper;
 import au.edu.wehi.idsv.util.MathUtil;
 import com.google.common.collect.Iterators;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import htsjdk.samtools.*;
 import htsjdk.samtools.util.CloseableIterator;
 import htsjdk.samtools.util.IOUtil;
@@ -14,14 +17,23 @@ import org.broadinstitute.barclay.argparser.CommandLineProgramProperties;
 import picard.cmdline.CommandLineProgram;
 import picard.cmdline.StandardOptionDefinitions;
 
+import java.io.BufferedOutputStream;
 import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 @CommandLineProgramProperties(
 		summary = "Converts split reads and indel-containing reads to BEDPE notation.",
@@ -43,6 +55,12 @@ public class ReadsToBedpe extends CommandLineProgram {
     public boolean INDELS = true;
     @Argument(doc="Value to write to the BEDPE name field. Note that the unique identifier includes the read CIGAR so can be very long for long read sequencing technologies.", optional=true)
     public Name NAME = Name.ReadName;
+    @Argument(doc="Number of worker threads. Indexed coordinate sorted input is processed in parallel by genomic chunk.", optional=true)
+    public int WORKER_THREADS = Runtime.getRuntime().availableProcessors();
+    @Argument(doc="Size of each genomic chunk processed in parallel.", optional=true)
+    public int CHUNK_SIZE = 10000000;
+    @Argument(doc="Chunking penalty for changing contigs. See the GRIDSS chunkSequenceChangePenalty configuration setting.", optional=true)
+    public int CHUNK_SEQUENCE_CHANGE_PENALTY = 250000;
     /**
      * Value to populate the name field
      * @author Daniel Cameron
@@ -60,39 +78,106 @@ public class ReadsToBedpe extends CommandLineProgram {
     	validateParameters();
     	SamReaderFactory readerFactory = SamReaderFactory.makeDefault().referenceSequence(REFERENCE_SEQUENCE);
     	try {
+    		boolean chunked;
+    		SAMSequenceDictionary dict;
     		try (SamReader reader = readerFactory.open(INPUT)) {
     			SAMFileHeader header = reader.getFileHeader();
-    			SAMSequenceDictionary dict = header.getSequenceDictionary();
-    			//log.info(String.format("Using %d worker threads", WORKER_THREADS));
-        		//ExecutorService threadpool = Executors.newFixedThreadPool(WORKER_THREADS, new ThreadFactoryBuilder().setDaemon(false).setNameFormat("Worker-%d").build());
-    			try (CloseableIterator<SAMRecord> rawit = new AsyncBufferedIterator<SAMRecord>(reader.iterator(), 3, 64)) {
-    				ProgressLoggingSAMRecordIterator logit = new ProgressLoggingSAMRecordIterator(rawit, new ProgressLogger(log));
-    				//ParallelTransformIterator<SAMRecord, List<String>> it = new ParallelTransformIterator<>(logit, r -> asBedPe(dict, r), 16 + 2 * WORKER_THREADS, threadpool);
-    				Iterator<List<String>> it = Iterators.transform(logit, r -> asBedPe(dict, r));
-    				
-    				int i = 0;
-    				try (BufferedWriter writer = new BufferedWriter(new FileWriter(OUTPUT))) {
-    					while (it.hasNext()) {
-    						for (String line : it.next()) {
-    							if (line != null) {
-		    						writer.write(line);
-		    						writer.write('\n');
-    							}
-    						}
-    						i++;
-    					}
-    					if (i % 1000 == 0) {
-    						writer.flush();
-    					}
+    			dict = header.getSequenceDictionary();
+    			chunked = WORKER_THREADS > 1 && reader.hasIndex() && header.getSortOrder() == SAMFileHeader.SortOrder.coordinate;
+    			if (!chunked) {
+    				if (WORKER_THREADS > 1) {
+    					log.info("Input is not an indexed coordinate sorted file. Processing on a single thread.");
     				}
+	    			try (CloseableIterator<SAMRecord> rawit = new AsyncBufferedIterator<SAMRecord>(reader.iterator(), 3, 64)) {
+	    				ProgressLoggingSAMRecordIterator logit = new ProgressLoggingSAMRecordIterator(rawit, new ProgressLogger(log));
+	    				try (BufferedWriter writer = new BufferedWriter(new FileWriter(OUTPUT))) {
+	    					writeBedpe(dict, logit, writer);
+	    				}
+	    			}
     			}
     		}
+    		if (chunked) {
+    			writeChunkedBedpe(readerFactory, dict);
+    		}
 		} catch (IOException e) {
 			log.error(e);
 			return -1;
 		}
     	return 0;
 	}
+    private void writeBedpe(SAMSequenceDictionary dict, Iterator<SAMRecord> records, BufferedWriter writer) throws IOException {
+		Iterator<List<String>> it = Iterators.transform(records, r -> asBedPe(dict, r));
+		while (it.hasNext()) {
+			for (String line : it.next()) {
+				if (line != null) {
+					writer.write(line);
+					writer.write('\n');
+				}
+			}
+		}
+    }
+    /**
+     * Processes each genomic chunk in parallel and concatenates the chunk output in genomic order.
+     * Each record is processed by the chunk containing its alignment start so the output
+     * matches that of a single-threaded traversal of the input.
+     */
+    private void writeChunkedBedpe(SamReaderFactory readerFactory, SAMSequenceDictionary dict) throws IOException {
+    	List<QueryInterval[]> chunks = ReferenceLookup.getIntervals(dict, CHUNK_SIZE, CHUNK_SEQUENCE_CHANGE_PENALTY);
+    	log.info(String.format("Processing %d chunks using %d worker threads", chunks.size(), WORKER_THREADS));
+    	ExecutorService threadpool = Executors.newFixedThreadPool(WORKER_THREADS, new ThreadFactoryBuilder().setDaemon(true).setNameFormat("ReadsToBedpe-%d").build());
+    	List<File> chunkFiles = new ArrayList<>();
+    	List<Future<Void>> tasks = new ArrayList<>();
+    	try {
+	    	for (int i = 0; i < chunks.size(); i++) {
+	    		QueryInterval[] chunk = chunks.get(i);
+	    		File f = new File(OUTPUT.getAbsoluteFile().getParentFile(), "gridss.tmp.chunk" + i + "." + OUTPUT.getName());
+	    		chunkFiles.add(f);
+	    		tasks.add(threadpool.submit(() -> { writeChunk(readerFactory, dict, chunk, f); return null; }));
+	    	}
+	    	try (OutputStream os = new BufferedOutputStream(new FileOutputStream(OUTPUT))) {
+	    		for (int i = 0; i < chunks.size(); i++) {
+	    			try {
+	    				tasks.get(i).get();
+	    			} catch (InterruptedException e) {
+	    				Thread.currentThread().interrupt();
+	    				throw new RuntimeException(e);
+	    			} catch (ExecutionException e) {
+	    				log.error(e.getCause(), "Error processing chunk ", i);
+	    				throw new RuntimeException(e.getCause());
+	    			}
+	    			Files.copy(chunkFiles.get(i).toPath(), os);
+	    			FileHelper.delete(chunkFiles.get(i), true);
+	    		}
+	    	}
+    	} finally {
+    		threadpool.shutdownNow();
+    		for (File f : chunkFiles) {
+    			f.delete();
+    		}
+    	}
+    }
+    private void writeChunk(SamReaderFactory readerFactory, SAMSequenceDictionary dict, QueryInterval[] chunk, File output) throws IOException {
+    	// Pad by a base so alignments without any reference bases starting at the chunk start are included
+    	QueryInterval[] query = QueryInterval.optimizeIntervals(Arrays.stream(chunk)
+    			.map(qi -> new QueryInterval(qi.referenceIndex, Math.max(1, qi.start - 1), qi.end))
+    			.toArray(QueryInterval[]::new));
+    	try (SamReader reader = readerFactory.open(INPUT)) {
+    		try (SAMRecordIterator it = reader.query(query, false)) {
+    			Iterator<SAMRecord> chunkit = Iterators.filter(it, r -> startsWithin(r, chunk));
+    			try (BufferedWriter writer = new BufferedWriter(new FileWriter(output))) {
+    				writeBedpe(dict, chunkit, writer);
+    			}
+    		}
+    	}
+    }
+    private static boolean startsWithin(SAMRecord r, QueryInterval[] chunk) {
+    	for (QueryInterval qi : chunk) {
+    		if (r.getReferenceIndex() == qi.referenceIndex && r.getAlignmentStart() >= qi.start && r.getAlignmentStart() <= qi.end) {
+    			return true;
+    		}
+    	}
+    	return false;
+    }
 	private List<String> asBedPe(SAMSequenceDictionary dict, SAMRecord record) {
 		List<String> result = new ArrayList<>();
 		// Split read
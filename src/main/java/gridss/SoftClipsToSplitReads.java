@@ -7,6 +7,7 @@ import au.edu.wehi.idsv.StreamingSplitReadRealigner;
 import au.edu.wehi.idsv.alignment.BwaStreamingAligner;
 import au.edu.wehi.idsv.alignment.ExternalProcessFastqAligner;
 import au.edu.wehi.idsv.alignment.ExternalProcessStreamingAligner;
+import au.edu.wehi.idsv.alignment.Minimap2StreamingAligner;
 import com.google.common.collect.Lists;
 import gridss.cmdline.ReferenceCommandLineProgram;
 import htsjdk.samtools.SAMFileWriterFactory;
@@ -60,7 +61,7 @@ public class SoftClipsToSplitReads extends ReferenceCommandLineProgram {
 			+ " Note that I/O threads are not included in this worker thread count so CPU usage can be higher than the number of worker thread.",
     		shortName="THREADS")
     public int WORKER_THREADS = Runtime.getRuntime().availableProcessors();
-	@Argument(doc="Which aligner to use. GRIDSS supports in-process BWA alignment, as well as external aligners", optional=true)
+	@Argument(doc="Which aligner to use. GRIDSS supports in-process BWA and minimap2 alignment, as well as external aligners", optional=true)
 	public Aligner ALIGNER = Aligner.EXTERNAL;
 	@Argument(doc="Number of records to buffer when performing in-process or streaming alignment. Not applicable when performing external alignment.", optional=true)
 	public int ALIGNER_BATCH_SIZE = MAX_RECORDS_IN_RAM;
@@ -79,6 +80,7 @@ public class SoftClipsToSplitReads extends ReferenceCommandLineProgram {
 	 */
 	public enum Aligner {
     	BWAMEM,
+		MINIMAP2,
 		EXTERNAL,
 	}
 
@@ -91,37 +93,17 @@ public class SoftClipsToSplitReads extends ReferenceCommandLineProgram {
     	pc.setCommandLineProgram(this);
     	pc.setFilterDuplicates(IGNORE_DUPLICATES);
     	List<Closeable> toClose = new ArrayList<>();
-    	SplitReadRealigner realigner;
     	try {
     		SamReaderFactory readerFactory = SamReaderFactory.makeDefault().referenceSequence(REFERENCE_SEQUENCE);
         	SAMFileWriterFactory writerFactory = new SAMFileWriterFactory();
-        	switch (ALIGNER) {
-				case BWAMEM:
-					BwaStreamingAligner bwaAligner = new BwaStreamingAligner(REFERENCE_SEQUENCE, getReference().getSequenceDictionary(), WORKER_THREADS, ALIGNER_BATCH_SIZE * 150);
-					realigner = new StreamingSplitReadRealigner(pc, bwaAligner, ALIGNER_BATCH_SIZE);
-					toClose.add(bwaAligner);
-					break;
-				case EXTERNAL:
-				default:
-					if (ALIGNER_STREAMING) {
-						ExternalProcessStreamingAligner streamingAligner = new ExternalProcessStreamingAligner(readerFactory, ALIGNER_COMMAND_LINE, REFERENCE_SEQUENCE, WORKER_THREADS, getReference().getSequenceDictionary());
-						toClose.add(streamingAligner);
-						realigner = new StreamingSplitReadRealigner(pc, streamingAligner, ALIGNER_BATCH_SIZE);
-					} else {
-						ExternalProcessFastqAligner externalAligner = new ExternalProcessFastqAligner(readerFactory, writerFactory, ALIGNER_COMMAND_LINE);
-						realigner = new IterativeSplitReadRealigner(pc, externalAligner);
-					}
-					break;
+        	SplitReadRealigner realigner;
+        	if (ALIGNER == Aligner.EXTERNAL && !ALIGNER_STREAMING) {
+				ExternalProcessFastqAligner externalAligner = new ExternalProcessFastqAligner(readerFactory, writerFactory, ALIGNER_COMMAND_LINE);
+				realigner = new IterativeSplitReadRealigner(pc, externalAligner);
+				configure(realigner);
+			} else {
+				realigner = createStreamingRealigner(pc, toClose);
 			}
-			realigner.setFallbackBaseQuality(FALLBACK_BASE_QUALITY);
-			realigner.setMinSoftClipLength(MIN_CLIP_LENGTH);
-			realigner.setMinSoftClipQuality(MIN_CLIP_QUAL);
-			realigner.setProcessSecondaryAlignments(PROCESS_SECONDARY_ALIGNMENTS);
-			realigner.setRealignExistingSplitReads(REALIGN_EXISTING_SPLIT_READS);
-			realigner.setRealignEntireRecord(REALIGN_ENTIRE_READ);
-			realigner.setWorkerThreads(WORKER_THREADS);
-			realigner.setAdjustPrimaryAlignment(READJUST_PRIMARY_ALIGNMENT_POSITION);
-			realigner.setWriteOATag(WRITE_OA);
 			realigner.createSupplementaryAlignments(INPUT, OUTPUT, OUTPUT_UNORDERED_RECORDS);
 
 			for (Closeable c : toClose) {
@@ -134,6 +116,50 @@ public class SoftClipsToSplitReads extends ReferenceCommandLineProgram {
     	return 0;
 	}
     
+	/**
+	 * Creates a split read realigner that processes records as they are streamed to it.
+	 * External aligners are always run in streaming mode.
+	 * @param pc processing context
+	 * @param toClose resources that the caller must close once realignment is complete
+	 * @return configured streaming realigner
+	 */
+	public StreamingSplitReadRealigner createStreamingRealigner(GenomicProcessingContext pc, List<Closeable> toClose) {
+		StreamingSplitReadRealigner realigner;
+		switch (ALIGNER) {
+			case BWAMEM:
+				BwaStreamingAligner bwaAligner = new BwaStreamingAligner(REFERENCE_SEQUENCE, getReference().getSequenceDictionary(), WORKER_THREADS, ALIGNER_BATCH_SIZE * 150);
+				toClose.add(bwaAligner);
+				realigner = new StreamingSplitReadRealigner(pc, bwaAligner, ALIGNER_BATCH_SIZE);
+				break;
+			case MINIMAP2:
+				Minimap2StreamingAligner mm2Aligner = new Minimap2StreamingAligner(REFERENCE_SEQUENCE, getReference(), WORKER_THREADS, ALIGNER_BATCH_SIZE * 150);
+				toClose.add(mm2Aligner);
+				realigner = new StreamingSplitReadRealigner(pc, mm2Aligner, ALIGNER_BATCH_SIZE);
+				break;
+			case EXTERNAL:
+			default:
+				SamReaderFactory readerFactory = SamReaderFactory.makeDefault().referenceSequence(REFERENCE_SEQUENCE);
+				ExternalProcessStreamingAligner streamingAligner = new ExternalProcessStreamingAligner(readerFactory, ALIGNER_COMMAND_LINE, REFERENCE_SEQUENCE, WORKER_THREADS, getReference().getSequenceDictionary());
+				toClose.add(streamingAligner);
+				realigner = new StreamingSplitReadRealigner(pc, streamingAligner, ALIGNER_BATCH_SIZE);
+				break;
+		}
+		configure(realigner);
+		return realigner;
+	}
+
+	private void configure(SplitReadRealigner realigner) {
+		realigner.setFallbackBaseQuality(FALLBACK_BASE_QUALITY);
+		realigner.setMinSoftClipLength(MIN_CLIP_LENGTH);
+		realigner.setMinSoftClipQuality(MIN_CLIP_QUAL);
+		realigner.setProcessSecondaryAlignments(PROCESS_SECONDARY_ALIGNMENTS);
+		realigner.setRealignExistingSplitReads(REALIGN_EXISTING_SPLIT_READS);
+		realigner.setRealignEntireRecord(REALIGN_ENTIRE_READ);
+		realigner.setWorkerThreads(WORKER_THREADS);
+		realigner.setAdjustPrimaryAlignment(READJUST_PRIMARY_ALIGNMENT_POSITION);
+		realigner.setWriteOATag(WRITE_OA);
+	}
+
 	private void validateParameters() {
     	IOUtil.assertFileIsReadable(INPUT);
     	IOUtil.assertFileIsWritable(OUTPUT);
@@ -2,8 +2,10 @@ package gridss.cmdline;
 
 import au.edu.wehi.idsv.picard.ReferenceLookup;
 import au.edu.wehi.idsv.picard.TwoBitBufferedReferenceSequenceFile;
+import au.edu.wehi.idsv.sam.ReadNameIndex;
 import au.edu.wehi.idsv.util.AsyncBufferedIterator;
 import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import htsjdk.samtools.*;
 import htsjdk.samtools.SAMFileHeader.SortOrder;
 import htsjdk.samtools.reference.IndexedFastaSequenceFile;
@@ -14,9 +16,14 @@ import picard.PicardException;
 import picard.analysis.SinglePassSamProgram;
 import picard.cmdline.StandardOptionDefinitions;
 
+import java.io.Closeable;
 import java.io.File;
-import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * 
@@ -25,6 +32,10 @@ import java.util.*;
  */
 public abstract class ByReadNameSinglePassSamProgram extends ReferenceCommandLineProgram {
 	private static final Log log = Log.getInstance(ByReadNameSinglePassSamProgram.class);
+	/**
+	 * Number of fragments in each batch of fragments processed by a worker thread.
+	 */
+	private static final int FRAGMENT_BATCH_SIZE = 1024;
 	@Argument(shortName = StandardOptionDefinitions.INPUT_SHORT_NAME, doc = "Input SAM or BAM file. " +
 			" If multiple mapping locations are reported for each read, these reads must be grouped together.")
     public File INPUT;
@@ -39,6 +50,15 @@ public abstract class ByReadNameSinglePassSamProgram extends ReferenceCommandLin
     @Argument(doc = "Stop after processing N reads, mainly for debugging.")
     public long STOP_AFTER = 0;
 
+    @Argument(doc = "Number of worker threads used to process fragments. Fragments are processed by the main thread if set to 1."
+    		+ " Output records are written in input order regardless of the number of worker threads.",
+    		shortName = "THREADS", optional = true)
+    public int WORKER_THREADS = 1;
+
+    @Argument(doc = "Read name index to create for the input BAM file as a side product of the traversal of the input file."
+    		+ " No index is created if an up to date index already exists.", optional = true)
+    public File READ_NAME_INDEX = null;
+
         /**
      * Final implementation of doWork() that checks and loads the input and optionally reference
      * sequence files and the runs the sublcass through the setup() acceptRead() and finish() steps.
@@ -47,10 +67,21 @@ public abstract class ByReadNameSinglePassSamProgram extends ReferenceCommandLin
     protected final int doWork() {
     	log.debug("Setting language-neutral locale");
     	java.util.Locale.setDefault(Locale.ROOT);
+        ReadNameIndex.Writer indexWriter = null;
         try {
-			makeItSo(INPUT, REFERENCE_SEQUENCE, ASSUME_SORTED, STOP_AFTER, Arrays.asList(this));
-		} catch (FileNotFoundException e) {
+        	if (READ_NAME_INDEX != null && STOP_AFTER <= 0) {
+        		ReadNameIndex existing = ReadNameIndex.open(READ_NAME_INDEX, INPUT);
+        		if (existing == null) {
+        			indexWriter = new ReadNameIndex.Writer(READ_NAME_INDEX, INPUT, TMP_DIR.get(0).toPath(), MAX_RECORDS_IN_RAM);
+        		} else {
+        			existing.close();
+        		}
+        	}
+			makeItSo(INPUT, REFERENCE_SEQUENCE, ASSUME_SORTED, STOP_AFTER, Arrays.asList(this), WORKER_THREADS, indexWriter);
+		} catch (IOException e) {
 			throw new RuntimeException(e);
+		} finally {
+			CloserUtil.close(indexWriter);
 		}
         return 0;
     }
@@ -59,10 +90,30 @@ public abstract class ByReadNameSinglePassSamProgram extends ReferenceCommandLin
                                 final File referenceSequence,
                                 final boolean assumeSorted,
                                 final long stopAfter,
-                                final Collection<ByReadNameSinglePassSamProgram> programs) throws FileNotFoundException {
+                                final Collection<ByReadNameSinglePassSamProgram> programs) throws IOException {
+    	makeItSo(input, referenceSequence, assumeSorted, stopAfter, programs, 1, null);
+    }
+
+    /**
+     * Runs the given programs over the input file.
+     * When more than one worker thread is used, batches of fragments are passed to processFragment() on worker threads
+     * and the results are passed to acceptFragment() on the calling thread in input order.
+     * @param indexWriter if not null, every input record is added to this read name index, which is written on completion.
+     */
+    public static void makeItSo(final File input,
+                                final File referenceSequence,
+                                final boolean assumeSorted,
+                                final long stopAfter,
+                                final Collection<ByReadNameSinglePassSamProgram> programs,
+                                final int workerThreads,
+                                final ReadNameIndex.Writer indexWriter) throws IOException {
         // Setup the standard inputs
         IOUtil.assertFileIsReadable(input);
-        SamReader in = SamReaderFactory.makeDefault().referenceSequence(referenceSequence).open(input);
+        SamReaderFactory readerFactory = SamReaderFactory.makeDefault().referenceSequence(referenceSequence);
+        if (indexWriter != null) {
+        	readerFactory.enable(SamReaderFactory.Option.INCLUDE_SOURCE_IN_RECORDS);
+        }
+        SamReader in = readerFactory.open(input);
         // Optionally load up the reference sequence and double check sequence dictionaries
         final ReferenceLookup lookup;
         if (referenceSequence == null) {
@@ -94,6 +145,7 @@ public abstract class ByReadNameSinglePassSamProgram extends ReferenceCommandLin
         final ProgressLogger progress = new ProgressLogger(log);
         final SAMRecordIterator rawit = in.iterator();
         final CloseableIterator<SAMRecord> it = new AsyncBufferedIterator<SAMRecord>(rawit, "ByReadNameSinglePassSamProgram " + input.getName());
+        final FragmentDispatcher dispatcher = createDispatcher(programs, lookup, workerThreads, input.getName());
         try {
 	        List<SAMRecord> currentRecords = new ArrayList<>();
 	        String currentReadName = null;
@@ -103,11 +155,9 @@ public abstract class ByReadNameSinglePassSamProgram extends ReferenceCommandLin
 	        	// if read name we have to just treat it as a single read
 	        	if (readname == null || !readname.equals(currentReadName)) {
 	        		if (currentRecords.size() > 0) {
-		        		for (final ByReadNameSinglePassSamProgram program : programs) {
-		        			program.acceptFragment(currentRecords, lookup);
-			            }
+	        			dispatcher.dispatch(currentRecords);
+	        			currentRecords = new ArrayList<>();
 	        		}
-	        		currentRecords.clear();
 	        		currentReadName = readname;
 	        		if (stopAfter > 0 && progress.getCount() >= stopAfter) {
 		                break;
@@ -115,21 +165,124 @@ public abstract class ByReadNameSinglePassSamProgram extends ReferenceCommandLin
 	        	}
 	        	currentRecords.add(r);
 	        	progress.record(r);
+	        	if (indexWriter != null) {
+	        		indexWriter.add(r);
+	        	}
 	        }
 	        if (currentRecords.size() > 0) {
-	        	for (final ByReadNameSinglePassSamProgram program : programs) {
-	    			program.acceptFragment(currentRecords, lookup);
-	            }
+	        	dispatcher.dispatch(currentRecords);
 	        }
+	        dispatcher.flush();
         } finally {
+	        CloserUtil.close(dispatcher);
 	        CloserUtil.close(it);
 	        CloserUtil.close(rawit);
 	        CloserUtil.close(in);
         }
+        if (indexWriter != null) {
+        	indexWriter.finish();
+        }
         for (final ByReadNameSinglePassSamProgram program : programs) {
             program.finish();
         }
     }
+    private static FragmentDispatcher createDispatcher(Collection<ByReadNameSinglePassSamProgram> programs, ReferenceLookup lookup, int workerThreads, String name) {
+    	return workerThreads > 1 ? new ParallelFragmentDispatcher(programs, lookup, workerThreads, name) : new FragmentDispatcher(programs, lookup);
+    }
+    /**
+     * Passes each fragment to every program on the calling thread.
+     */
+    private static class FragmentDispatcher implements Closeable {
+    	protected final Collection<ByReadNameSinglePassSamProgram> programs;
+    	protected final ReferenceLookup lookup;
+    	public FragmentDispatcher(Collection<ByReadNameSinglePassSamProgram> programs, ReferenceLookup lookup) {
+    		this.programs = programs;
+    		this.lookup = lookup;
+    	}
+    	public void dispatch(List<SAMRecord> fragment) {
+    		for (final ByReadNameSinglePassSamProgram program : programs) {
+    			program.acceptFragment(fragment, program.processFragment(fragment, lookup), lookup);
+    		}
+    	}
+    	public void flush() {
+    	}
+		@Override
+		public void close() {
+		}
+    }
+    /**
+     * Processes batches of fragments on worker threads.
+     * Batch results are consumed in submission order so programs accept fragments in the same order
+     * as they would when processed on a single thread.
+     */
+    private static class ParallelFragmentDispatcher extends FragmentDispatcher {
+    	private final ExecutorService threadpool;
+    	private final ArrayDeque<Future<Object[][]>> inflight = new ArrayDeque<>();
+    	private final ArrayDeque<List<List<SAMRecord>>> inflightFragments = new ArrayDeque<>();
+    	private final int maxInflightBatches;
+    	private List<List<SAMRecord>> batch = new ArrayList<>(FRAGMENT_BATCH_SIZE);
+    	public ParallelFragmentDispatcher(Collection<ByReadNameSinglePassSamProgram> programs, ReferenceLookup lookup, int workerThreads, String name) {
+    		super(programs, lookup);
+    		this.threadpool = Executors.newFixedThreadPool(workerThreads, new ThreadFactoryBuilder().setDaemon(true).setNameFormat("ByReadName-" + name + "-%d").build());
+    		this.maxInflightBatches = 2 * workerThreads;
+    	}
+    	@Override
+    	public void dispatch(List<SAMRecord> fragment) {
+    		batch.add(fragment);
+    		if (batch.size() >= FRAGMENT_BATCH_SIZE) {
+    			submitBatch();
+    		}
+    	}
+    	private void submitBatch() {
+    		if (batch.isEmpty()) return;
+    		final List<List<SAMRecord>> fragments = batch;
+    		batch = new ArrayList<>(FRAGMENT_BATCH_SIZE);
+    		inflight.add(threadpool.submit(() -> process(fragments)));
+    		inflightFragments.add(fragments);
+    		while (inflight.size() > maxInflightBatches) {
+    			acceptNextBatch();
+    		}
+    	}
+    	private Object[][] process(List<List<SAMRecord>> fragments) {
+    		Object[][] result = new Object[fragments.size()][programs.size()];
+    		for (int i = 0; i < fragments.size(); i++) {
+    			int j = 0;
+    			for (final ByReadNameSinglePassSamProgram program : programs) {
+    				result[i][j++] = program.processFragment(fragments.get(i), lookup);
+    			}
+    		}
+    		return result;
+    	}
+    	private void acceptNextBatch() {
+    		final List<List<SAMRecord>> fragments = inflightFragments.poll();
+    		final Object[][] result;
+    		try {
+    			result = inflight.poll().get();
+    		} catch (InterruptedException e) {
+    			Thread.currentThread().interrupt();
+    			throw new RuntimeException(e);
+    		} catch (ExecutionException e) {
+    			throw new RuntimeException(e.getCause());
+    		}
+    		for (int i = 0; i < fragments.size(); i++) {
+    			int j = 0;
+    			for (final ByReadNameSinglePassSamProgram program : programs) {
+    				program.acceptFragment(fragments.get(i), result[i][j++], lookup);
+    			}
+    		}
+    	}
+    	@Override
+    	public void flush() {
+    		submitBatch();
+    		while (!inflight.isEmpty()) {
+    			acceptNextBatch();
+    		}
+    	}
+		@Override
+		public void close() {
+			threadpool.shutdownNow();
+		}
+    }
     /** Should be implemented by subclasses to do one-time initialization work. */
     protected abstract void setup(final SAMFileHeader header, final File samFile);
     /**
@@ -137,6 +290,23 @@ public abstract class ByReadNameSinglePassSamProgram extends ReferenceCommandLin
      * If a reference sequence file was supplied to the program it will be passed as 'ref'. Otherwise 'ref' may be null.
      */
     protected abstract void acceptFragment(final List<SAMRecord> records, ReferenceLookup lookup);
+    /**
+     * Performs the thread-safe portion of fragment processing.
+     * When multiple worker threads are used, this method is called concurrently from worker threads and must
+     * not modify program state. The result is passed to acceptFragment() on the main thread in input order.
+     * Programs that do not override this method have all processing performed in acceptFragment().
+     * @return fragment processing result to pass to acceptFragment()
+     */
+    protected Object processFragment(final List<SAMRecord> records, ReferenceLookup lookup) {
+    	return null;
+    }
+    /**
+     * Accepts a fragment for which processFragment() has already been called.
+     * @param processed result of processFragment() for this fragment
+     */
+    protected void acceptFragment(final List<SAMRecord> records, Object processed, ReferenceLookup lookup) {
+    	acceptFragment(records, lookup);
+    }
     /** Should be implemented by subclasses to do one-time finalization work. */
     protected abstract void finish();
     public void copyInput(ProcessStructuralVariantReadsCommandLineProgram to) {
@@ -146,24 +316,50 @@ public abstract class ByReadNameSinglePassSamProgram extends ReferenceCommandLin
     	to.OUTPUT = OUTPUT;
     	to.ASSUME_SORTED = ASSUME_SORTED;
     	to.STOP_AFTER = STOP_AFTER;
+    	to.WORKER_THREADS = WORKER_THREADS;
+    	to.READ_NAME_INDEX = READ_NAME_INDEX;
     }
+    /**
+     * Wraps this program so it can be run alongside picard metrics programs.
+     * Each read is treated as its own fragment. When WORKER_THREADS is greater than 1,
+     * fragments are processed on worker threads and accepted in input order.
+     */
     public SinglePassSamProgram asSinglePassSamProgram() {
     	return new WrappedSinglePassSamProgram();
     }
     private class WrappedSinglePassSamProgram extends SinglePassSamProgram {
+    	private FragmentDispatcher dispatcher;
 
 		@Override
 		protected void setup(SAMFileHeader header, File samFile) {
 			ByReadNameSinglePassSamProgram.this.setup(header, samFile);
+			if (WORKER_THREADS > 1) {
+				dispatcher = createDispatcher(ImmutableList.of(ByReadNameSinglePassSamProgram.this),
+						REFERENCE_SEQUENCE == null ? null : getReference(),
+						WORKER_THREADS,
+						samFile == null ? "" : samFile.getName());
+			}
 		}
 
 		@Override
 		protected void acceptRead(SAMRecord rec, ReferenceSequence ref) {
-			ByReadNameSinglePassSamProgram.this.acceptFragment(ImmutableList.of(rec), ref == null ? null : ByReadNameSinglePassSamProgram.this.getReference());
+			if (dispatcher != null) {
+				dispatcher.dispatch(ImmutableList.of(rec));
+			} else {
+				ByReadNameSinglePassSamProgram.this.acceptFragment(ImmutableList.of(rec), ref == null ? null : ByReadNameSinglePassSamProgram.this.getReference());
+			}
 		}
 
 		@Override
 		protected void finish() {
+			if (dispatcher != null) {
+				try {
+					dispatcher.flush();
+				} finally {
+					CloserUtil.close(dispatcher);
+					dispatcher = null;
+				}
+			}
 			ByReadNameSinglePassSamProgram.this.finish();
 		}
     }
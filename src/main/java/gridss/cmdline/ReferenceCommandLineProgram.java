@@ -91,6 +91,13 @@ public abstract class ReferenceCommandLineProgram extends CommandLineProgram {
 	public void setReference(File ref) {
 		this.REFERENCE_SEQUENCE = ref;
 	}
+	/**
+	 * Sets the reference genome file and an already loaded lookup of the same reference
+	 */
+	public void setReference(File ref, ReferenceLookup lookup) {
+		this.REFERENCE_SEQUENCE = ref;
+		this.reference = lookup;
+	}
 	public FileSystemContext getFileSystemContext() {
 		if (fsc == null) {
 			fsc = new FileSystemContext(TMP_DIR.get(0), WORKING_DIR, MAX_RECORDS_IN_RAM);
@@ -891,7 +891,8 @@ public class BAMFileReader extends SamReader.ReaderImplementation {
                 info.record.setFileSource(new SAMFileSource(mReader, new BAMFileSpan(new Chunk(info.start, info.stop))));
             }
             info.record.setValidationStringency(mValidationStringency);
-            if (mValidationStringency != ValidationStringency.SILENT) {
+            // Full validation forces every lazily-decoded field to be decoded
+            if (mValidationStringency != ValidationStringency.SILENT && !Defaults.LAZY_RECORD_DECODING) {
                 final List<SAMValidationError> validationErrors = info.record.isValid(mValidationStringency == ValidationStringency.STRICT);
                 SAMUtils.processValidationErrors(validationErrors,
                         info.recordIndex, BAMFileReader.this.getValidationStringency());
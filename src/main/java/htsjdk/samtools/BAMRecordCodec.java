@@ -104,6 +104,13 @@ public class BAMRecordCodec implements SortingCollection.Codec<SAMRecord> {
      */
     @Override
     public void encode(final SAMRecord alignment) {
+        if (alignment instanceof BAMRecord) {
+            final byte[] undecodedBinaryBlock = alignment.getVariableBinaryRepresentation();
+            if (undecodedBinaryBlock != null) {
+                encodeUnchanged((BAMRecord) alignment, undecodedBinaryBlock);
+                return;
+            }
+        }
         // Compute block size, as it is the first element of the file representation of SAMRecord
         final int readLength = alignment.getReadLength();
 
@@ -204,6 +211,68 @@ public class BAMRecordCodec implements SortingCollection.Codec<SAMRecord> {
         }
     }
 
+    /**
+     * Writes a BAM record whose variable-length block is unchanged from when it was read.
+     * The variable-length block is copied as-is and the indexing bin is computed directly
+     * from the binary CIGAR so none of the lazily-decoded fields are materialised.
+     */
+    private void encodeUnchanged(final BAMRecord alignment, final byte[] variableLengthBinaryBlock) {
+        final int readNameSize = alignment.getReadNameLength() + 1;
+        // A long CIGAR that has not been decoded is still stored as the sentinel CIGAR with a CG tag
+        final int cigarLength = alignment.getCigarLength();
+        int indexBin = 0;
+        if (alignment.getAlignmentStart() != SAMRecord.NO_ALIGNMENT_START) {
+            if (!warnIfReferenceIsTooLargeForBinField(alignment)) {
+                indexBin = computeIndexingBin(alignment, variableLengthBinaryBlock, readNameSize, cigarLength);
+            }
+        }
+        this.binaryCodec.writeInt(BAMFileConstants.FIXED_BLOCK_SIZE + variableLengthBinaryBlock.length);
+        this.binaryCodec.writeInt(alignment.getReferenceIndex());
+        // 0-based!!
+        this.binaryCodec.writeInt(alignment.getAlignmentStart() - 1);
+        this.binaryCodec.writeUByte((short) readNameSize);
+        this.binaryCodec.writeUByte((short) alignment.getMappingQuality());
+        this.binaryCodec.writeUShort(indexBin);
+        this.binaryCodec.writeUShort(cigarLength);
+        this.binaryCodec.writeUShort(alignment.getFlags());
+        this.binaryCodec.writeInt(alignment.getReadLength());
+        this.binaryCodec.writeInt(alignment.getMateReferenceIndex());
+        this.binaryCodec.writeInt(alignment.getMateAlignmentStart() - 1);
+        this.binaryCodec.writeInt(alignment.getInferredInsertSize());
+        this.binaryCodec.writeBytes(variableLengthBinaryBlock);
+    }
+
+    /**
+     * Equivalent to SAMRecord.computeIndexingBin() but calculates the alignment end from the binary CIGAR.
+     */
+    private static int computeIndexingBin(final SAMRecord alignment, final byte[] variableLengthBinaryBlock, final int cigarOffset, final int cigarLength) {
+        final int alignmentStart = alignment.getAlignmentStart() - 1; // BIN uses 0-based half-open
+        int alignmentEnd = 0;
+        if (!alignment.getReadUnmappedFlag()) {
+            int referenceLength = 0;
+            for (int i = 0; i < cigarLength; i++) {
+                final int offset = cigarOffset + i * BAMRecord.CIGAR_SIZE_MULTIPLIER;
+                final int binaryOp = (variableLengthBinaryBlock[offset] & 0xFF) |
+                        (variableLengthBinaryBlock[offset + 1] & 0xFF) << 8 |
+                        (variableLengthBinaryBlock[offset + 2] & 0xFF) << 16 |
+                        (variableLengthBinaryBlock[offset + 3] & 0xFF) << 24;
+                if (CigarOperator.binaryToEnum(binaryOp & 0xF).consumesReferenceBases()) {
+                    referenceLength += binaryOp >>> 4;
+                }
+            }
+            alignmentEnd = alignmentStart + referenceLength;
+        }
+        if (alignmentEnd <= 0) {
+            // If alignment end cannot be determined (e.g. because this read is not really aligned),
+            // then treat this as a one base alignment for indexing purposes.
+            alignmentEnd = alignmentStart + 1;
+        }
+        if (alignmentStart > GenomicIndexUtil.BIN_GENOMIC_SPAN || alignmentEnd > GenomicIndexUtil.BIN_GENOMIC_SPAN) {
+            throw new IllegalStateException("Read position too high for BAI bin indexing.");
+        }
+        return GenomicIndexUtil.regionToBin(alignmentStart, alignmentEnd) & (int) BinaryCodec.MAX_USHORT;
+    }
+
     /**
      * Create a "Sentinel" cigar that will be placed in BAM file when the actual cigar has more than 0xffff operator,
      * which are not supported by the bam format. The actual cigar will be encoded and placed in the CG attribute.
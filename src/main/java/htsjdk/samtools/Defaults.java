@@ -46,6 +46,23 @@ public class Defaults {
      */
     public static final int ASYNC_READ_COMPUTATIONAL_THREADS;
 
+    /**
+     * Maximum number of threads in the thread pool used to deflate BGZF blocks.
+     * Blocks written by every BlockCompressedOutputStream are compressed on this thread pool.
+     * A value of 0 performs deflation on the writing thread.
+     * Default = number of cores available to the JVM.
+     */
+    public static final int ASYNC_WRITE_COMPUTATIONAL_THREADS;
+
+    /**
+     * Should validation of BAM records be deferred until the lazily-decoded fields are accessed?
+     * When true, records read from BAM files are not fully validated as they are read so the read name,
+     * bases, base qualities and tags remain undecoded until first accessed. The CIGAR and tags are
+     * still validated when they are decoded.
+     * Default = false.
+     */
+    public static final boolean LAZY_RECORD_DECODING;
+
     /** Compression level to be used for writing BAM and other block-compressed outputs.  Default = 5. */
     public static final int COMPRESSION_LEVEL;
 
@@ -127,6 +144,8 @@ public class Defaults {
         USE_ASYNC_IO_WRITE_FOR_SAMTOOLS = getBooleanProperty("use_async_io_write_samtools", false);
         USE_ASYNC_IO_WRITE_FOR_TRIBBLE = getBooleanProperty("use_async_io_write_tribble", false);
         ASYNC_READ_COMPUTATIONAL_THREADS = getIntProperty("async_io_read_threads", Runtime.getRuntime().availableProcessors());
+        ASYNC_WRITE_COMPUTATIONAL_THREADS = getIntProperty("async_io_write_threads", Runtime.getRuntime().availableProcessors());
+        LAZY_RECORD_DECODING = getBooleanProperty("lazy_record_decoding", false);
         COMPRESSION_LEVEL = getIntProperty("compression_level", 5);
         DEFAULT_SAM_EXTENSION = getStringProperty("default_sam_type", "bam");
         DEFAULT_VCF_EXTENSION = getStringProperty("default_vcf_type", "vcf");
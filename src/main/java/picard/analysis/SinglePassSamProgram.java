@@ -24,6 +24,7 @@
 
 package picard.analysis;
 
+import au.edu.wehi.idsv.sam.RegionShardedSamRecordIterator;
 import htsjdk.samtools.SAMFileHeader;
 import htsjdk.samtools.SAMFileHeader.SortOrder;
 import htsjdk.samtools.SAMRecord;
@@ -96,6 +97,12 @@ public abstract class SinglePassSamProgram extends CommandLineProgram {
      */
     private static final int IN_FLIGHT_BATCHES = 2;
 
+    /**
+     * Number of genomic shards to create for each concurrent shard reader.
+     * Smaller shards reduce the imbalance caused by coverage differences between shards.
+     */
+    private static final int SHARDS_PER_READER_THREAD = 8;
+
     /**
      * End of stream sentinel value.
      * Program worker threads use this object to indicate a unexceptional end of stream.
@@ -198,7 +205,7 @@ public abstract class SinglePassSamProgram extends CommandLineProgram {
         }
 
         final ProgressLogger progress = new ProgressLogger(log, 10000000);
-        try (CloseableIterator<SAMRecord> it = useAsyncIterator ? new AsyncBufferedIterator<>(in.iterator(), BATCH_SIZE, IN_FLIGHT_BATCHES, "SinglePassSamProgram") : in.iterator()){
+        try (CloseableIterator<SAMRecord> it = openIterator(in, input, referenceSequence, useAsyncIterator, anyUseNoRefReads)) {
             int basesProcessed = 0;
             List<Tuple<ReferenceSequence, SAMRecord>> batch = new ArrayList<>();
             while (it.hasNext()) {
@@ -255,6 +262,21 @@ public abstract class SinglePassSamProgram extends CommandLineProgram {
             CloserUtil.close(in);
         }
     }
+    private static CloseableIterator<SAMRecord> openIterator(
+            final SamReader in,
+            final File input,
+            final File referenceSequence,
+            final boolean useAsyncIterator,
+            final boolean includeUnmapped) {
+        final int readerThreads = gridss.Defaults.METRICS_READER_THREADS;
+        if (useAsyncIterator && readerThreads > 1 && RegionShardedSamRecordIterator.canShard(in)) {
+            // Read and decode genomic shards in parallel. Records are still returned in file order.
+            log.debug(String.format("Reading %s using %d concurrent shards", input, readerThreads));
+            final SamReaderFactory factory = SamReaderFactory.makeDefault().referenceSequence(referenceSequence);
+            return new RegionShardedSamRecordIterator(factory, input, in.getFileHeader().getSequenceDictionary(), SHARDS_PER_READER_THREAD * readerThreads, readerThreads, includeUnmapped);
+        }
+        return useAsyncIterator ? new AsyncBufferedIterator<>(in.iterator(), BATCH_SIZE, IN_FLIGHT_BATCHES, "SinglePassSamProgram") : in.iterator();
+    }
     private static void asyncAcceptReads(
             final List<ArrayBlockingQueue<List<Tuple<ReferenceSequence, SAMRecord>>>> buffers,
             final List<SinglePassSamProgramRunner> workers,
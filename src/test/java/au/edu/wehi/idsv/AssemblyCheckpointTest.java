@@ -0,0 +1,64 @@
+package au.edu.wehi.idsv;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import htsjdk.samtools.QueryInterval;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class AssemblyCheckpointTest extends TestHelper {
+	@Rule
+	public TemporaryFolder testFolder = new TemporaryFolder();
+	private static List<QueryInterval[]> segments(int segmentCount, int segmentSize) {
+		ImmutableList.Builder<QueryInterval[]> builder = ImmutableList.builder();
+		for (int i = 0; i < segmentCount; i++) {
+			builder.add(new QueryInterval[] { new QueryInterval(0, i * segmentSize + 1, (i + 1) * segmentSize) });
+		}
+		return builder.build();
+	}
+	@Test
+	public void should_start_from_first_segment_when_no_checkpoint_exists() throws IOException {
+		AssemblyCheckpoint cp = AssemblyCheckpoint.load(new File(testFolder.getRoot(), "checkpoint"), segments(4, 100));
+		assertEquals(0, cp.getCompletedSegments());
+		assertEquals(0, cp.getLastAssemblyId(BreakendDirection.Forward));
+		assertEquals(0, cp.getLastAssemblyId(BreakendDirection.Backward));
+	}
+	@Test
+	public void should_round_trip() throws IOException {
+		File f = new File(testFolder.getRoot(), "checkpoint");
+		AssemblyCheckpoint.load(f, segments(4, 100)).save(2, ImmutableMap.of(BreakendDirection.Forward, 17, BreakendDirection.Backward, 5), "polyA:51");
+		AssemblyCheckpoint cp = AssemblyCheckpoint.load(f, segments(4, 100));
+		assertEquals(2, cp.getCompletedSegments());
+		assertEquals(17, cp.getLastAssemblyId(BreakendDirection.Forward));
+		assertEquals(5, cp.getLastAssemblyId(BreakendDirection.Backward));
+		assertEquals("polyA:51", cp.getResumePosition());
+		cp.delete();
+		assertFalse(f.exists());
+	}
+	@Test
+	public void should_ignore_checkpoint_for_different_segmentation() throws IOException {
+		File f = new File(testFolder.getRoot(), "checkpoint");
+		AssemblyCheckpoint.load(f, segments(4, 100)).save(2, ImmutableMap.of(BreakendDirection.Forward, 17, BreakendDirection.Backward, 5), "polyA:51");
+		assertEquals(0, AssemblyCheckpoint.load(f, segments(5, 100)).getCompletedSegments());
+	}
+	@Test
+	public void should_ignore_checkpoint_for_different_segment_intervals() throws IOException {
+		File f = new File(testFolder.getRoot(), "checkpoint");
+		AssemblyCheckpoint.load(f, segments(4, 100)).save(2, ImmutableMap.of(BreakendDirection.Forward, 17, BreakendDirection.Backward, 5), "polyA:51");
+		assertEquals(0, AssemblyCheckpoint.load(f, segments(4, 200)).getCompletedSegments());
+	}
+	@Test
+	public void should_ignore_malformed_checkpoint() throws IOException {
+		File f = new File(testFolder.getRoot(), "checkpoint");
+		Files.write(f.toPath(), "segments=0:1-100;0:101-200;0:201-300;0:301-400\ncompletedSegments=x\n".getBytes());
+		assertEquals(0, AssemblyCheckpoint.load(f, segments(4, 100)).getCompletedSegments());
+	}
+}
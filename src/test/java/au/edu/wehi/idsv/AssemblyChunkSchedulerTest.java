@@ -0,0 +1,93 @@
+package au.edu.wehi.idsv;
+
+import com.google.common.collect.ImmutableList;
+import htsjdk.samtools.QueryInterval;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.function.ToLongFunction;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class AssemblyChunkSchedulerTest extends TestHelper {
+	private static QueryInterval[] chunk(int referenceIndex, int start, int end) {
+		return new QueryInterval[] { new QueryInterval(referenceIndex, start, end) };
+	}
+	/**
+	 * One unit of cost per base, with a hotspot of 1000 per base in the given interval
+	 */
+	private static ToLongFunction<QueryInterval[]> hotspot(int referenceIndex, int start, int end) {
+		return intervals -> Stream.of(intervals)
+				.mapToLong(qi -> {
+					long cost = qi.end - qi.start + 1;
+					if (qi.referenceIndex == referenceIndex) {
+						int overlap = Math.min(qi.end, end) - Math.max(qi.start, start) + 1;
+						cost += 1000L * Math.max(0, overlap);
+					}
+					return cost;
+				})
+				.sum();
+	}
+	@Test
+	public void should_not_split_when_cost_unknown() {
+		List<QueryInterval[]> chunks = ImmutableList.of(chunk(0, 1, 100), chunk(0, 101, 200), chunk(1, 1, 100));
+		AssemblyChunkScheduler scheduler = new AssemblyChunkScheduler(chunks, qi -> -1, 4, 10);
+		assertEquals(chunks, scheduler.getChunks());
+		assertArrayEquals(new int[] { 0, 1, 2 }, scheduler.getExecutionOrder());
+	}
+	@Test
+	public void should_not_split_when_disabled() {
+		List<QueryInterval[]> chunks = ImmutableList.of(chunk(0, 1, 100), chunk(0, 101, 200), chunk(1, 1, 100));
+		AssemblyChunkScheduler scheduler = new AssemblyChunkScheduler(chunks, hotspot(0, 150, 160), 0, 10);
+		assertEquals(3, scheduler.getChunks().size());
+	}
+	@Test
+	public void should_process_most_expensive_chunk_first() {
+		List<QueryInterval[]> chunks = ImmutableList.of(chunk(0, 1, 100), chunk(0, 101, 200), chunk(1, 1, 100));
+		AssemblyChunkScheduler scheduler = new AssemblyChunkScheduler(chunks, hotspot(1, 1, 1), 0, 10);
+		assertArrayEquals(new int[] { 2, 0, 1 }, scheduler.getExecutionOrder());
+	}
+	@Test
+	public void should_split_expensive_chunk_around_hotspot() {
+		List<QueryInterval[]> chunks = ImmutableList.of(chunk(0, 1, 100), chunk(0, 101, 200), chunk(1, 1, 100));
+		AssemblyChunkScheduler scheduler = new AssemblyChunkScheduler(chunks, hotspot(0, 151, 160), 4, 10);
+		List<QueryInterval[]> result = scheduler.getChunks();
+		assertEquals(2 + 3, result.size());
+		assertArrayEquals(chunk(0, 1, 100), result.get(0));
+		assertArrayEquals(chunk(0, 101, 150), result.get(1));
+		assertArrayEquals(chunk(0, 151, 160), result.get(2));
+		assertArrayEquals(chunk(0, 161, 200), result.get(3));
+		assertArrayEquals(chunk(1, 1, 100), result.get(4));
+		assertEquals(2, scheduler.getExecutionOrder()[0]);
+	}
+	@Test
+	public void windows_should_not_span_intervals() {
+		List<QueryInterval> windows = AssemblyChunkScheduler.windows(new QueryInterval[] { new QueryInterval(0, 1, 25), new QueryInterval(1, 1, 5) }, 10);
+		assertEquals(4, windows.size());
+		assertEquals(new QueryInterval(0, 21, 25), windows.get(2));
+		assertEquals(new QueryInterval(1, 1, 5), windows.get(3));
+	}
+	@Test
+	public void segments_should_not_split_when_disabled() {
+		QueryInterval[] chunk = chunk(0, 1, 100);
+		List<QueryInterval[]> segments = AssemblyChunkScheduler.segments(chunk, 0);
+		assertEquals(1, segments.size());
+		assertArrayEquals(chunk, segments.get(0));
+	}
+	@Test
+	public void segments_should_not_split_small_chunk() {
+		QueryInterval[] chunk = chunk(0, 1, 100);
+		assertEquals(1, AssemblyChunkScheduler.segments(chunk, 1000).size());
+	}
+	@Test
+	public void segments_should_cover_chunk_in_genomic_order() {
+		QueryInterval[] chunk = new QueryInterval[] { new QueryInterval(0, 1, 25), new QueryInterval(1, 1, 5) };
+		List<QueryInterval[]> segments = AssemblyChunkScheduler.segments(chunk, 10);
+		assertEquals(3, segments.size());
+		assertArrayEquals(chunk(0, 1, 10), segments.get(0));
+		assertArrayEquals(chunk(0, 11, 20), segments.get(1));
+		assertArrayEquals(new QueryInterval[] { new QueryInterval(0, 21, 25), new QueryInterval(1, 1, 5) }, segments.get(2));
+	}
+}
@@ -20,11 +20,15 @@ import org.junit.Ignore;
 import org.junit.Test;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Properties;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
 
 import static org.junit.Assert.*;
 
@@ -282,6 +286,25 @@ public class AssemblyEvidenceSourceTest extends IntermediateFilesTest {
 		assertEquals(100, list.size());
 	}
 	@Test
+	public void checkpointed_assembly_should_not_repeat_segment_spanning_assemblies() throws IOException {
+		List<SAMRecord> in = new ArrayList<>();
+		for (int i = 50; i < 150; i++) {
+			in.add(withSequence("AATTAATCGCAAGAGCGGGTTGTATTCGACGCCAAGTCAGCTGAAGCACCATTACCCGATCAAAACATATCAGAAATGATTGACGTATCACAAGCCGGA", Read(0, i, "41M58S"))[0]);
+		}
+		createInput(in);
+		ProcessingContext pc = getCommandlineContext();
+		pc.getConfig().getAssembly().minReads = 1;
+		pc.getConfig().getAssembly().checkpointSize = 100;
+		pc.getConfig().chunkSize = 1000;
+		SAMEvidenceSource ses = new SAMEvidenceSource(pc, input, null, 0);
+		FileHelper.copy(ses.getFile(), ses.getSVFile(), true);
+		AssemblyEvidenceSource aes = new AssemblyEvidenceSource(pc, ImmutableList.of(ses), assemblyFile);
+		aes.assembleBreakends(null);
+		List<DirectedEvidence> list = Lists.newArrayList(aes.iterator(SAMEvidenceSource.EvidenceSortOrder.EvidenceStartPosition));
+		assertEquals(100, list.size());
+		assertEquals(100, list.stream().map(e -> ((SingleReadEvidence)e).getSAMRecord().getReadName()).distinct().count());
+	}
+	@Test
 	public void parallel_assembly_should_not_affect_assembly_results() throws IOException {
 		List<SAMRecord> in = new ArrayList<>();
 		for (int i = 50; i < 150; i++) {
@@ -301,6 +324,75 @@ public class AssemblyEvidenceSourceTest extends IntermediateFilesTest {
 		assertEquals(100, list.size());
 	}
 	@Test
+	public void concurrent_direction_assembly_should_match_sequential_assembly() throws IOException {
+		List<SAMRecord> in = new ArrayList<>();
+		for (int i = 50; i < 150; i++) {
+			in.add(withSequence("AATTAATCGCAAGAGCGGGTTGTATTCGACGCCAAGTCAGCTGAAGCACCATTACCCGATCAAAACATATCAGAAATGATTGACGTATCACAAGCCGGA", Read(0, i, "41M58S"))[0]);
+			in.add(withSequence("AATTAATCGCAAGAGCGGGTTGTATTCGACGCCAAGTCAGCTGAAGCACCATTACCCGATCAAAACATATCAGAAATGATTGACGTATCACAAGCCGGA", Read(0, i + 100, "58S41M"))[0]);
+		}
+		createInput(in);
+		ProcessingContext pc = getCommandlineContext();
+		pc.getConfig().getAssembly().minReads = 1;
+		SAMEvidenceSource ses = new SAMEvidenceSource(pc, input, null, 0);
+		FileHelper.copy(ses.getFile(), ses.getSVFile(), true);
+		List<List<String>> result = new ArrayList<>();
+		for (int threads : new int[] { 0, 2 }) {
+			File file = new File(super.testFolder.getRoot(), "breakend" + threads + ".bam");
+			AssemblyEvidenceSource aes = new AssemblyEvidenceSource(pc, ImmutableList.of(ses), file);
+			ExecutorService threadpool = threads == 0 ? null : Executors.newFixedThreadPool(threads);
+			aes.assembleBreakends(threadpool);
+			if (threadpool != null) {
+				threadpool.shutdown();
+			}
+			result.add(getRecords(file).stream().map(r -> r.getSAMString()).collect(Collectors.toList()));
+		}
+		assertTrue(result.get(0).size() > 0);
+		assertEquals(result.get(0), result.get(1));
+	}
+	@Test
+	public void interrupted_checkpointed_assembly_should_resume_from_last_completed_segment() throws IOException {
+		List<SAMRecord> in = new ArrayList<>();
+		for (int i = 50; i < 100; i++) {
+			in.add(withSequence("AATTAATCGCAAGAGCGGGTTGTATTCGACGCCAAGTCAGCTGAAGCACCATTACCCGATCAAAACATATCAGAAATGATTGACGTATCACAAGCCGGA", Read(0, i, "41M58S"))[0]);
+			in.add(withSequence("AATTAATCGCAAGAGCGGGTTGTATTCGACGCCAAGTCAGCTGAAGCACCATTACCCGATCAAAACATATCAGAAATGATTGACGTATCACAAGCCGGA", Read(0, i + 6000, "41M58S"))[0]);
+		}
+		createInput(in);
+		ProcessingContext pc = getCommandlineContext();
+		pc.getConfig().terminateOnFirstError = false;
+		pc.getConfig().getAssembly().minReads = 1;
+		pc.getConfig().getAssembly().checkpointSize = 5000;
+		SAMEvidenceSource ses = new SAMEvidenceSource(pc, input, null, 0);
+		FileHelper.copy(ses.getFile(), ses.getSVFile(), true);
+		File uninterruptedFile = new File(super.testFolder.getRoot(), "uninterrupted.bam");
+		new AssemblyEvidenceSource(pc, ImmutableList.of(ses), uninterruptedFile).assembleBreakends(null);
+		List<String> uninterrupted = getRecords(uninterruptedFile).stream().map(r -> r.getSAMString()).collect(Collectors.toList());
+
+		// interrupt assembly of the second segment (polyA:5001-10000) by blocking its output
+		File chunk = pc.getFileSystemContext().getAssemblyChunkBam(assemblyFile, 0);
+		File checkpoint = FileSystemContext.getWorkingFileFor(chunk, "checkpoint.");
+		File blocker = FileSystemContext.getWorkingFileFor(FileSystemContext.getWorkingFileFor(chunk, "segment1."), "gridss.tmp.");
+		assertTrue(blocker.mkdirs());
+		AssemblyEvidenceSource aes = new AssemblyEvidenceSource(pc, ImmutableList.of(ses), assemblyFile);
+		try {
+			aes.assembleBreakends(null);
+			fail("Expected assembly to be interrupted");
+		} catch (RuntimeException e) {
+		}
+		assertFalse(chunk.exists());
+		Properties p = new Properties();
+		try (InputStream is = new FileInputStream(checkpoint)) {
+			p.load(is);
+		}
+		assertEquals("1", p.getProperty("completedSegments"));
+
+		assertTrue(blocker.delete());
+		aes.assembleBreakends(null);
+		assertFalse(checkpoint.exists());
+		List<String> resumed = getRecords(assemblyFile).stream().map(r -> r.getSAMString()).collect(Collectors.toList());
+		assertTrue(uninterrupted.size() > 0);
+		assertEquals(uninterrupted, resumed);
+	}
+	@Test
 	public void bounds_check_should_apply_to_final_assembly_SAMRecord() throws IOException {
 		// TODO: how do we check
 		List<SAMRecord> in = new ArrayList<>();
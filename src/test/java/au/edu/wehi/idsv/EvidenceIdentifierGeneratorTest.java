@@ -54,6 +54,19 @@ public abstract class EvidenceIdentifierGeneratorTest extends TestHelper {
 		assertEquals(ids.size(), ids.stream().distinct().count());
 	}
 	@Test
+	public void evidence_identifier_should_match_identifier_of_evidenceid() {
+		NonReferenceReadPair rpe = NRRP(ses, withName("readname", DP(0, 1, "5M1D1M4S", true, 1, 1, "10M", false)));
+		SAMRecord r = withName("readname", Read(0, 1, "5M1D1M4S"))[0];
+		SoftClipEvidence sce = SCE(FWD, ses, r);
+		IndelEvidence ie = IndelEvidence.create(ses, r, 1);
+		SplitReadEvidence sre = SR(ses, withName("splitread", Read(0, 10, "5S5M"))[0], Read(1, 100, "5M"));
+		List<DirectedEvidence> list = Lists.newArrayList(rpe, sce, ie, ie.asRemote(), sre);
+		for (DirectedEvidence e : list) {
+			assertEquals(gen.getEvidenceIdentifier(e.getEvidenceID()), e.getEvidenceIdentifier());
+		}
+		assertEquals(list.size(), list.stream().map(e -> e.getEvidenceIdentifier()).distinct().count());
+	}
+	@Test
 	public void should_extract_alignment_unique() {
 		NonReferenceReadPair rpe = NRRP(ses, withName("readname", DP(0, 1, "5M1D1M4S", true, 1, 1, "10M", false)));
 		SAMRecord r = withName("readname", Read(0, 1, "5M1D1M4S"))[0];
@@ -0,0 +1,59 @@
+package au.edu.wehi.idsv;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class EvidenceIdentifierMapTest extends TestHelper {
+	@Test
+	public void should_derive_identifier_from_evidenceID() {
+		assertEquals(EvidenceIdentifier.fromEvidenceID("read1"), EvidenceIdentifier.fromEvidenceID("read1"));
+		assertNotEquals(EvidenceIdentifier.fromEvidenceID("read1"), EvidenceIdentifier.fromEvidenceID("read2"));
+	}
+	@Test
+	public void should_get_put_remove() {
+		EvidenceIdentifierMap<String> map = new EvidenceIdentifierMap<>();
+		EvidenceIdentifier a = EvidenceIdentifier.fromEvidenceID("a");
+		EvidenceIdentifier b = EvidenceIdentifier.fromEvidenceID("b");
+		assertNull(map.put(a, "1"));
+		assertEquals("1", map.put(a, "2"));
+		assertEquals("2", map.get(a));
+		assertNull(map.get(b));
+		assertEquals(1, map.size());
+		assertEquals("2", map.remove(a));
+		assertNull(map.remove(a));
+		assertTrue(map.isEmpty());
+	}
+	@Test
+	public void should_match_HashMap_behaviour() {
+		Random rng = new Random(0);
+		EvidenceIdentifierMap<Integer> map = new EvidenceIdentifierMap<>();
+		HashMap<EvidenceIdentifier, Integer> expected = new HashMap<>();
+		for (int i = 0; i < 100000; i++) {
+			// small key space forces collisions, removals and reinsertion
+			EvidenceIdentifier key = EvidenceIdentifier.fromEvidenceID(Integer.toString(rng.nextInt(2048)));
+			switch (rng.nextInt(3)) {
+				case 0:
+					assertEquals(expected.put(key, i), map.put(key, i));
+					break;
+				case 1:
+					assertEquals(expected.remove(key), map.remove(key));
+					break;
+				default:
+					assertEquals(expected.get(key), map.get(key));
+					break;
+			}
+			assertEquals(expected.size(), map.size());
+		}
+		for (EvidenceIdentifier key : expected.keySet()) {
+			assertEquals(expected.get(key), map.get(key));
+		}
+		assertEquals(new HashSet<>(expected.values()), new HashSet<>(map.values()));
+		map.clear();
+		assertTrue(map.values().isEmpty());
+	}
+}
@@ -1,5 +1,6 @@
 package au.edu.wehi.idsv;
 
+import au.edu.wehi.idsv.alignment.ExternalAlignerTests;
 import au.edu.wehi.idsv.alignment.StubFastqAligner;
 import au.edu.wehi.idsv.bed.IntervalBed;
 import au.edu.wehi.idsv.configuration.GridssConfiguration;
@@ -20,6 +21,7 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -508,4 +510,30 @@ public class SAMEvidenceSourceTest extends IntermediateFilesTest {
 		List<DiscordantReadPair> rp = evidence.stream().filter(e -> e instanceof DiscordantReadPair).map(e -> (DiscordantReadPair) e).collect(Collectors.toList());
 		Assert.assertEquals(5, rp.size());
 	}
+	private List<String> extractSVReads(boolean fused, List<SAMRecord> reads) throws IOException {
+		createInput(reads);
+		SAMEvidenceSource source = new SAMEvidenceSource(getCommandlineContext(), input, null, 0);
+		source.ensureExtracted(fused);
+		assertTrue(source.getSVFile().exists());
+		assertFalse(FileSystemContext.getWorkingFileFor(source.getSVFile(), "gridss.tmp.fused.").exists());
+		List<String> result = getRecords(source.getSVFile()).stream()
+				.map(r -> r.getSAMString())
+				.collect(Collectors.toList());
+		source.getSVFile().delete();
+		return result;
+	}
+	@Test
+	@Category(ExternalAlignerTests.class)
+	public void fused_preprocessing_should_match_staged_preprocessing() throws IOException {
+		List<SAMRecord> reads = new ArrayList<>();
+		reads.add(withSequence(S(RANDOM).substring(0, 100), Read(2, 1, "50M50S"))[0]);
+		reads.addAll(Arrays.asList(RP(0, 100, 200, 100)));
+		reads.addAll(Arrays.asList(DP(1, 1, "100M", true, 2, 5, "100M", true)));
+		reads.addAll(Arrays.asList(DP(1, 2, "100M", true, 2, 4, "100M", true)));
+		reads.addAll(Arrays.asList(OEA(1, 4, "100M", false)));
+		List<String> staged = extractSVReads(false, reads);
+		List<String> fused = extractSVReads(true, reads);
+		assertFalse(staged.isEmpty());
+		assertEquals(staged, fused);
+	}
 }
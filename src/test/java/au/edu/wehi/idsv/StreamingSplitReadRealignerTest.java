@@ -46,6 +46,10 @@ public class StreamingSplitReadRealignerTest extends SplitReadRealignerTest {
         @Override
         public void flush() throws IOException { }
 
+        public int getAlignmentRequestCount() {
+            return in;
+        }
+
         public boolean hasCompletedAlignmentRecord() {
             return in > out & out < alignments.length;
         }
@@ -85,6 +89,43 @@ public class StreamingSplitReadRealignerTest extends SplitReadRealignerTest {
         assertEquals(4, list.size());
     }
 
+    @Test
+    public void should_reuse_cached_realignment_of_identical_sequence() throws IOException {
+        SAMRecord r0 = withSequence("AACCGGTTAACCGGTTACGT", Read(0, 100, "10M10S"))[0];
+        r0.setReadName("r0");
+        SAMRecord r1 = withSequence("AACCGGTTAACCGGTTACGT", Read(0, 150, "10M10S"))[0];
+        r1.setReadName("r1");
+        SAMRecord realignment = withSequence("CCGGTTACGT", Read(1, 200, "10M"))[0];
+        createBAM(input, SAMFileHeader.SortOrder.coordinate, r0, r1);
+        // stub aligner can only perform a single alignment
+        StubStreamingAligner stub = new StubStreamingAligner(realignment);
+        StreamingSplitReadRealigner srr = new StreamingSplitReadRealigner(getContext(), stub, 10);
+        srr.createSupplementaryAlignments(input, output, output);
+        assertEquals(1, stub.getAlignmentRequestCount());
+        List<SAMRecord> list = getRecords(output);
+        assertEquals(4, list.size());
+        assertEquals(2, list.stream().filter(r -> r.getSupplementaryAlignmentFlag() && r.getReferenceIndex() == 1 && r.getAlignmentStart() == 200).count());
+    }
+
+    @Test
+    public void should_not_use_cache_if_disabled() throws IOException {
+        SAMRecord r0 = withSequence("AACCGGTTAACCGGTTACGT", Read(0, 100, "10M10S"))[0];
+        r0.setReadName("r0");
+        SAMRecord r1 = withSequence("AACCGGTTAACCGGTTACGT", Read(0, 150, "10M10S"))[0];
+        r1.setReadName("r1");
+        SAMRecord realignment0 = withSequence("CCGGTTACGT", Read(1, 200, "10M"))[0];
+        SAMRecord realignment1 = withSequence("CCGGTTACGT", Read(1, 200, "10M"))[0];
+        createBAM(input, SAMFileHeader.SortOrder.coordinate, r0, r1);
+        StubStreamingAligner stub = new StubStreamingAligner(realignment0, realignment1);
+        StreamingSplitReadRealigner srr = new StreamingSplitReadRealigner(getContext(), stub, 10);
+        srr.setRealignmentCacheSize(0);
+        srr.createSupplementaryAlignments(input, output, output);
+        assertEquals(2, stub.getAlignmentRequestCount());
+        List<SAMRecord> list = getRecords(output);
+        assertEquals(4, list.size());
+        assertEquals(2, list.stream().filter(r -> r.getSupplementaryAlignmentFlag() && r.getReferenceIndex() == 1 && r.getAlignmentStart() == 200).count());
+    }
+
     @Test
     @Category(ExternalAlignerTests.class)
     @Ignore("Working 2018-04-08. Currently need to manual check # restarts of external aligner to actually test this functionality. Needs a delayed return stub to test properly.")
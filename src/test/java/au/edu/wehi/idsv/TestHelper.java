@@ -1103,8 +1103,11 @@ public class TestHelper {
 			}
 		}
 	}
+	/**
+	 * Creates a path node of single base kmers so any sequence of kmers forms a valid path
+	 */
 	public static KmerPathNode KPN(long[] kmers, int start, int end, boolean reference, int[] weights) {
-		KmerPathNode pn = new KmerPathNode(kmers[0], start, end, reference, weights[0]);
+		KmerPathNode pn = new KmerPathNode(1, kmers[0], start, end, reference, weights[0]);
 		for (int i = 1; i < kmers.length; i++) {
 			pn.append(new ImmutableKmerNode(kmers[i], start + i, end + i, reference, weights[i]));
 		}
@@ -1128,7 +1131,7 @@ public class TestHelper {
 	}
 	public static KmerPathNode KPN(int k, String seq, int start, int end, boolean reference, int[] weight) {
 		PackedKmerList kmers = new PackedKmerList(k, B(seq), new byte[seq.length()], false, false);
-		KmerPathNode pn = new KmerPathNode(kmers.kmer(0), start, end, reference, weight[0]);
+		KmerPathNode pn = new KmerPathNode(k, kmers.kmer(0), start, end, reference, weight[0]);
 		for (int i = 1; i < kmers.length(); i++) {
 			pn.append(new ImmutableKmerNode(kmers.kmer(i), start + i, end + i, reference, weight[i]));
 		}
@@ -0,0 +1,80 @@
+package au.edu.wehi.idsv.alignment;
+
+import au.edu.wehi.idsv.TestHelper;
+import com.google.common.collect.ImmutableList;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.fastq.FastqRecord;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class BatchedStreamingAlignerTest extends TestHelper {
+    /**
+     * Returns an unmapped record for each input and fails any batch containing a read named "fail"
+     */
+    private class StubBatchAligner implements BatchAligner {
+        @Override
+        public List<SAMRecord> align(Collection<FastqRecord> input) {
+            List<SAMRecord> out = new ArrayList<>();
+            for (FastqRecord fq : input) {
+                if (fq.getReadName().equals("fail")) {
+                    throw new IllegalStateException("Stub alignment failure");
+                }
+                SAMRecord r = new SAMRecord(getHeader());
+                r.setReadName(fq.getReadName());
+                r.setReadUnmappedFlag(true);
+                out.add(r);
+            }
+            return out;
+        }
+        @Override
+        public void close() {
+        }
+    }
+    private static FastqRecord fq(String name) {
+        return new FastqRecord(name, "ACGTACGTAC", "", "ABCDEFGHIJ");
+    }
+    @Test
+    public void should_return_alignments_in_input_order() throws Exception {
+        BatchedStreamingAligner aligner = new BatchedStreamingAligner(ImmutableList.of(new StubBatchAligner(), new StubBatchAligner()), 20, "test");
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            aligner.asyncAlign(fq("r" + i));
+            expected.add("r" + i);
+        }
+        aligner.flush();
+        List<String> actual = new ArrayList<>();
+        while (aligner.processedAlignmentRecords() > 0) {
+            actual.add(aligner.getAlignment().getReadName());
+        }
+        assertEquals(expected, actual);
+        aligner.close();
+    }
+    @Test
+    public void should_propagate_batch_failure() throws Exception {
+        BatchedStreamingAligner aligner = new BatchedStreamingAligner(ImmutableList.of(new StubBatchAligner(), new StubBatchAligner()), 20, "test");
+        aligner.asyncAlign(fq("r1"));
+        aligner.asyncAlign(fq("r2"));
+        aligner.asyncAlign(fq("fail"));
+        aligner.asyncAlign(fq("r3"));
+        aligner.asyncAlign(fq("r4"));
+        try {
+            aligner.flush();
+            fail("Expected batch failure to be reported");
+        } catch (RuntimeException e) {
+            assertEquals(IllegalStateException.class, e.getCause().getClass());
+        }
+        assertEquals(0, aligner.outstandingAlignmentRecord());
+        try {
+            aligner.processedAlignmentRecords();
+            fail("Expected batch failure to be reported");
+        } catch (RuntimeException e) {
+            assertEquals(IllegalStateException.class, e.getCause().getClass());
+        }
+    }
+}
@@ -15,6 +15,7 @@ import org.junit.Test;
 import org.junit.experimental.categories.Category;
 
 import java.io.FileNotFoundException;
+import java.util.Random;
 
 import static org.junit.Assert.assertEquals;
 
@@ -221,4 +222,55 @@ public class BreakpointHomologyTest extends TestHelper {
 		assertEquals(10, bh.getLocalHomologyLength());
 		assertEquals(10, bh.getRemoteHomologyLength());
 	}
+	private static String randomBases(Random rng, int length) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < length; i++) {
+			sb.append("ACGT".charAt(rng.nextInt(4)));
+		}
+		return sb.toString();
+	}
+	/**
+	 * Copies the given sequence with random substitutions, insertions and deletions
+	 */
+	private static String mutate(Random rng, String seq) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < seq.length(); i++) {
+			int r = rng.nextInt(40);
+			if (r == 0) {
+				sb.append("ACGT".charAt(rng.nextInt(4)));
+			} else if (r == 1) {
+				sb.append(randomBases(rng, 1 + rng.nextInt(3)));
+				sb.append(seq.charAt(i));
+			} else if (r == 2) {
+				i += rng.nextInt(3);
+			} else {
+				sb.append(seq.charAt(i));
+			}
+		}
+		return sb.toString();
+	}
+	@Test
+	public void pruning_should_not_change_homology() {
+		Random rng = new Random(0);
+		for (int n = 0; n < 200; n++) {
+			String shared = randomBases(rng, 60);
+			InMemoryReferenceSequenceFile ref = new InMemoryReferenceSequenceFile(
+					new String[] { "0", "1", },
+					new byte[][] {
+							B(randomBases(rng, 50) + mutate(rng, shared) + randomBases(rng, 50)),
+							B(randomBases(rng, 50) + mutate(rng, shared) + randomBases(rng, 50)), });
+			for (int k = 0; k < 10; k++) {
+				BreakpointSummary bp = new BreakpointSummary(
+						0, rng.nextBoolean() ? FWD : BWD, 40 + rng.nextInt(80),
+						1, rng.nextBoolean() ? FWD : BWD, 40 + rng.nextInt(80));
+				String insertedSequence = rng.nextInt(3) == 0 ? randomBases(rng, 1 + rng.nextInt(5)) : "";
+				int maxBreakendLength = 5 + rng.nextInt(40);
+				int margin = rng.nextInt(10);
+				BreakpointHomology expected = BreakpointHomology.calculate(ref, bp, insertedSequence, maxBreakendLength, margin, false);
+				BreakpointHomology actual = BreakpointHomology.calculate(ref, bp, insertedSequence, maxBreakendLength, margin, true);
+				assertEquals(bp.toString(), expected.getLocalHomologyLength(), actual.getLocalHomologyLength());
+				assertEquals(bp.toString(), expected.getRemoteHomologyLength(), actual.getRemoteHomologyLength());
+			}
+		}
+	}
 }
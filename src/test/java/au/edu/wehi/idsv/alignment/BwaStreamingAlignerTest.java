@@ -2,11 +2,14 @@ package au.edu.wehi.idsv.alignment;
 
 import au.edu.wehi.idsv.TestHelper;
 import com.google.common.collect.ImmutableList;
+import htsjdk.samtools.SAMRecord;
 import htsjdk.samtools.fastq.FastqRecord;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.function.Supplier;
 
 import static org.junit.Assert.assertEquals;
@@ -79,4 +82,47 @@ public class BwaStreamingAlignerTest extends TestHelper {
         assertEquals(0, bwamem.outstandingAlignmentRecord());
         assertEquals(0, bwamem.processedAlignmentRecords());
     }
-}
\ No newline at end of file
+    @Test
+    @Category(JniAlignerTests.class)
+    public void should_return_alignments_in_input_order_when_batches_aligned_concurrently() throws IOException {
+        BwaStreamingAligner bwamem = new BwaStreamingAligner(SMALL_FA_FILE, SMALL_FA.getSequenceDictionary(), 1, 200, 4);
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            String seq = S(RANDOM).substring(i, i + 50 + i % 50);
+            bwamem.asyncAlign(new FastqRecord("r" + i, seq, "", S(getPolyA(seq.length()))));
+            expected.add("r" + i);
+        }
+        bwamem.flush();
+        List<String> actual = new ArrayList<>();
+        while (bwamem.processedAlignmentRecords() > 0) {
+            SAMRecord r = bwamem.getAlignment();
+            if (!r.isSecondaryOrSupplementary()) {
+                actual.add(r.getReadName());
+            }
+        }
+        assertEquals(expected, actual);
+        assertEquals(0, bwamem.outstandingAlignmentRecord());
+        bwamem.close();
+    }
+    @Test
+    public void adaptive_batch_size_should_follow_throughput() {
+        BwaStreamingAligner.AdaptiveBatchSize bs = new BwaStreamingAligner.AdaptiveBatchSize(100, 1000);
+        assertEquals(1000, bs.get());
+        bs.record(1000, 1000);
+        assertEquals(1000, bs.get());
+        // throughput drop reverses direction
+        bs.record(1000, 2000);
+        assertEquals(800, bs.get());
+        // improving throughput continues shrinking
+        bs.record(800, 1000);
+        assertEquals(640, bs.get());
+        // undersized batches are ignored
+        bs.record(10, 1000000);
+        assertEquals(640, bs.get());
+        // throughput drop reverses direction again and batch size is bounded
+        for (int i = 0; i < 100; i++) {
+            bs.record(bs.get(), (long)bs.get() * (200 - i));
+        }
+        assertEquals(1000, bs.get());
+    }
+}
@@ -1,15 +1,22 @@
 package au.edu.wehi.idsv.alignment;
 
+import com.google.common.collect.ImmutableList;
 import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMSequenceDictionary;
 import htsjdk.samtools.SamReaderFactory;
 import htsjdk.samtools.fastq.FastqRecord;
 import htsjdk.samtools.reference.IndexedFastaSequenceFile;
+import org.apache.commons.lang3.SystemUtils;
+import org.junit.Assume;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.List;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public class ExternalProcessStreamingAlignerTest {
 	@Test
@@ -48,4 +55,47 @@ public class ExternalProcessStreamingAlignerTest {
 		}
 		aligner.close();
 	}
+	/**
+	 * Stub aligner that reports every read as unaligned
+	 */
+	private static final List<String> UNALIGNED_STUB_COMMAND_LINE = ImmutableList.of("sh", "-c",
+			"echo '@HD\tVN:1.6'; while read -r n && read -r s && read -r p && read -r q; do echo \"${n#@}\t4\t*\t0\t0\t*\t*\t0\t0\t$s\t$q\"; done");
+	@Test
+	public void should_return_records_in_order_with_batched_writes() throws IOException {
+		Assume.assumeFalse(SystemUtils.IS_OS_WINDOWS);
+		for (int flushRecordCount : new int[] { 1, 7, 1024 }) {
+			ExternalProcessStreamingAligner aligner = new ExternalProcessStreamingAligner(SamReaderFactory.makeDefault(), UNALIGNED_STUB_COMMAND_LINE, new File("ref.fa"), 1, new SAMSequenceDictionary());
+			aligner.setFlushPolicy(flushRecordCount, 1);
+			aligner.setWriteQueueSize(16);
+			int COUNT = 100;
+			for (int i = 0; i < COUNT; i++) {
+				aligner.asyncAlign(new FastqRecord(Integer.toString(i), "ACGTN", "", "ABCD#"));
+			}
+			aligner.flush();
+			assertEquals(0, aligner.outstandingAlignmentRecord());
+			assertEquals(0, aligner.inFlightRecords());
+			for (int i = 0; i < COUNT; i++) {
+				SAMRecord alignment = aligner.getAlignment();
+				assertEquals(Integer.toString(i), alignment.getReadName());
+				assertEquals("ACGTN", alignment.getReadString());
+				assertEquals("ABCD#", alignment.getBaseQualityString());
+				assertTrue(alignment.getReadUnmappedFlag());
+			}
+			aligner.close();
+		}
+	}
+	@Test
+	public void should_flush_partial_batches_when_idle() throws IOException, InterruptedException {
+		Assume.assumeFalse(SystemUtils.IS_OS_WINDOWS);
+		ExternalProcessStreamingAligner aligner = new ExternalProcessStreamingAligner(SamReaderFactory.makeDefault(), UNALIGNED_STUB_COMMAND_LINE, new File("ref.fa"), 1, new SAMSequenceDictionary());
+		aligner.setFlushPolicy(1024, 1);
+		aligner.asyncAlign(new FastqRecord("r1", "ACGT", "", "ABCD"));
+		for (int i = 0; i < 10000 && aligner.processedAlignmentRecords() == 0; i++) {
+			Thread.sleep(1);
+		}
+		assertEquals(1, aligner.processedAlignmentRecords());
+		assertEquals(0, aligner.inFlightRecords());
+		assertEquals("r1", aligner.getAlignment().getReadName());
+		aligner.close();
+	}
 }
@@ -0,0 +1,64 @@
+package au.edu.wehi.idsv.alignment;
+
+import au.edu.wehi.idsv.TestHelper;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.fastq.FastqRecord;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class Minimap2StreamingAlignerTest extends TestHelper {
+    @Test
+    @Category(JniAlignerTests.class)
+    public void should_align_reads() throws IOException {
+        Minimap2StreamingAligner mm2 = new Minimap2StreamingAligner(SMALL_FA_FILE, SMALL_FA, 2, 1000);
+        String seq = S(RANDOM).substring(1000, 1300);
+        mm2.asyncAlign(new FastqRecord("noHit", "NNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNN", "", "NNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNN"));
+        mm2.asyncAlign(new FastqRecord("random", seq, "", S(getPolyA(seq.length()))));
+        mm2.flush();
+        SAMRecord noHit = mm2.getAlignment();
+        assertEquals("noHit", noHit.getReadName());
+        assertTrue(noHit.getReadUnmappedFlag());
+        List<SAMRecord> hits = new ArrayList<>();
+        while (mm2.processedAlignmentRecords() > 0) {
+            hits.add(mm2.getAlignment());
+        }
+        assertTrue(hits.stream().allMatch(r -> r.getReadName().equals("random")));
+        SAMRecord primary = hits.get(0);
+        assertFalse(primary.getReadUnmappedFlag());
+        assertFalse(primary.isSecondaryOrSupplementary());
+        assertEquals(seq, primary.getReadString());
+        assertEquals("300M", primary.getCigarString());
+        assertEquals("300", primary.getStringAttribute("MD"));
+        assertEquals(0, (int)primary.getIntegerAttribute("NM"));
+        assertEquals(300, (int)primary.getIntegerAttribute("AS"));
+        // sequence is also present in the homology contig
+        assertEquals(300, (int)primary.getIntegerAttribute("XS"));
+        mm2.close();
+    }
+    @Test
+    @Category(JniAlignerTests.class)
+    public void should_return_alignments_in_input_order() throws IOException {
+        Minimap2StreamingAligner mm2 = new Minimap2StreamingAligner(SMALL_FA_FILE, SMALL_FA, 4, 500);
+        for (int i = 0; i < 100; i++) {
+            String seq = S(RANDOM).substring(10 * i, 10 * i + 100);
+            mm2.asyncAlign(new FastqRecord(Integer.toString(i), seq, "", S(getPolyA(seq.length()))));
+        }
+        mm2.flush();
+        int last = -1;
+        while (mm2.processedAlignmentRecords() > 0) {
+            int i = Integer.parseInt(mm2.getAlignment().getReadName());
+            assertTrue(i >= last);
+            last = i;
+        }
+        assertEquals(99, last);
+        mm2.close();
+    }
+}
@@ -0,0 +1,103 @@
+package au.edu.wehi.idsv.alignment;
+
+import htsjdk.samtools.Cigar;
+import htsjdk.samtools.CigarElement;
+import htsjdk.samtools.TextCigarCodec;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class StripedSmithWatermanAlignerTest extends SmithWatermanAlignerTest {
+    @Override
+    protected Aligner create(int match, int mismatch, int ambiguous, int gapOpen, int gapExtend) {
+        return new StripedSmithWatermanAligner(match, mismatch, ambiguous, gapOpen, gapExtend);
+    }
+    private static int score(byte[] seq, byte[] ref, Alignment alignment, int match, int mismatch, int ambiguous, int gapOpen, int gapExtend) {
+        Cigar cigar = TextCigarCodec.decode(alignment.getCigar());
+        int seqOffset = 0;
+        int refOffset = alignment.getStartPosition();
+        int score = 0;
+        for (CigarElement ce : cigar) {
+            switch (ce.getOperator()) {
+                case S:
+                    seqOffset += ce.getLength();
+                    break;
+                case M:
+                    for (int i = 0; i < ce.getLength(); i++) {
+                        byte s = seq[seqOffset++];
+                        byte r = ref[refOffset++];
+                        score += s == r ? match : (s == 'N' || r == 'N' ? ambiguous : mismatch);
+                    }
+                    break;
+                case I:
+                    score -= gapOpen + (ce.getLength() - 1) * gapExtend;
+                    seqOffset += ce.getLength();
+                    break;
+                case D:
+                    score -= gapOpen + (ce.getLength() - 1) * gapExtend;
+                    refOffset += ce.getLength();
+                    break;
+                default:
+                    throw new IllegalArgumentException();
+            }
+        }
+        assertEquals(seq.length, seqOffset);
+        return score;
+    }
+    @Test
+    public void should_match_jaligner_alignment_score() {
+        Random rng = new Random(0);
+        for (int[] p : new int[][] { { 1, -4, -4, 6, 1 }, { 2, -6, -1, 5, 3 } }) {
+            Aligner expected = new JAlignerAligner(p[0], p[1], p[2], p[3], p[4]);
+            Aligner aligner = create(p[0], p[1], p[2], p[3], p[4]);
+            for (int n = 0; n < 500; n++) {
+                byte[] ref = new byte[1 + rng.nextInt(200)];
+                for (int i = 0; i < ref.length; i++) {
+                    ref[i] = (byte)"ACGT".charAt(rng.nextInt(rng.nextInt(4) + 1));
+                }
+                int start = rng.nextInt(ref.length);
+                byte[] seq = new byte[1 + rng.nextInt(100)];
+                for (int i = 0; i < seq.length; i++) {
+                    seq[i] = start + i < ref.length && rng.nextInt(10) > 0 ? ref[start + i] : (byte)"ACGTN".charAt(rng.nextInt(5));
+                }
+                Alignment a = aligner.align_smith_waterman(seq, ref);
+                Alignment e = expected.align_smith_waterman(seq, ref);
+                int expectedScore = score(seq, ref, e, p[0], p[1], p[2], p[3], p[4]);
+                if (expectedScore > 0) {
+                    assertEquals(expectedScore, score(seq, ref, a, p[0], p[1], p[2], p[3], p[4]));
+                }
+            }
+        }
+    }
+    @Test
+    public void should_soft_clip_entire_sequence_if_no_alignment() {
+        Alignment a = create().align_smith_waterman(B("AAAA"), B("CCCC"));
+        assertEquals("4S", a.getCigar());
+    }
+    @Test
+    public void should_align_insertion_spanning_stripe_segments() {
+        // 79bp sequence is striped into 10 segments so the insertion spans lanes
+        Alignment a = create().align_smith_waterman(
+                B("ACGTTGCAAGCTAGCTAGGATCCATGCAGCATCGAACG" + "TTTTT" + "GGACTAGGCATCGATCGGATCGATCGTAGCTAGCAC"),
+                B("ACGTTGCAAGCTAGCTAGGATCCATGCAGCATCGAACG" + "GGACTAGGCATCGATCGGATCGATCGTAGCTAGCAC"));
+        assertEquals("38M5I36M", a.getCigar());
+        assertEquals(0, a.getStartPosition());
+    }
+    @Test
+    public void should_align_sequences_exceeding_cached_traceback_size() {
+        Random rng = new Random(0);
+        int length = (int)Math.sqrt(StripedSmithWatermanAligner.MAX_CACHED_TRACE_CELLS) + 100;
+        byte[] seq = new byte[length];
+        for (int i = 0; i < length; i++) {
+            seq[i] = (byte)"ACGT".charAt(rng.nextInt(4));
+        }
+        Aligner aligner = create();
+        Alignment a = aligner.align_smith_waterman(seq, seq);
+        assertEquals(length + "M", a.getCigar());
+        a = aligner.align_smith_waterman(B("ACGTTGCAAGCTAGCTAGGATCC"), B("TTACGTTGCAAGCTAGCTAGGATCC"));
+        assertEquals("23M", a.getCigar());
+        assertEquals(2, a.getStartPosition());
+    }
+}
@@ -2,6 +2,7 @@ package au.edu.wehi.idsv.debruijn;
 
 import au.edu.wehi.idsv.DirectedEvidence;
 import au.edu.wehi.idsv.TestHelper;
+import com.google.common.collect.ImmutableList;
 import htsjdk.samtools.SAMRecord;
 import htsjdk.samtools.util.SequenceUtil;
 import org.junit.Assert;
@@ -196,4 +197,44 @@ public class ReadErrorCorrectorTest extends TestHelper {
             Assert.assertEquals("AAAAAAAAAAAAAAAAAAAAAAAAA", reads.get(0).getReadString());
         }
     }
+    @Test
+    public void should_only_correct_against_evidence_currently_counted() {
+        MockSAMEvidenceSource ses = SES();
+        ReadErrorCorrector rec = new ReadErrorCorrector(21, 5, 100, false);
+        List<DirectedEvidence> support = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            support.add(SCE(FWD, ses, withName("seq" + i, withSequence(B(SEQ), Read(2, 1, "50M50S")))[0]));
+        }
+        SAMRecord r = withSequence(B("T" + SEQ.substring(1)), Read(2, 1, "50M50S"))[0];
+        DirectedEvidence e = SCE(FWD, ses, r);
+        support.forEach(rec::add);
+        support.forEach(rec::remove);
+        rec.add(e);
+        rec.add(e);
+        Assert.assertEquals(0, rec.errorCorrect());
+        Assert.assertEquals("T" + SEQ.substring(1), r.getReadString());
+        support.forEach(rec::add);
+        Assert.assertEquals(1, rec.errorCorrect());
+        Assert.assertEquals(SEQ, r.getReadString());
+    }
+    @Test
+    public void should_only_correct_given_evidence_against_counted_kmers() {
+        MockSAMEvidenceSource ses = SES();
+        ReadErrorCorrector rec = new ReadErrorCorrector(21, 5, 100, false);
+        List<DirectedEvidence> support = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            support.add(SCE(FWD, ses, withName("seq" + i, withSequence(B(SEQ), Read(2, 1, "50M50S")))[0]));
+        }
+        SAMRecord counted = withName("counted", withSequence(B("T" + SEQ.substring(1)), Read(2, 1, "50M50S")))[0];
+        SAMRecord r = withName("r", withSequence(B("T" + SEQ.substring(1)), Read(2, 1, "50M50S")))[0];
+        support.forEach(rec::add);
+        rec.add(SCE(FWD, ses, counted));
+        Assert.assertEquals(1, rec.errorCorrect(ImmutableList.of(SCE(FWD, ses, r)), 5));
+        Assert.assertEquals(SEQ, r.getReadString());
+        Assert.assertEquals("T" + SEQ.substring(1), counted.getReadString());
+        // evidence only counted for the duration of the correction
+        support.forEach(rec::remove);
+        Assert.assertEquals(0, rec.errorCorrect());
+        Assert.assertEquals("T" + SEQ.substring(1), counted.getReadString());
+    }
 }
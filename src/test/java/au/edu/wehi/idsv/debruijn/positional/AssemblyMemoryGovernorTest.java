@@ -0,0 +1,48 @@
+package au.edu.wehi.idsv.debruijn.positional;
+
+import au.edu.wehi.idsv.TestHelper;
+import au.edu.wehi.idsv.debruijn.positional.AssemblyMemoryGovernor.Pressure;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class AssemblyMemoryGovernorTest extends TestHelper {
+	@Test
+	public void should_track_total_bytes_across_accounts() {
+		AssemblyMemoryGovernor governor = new AssemblyMemoryGovernor(1000, 0.5f);
+		AssemblyMemoryGovernor.Account a1 = governor.openAccount();
+		AssemblyMemoryGovernor.Account a2 = governor.openAccount();
+		a1.update(100);
+		a2.update(200);
+		a1.update(50);
+		assertEquals(250, governor.getAllocated());
+		a2.close();
+		assertEquals(50, governor.getAllocated());
+		a2.close();
+		assertEquals(50, governor.getAllocated());
+	}
+	@Test
+	public void should_flush_when_approaching_budget() {
+		AssemblyMemoryGovernor governor = new AssemblyMemoryGovernor(1000, 0.5f);
+		AssemblyMemoryGovernor.Account a = governor.openAccount();
+		assertEquals(Pressure.NONE, a.update(500));
+		assertEquals(Pressure.FLUSH, a.update(501));
+		assertEquals(Pressure.FLUSH, a.update(1000));
+		assertEquals(Pressure.DOWNSAMPLE, a.update(1001));
+		assertEquals(Pressure.NONE, a.update(0));
+	}
+	@Test
+	public void should_only_downsample_accounts_holding_more_than_their_share() {
+		AssemblyMemoryGovernor governor = new AssemblyMemoryGovernor(1000, 0.5f);
+		AssemblyMemoryGovernor.Account small = governor.openAccount();
+		AssemblyMemoryGovernor.Account large = governor.openAccount();
+		assertEquals(Pressure.NONE, small.update(100));
+		assertEquals(Pressure.DOWNSAMPLE, large.update(1000));
+		assertEquals(Pressure.FLUSH, small.update(101));
+	}
+	@Test
+	public void should_not_limit_without_budget() {
+		AssemblyMemoryGovernor governor = new AssemblyMemoryGovernor(0, 0.5f);
+		assertEquals(Pressure.NONE, governor.openAccount().update(Long.MAX_VALUE / 2));
+	}
+}
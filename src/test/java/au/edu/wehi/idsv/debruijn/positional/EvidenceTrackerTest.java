@@ -2,6 +2,7 @@ package au.edu.wehi.idsv.debruijn.positional;
 
 import au.edu.wehi.idsv.NonReferenceReadPair;
 import au.edu.wehi.idsv.TestHelper;
+import au.edu.wehi.idsv.debruijn.KmerEncodingHelper;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import htsjdk.samtools.SAMRecord;
@@ -56,11 +57,11 @@ public class EvidenceTrackerTest extends TestHelper {
 		List<KmerSupportNode> list = new ArrayList<KmerSupportNode>();
 		list.add(e.node(0));
 		EvidenceTracker tracker = new EvidenceTracker();
-		assertFalse(tracker.isTracked(e.evidence().getEvidenceID()));
+		assertFalse(tracker.isTracked(e.evidence().getEvidenceIdentifier()));
 		tracker.track(list.get(0));
-		assertTrue(tracker.isTracked(e.evidence().getEvidenceID()));
+		assertTrue(tracker.isTracked(e.evidence().getEvidenceIdentifier()));
 		tracker.remove(Collections.singleton(e));
-		assertFalse(tracker.isTracked(e.evidence().getEvidenceID()));
+		assertFalse(tracker.isTracked(e.evidence().getEvidenceIdentifier()));
 	}
 	@Test
 	public void should_remove_efficiently_in_degenerate_sequence() {
@@ -90,11 +91,11 @@ public class EvidenceTrackerTest extends TestHelper {
 				.flatMap(ev -> IntStream.range(0, ev.length()).mapToObj(i -> ev.node(i)))
 				.forEach(ksn -> tracker.track(ksn));
 		assertEquals(2, tracker.getTrackedEvidence().size());
-		assertTrue(tracker.isTracked(nrrp.getEvidenceID()));
+		assertTrue(tracker.isTracked(nrrp.getEvidenceIdentifier()));
 		tracker.sanityCheck();
 		tracker.remove(Collections.singleton(e));
 		assertEquals(0, tracker.getTrackedEvidence().size());
-		assertFalse(tracker.isTracked(nrrp.getEvidenceID()));
+		assertFalse(tracker.isTracked(nrrp.getEvidenceIdentifier()));
 		tracker.sanityCheck();
 	}
 	@Test
@@ -146,4 +147,26 @@ public class EvidenceTrackerTest extends TestHelper {
 				.forEach(ksn -> tracker.track(ksn));
 		tracker.remove(ImmutableSet.of(e, e2));
 	}
+	@Test
+	public void should_reuse_handles_after_removal() {
+		int k = 4;
+		EvidenceTracker tracker = new EvidenceTracker();
+		for (int i = 0; i < 16; i++) {
+			KmerEvidence e = KmerEvidence.create(k, SCE(FWD, withReadName("read" + i, Read(0, 1, "6M1S"))));
+			for (int j = 0; j < e.length(); j++) {
+				tracker.track(e.node(j));
+			}
+			// tracking the same node again has no effect
+			tracker.track(e.node(0));
+			assertEquals(e.length(), tracker.tracking_supportNodeCount());
+			tracker.sanityCheck();
+			Set<KmerEvidence> result = tracker.untrack(ImmutableList.of(new KmerPathSubnode(KPN(k, KmerEncodingHelper.toString(k, e.kmer(0)), e.startPosition(), e.endPosition(), true))));
+			assertEquals(ImmutableSet.of(e), result);
+			assertEquals(0, tracker.tracking_supportNodeCount());
+			assertEquals(0, tracker.tracking_kmerCount());
+			assertEquals(0, tracker.tracking_evidenceActive());
+			assertEquals(i + 1, tracker.tracking_evidenceTotal());
+			tracker.sanityCheck();
+		}
+	}
 }
@@ -1,6 +1,7 @@
 package au.edu.wehi.idsv.debruijn.positional;
 
 import au.edu.wehi.idsv.TestHelper;
+import au.edu.wehi.idsv.debruijn.PackedKmerList;
 import com.google.common.collect.ImmutableList;
 import org.junit.Test;
 
@@ -14,7 +15,7 @@ import static org.junit.Assert.*;
 public class KmerPathNodeTest extends TestHelper {
 	@Test
 	public void Constructor_should_copy_KmerNode() {
-		KmerPathNode pn = new KmerPathNode(new ImmutableKmerNode(0, 2, 3, true, 1));
+		KmerPathNode pn = new KmerPathNode(1, new ImmutableKmerNode(0, 2, 3, true, 1));
 		assertEquals(2, pn.lastStart());
 		assertEquals(3, pn.lastEnd());
 		assertEquals(0, pn.lastKmer());
@@ -28,7 +29,7 @@ public class KmerPathNodeTest extends TestHelper {
 		ImmutableKmerNode n2 = new ImmutableKmerNode(1, 2, 3, false, 3);
 		ImmutableKmerNode n3 = new ImmutableKmerNode(2, 3, 4, false, 4);
 		
-		KmerPathNode pn = new KmerPathNode(n1);
+		KmerPathNode pn = new KmerPathNode(1, n1);
 		pn.append(n2);
 		pn.append(n3);
 		assertEquals(2+3+4, pn.weight());
@@ -59,13 +60,13 @@ public class KmerPathNodeTest extends TestHelper {
 		ImmutableKmerNode n4 = new ImmutableKmerNode(3, 4, 5, false, 6);
 		ImmutableKmerNode n5 = new ImmutableKmerNode(0, 1, 10, false, 2);
 		
-		KmerPathNode pn0 = new KmerPathNode(n0);
-		KmerPathNode pn0a = new KmerPathNode(new ImmutableKmerNode(4, -1, 2, false, 1));
-		KmerPathNode pn5 = new KmerPathNode(n5);
+		KmerPathNode pn0 = new KmerPathNode(1, n0);
+		KmerPathNode pn0a = new KmerPathNode(1, new ImmutableKmerNode(3, -1, 2, false, 1));
+		KmerPathNode pn5 = new KmerPathNode(1, n5);
 		
-		KmerPathNode pn1 = new KmerPathNode(n1);
+		KmerPathNode pn1 = new KmerPathNode(1, n1);
 		pn1.append(n2);
-		KmerPathNode pn2 = new KmerPathNode(n3);
+		KmerPathNode pn2 = new KmerPathNode(1, n3);
 		pn2.append(n4);
 		KmerPathNode.addEdge(pn0a, pn1);
 		KmerPathNode.addEdge(pn0, pn1);
@@ -99,9 +100,9 @@ public class KmerPathNodeTest extends TestHelper {
 	}
 	@Test
 	public void prepend_should_relink_earlier_nodes() {
-		KmerPathNode pn1 = new KmerPathNode(0, 1, 1, true, 1);
-		KmerPathNode pn2 = new KmerPathNode(0, 2, 2, true, 1);
-		KmerPathNode pn3 = new KmerPathNode(0, 3, 3, true, 1);
+		KmerPathNode pn1 = new KmerPathNode(1, 0, 1, 1, true, 1);
+		KmerPathNode pn2 = new KmerPathNode(1, 0, 2, 2, true, 1);
+		KmerPathNode pn3 = new KmerPathNode(1, 0, 3, 3, true, 1);
 		KmerPathNode.addEdge(pn1, pn2);
 		KmerPathNode.addEdge(pn2, pn3);
 		pn3.prepend(pn2);
@@ -143,7 +144,7 @@ public class KmerPathNodeTest extends TestHelper {
 		assertFalse(KPN(new long[] { 0, 1, 2, 3 }, 3, 4, true, new int[] { 1, 2, 3, 4 }).canCoaleseBeforeAdjacent(
 				    KPN(new long[] { 0, 1, 2, 3 }, 5, 10, true, new int[] { 1, 2, 3, 4 })));
 		assertFalse(KPN(new long[] { 0, 1, 2, 3 }, 5, 10, true, new int[] { 1, 2, 3, 4 }).canCoaleseBeforeAdjacent(
-				    KPN(new long[] { 0, 1, 2, 3, 4 }, 3, 4, true, new int[] { 1, 2, 3, 4, 5 })));
+				    KPN(new long[] { 0, 1, 2, 3, 0 }, 3, 4, true, new int[] { 1, 2, 3, 4, 5 })));
 		assertFalse(KPN(new long[] { 0, 1, 2, 3 }, 5, 10, true, new int[] { 4, 3, 2, 1 }).canCoaleseBeforeAdjacent(
 				    KPN(new long[] { 0, 1, 2, 3 }, 3, 4, true, new int[] { 1, 2, 3, 4 })));
 	}
@@ -160,7 +161,7 @@ public class KmerPathNodeTest extends TestHelper {
 		KmerPathNode.addEdge(sharedPrev, pn2);
 		KmerPathNode pre2 = KPN(new long[] { 2 }, 2, 2, true, new int[] { 1 });
 		KmerPathNode.addEdge(pre2, pn2);
-		KmerPathNode sharedNext = KPN(new long[] { 4 }, 0, 20, true, new int[] { 1 });
+		KmerPathNode sharedNext = KPN(new long[] { 0 }, 0, 20, true, new int[] { 1 });
 		KmerPathNode.addEdge(pn1, sharedNext);
 		KmerPathNode.addEdge(pn2, sharedNext);
 		
@@ -178,16 +179,16 @@ public class KmerPathNodeTest extends TestHelper {
 	@Test
 	public void next_should_sort_by_first_kmer_start() {
 		KmerPathNode pn1 = KPN(new long[] { 0 }, 1, 100, true, new int[] { 1 });
-		KmerPathNode.addEdge(pn1, KPN(new long[] { 0, 1, 2, 3, 4, 5, 6, 7 }, 3, 3, true));
-		KmerPathNode.addEdge(pn1, KPN(new long[] { 0, 1, 3, 4 }, 2, 2, true));
+		KmerPathNode.addEdge(pn1, KPN(new long[] { 0, 1, 2, 3, 0, 1, 2, 3 }, 3, 3, true));
+		KmerPathNode.addEdge(pn1, KPN(new long[] { 0, 1, 3, 0 }, 2, 2, true));
 		assertEquals(2, pn1.next().get(0).startPosition(0));
 		assertEquals(3, pn1.next().get(1).startPosition(0));
 	}
 	@Test
 	public void prev_should_sort_by_last_kmer_start() {
 		KmerPathNode pn1 = KPN(new long[] { 0 }, 1, 100, true, new int[] { 1 });
-		KmerPathNode.addEdge(KPN(new long[] { 0, 1, 2, 3, 4, 5, 6, 7 }, 1, 1, true), pn1);
-		KmerPathNode.addEdge(KPN(new long[] { 0, 1, 3, 4 }, 2, 2, true), pn1);
+		KmerPathNode.addEdge(KPN(new long[] { 0, 1, 2, 3, 0, 1, 2, 3 }, 1, 1, true), pn1);
+		KmerPathNode.addEdge(KPN(new long[] { 0, 1, 3, 0 }, 2, 2, true), pn1);
 		assertEquals(5, pn1.prev().get(0).lastStart());
 		assertEquals(8, pn1.prev().get(1).lastStart());
 	}
@@ -197,7 +198,7 @@ public class KmerPathNodeTest extends TestHelper {
 		ImmutableKmerNode n2 = new ImmutableKmerNode(1, 3, 3, false, 2);
 		ImmutableKmerNode n3 = new ImmutableKmerNode(2, 4, 4, false, 3);
 		
-		KmerPathNode pn = new KmerPathNode(n1);
+		KmerPathNode pn = new KmerPathNode(1, n1);
 		pn.append(n2);
 		pn.append(n3);
 		assertEquals(pn.startPosition(2), pn.lastStart());
@@ -205,16 +206,40 @@ public class KmerPathNodeTest extends TestHelper {
 		assertEquals(pn.kmer(2), pn.lastKmer());
 	}
 	@Test
+	public void should_derive_kmers_from_packed_sequence() {
+		for (int k : new int[] { 1, 4, 25, 31, 32 }) {
+			String seq = S(RANDOM).substring(0, 100);
+			PackedKmerList kmers = new PackedKmerList(k, B(seq), new byte[seq.length()], false, false);
+			KmerPathNode pn = KPN(k, seq, 1, 10, true);
+			assertEquals(kmers.length(), pn.length());
+			for (int i = 0; i < pn.length(); i++) {
+				assertEquals(kmers.kmer(i), pn.kmer(i));
+			}
+			KmerPathNode split = pn.splitAtLength(37);
+			for (int i = 0; i < split.length(); i++) {
+				assertEquals(kmers.kmer(i), split.kmer(i));
+			}
+			for (int i = 0; i < pn.length(); i++) {
+				assertEquals(kmers.kmer(split.length() + i), pn.kmer(i));
+			}
+			pn.prepend(split);
+			for (int i = 0; i < pn.length(); i++) {
+				assertEquals(kmers.kmer(i), pn.kmer(i));
+			}
+			assertEquals(KPN(k, seq, 1, 10, true), pn);
+		}
+	}
+	@Test
 	public void splitAtLength_should_break_after_nth_kmer() {
-		KmerPathNode pn = KPN(new long[] { 0, 1, 2, 3, 4 }, 1, 10, true, new int[] { 1, 2, 3, 4, 5 });
-		KmerPathNode.addEdge(KPN(new long[] { 0, 1, 2, 3, 4, 5, 6, 7 }, 1, 1, true), pn);
-		KmerPathNode.addEdge(KPN(new long[] { 0, 1, 2, 3, 4, 5, 6, 7 }, 2, 2, true), pn);
-		KmerPathNode.addEdge(pn, KPN(new long[] { 0, 1, 2, 3, 4, 5, 6, 7 }, 6, 6, false));
-		KmerPathNode.addEdge(pn, KPN(new long[] { 0, 1, 2, 3, 4, 5, 6, 7 }, 7, 7, false));
+		KmerPathNode pn = KPN(new long[] { 0, 1, 2, 3, 0 }, 1, 10, true, new int[] { 1, 2, 3, 4, 5 });
+		KmerPathNode.addEdge(KPN(new long[] { 0, 1, 2, 3, 0, 1, 2, 3 }, 1, 1, true), pn);
+		KmerPathNode.addEdge(KPN(new long[] { 0, 1, 2, 3, 0, 1, 2, 3 }, 2, 2, true), pn);
+		KmerPathNode.addEdge(pn, KPN(new long[] { 0, 1, 2, 3, 0, 1, 2, 3 }, 6, 6, false));
+		KmerPathNode.addEdge(pn, KPN(new long[] { 0, 1, 2, 3, 0, 1, 2, 3 }, 7, 7, false));
 		KmerPathNode split = pn.splitAtLength(3);
 		
 		assertIs(split, new long[] { 0, 1, 2 }, 1, 10, true, new int[] { 1, 2, 3 });
-		assertIs(pn, new long[] { 3, 4 }, 4, 13, true, new int[] { 4, 5 });
+		assertIs(pn, new long[] { 3, 0 }, 4, 13, true, new int[] { 4, 5 });
 		
 		assertEquals(1, pn.prev().size());
 		assertEquals(1, split.next().size());
@@ -225,21 +250,21 @@ public class KmerPathNodeTest extends TestHelper {
 	}
 	@Test
 	public void splitAtStartPosition_should_split_so_first_kmer_starts_at_given_position() {
-		KmerPathNode pn = KPN(new long[] { 0, 1, 2, 3, 4 }, 1, 10, true, new int[] { 1, 2, 3, 4, 5 });
+		KmerPathNode pn = KPN(new long[] { 0, 1, 2, 3, 0 }, 1, 10, true, new int[] { 1, 2, 3, 4, 5 });
 		// prev: 
 		KmerPathNode.addEdge(KPN(new long[] { 0, 1 }, -5, 1, true), pn); // split only
 		KmerPathNode.addEdge(KPN(new long[] { 1, 1 }, 1, 1, true), pn); // split only
 		KmerPathNode.addEdge(KPN(new long[] { 2, 1 }, 2, 2, true), pn); // pn only
 		KmerPathNode.addEdge(KPN(new long[] { 3, 1 }, -100, 100, false), pn); // both
 		// next
-		KmerPathNode.addEdge(pn, KPN(new long[] { 0, 1, 2, 3, 4, 5, 6, 7 }, 6, 6, false)); // split only
-		KmerPathNode.addEdge(pn, KPN(new long[] { 1, 1, 2, 3, 4, 5, 6, 7 }, 8, 8, false)); // split only
-		KmerPathNode.addEdge(pn, KPN(new long[] { 2, 1, 2, 3, 4, 5, 6, 7 }, 8, 9, false)); // both
-		KmerPathNode.addEdge(pn, KPN(new long[] { 3, 1, 2, 3, 4, 5, 6, 7 }, 9, 9, false)); // pn only
+		KmerPathNode.addEdge(pn, KPN(new long[] { 0, 1, 2, 3, 0, 1, 2, 3 }, 6, 6, false)); // split only
+		KmerPathNode.addEdge(pn, KPN(new long[] { 1, 1, 2, 3, 0, 1, 2, 3 }, 8, 8, false)); // split only
+		KmerPathNode.addEdge(pn, KPN(new long[] { 2, 1, 2, 3, 0, 1, 2, 3 }, 8, 9, false)); // both
+		KmerPathNode.addEdge(pn, KPN(new long[] { 3, 1, 2, 3, 0, 1, 2, 3 }, 9, 9, false)); // pn only
 		KmerPathNode split = pn.splitAtStartPosition(4);
 		
-		assertIs(split, new long[] { 0, 1, 2, 3, 4 }, 1, 3, true, new int[] { 1, 2, 3, 4, 5 });
-		assertIs(pn, new long[] { 0, 1, 2, 3, 4 }, 4, 10, true, new int[] { 1, 2, 3, 4, 5 });
+		assertIs(split, new long[] { 0, 1, 2, 3, 0 }, 1, 3, true, new int[] { 1, 2, 3, 4, 5 });
+		assertIs(pn, new long[] { 0, 1, 2, 3, 0 }, 4, 10, true, new int[] { 1, 2, 3, 4, 5 });
 		
 		assertEquals(2, pn.next().size());
 		assertEquals(3, split.next().size());
@@ -413,4 +438,11 @@ public class KmerPathNodeTest extends TestHelper {
 		assertEquals(new KmerPathSubnode(n, 6, 6), result.get(4));
 		assertEquals(new KmerPathSubnode(n, 7, 10), result.get(5));
 	}
+	@Test
+	public void baseCalls_should_match_path_kmers() {
+		KmerPathNode pn1 = KPN(4, "ACGTTGCA", 1, 5, false);
+		KmerPathNode pn2 = KPN(4, "GCATTA", 6, 10, false);
+		assertEquals("ACGTTGCA", S(pn1.baseCalls()));
+		assertEquals("ACGTTGCATTA", S(KmerPathNode.baseCalls(ImmutableList.of(pn1, pn2))));
+	}
 }
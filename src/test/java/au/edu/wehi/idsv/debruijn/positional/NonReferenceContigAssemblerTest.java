@@ -363,6 +363,19 @@ public class NonReferenceContigAssemblerTest extends TestHelper {
 		output = go(pc, e.toArray(new DirectedEvidence[0]));
 		assertEquals(2 * 100, output.size());
 	}
+	@Test(expected=AssemblyThresholdReachedException.class)
+	public void should_downsample_when_memory_budget_exceeded() {
+		ProcessingContext pc = getContext();
+		MockSAMEvidenceSource ses = SES(10, 10);
+		pc.getAssemblyParameters().k = 4;
+		pc.getAssemblyParameters().maxExpectedBreakendLengthMultiple = 1;
+		pc.getAssemblyParameters().positional.memoryBudgetHeapPortion = 1e-7f;
+		List<DirectedEvidence> e = new ArrayList<>();
+		for (int i = 1; i < 101; i++) {
+			e.add(SCE(FWD, ses, withReadName(String.format("%d-%d", i, 0), withSequence("AAAATTGG", Read(0, i, "4M4S")))[0]));
+		}
+		go(pc, e.toArray(new DirectedEvidence[0]));
+	}
 	@Test
 	public void should_remove_misassembled_partial_paths() {
 		ProcessingContext pc = getContext();
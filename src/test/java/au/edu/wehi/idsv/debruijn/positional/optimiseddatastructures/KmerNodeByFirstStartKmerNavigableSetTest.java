@@ -0,0 +1,63 @@
+package au.edu.wehi.idsv.debruijn.positional.optimiseddatastructures;
+
+import au.edu.wehi.idsv.TestHelper;
+import au.edu.wehi.idsv.debruijn.positional.KmerNodeUtil;
+import au.edu.wehi.idsv.debruijn.positional.KmerPathNode;
+import com.google.common.collect.Lists;
+import org.junit.Test;
+
+import java.util.NavigableSet;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+
+public class KmerNodeByFirstStartKmerNavigableSetTest extends TestHelper {
+    @Test
+    public void should_match_navigable_set() {
+        int k = 4;
+        Random r = new Random(0);
+        KmerPathNode[] list = new KmerPathNode[64];
+        for (int i = 0; i < list.length; i++) {
+            int start = r.nextInt(200);
+            list[i] = KPN(k, S(RANDOM).substring(i, i + k), start, start + r.nextInt(10), false);
+        }
+        NavigableSet<KmerPathNode> ns = new TreeSet<>(KmerNodeUtil.ByFirstStartKmer);
+        KmerNodeByFirstStartKmerNavigableSet<KmerPathNode> set = new KmerNodeByFirstStartKmerNavigableSet<>(4);
+        for (int i = 0 ; i < 4096; i++) {
+            KmerPathNode kpn = list[r.nextInt(list.length)];
+            assertEquals(ns.contains(kpn), set.contains(kpn));
+            if (r.nextInt(5) < 2) {
+                assertEquals(ns.remove(kpn), set.remove(kpn));
+            } else {
+                assertEquals(ns.add(kpn), set.add(kpn));
+            }
+            assertEquals(ns.size(), set.size());
+            assertEquals(ns.contains(kpn), set.contains(kpn));
+            if (!ns.isEmpty()) {
+                assertEquals(ns.first(), set.first());
+            }
+            if (i % 64 == 0) {
+                assertEquals(Lists.newArrayList(ns), Lists.newArrayList(set.iterator()));
+                assertEquals(Lists.newArrayList(ns.descendingIterator()), Lists.newArrayList(set.descendingIterator()));
+                assertEquals(ns.stream().collect(Collectors.toList()), set.stream().collect(Collectors.toList()));
+            }
+        }
+    }
+    @Test
+    public void pollFirst_should_remove_in_order() {
+        int k = 4;
+        NavigableSet<KmerPathNode> ns = new TreeSet<>(KmerNodeUtil.ByFirstStartKmer);
+        KmerNodeByFirstStartKmerNavigableSet<KmerPathNode> set = new KmerNodeByFirstStartKmerNavigableSet<>(2);
+        for (int i = 0; i < 32; i++) {
+            KmerPathNode kpn = KPN(k, S(RANDOM).substring(i, i + k), (i * 7) % 20, 30, false);
+            ns.add(kpn);
+            set.add(kpn);
+        }
+        while (!ns.isEmpty()) {
+            assertEquals(ns.pollFirst(), set.pollFirst());
+        }
+        assertEquals(0, set.size());
+    }
+}
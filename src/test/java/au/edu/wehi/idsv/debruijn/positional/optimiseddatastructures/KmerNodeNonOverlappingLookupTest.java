@@ -155,7 +155,7 @@ public class KmerNodeNonOverlappingLookupTest extends TestHelper {
         lookup.sanityCheck();
         lookup.remove(nodes.get(0));
         lookup.sanityCheck();
-        KmerPathNode kpn = new KmerPathNode(nodes.get(0).firstKmer(), 1, 1, false, 1);
+        KmerPathNode kpn = new KmerPathNode(k, nodes.get(0).firstKmer(), 1, 1, false, 1);
         lookup.add(kpn);
         lookup.sanityCheck();
         for (int i = 1; i <= 2 ; i++) {
@@ -187,7 +187,7 @@ public class KmerNodeNonOverlappingLookupTest extends TestHelper {
         final KmerNodeNonOverlappingLookup<KmerNode> lookup = new KmerNodeNonOverlappingLookup<>(k);
         nodes.stream().forEach(n -> lookup.add(n));
         lookup.sanityCheck();
-        KmerPathNode kpn = new KmerPathNode(nodes.get(0).firstKmer(), 1, 3, false, 1);
+        KmerPathNode kpn = new KmerPathNode(k, nodes.get(0).firstKmer(), 1, 3, false, 1);
         lookup.replace(nodes.get(0), kpn);
         lookup.sanityCheck();
         Assert.assertTrue(kpn == lookup.prevNodes(nodes.get(1)).get(0));
@@ -247,7 +247,7 @@ public class KmerNodeNonOverlappingLookupTest extends TestHelper {
                 for (int startOffset = 0; startOffset <= 6 * nodeWidth; startOffset += nodeWidth + 1) {
                     for (long kmer = 0; kmer < 1 << (2 * k); kmer++) {
                         for (long nextKmer : KmerEncodingHelper.nextStates(k, kmer)) {
-                            KmerPathNode kpn = new KmerPathNode(kmer, startOffset, startOffset + nodeWidth - 1, false, nodes.size() + 1);
+                            KmerPathNode kpn = new KmerPathNode(k, kmer, startOffset, startOffset + nodeWidth - 1, false, nodes.size() + 1);
                             kpn.append(new ImmutableKmerNode(nextKmer, startOffset + 1, startOffset + nodeWidth - 1 + 1, false, nodes.size() + 1));
                             List<ImmutableKmerNode> constituentNodes = constituentNode(kpn);
                             if (Collections.disjoint(existing, constituentNodes)) {
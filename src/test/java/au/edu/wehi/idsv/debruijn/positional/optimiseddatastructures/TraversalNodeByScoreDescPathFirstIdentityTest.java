@@ -19,7 +19,7 @@ public class TraversalNodeByScoreDescPathFirstIdentityTest {
         for(int score = 0; score < 4; score++) {
             for (int pathStart = 0; pathStart < 4; pathStart++) {
                 for (int pathEnd = pathStart; pathEnd <= pathStart + 1; pathEnd++) {
-                    KmerPathNode kpn = new KmerPathNode(list.size(), pathStart, pathEnd, false, score);
+                    KmerPathNode kpn = new KmerPathNode(4, list.size(), pathStart, pathEnd, false, score);
                     KmerPathSubnode kps = new KmerPathSubnode(kpn, pathStart, pathEnd);
                     list.add(new TraversalNode(kps, score));
                 }
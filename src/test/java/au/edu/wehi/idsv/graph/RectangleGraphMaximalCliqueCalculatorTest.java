@@ -6,6 +6,7 @@ import org.junit.Test;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
 
 import static org.junit.Assert.assertEquals;
 
@@ -285,4 +286,31 @@ public class RectangleGraphMaximalCliqueCalculatorTest {
 				N(2, 3, 1, 1, 15, 7),
 				N(4, 4, 1, 1, 11, 6));
 	}
+	@Test
+	public void should_match_linked_list_scanline_implementation() {
+		for (int seed = 0; seed < 500; seed++) {
+			Random rng = new Random(seed);
+			int range = 4 + rng.nextInt(64);
+			int maxWidth = 1 + rng.nextInt(16);
+			RectangleGraphNode[] nodes = new RectangleGraphNode[1 + rng.nextInt(200)];
+			for (int i = 0; i < nodes.length; i++) {
+				long startX = rng.nextInt(range);
+				long startY = rng.nextInt(range);
+				int weight = 1 + rng.nextInt(3);
+				nodes[i] = N(startX, startX + rng.nextInt(maxWidth), startY, startY + rng.nextInt(maxWidth), weight, rng.nextInt(weight + 1));
+			}
+			Arrays.sort(nodes, 0, nodes.length, RectangleGraphNode.ByStartXYEndXY);
+			RectangleGraphMaximalCliqueCalculator calc = new RectangleGraphMaximalCliqueCalculator();
+			LinkedListRectangleGraphMaximalCliqueCalculator reference = new LinkedListRectangleGraphMaximalCliqueCalculator();
+			List<String> actual = new ArrayList<>();
+			List<String> expected = new ArrayList<>();
+			for (RectangleGraphNode n : nodes) {
+				calc.next(n).forEach(c -> actual.add(c.toString()));
+				reference.next(n).forEach(c -> expected.add(c.toString()));
+			}
+			calc.complete().forEach(c -> actual.add(c.toString()));
+			reference.complete().forEach(c -> expected.add(c.toString()));
+			assertEquals("seed " + seed, expected, actual);
+		}
+	}
 }
@@ -0,0 +1,33 @@
+package au.edu.wehi.idsv.graph;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class RectangleGraphNodePoolTest {
+	@Test
+	public void should_store_node() {
+		RectangleGraphNodePool pool = new RectangleGraphNodePool();
+		int h = pool.add(new RectangleGraphNode(1, 2, 3, 4, 6, 5));
+		assertEquals(1, pool.startX(h));
+		assertEquals(2, pool.endX(h));
+		assertEquals(3, pool.startY(h));
+		assertEquals(4, pool.endY(h));
+		assertEquals(6, pool.weight(h));
+		assertEquals(5, pool.exactWeight(h));
+	}
+	@Test
+	public void should_reuse_released_nodes() {
+		RectangleGraphNodePool pool = new RectangleGraphNodePool(1);
+		int[] h = new int[100];
+		for (int i = 0; i < h.length; i++) {
+			h[i] = pool.add(i, i, i, i, 1, 0);
+		}
+		assertEquals(100, pool.size());
+		pool.release(h[10]);
+		assertEquals(99, pool.size());
+		assertEquals(h[10], pool.add(7, 7, 7, 7, 1, 0));
+		assertEquals(7, pool.startX(h[10]));
+		assertEquals(50, pool.endY(h[50]));
+	}
+}
@@ -1,6 +1,7 @@
 package au.edu.wehi.idsv.picard;
 
 import au.edu.wehi.idsv.TestHelper;
+import au.edu.wehi.idsv.debruijn.PackedSequence;
 import htsjdk.samtools.SAMSequenceRecord;
 import org.junit.Assert;
 import org.junit.Test;
@@ -8,6 +9,7 @@ import org.junit.rules.TemporaryFolder;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.util.stream.Collectors;
 
 import static org.junit.Assert.*;
@@ -93,4 +95,61 @@ public class TwoBitBufferedReferenceSequenceFileTest extends TestHelper {
 		Assert.assertFalse(prs.anyAmbiguous(5, 5));
 		Assert.assertTrue(prs.anyAmbiguous(5, 9));
 	}
+	@Test
+	public void should_replace_out_of_date_cache_file() throws IOException {
+		TemporaryFolder testFolder = new TemporaryFolder();
+		testFolder.create();
+		File file = new File(testFolder.getRoot(), "TwoBitBufferedReferenceSequenceFileTest.gridsscache");
+		Files.write(file.toPath(), new byte[] { (byte)0xAC, (byte)0xED, 0, 5, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14 });
+		TwoBitBufferedReferenceSequenceFile b = new TwoBitBufferedReferenceSequenceFile(SMALL_FA, file);
+		b.getBase(0, 1);
+		assertTrue(file.length() > 18);
+		TwoBitBufferedReferenceSequenceFile c = new TwoBitBufferedReferenceSequenceFile(SMALL_FA, file);
+		assertTrue(c.load(file));
+		for (SAMSequenceRecord s : SMALL_FA.getSequenceDictionary().getSequences()) {
+			assertEquals(
+					S(SMALL_FA.getSequence(s.getSequenceName()).getBases()).toUpperCase(),
+					S(c.getSequence(s.getSequenceName()).getBases()));
+		}
+		testFolder.delete();
+	}
+	@Test
+	public void should_ignore_cache_for_different_reference() throws IOException {
+		TemporaryFolder testFolder = new TemporaryFolder();
+		testFolder.create();
+		File file = new File(testFolder.getRoot(), "TwoBitBufferedReferenceSequenceFileTest.gridsscache");
+		new TwoBitBufferedReferenceSequenceFile(new InMemoryReferenceSequenceFile(new String[] { "test" }, new byte[][] { B("ACGT") })).save(file);
+		TwoBitBufferedReferenceSequenceFile b = new TwoBitBufferedReferenceSequenceFile(new InMemoryReferenceSequenceFile(new String[] { "test" }, new byte[][] { B("ACGTA") }));
+		assertFalse(b.load(file));
+		assertFalse(file.exists());
+		testFolder.delete();
+	}
+	@Test
+	public void memory_mapped_sequence_should_match_heap_sequence() throws IOException {
+		TemporaryFolder testFolder = new TemporaryFolder();
+		testFolder.create();
+		File file = new File(testFolder.getRoot(), "TwoBitBufferedReferenceSequenceFileTest.gridsscache");
+		byte[] bases = B("ACGTNACGTTTGACNNNGTACGATCGATGCATGCATGCTAGCTAGCTAGCTAGCATCGATCGNNNNACGATCGATCGTACGTAGCTAGCTAGCTAGCTAGCTGATCGATCGATCGTAGCTAGCTAGCTAC");
+		TwoBitBufferedReferenceSequenceFile heap = new TwoBitBufferedReferenceSequenceFile(new InMemoryReferenceSequenceFile(new String[] { "test" }, new byte[][] { bases }));
+		heap.save(file);
+		TwoBitBufferedReferenceSequenceFile mapped = new TwoBitBufferedReferenceSequenceFile(new InMemoryReferenceSequenceFile(new String[] { "test" }, new byte[][] { bases }));
+		assertTrue(mapped.load(file));
+		TwoBitBufferedReferenceSequenceFile.PackedReferenceSequence h = heap.getPackedSequence("test");
+		TwoBitBufferedReferenceSequenceFile.PackedReferenceSequence m = mapped.getPackedSequence("test");
+		PackedSequence ps = new PackedSequence(bases, false, false);
+		for (int k = 1; k <= 32; k++) {
+			for (int i = 0; i + k <= bases.length; i++) {
+				assertEquals(ps.getKmer(i, k), h.getKmer(i, k));
+				assertEquals(ps.getKmer(i, k), m.getKmer(i, k));
+			}
+		}
+		for (int i = 1; i <= bases.length; i++) {
+			for (int j = i; j <= bases.length; j++) {
+				assertEquals(h.anyAmbiguous(i, j), m.anyAmbiguous(i, j));
+				assertEquals(S(heap.getSubsequenceAt("test", i, j).getBases()).contains("N"), m.anyAmbiguous(i, j));
+			}
+			assertEquals(heap.getBase(0, i), mapped.getBase(0, i));
+		}
+		testFolder.delete();
+	}
 }
@@ -0,0 +1,91 @@
+package au.edu.wehi.idsv.sam;
+
+import au.edu.wehi.idsv.IntermediateFilesTest;
+import com.google.common.collect.Lists;
+import htsjdk.samtools.QueryInterval;
+import htsjdk.samtools.SAMFileHeader.SortOrder;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SamReader;
+import htsjdk.samtools.SamReaderFactory;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RegionShardedSamRecordIteratorTest extends IntermediateFilesTest {
+	private List<SAMRecord> createIndexedInput() {
+		Random rng = new Random(0);
+		List<SAMRecord> list = new ArrayList<>();
+		for (int i = 0; i < 2000; i++) {
+			SAMRecord r = Read(rng.nextInt(3), 1 + rng.nextInt(5000), rng.nextInt(5) == 0 ? "10S20M" : "50M");
+			list.add(r);
+		}
+		// alignment with no reference bases
+		list.add(Read(0, 1001, "10S10I"));
+		// unmapped read placed with its mate
+		SAMRecord placed = Read(1, 1001, "50M");
+		placed.setReadUnmappedFlag(true);
+		placed.setMappingQuality(0);
+		list.add(placed);
+		for (int i = 0; i < 10; i++) {
+			SAMRecord unmapped = new SAMRecord(getHeader());
+			unmapped.setReadUnmappedFlag(true);
+			unmapped.setReadBases(B("ACGT"));
+			unmapped.setBaseQualities(B("ACGT"));
+			list.add(unmapped);
+		}
+		for (int i = 0; i < list.size(); i++) {
+			list.get(i).setReadName(Integer.toString(i));
+		}
+		createBAM(input, SortOrder.coordinate, list);
+		return list;
+	}
+	private static List<String> names(Iterable<SAMRecord> it) {
+		return Lists.newArrayList(it).stream().map(r -> r.getReadName()).collect(Collectors.toList());
+	}
+	@Test
+	public void should_return_records_in_file_order() throws IOException {
+		createIndexedInput();
+		SamReaderFactory factory = SamReaderFactory.makeDefault();
+		List<String> expected;
+		try (SamReader reader = factory.open(input)) {
+			assertTrue(RegionShardedSamRecordIterator.canShard(reader));
+			expected = names(() -> reader.iterator());
+		}
+		for (int shards : new int[] { 1, 3, 7, 100 }) {
+			for (int concurrent : new int[] { 1, 4 }) {
+				try (RegionShardedSamRecordIterator it = new RegionShardedSamRecordIterator(factory, input, getHeader().getSequenceDictionary(), shards, concurrent, true)) {
+					assertEquals(expected, names(() -> it));
+				}
+			}
+		}
+	}
+	@Test
+	public void should_exclude_unmapped_reads() throws IOException {
+		createIndexedInput();
+		try (RegionShardedSamRecordIterator it = new RegionShardedSamRecordIterator(SamReaderFactory.makeDefault(), input, getHeader().getSequenceDictionary(), 10, 2, false)) {
+			List<SAMRecord> list = Lists.newArrayList(it);
+			assertEquals(2000 + 2, list.size());
+		}
+	}
+	@Test
+	public void getShards_should_cover_each_contig() {
+		List<QueryInterval> shards = RegionShardedSamRecordIterator.getShards(getHeader().getSequenceDictionary(), 16);
+		assertTrue(shards.size() >= 16);
+		for (int i = 0; i < getHeader().getSequenceDictionary().size(); i++) {
+			final int referenceIndex = i;
+			List<QueryInterval> contig = shards.stream().filter(qi -> qi.referenceIndex == referenceIndex).collect(Collectors.toList());
+			assertEquals(1, contig.get(0).start);
+			assertEquals(0, contig.get(contig.size() - 1).end);
+			for (int j = 1; j < contig.size(); j++) {
+				assertEquals(contig.get(j - 1).end + 1, contig.get(j).start);
+			}
+		}
+	}
+}
@@ -0,0 +1,94 @@
+package au.edu.wehi.idsv.util;
+
+import au.edu.wehi.idsv.IntermediateFilesTest;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Ordering;
+import htsjdk.samtools.BAMRecordCodec;
+import htsjdk.samtools.SAMFileHeader.SortOrder;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMRecordCoordinateComparator;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ParallelSortingCollectionTest extends IntermediateFilesTest {
+	private List<SAMRecord> sort(List<SAMRecord> in, int maxRecordsInRam, int threads) {
+		return sort(in, maxRecordsInRam, threads, ParallelSortingCollection.MAX_MERGE_FAN_IN);
+	}
+	private List<SAMRecord> sort(List<SAMRecord> in, int maxRecordsInRam, int threads, int maxMergeFanIn) {
+		ExecutorService threadpool = Executors.newFixedThreadPool(threads);
+		try {
+			ParallelSortingCollection<SAMRecord> psc = new ParallelSortingCollection<>(
+					new BAMRecordCodec(getHeader()),
+					new SAMRecordCoordinateComparator(),
+					maxRecordsInRam,
+					testFolder.getRoot().toPath(),
+					threadpool,
+					threads,
+					maxMergeFanIn);
+			for (SAMRecord r : in) {
+				psc.add(r);
+			}
+			psc.doneAdding();
+			List<SAMRecord> out = Lists.newArrayList(psc.iterator());
+			psc.cleanup();
+			return out;
+		} finally {
+			threadpool.shutdown();
+		}
+	}
+	private List<SAMRecord> randomReads(int n) {
+		Random rng = new Random(0);
+		List<SAMRecord> list = new ArrayList<>();
+		for (int i = 0; i < n; i++) {
+			SAMRecord r = Read(rng.nextInt(3), 1 + rng.nextInt(1000), "10M");
+			r.setReadName(Integer.toString(i));
+			list.add(r);
+		}
+		return list;
+	}
+	@Test
+	public void should_sort_in_memory() {
+		List<SAMRecord> out = sort(randomReads(10), 100, 2);
+		assertEquals(10, out.size());
+		assertTrue(Ordering.from(SortOrder.coordinate.getComparatorInstance()).isOrdered(out));
+	}
+	@Test
+	public void should_merge_spilled_runs() {
+		for (int threads = 1; threads <= 4; threads++) {
+			List<SAMRecord> out = sort(randomReads(1000), 20, threads);
+			assertEquals(1000, out.size());
+			assertTrue(Ordering.from(SortOrder.coordinate.getComparatorInstance()).isOrdered(out));
+		}
+	}
+	@Test
+	public void should_be_deterministic() {
+		List<String> a = Lists.transform(sort(randomReads(500), 30, 3), r -> r.getReadName());
+		List<String> b = Lists.transform(sort(randomReads(500), 30, 3), r -> r.getReadName());
+		assertEquals(a, b);
+	}
+	@Test
+	public void should_merge_in_stages_when_fan_in_exceeded() {
+		List<SAMRecord> in = randomReads(200);
+		List<String> expected = Lists.transform(sort(in, 200, 1), r -> r.getReadName());
+		for (int threads = 1; threads <= 4; threads++) {
+			// 20 spill files with a fan in of 4 requires multiple merge stages
+			List<SAMRecord> out = sort(in, 10, threads, 4);
+			assertEquals(expected, Lists.transform(out, r -> r.getReadName()));
+		}
+	}
+	@Test
+	public void should_sort_large_runs_in_parallel_slices() {
+		List<SAMRecord> in = randomReads(20000);
+		List<String> expected = Lists.transform(sort(in, 20000, 1), r -> r.getReadName());
+		assertEquals(expected, Lists.transform(sort(in, 20000, 4), r -> r.getReadName()));
+		assertEquals(expected, Lists.transform(sort(in, 9000, 4), r -> r.getReadName()));
+	}
+}
@@ -0,0 +1,35 @@
+package gridss;
+
+import au.edu.wehi.idsv.IntermediateFilesTest;
+import gridss.cmdline.CommandLineProgramHelper;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CollectGridssMetricsAndExtractSVReadsTest extends IntermediateFilesTest {
+	@Test
+	public void worker_threads_should_not_change_extracted_reads() {
+		List<List<String>> extracted = new ArrayList<>();
+		for (int threads : new int[] { 1, 4 }) {
+			String prefix = new File(testFolder.getRoot(), "output" + threads).getAbsolutePath();
+			File svOutput = new File(testFolder.getRoot(), "sv" + threads + ".bam");
+			CommandLineProgramHelper cmd = new CommandLineProgramHelper(new CollectGridssMetricsAndExtractSVReads());
+			cmd.addArg("I", new File("src/test/resources/203541.bam").getAbsolutePath());
+			cmd.addArg("O", prefix);
+			cmd.addArg("SV_OUTPUT", svOutput.getAbsolutePath());
+			cmd.addArg("THRESHOLD_COVERAGE", 1000);
+			cmd.addArg("WORKER_THREADS", threads);
+			assertEquals(0, cmd.run());
+			assertTrue(new File(prefix + ".idsv_metrics").exists());
+			extracted.add(getRecords(svOutput).stream().map(r -> r.getReadName() + r.getFlags()).collect(Collectors.toList()));
+		}
+		assertTrue(extracted.get(0).size() > 0);
+		assertEquals(extracted.get(0), extracted.get(1));
+	}
+}
@@ -1,7 +1,9 @@
 package gridss;
 
 import au.edu.wehi.idsv.IntermediateFilesTest;
+import au.edu.wehi.idsv.sam.ReadNameIndex;
 import com.google.common.collect.ImmutableList;
+import htsjdk.samtools.SAMFileHeader.SortOrder;
 import htsjdk.samtools.SAMRecord;
 import htsjdk.samtools.fastq.FastqRecord;
 import org.junit.Assert;
@@ -10,18 +12,26 @@ import org.junit.Test;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
+import java.util.stream.Collectors;
 
 public class ExtractFragmentsToFastqTest extends IntermediateFilesTest {
     private List<List<FastqRecord>> go(Collection<String> readNames, SAMRecord... records) throws IOException {
+        createInput(records);
+        return go(readNames, (File)null);
+    }
+    private List<List<FastqRecord>> go(Collection<String> readNames, File readNameIndex) throws IOException {
         File rnFile = new File(testFolder.getRoot(), "readnames.txt");
         File fq = new File(testFolder.getRoot(), "fq.fq");
         File fq1 = new File(testFolder.getRoot(), "fq1.fq");
         File fq2 = new File(testFolder.getRoot(), "fq2.fq");
         Files.write(rnFile.toPath(), readNames);
-        createInput(records);
         ExtractFragmentsToFastq cmd = new ExtractFragmentsToFastq();
+        cmd.READ_NAME_INDEX = readNameIndex;
+        cmd.TMP_DIR = ImmutableList.of(testFolder.getRoot());
         cmd.INPUT = input;
         cmd.OUTPUT_FQ = fq;
         cmd.OUTPUT_FQ1 = fq1;
@@ -54,6 +64,70 @@ public class ExtractFragmentsToFastqTest extends IntermediateFilesTest {
         Assert.assertEquals("r1", result.get(1).get(1).getReadName());
     }
     @Test
+    public void should_create_and_use_read_name_index() throws IOException {
+        List<SAMRecord> records = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            records.addAll(Arrays.asList(withName("r" + i, DP(0, 1 + i, "10M", true, 1, 10 + i, "10M", false))));
+            records.add(withName("u" + i, Read(2, 1 + i, "10M"))[0]);
+        }
+        createInput(records);
+        File index = ReadNameIndex.getIndexFile(input);
+        List<String> names = ImmutableList.of("r5", "r50", "u7", "u99", "missing");
+        List<List<FastqRecord>> scan = go(names, index);
+        Assert.assertTrue(index.exists());
+        List<List<FastqRecord>> indexed = go(names, index);
+        Assert.assertEquals(2, indexed.get(0).size());
+        Assert.assertEquals(2, indexed.get(1).size());
+        for (int i = 0; i < scan.size(); i++) {
+            Assert.assertEquals(scan.get(i).stream().map(r -> r.toFastQString()).collect(Collectors.toList()),
+                    indexed.get(i).stream().map(r -> r.toFastQString()).collect(Collectors.toList()));
+        }
+    }
+    @Test
+    public void should_ignore_out_of_date_read_name_index() throws IOException {
+        createInput(withName("r1", Read(0, 1, "10M")));
+        File index = ReadNameIndex.getIndexFile(input);
+        go(ImmutableList.of("r1"), index);
+        createInput(withName("r2", Read(0, 1, "10M")));
+        input.setLastModified(input.lastModified() + 1000);
+        Assert.assertNull(ReadNameIndex.open(index, input));
+        Assert.assertEquals("r2", go(ImmutableList.of("r2"), index).get(0).get(0).getReadName());
+    }
+    @Test(expected = IllegalArgumentException.class)
+    public void should_reject_read_name_index_of_sam_input() throws IOException {
+        File sam = new File("src/test/resources/extractFragmentsToFastq/in.sam");
+        new ReadNameIndex.Writer(new File(testFolder.getRoot(), "in.sam.rni"), sam, testFolder.getRoot().toPath(), 100);
+    }
+    @Test
+    public void should_not_write_read_name_index_if_not_finished() throws IOException {
+        createInput(withName("r1", Read(0, 1, "10M")));
+        File index = ReadNameIndex.getIndexFile(input);
+        ReadNameIndex.Writer writer = new ReadNameIndex.Writer(index, input, testFolder.getRoot().toPath(), 100);
+        writer.close();
+        Assert.assertFalse(index.exists());
+    }
+    @Test
+    public void should_use_read_name_index_created_by_by_name_traversal() throws IOException {
+        List<SAMRecord> records = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            records.addAll(Arrays.asList(withName(String.format("r%03d", i), DP(0, 1 + i, "10M", true, 1, 10 + i, "10M", false))));
+        }
+        createBAM(input, SortOrder.queryname, records);
+        File index = ReadNameIndex.getIndexFile(input);
+        ExtractSVReads extract = new ExtractSVReads();
+        Assert.assertEquals(0, extract.instanceMain(new String[] {
+                "INPUT=" + input.toString(),
+                "OUTPUT=" + output.toString(),
+                "READ_NAME_INDEX=" + index.toString(),
+                "TMP_DIR=" + testFolder.getRoot().toString(),
+        }));
+        ReadNameIndex rni = ReadNameIndex.open(index, input);
+        Assert.assertNotNull(rni);
+        rni.close();
+        List<List<FastqRecord>> result = go(ImmutableList.of("r005", "r050"), index);
+        Assert.assertEquals(2, result.get(1).size());
+    }
+    @Test
     public void should_match_c_implementation() throws IOException {
         ExtractFragmentsToFastq cmd = new ExtractFragmentsToFastq();
         file_test(cmd, new File("src/test/resources/extractFragmentsToFastq/in.sam"));
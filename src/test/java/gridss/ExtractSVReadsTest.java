@@ -9,6 +9,7 @@ import au.edu.wehi.idsv.sam.ChimericAlignment;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import com.google.common.io.Files;
+import htsjdk.samtools.SAMFileHeader.SortOrder;
 import htsjdk.samtools.SAMRecord;
 import htsjdk.samtools.SamReader;
 import htsjdk.samtools.SamReaderFactory;
@@ -19,6 +20,7 @@ import org.junit.experimental.categories.Category;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -63,6 +65,41 @@ public class ExtractSVReadsTest extends IntermediateFilesTest {
 		List<SAMRecord> out = getRecords(output);
 		assertEquals(1, out.size());
 	}
+	@Test
+	public void extract_should_stream_sv_reads() {
+		ExtractSVReads extract = new ExtractSVReads();
+		List<SAMRecord> out = Lists.newArrayList(extract.extract(ImmutableList.of(
+				Read(0, 1, "50M50S"),
+				Read(0, 1, "100M"),
+				Read(0, 1, "50S50M")).iterator()));
+		assertEquals(2, out.size());
+		assertEquals(2, extract.getExtractedCount());
+	}
+	@Test
+	public void parallel_fragment_processing_should_preserve_output_order() {
+		List<SAMRecord> in = new ArrayList<>();
+		for (int i = 0; i < 5000; i++) {
+			String name = String.format("r%06d", i);
+			for (SAMRecord r : DP(0, 1 + i, i % 3 == 0 ? "50M50S" : "100M", true, i % 5 == 0 ? 1 : 0, 500 + i, "100M", false)) {
+				r.setReadName(name);
+				in.add(r);
+			}
+		}
+		createBAM(input, SortOrder.queryname, in);
+		List<List<String>> names = new ArrayList<>();
+		for (int threads : new int[] { 1, 4 }) {
+			File out = new File(testFolder.getRoot(), "out" + threads + ".bam");
+			ExtractSVReads extract = new ExtractSVReads();
+			assertEquals(0, extract.instanceMain(new String[] {
+				"INPUT=" + input.toString(),
+				"OUTPUT=" + out.toString(),
+				"WORKER_THREADS=" + threads,
+			}));
+			names.add(getRecords(out).stream().map(r -> r.getReadName() + r.getFlags()).collect(Collectors.toList()));
+		}
+		assertTrue(names.get(0).size() > 0);
+		assertEquals(names.get(0), names.get(1));
+	}
 	/*
 	@Test
 	public void should_not_extract_unclipped_alignment_overlapping_blacklist() {
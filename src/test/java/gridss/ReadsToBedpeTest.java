@@ -0,0 +1,41 @@
+package gridss;
+
+import au.edu.wehi.idsv.IntermediateFilesTest;
+import htsjdk.samtools.SAMRecord;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ReadsToBedpeTest extends IntermediateFilesTest {
+	private List<String> go(int threads) throws IOException {
+		ReadsToBedpe cmd = new ReadsToBedpe();
+		cmd.INPUT = input;
+		cmd.OUTPUT = new File(testFolder.getRoot(), "out" + threads + ".bedpe");
+		cmd.WORKER_THREADS = threads;
+		cmd.CHUNK_SIZE = 1000;
+		cmd.CHUNK_SEQUENCE_CHANGE_PENALTY = 100;
+		Assert.assertEquals(0, cmd.doWork());
+		return Files.readAllLines(cmd.OUTPUT.toPath());
+	}
+	@Test
+	public void chunked_output_should_match_single_threaded_output() throws IOException {
+		List<SAMRecord> records = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			records.add(withName("indel" + i, Read(i % 3, 1 + 97 * i % 5000, "10M100D10M"))[0]);
+			SAMRecord split = withName("split" + i, Read(i % 2, 1 + 53 * i % 5000, "10M10S"))[0];
+			split.setAttribute("SA", "polyA,100,+,10S10M,0,0");
+			records.add(split);
+		}
+		// starts exactly on a chunk boundary
+		records.add(withName("boundary", Read(0, 1001, "10M100D10M"))[0]);
+		createInput(records);
+		List<String> expected = go(1);
+		Assert.assertTrue(expected.size() > 100);
+		Assert.assertEquals(expected, go(4));
+	}
+}
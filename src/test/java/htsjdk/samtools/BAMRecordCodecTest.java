@@ -0,0 +1,82 @@
+package htsjdk.samtools;
+
+import au.edu.wehi.idsv.TestHelper;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class BAMRecordCodecTest extends TestHelper {
+    private static byte[] encode(List<SAMRecord> records) {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        BAMRecordCodec codec = new BAMRecordCodec(getHeader());
+        codec.setOutputStream(os);
+        for (SAMRecord r : records) {
+            codec.encode(r);
+        }
+        return os.toByteArray();
+    }
+    private static List<SAMRecord> decode(byte[] bytes) {
+        BAMRecordCodec codec = new BAMRecordCodec(getHeader());
+        codec.setInputStream(new ByteArrayInputStream(bytes));
+        List<SAMRecord> list = new ArrayList<>();
+        SAMRecord r;
+        while ((r = codec.decode()) != null) {
+            list.add(r);
+        }
+        return list;
+    }
+    private static List<SAMRecord> records() {
+        List<SAMRecord> list = new ArrayList<>();
+        list.add(withAttr("NM", 1, Read(0, 1, "10M"))[0]);
+        list.add(Read(1, 100, "5S10M2D3M1I4M20N5M7S"));
+        list.add(onNegative(Read(2, 1000000, "1S49M"))[0]);
+        SAMRecord unmappedWithPosition = Read(0, 500, "50M");
+        unmappedWithPosition.setReadUnmappedFlag(true);
+        list.add(unmappedWithPosition);
+        SAMRecord unplaced = new SAMRecord(getHeader());
+        unplaced.setReadName("unplaced");
+        unplaced.setReadUnmappedFlag(true);
+        unplaced.setReadBases("ACGT".getBytes());
+        unplaced.setBaseQualities(SAMUtils.fastqToPhred("####"));
+        list.add(unplaced);
+        return list;
+    }
+    @Test
+    public void should_write_unchanged_records_without_reencoding() {
+        byte[] bytes = encode(records());
+        List<SAMRecord> decoded = decode(bytes);
+        assertEquals(records().size(), decoded.size());
+        assertArrayEquals(bytes, encode(decoded));
+        for (SAMRecord r : decoded) {
+            // writing must not force the variable length fields to be decoded
+            assertNotNull(r.getVariableBinaryRepresentation());
+        }
+    }
+    @Test
+    public void should_reencode_modified_records() {
+        List<SAMRecord> decoded = decode(encode(records()));
+        decoded.get(0).setAttribute("NM", 2);
+        decoded.get(1).setCigarString("20M");
+        List<SAMRecord> roundtrip = decode(encode(decoded));
+        assertEquals(2, (int)roundtrip.get(0).getIntegerAttribute("NM"));
+        assertEquals("20M", roundtrip.get(1).getCigarString());
+        assertEquals(decoded.get(1).getReadName(), roundtrip.get(1).getReadName());
+    }
+    @Test
+    public void should_lazily_decode_fields() {
+        List<SAMRecord> expected = records();
+        List<SAMRecord> decoded = decode(encode(expected));
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getReadName(), decoded.get(i).getReadName());
+            assertEquals(expected.get(i).getCigarString(), decoded.get(i).getCigarString());
+            assertEquals(expected.get(i).getReadString(), decoded.get(i).getReadString());
+            assertEquals(expected.get(i).getBaseQualityString(), decoded.get(i).getBaseQualityString());
+            assertEquals(expected.get(i).getAlignmentEnd(), decoded.get(i).getAlignmentEnd());
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package htsjdk.samtools.util;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class BlockCompressedOutputStreamTest {
+    @Rule
+    public TemporaryFolder testFolder = new TemporaryFolder();
+
+    @Test
+    public void should_round_trip_multiple_blocks() throws IOException {
+        File f = testFolder.newFile("test.gz");
+        byte[] data = new byte[1000000];
+        new Random(0).nextBytes(data);
+        // make some of the data compressible
+        for (int i = 0; i < data.length; i += 3) {
+            data[i] = 'A';
+        }
+        try (BlockCompressedOutputStream os = new BlockCompressedOutputStream(f)) {
+            os.write(data);
+        }
+        byte[] in = new byte[data.length];
+        try (BlockCompressedInputStream is = new BlockCompressedInputStream(f)) {
+            int offset = 0;
+            while (offset < in.length) {
+                int read = is.read(in, offset, in.length - offset);
+                if (read <= 0) break;
+                offset += read;
+            }
+            assertEquals(data.length, offset);
+            assertEquals(-1, is.read());
+        }
+        assertArrayEquals(data, in);
+        assertEquals(BlockCompressedInputStream.FileTermination.HAS_TERMINATOR_BLOCK, BlockCompressedInputStream.checkTermination(f));
+    }
+
+    @Test
+    public void file_pointer_should_match_reader_virtual_offset() throws IOException {
+        File f = testFolder.newFile("test.gz");
+        Random rng = new Random(0);
+        int records = 10000;
+        long[] pointers = new long[records];
+        byte[][] recordData = new byte[records][];
+        try (BlockCompressedOutputStream os = new BlockCompressedOutputStream(f)) {
+            for (int i = 0; i < records; i++) {
+                recordData[i] = new byte[1 + rng.nextInt(500)];
+                rng.nextBytes(recordData[i]);
+                pointers[i] = os.getFilePointer();
+                os.write(recordData[i]);
+            }
+        }
+        try (BlockCompressedInputStream is = new BlockCompressedInputStream(f)) {
+            for (int i = records - 1; i >= 0; i -= 97) {
+                is.seek(pointers[i]);
+                byte[] buf = new byte[recordData[i].length];
+                int offset = 0;
+                while (offset < buf.length) {
+                    offset += is.read(buf, offset, buf.length - offset);
+                }
+                assertArrayEquals(recordData[i], buf);
+            }
+        }
+    }
+
+    @Test
+    public void file_pointer_should_be_exact_after_parallel_deflation() throws IOException {
+        File f = testFolder.newFile("test.gz");
+        byte[] data = new byte[1000000];
+        new Random(0).nextBytes(data);
+        byte[] record = new byte[] { 1, 2, 3, 4 };
+        long pointer;
+        try (BlockCompressedOutputStream os = new BlockCompressedOutputStream(f)) {
+            // blocks written before the first file pointer request are deflated in parallel
+            os.write(data);
+            pointer = os.getFilePointer();
+            os.write(record);
+            os.write(data);
+        }
+        try (BlockCompressedInputStream is = new BlockCompressedInputStream(f)) {
+            is.seek(pointer);
+            byte[] buf = new byte[record.length];
+            int offset = 0;
+            while (offset < buf.length) {
+                offset += is.read(buf, offset, buf.length - offset);
+            }
+            assertArrayEquals(record, buf);
+        }
+    }
+}
@@ -38,7 +38,7 @@ public class OffTargetReporter extends TestHelper {
             log.info(String.format("NC_045512.2 %dmer starting \t%d\t%d\thit within %d edits in human reference", k, i + 1, totalHits[i], editDistance));
         }
     }
-    private static List<Integer> hits(int k, long kmer, long kmerRC, PackedSequence target, int maxEditDistance) {
+    private static List<Integer> hits(int k, long kmer, long kmerRC, TwoBitBufferedReferenceSequenceFile.PackedReferenceSequence target, int maxEditDistance) {
         List<Integer> hits = new ArrayList<>();
         for (int i = 0; i < target.length() - (k - 1); i++) {
             long refKmer = target.getKmer(i, k);